@@ -0,0 +1,46 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of folding one tick into the 1s/1m/1h bars. Each operation advances the clock by
+// millisPerTick, so with 1000 every tick opens a new second bar and full rings spill to the archive.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BarHistoryBenchmark {
+    @Param({"1", "1000"})
+    long millisPerTick;
+
+    private BarHistory history;
+    private long price = Money.of(100.00);
+    private long timestamp = 1_700_000_000_000L;
+
+    @Setup
+    public void setUp() throws IOException {
+        history = BarHistory.open(Files.createTempDirectory("bars"));
+    }
+
+    @Benchmark
+    public long onTick() {
+        price += price % 2 == 0 ? 1 : -3;
+        timestamp += millisPerTick;
+        history.onTick((int) timestamp & 7, price, 10, timestamp);
+        return price;
+    }
+}
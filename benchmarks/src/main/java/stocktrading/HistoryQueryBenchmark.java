@@ -0,0 +1,63 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// First page of one account's history out of a journal of a million trades spread over
+// the given number of accounts; with the back-links the cost should not depend on it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryQueryBenchmark {
+    private static final int TRADES = 1_000_000;
+
+    @Param({"10", "100000"})
+    int accounts;
+
+    private Path directory;
+    private TransactionQuery query;
+    private long sum;
+
+    @Setup
+    public void open() throws IOException {
+        directory = Files.createTempDirectory("history-bench");
+        TransactionJournal journal = TransactionJournal.open(directory, TransactionJournal.DEFAULT_RECORDS_PER_SEGMENT);
+        long timestamp = EpochClock.nanos();
+        for (int i = 0; i < TRADES; i++) {
+            journal.append(TransactionJournal.BUY, i % accounts, i % 8, MatchingEngine.HOUSE, 1,
+                           Money.of(150.00), timestamp + i);
+        }
+        query = new TransactionQuery(journal).account(accounts / 2);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long accountPage() {
+        return query.page(TransactionQuery.FIRST_PAGE, 20, index -> sum += index);
+    }
+}
@@ -0,0 +1,59 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Recording a transaction. The journal replaced the old 1000-entry array, so "beyond
+// the cap" is now a segment rollover: the small segment size maps a new file every
+// 4096 records, the default one stays inside a single mapping for the whole iteration.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    @Param({"1048576", "4096"})
+    int recordsPerSegment;
+
+    private Path directory;
+    private TransactionJournal journal;
+    private int shares = 0;
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        directory = Files.createTempDirectory("journal-bench");
+        journal = TransactionJournal.open(directory, recordsPerSegment);
+    }
+
+    @TearDown(Level.Iteration)
+    public void delete() throws IOException {
+        journal = null;
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long recordTransaction() {
+        return journal.append(TransactionJournal.BUY, 1, 0, MatchingEngine.HOUSE, ++shares & 1023,
+                              Money.of(150.00), System.currentTimeMillis());
+    }
+}
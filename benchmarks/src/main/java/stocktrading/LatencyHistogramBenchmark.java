@@ -0,0 +1,49 @@
+package stocktrading;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost the instrumentation adds to a hot path (one timed section, and a bare record), and
+// reading a tail percentile as the stats view and scrapes do
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long value = 1;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 1_000_000; i++) {
+            record();
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        histogram.record((value >>> 44) + 100); // roughly 100ns to 1ms
+    }
+
+    @Benchmark
+    public void timedSection() {
+        histogram.recordSince(System.nanoTime());
+    }
+
+    @Benchmark
+    public long percentile() {
+        return histogram.valueAtPercentile(99.9);
+    }
+}
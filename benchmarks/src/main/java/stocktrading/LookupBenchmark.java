@@ -0,0 +1,46 @@
+package stocktrading;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// StockTradingSystem.findStockBySymbol with a small and a large listing
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+    @Param({"8", "100000"})
+    int listed;
+
+    private String[] queries;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        queries = new String[1024];
+        for (int i = 0; i < listed; i++) {
+            StockTradingSystem.listStock(new Stock("SYM" + i, "Company " + i, Money.of(100.00), 1000));
+        }
+        for (int i = 0; i < queries.length; i++) {
+            // Fresh strings, as if read from the console, so cached hash codes do not help
+            queries[i] = new String(("SYM" + (i * 7919 % listed)).toCharArray());
+        }
+    }
+
+    @Benchmark
+    public Stock findStockBySymbol() {
+        return StockTradingSystem.findStockBySymbol(queries[next++ & (queries.length - 1)]);
+    }
+}
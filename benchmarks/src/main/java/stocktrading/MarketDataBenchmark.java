@@ -0,0 +1,51 @@
+package stocktrading;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Writer cost of a quote and a trade on the market data tape, and a reader keeping up with them
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarketDataBenchmark {
+    private MarketDataPublisher publisher;
+    private MarketDataSubscriber subscriber;
+    private final MarketDataListener listener = new MarketDataListener() { };
+    private long price = Money.of(100.00);
+
+    @Setup
+    public void setUp() {
+        publisher = new MarketDataPublisher(1 << 16);
+        for (int i = 0; i < 8; i++) {
+            publisher.addSymbol(i);
+        }
+        subscriber = publisher.subscribe();
+    }
+
+    @Benchmark
+    public long publishQuote() {
+        price += price % 2 == 0 ? 1 : -3;
+        publisher.quote((int) price & 7, price, 1_000_000, price - 10_000, 100, price + 10_000, 100);
+        return price;
+    }
+
+    @Benchmark
+    public int publishAndPoll() {
+        price += price % 2 == 0 ? 1 : -3;
+        publisher.trade((int) price & 7, price, 10);
+        publisher.quote((int) price & 7, price, 1_000_000, price - 10_000, 100, price + 10_000, 100);
+        return subscriber.poll(listener, 16);
+    }
+}
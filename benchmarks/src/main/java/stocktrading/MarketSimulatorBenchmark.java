@@ -0,0 +1,51 @@
+package stocktrading;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The tick generation behind simulateMarketMovement: one step for every listed symbol
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarketSimulatorBenchmark {
+    @Param({"8", "10000"})
+    int symbols;
+
+    @Param({"gbm", "jump", "correlated"})
+    String model;
+
+    private MarketSimulator simulator;
+    private long[] prices;
+    private TickSink sink;
+
+    @Setup
+    public void setUp() {
+        PriceModel priceModel = model.equals("jump") ? new JumpDiffusionModel(10, -0.02, 0.05)
+                : model.equals("correlated") ? new CorrelatedModel(0.4) : new GeometricBrownianMotion();
+        simulator = new MarketSimulator(priceModel, 1.0 / 252, 42);
+        for (int i = 0; i < symbols; i++) {
+            simulator.addSymbol(i, 100.0, 0.05, 0.45);
+        }
+        prices = new long[symbols];
+        sink = (symbolId, price) -> prices[symbolId] = price;
+    }
+
+    @Benchmark
+    public long simulateMarketMovement() {
+        simulator.run(1, sink);
+        return prices[0];
+    }
+}
@@ -0,0 +1,51 @@
+package stocktrading;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// User.buyStock / sellStock and getPortfolioValue against accounts with many positions
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionBenchmark {
+    @Param({"1", "100", "10000"})
+    int holdings;
+
+    private User user;
+    private int symbol;
+
+    @Setup
+    public void setUp() {
+        user = new HeapUser(0, "bench", "bench", "Bench", Money.of(1_000_000_000.00));
+        for (int i = 0; i < holdings; i++) {
+            user.buyStock(i, 10, Money.of(100.00));
+        }
+        symbol = holdings / 2;
+    }
+
+    // Buy and sell the same quantity so the position stays the same size
+    @Benchmark
+    public long buyThenSell() {
+        user.buyStock(symbol, 5, Money.of(101.00));
+        user.sellStock(symbol, 5, Money.of(102.00));
+        return user.getBalance();
+    }
+
+    @Benchmark
+    public long portfolioValue() {
+        return user.getPortfolioValue();
+    }
+}
@@ -0,0 +1,47 @@
+package stocktrading;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of a price tick fanning out to every holder of the symbol
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValuationBenchmark {
+    @Param({"10", "10000"})
+    int holders;
+
+    private PortfolioValuation valuation;
+    private long price = Money.of(100.00);
+
+    @Setup
+    public void setUp() {
+        valuation = new PortfolioValuation();
+        valuation.addSymbol(0, price);
+        for (int i = 0; i < holders; i++) {
+            User user = new HeapUser(i, "user" + i, "pw", "User " + i, Money.of(100_000.00));
+            user.buyStock(0, 100, price);
+            valuation.onPositionChange(user, 0, 100);
+        }
+    }
+
+    @Benchmark
+    public long priceTick() {
+        price += price % 2 == 0 ? 1 : -3;
+        valuation.onPriceChange(0, price);
+        return price;
+    }
+}
@@ -0,0 +1,316 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Accounts and their positions off the heap, in one memory-mapped file laid out as fixed
+// columns, so millions of accounts cost the collector a small handle each. ArenaUser and
+// ArenaPositionTable are those handles. Another process on the same host can map the file
+// read-only and see live balances as the business thread writes them, with no IPC and no
+// copy. Every value is written whole, but a reader can see one field of a trade before
+// another.
+//
+// Capacities are fixed when the file is created; the file is sparse, so unused capacity
+// costs address space rather than disk or memory. Positions are kept in blocks of
+// BLOCK_ENTRIES chained per account, in the order they were opened, and are looked up by
+// scanning them, which suits the handful of symbols most accounts hold.
+//
+// File, little-endian: a header with the capacities and the published counts, then the
+// per-account columns, the block chain, the per-entry columns and the account names.
+// Credentials are never written here, and the file is readable by its owner only.
+// Written by one thread.
+class AccountArena {
+    private static final int MAGIC = 0x54434341; // "ACCT"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    static final int BLOCK_ENTRIES = 8;
+    private static final Set<PosixFilePermission> OWNER_READ_WRITE =
+            EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Header
+    private static final int ACCOUNT_CAPACITY = 8;
+    private static final int BLOCK_CAPACITY = 12;
+    private static final int TEXT_CAPACITY = 16;
+    private static final int ACCOUNT_COUNT = 20; // published last, so a reader never sees a half-made account
+    private static final int BLOCK_COUNT = 24;
+    private static final int TEXT_SIZE = 28;
+
+    private final MappedByteBuffer buffer;
+    private final int accountCapacity;
+    private final int blockCapacity;
+    private final int textCapacity;
+
+    // Column offsets: per account
+    private final int balance;
+    private final int reservedCash;
+    private final int marketValue;
+    private final int totalCostBasis;
+    private final int totalRealizedPnl;
+    private final int text;
+    private final int openOrders;
+    private final int openPositions;
+    private final int positionCount;
+    private final int firstBlock;
+    private final int lastBlock;
+    // per block
+    private final int nextBlock;
+    // per entry: block * BLOCK_ENTRIES + slot
+    private final int costBasis;
+    private final int realizedPnl;
+    private final int symbol;
+    private final int quantity;
+    private final int holderSlot;
+    private final int pendingBuys;
+    private final int reservedSells;
+    private final int names;
+
+    private AccountArena(MappedByteBuffer buffer, int accountCapacity, int blockCapacity, int textCapacity) {
+        this.buffer = buffer;
+        this.accountCapacity = accountCapacity;
+        this.blockCapacity = blockCapacity;
+        this.textCapacity = textCapacity;
+        int entries = blockCapacity * BLOCK_ENTRIES;
+        int offset = HEADER_SIZE;
+        balance = offset;
+        reservedCash = offset += accountCapacity * 8;
+        marketValue = offset += accountCapacity * 8;
+        totalCostBasis = offset += accountCapacity * 8;
+        totalRealizedPnl = offset += accountCapacity * 8;
+        costBasis = offset += accountCapacity * 8;
+        realizedPnl = offset += entries * 8;
+        text = offset += entries * 8;
+        openOrders = offset += accountCapacity * 4;
+        openPositions = offset += accountCapacity * 4;
+        positionCount = offset += accountCapacity * 4;
+        firstBlock = offset += accountCapacity * 4;
+        lastBlock = offset += accountCapacity * 4;
+        nextBlock = offset += accountCapacity * 4;
+        symbol = offset += blockCapacity * 4;
+        quantity = offset += entries * 4;
+        holderSlot = offset += entries * 4;
+        pendingBuys = offset += entries * 4;
+        reservedSells = offset += entries * 4;
+        names = offset + entries * 4;
+    }
+
+    private static long fileSize(int accountCapacity, int blockCapacity, int textCapacity) {
+        long entries = (long) blockCapacity * BLOCK_ENTRIES;
+        return HEADER_SIZE + accountCapacity * (5 * 8L + 6 * 4L) + blockCapacity * 4L
+               + entries * (2 * 8L + 5 * 4L) + textCapacity;
+    }
+
+    // A new, empty arena. It is made beside the target and renamed over it, so a reader
+    // opening the path gets either the old arena or the new one, never a half-made file.
+    public static AccountArena create(Path file, int accountCapacity, int blockCapacity, int textCapacity)
+            throws IOException {
+        long length = fileSize(accountCapacity, blockCapacity, textCapacity);
+        if (accountCapacity <= 0 || blockCapacity <= 0 || textCapacity <= 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Account arena capacities must be positive and fit in 2 GB: " + length + " bytes");
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        // Made fresh so the permissions apply; they are only asked for where the file system has them
+        Files.deleteIfExists(temporary);
+        Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                                     StandardOpenOption.WRITE);
+        FileAttribute<?>[] ownerOnly = {};
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            ownerOnly = new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(OWNER_READ_WRITE)};
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(temporary, options, ownerOnly)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC).putInt(4, VERSION);
+        buffer.putInt(ACCOUNT_CAPACITY, accountCapacity).putInt(BLOCK_CAPACITY, blockCapacity);
+        buffer.putInt(TEXT_CAPACITY, textCapacity);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new AccountArena(buffer, accountCapacity, blockCapacity, textCapacity);
+    }
+
+    // Maps an arena another process is writing, for reading only
+    public static AccountArena open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an account arena: " + file);
+        }
+        int accounts = buffer.getInt(ACCOUNT_CAPACITY);
+        int blocks = buffer.getInt(BLOCK_CAPACITY);
+        int textBytes = buffer.getInt(TEXT_CAPACITY);
+        if (buffer.capacity() != fileSize(accounts, blocks, textBytes)) {
+            throw new IOException("Not an account arena: " + file);
+        }
+        return new AccountArena(buffer, accounts, blocks, textBytes);
+    }
+
+    public int accountCount() { return (int) INTS.getAcquire(buffer, ACCOUNT_COUNT); }
+    public int accountCapacity() { return accountCapacity; }
+    public int blockCount() { return (int) INTS.getAcquire(buffer, BLOCK_COUNT); }
+    public int blockCapacity() { return blockCapacity; }
+
+    // Whether one more account with these details fits
+    public boolean hasRoom(String username, String name) {
+        return accountCount() < accountCapacity && textSize() + textLength(username, name) <= textCapacity;
+    }
+
+    // Returns the new account's id, which is the previous accountCount()
+    public int addAccount(String username, String name, long initialBalance) {
+        int account = accountCount();
+        if (!hasRoom(username, name)) {
+            throw new IllegalStateException("Account arena is full at " + account + " accounts");
+        }
+        int at = textSize();
+        int position = names + at;
+        for (String value : new String[] {username, name}) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort(position, (short) bytes.length);
+            buffer.put(position + 2, bytes);
+            position += 2 + bytes.length;
+        }
+        INTS.setRelease(buffer, TEXT_SIZE, position - names);
+        putInt(text, account, at);
+        putLong(balance, account, initialBalance);
+        putInt(firstBlock, account, -1);
+        putInt(lastBlock, account, -1);
+        INTS.setRelease(buffer, ACCOUNT_COUNT, account + 1);
+        return account;
+    }
+
+    // Account columns
+    public String username(int account) { return string(account, 0); }
+    public String name(int account) { return string(account, 1); }
+    public long balance(int account) { return getLong(balance, account); }
+    public long reservedCash(int account) { return getLong(reservedCash, account); }
+    public long marketValue(int account) { return getLong(marketValue, account); }
+    public long totalCostBasis(int account) { return getLong(totalCostBasis, account); }
+    public long totalRealizedPnl(int account) { return getLong(totalRealizedPnl, account); }
+    public int openOrders(int account) { return getInt(openOrders, account); }
+    public int openPositions(int account) { return getInt(openPositions, account); }
+    public int positionCount(int account) { return getInt(positionCount, account); }
+
+    void setBalance(int account, long value) { putLong(balance, account, value); }
+    void setReservedCash(int account, long value) { putLong(reservedCash, account, value); }
+    void setMarketValue(int account, long value) { putLong(marketValue, account, value); }
+    void setOpenOrders(int account, int value) { putInt(openOrders, account, value); }
+    void setOpenPositions(int account, int value) { putInt(openPositions, account, value); }
+
+    void setTotals(int account, long costBasis, long realizedPnl) {
+        putLong(totalCostBasis, account, costBasis);
+        putLong(totalRealizedPnl, account, realizedPnl);
+    }
+
+    // The k-th position an account opened, as an entry number for the entry columns
+    public int entry(int account, int k) {
+        int block = getInt(firstBlock, account);
+        for (int hops = k / BLOCK_ENTRIES; hops > 0; hops--) {
+            block = getInt(nextBlock, block);
+        }
+        return block * BLOCK_ENTRIES + k % BLOCK_ENTRIES;
+    }
+
+    // Which of an account's positions holds symbolId, or -1
+    public int find(int account, int symbolId) {
+        int count = positionCount(account);
+        int block = getInt(firstBlock, account);
+        for (int k = 0; k < count; k++) {
+            if (k > 0 && k % BLOCK_ENTRIES == 0) {
+                block = getInt(nextBlock, block);
+            }
+            if (getInt(symbol, block * BLOCK_ENTRIES + k % BLOCK_ENTRIES) == symbolId) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    // Whether the account can open another position; a new block is only taken every BLOCK_ENTRIES
+    public boolean hasPositionRoom(int account) {
+        return positionCount(account) % BLOCK_ENTRIES != 0 || blockCount() < blockCapacity;
+    }
+
+    // Opens an empty position for symbolId and returns its k; the caller checks find and hasPositionRoom first
+    int open(int account, int symbolId) {
+        int k = positionCount(account);
+        if (k % BLOCK_ENTRIES == 0) {
+            int block = blockCount();
+            if (block == blockCapacity) {
+                throw new IllegalStateException("Account arena has no position blocks left (" + blockCapacity + ")");
+            }
+            putInt(nextBlock, block, -1);
+            if (k == 0) {
+                putInt(firstBlock, account, block);
+            } else {
+                putInt(nextBlock, getInt(lastBlock, account), block);
+            }
+            putInt(lastBlock, account, block);
+            INTS.setRelease(buffer, BLOCK_COUNT, block + 1);
+        }
+        int entry = getInt(lastBlock, account) * BLOCK_ENTRIES + k % BLOCK_ENTRIES;
+        putInt(symbol, entry, symbolId);
+        putInt(holderSlot, entry, -1);
+        INTS.setRelease(buffer, positionCount + account * 4, k + 1);
+        return k;
+    }
+
+    // Entry columns
+    public int symbolOf(int entry) { return getInt(symbol, entry); }
+    public int quantityOf(int entry) { return getInt(quantity, entry); }
+    public long costBasisOf(int entry) { return getLong(costBasis, entry); }
+    public long realizedPnlOf(int entry) { return getLong(realizedPnl, entry); }
+    int holderSlotOf(int entry) { return getInt(holderSlot, entry); }
+    int pendingBuysOf(int entry) { return getInt(pendingBuys, entry); }
+    int reservedSellsOf(int entry) { return getInt(reservedSells, entry); }
+
+    void setQuantity(int entry, int value) { putInt(quantity, entry, value); }
+    void setCostBasis(int entry, long value) { putLong(costBasis, entry, value); }
+    void setRealizedPnl(int entry, long value) { putLong(realizedPnl, entry, value); }
+    void setHolderSlot(int entry, int value) { putInt(holderSlot, entry, value); }
+    void setPendingBuys(int entry, int value) { putInt(pendingBuys, entry, value); }
+    void setReservedSells(int entry, int value) { putInt(reservedSells, entry, value); }
+
+    private int textSize() {
+        return (int) INTS.getAcquire(buffer, TEXT_SIZE);
+    }
+
+    private static int textLength(String username, String name) {
+        return 4 + username.getBytes(StandardCharsets.UTF_8).length + name.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    // The field-th of the account's two length-prefixed strings
+    private String string(int account, int field) {
+        int position = names + getInt(text, account);
+        for (int i = 0; i < field; i++) {
+            position += 2 + (buffer.getShort(position) & 0xFFFF);
+        }
+        byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int getInt(int column, int index) { return (int) INTS.get(buffer, column + index * 4); }
+    private long getLong(int column, int index) { return (long) LONGS.get(buffer, column + index * 8); }
+    private void putInt(int column, int index, int value) { INTS.set(buffer, column + index * 4, value); }
+    private void putLong(int column, int index, long value) { LONGS.set(buffer, column + index * 8, value); }
+}
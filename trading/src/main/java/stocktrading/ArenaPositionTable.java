@@ -0,0 +1,47 @@
+package stocktrading;
+
+// Handle over one account's positions in an AccountArena; holds no position data itself
+class ArenaPositionTable extends PositionTable {
+    private final AccountArena arena;
+    private final int account;
+
+    ArenaPositionTable(AccountArena arena, int account) {
+        this.arena = arena;
+        this.account = account;
+    }
+
+    public int size() { return arena.positionCount(account); }
+    public int symbolAt(int entry) { return arena.symbolOf(arena.entry(account, entry)); }
+    public int quantityAt(int entry) { return arena.quantityOf(arena.entry(account, entry)); }
+    public long costBasisAt(int entry) { return arena.costBasisOf(arena.entry(account, entry)); }
+    public long realizedPnlAt(int entry) { return arena.realizedPnlOf(arena.entry(account, entry)); }
+    public int openPositions() { return arena.openPositions(account); }
+    public long totalCostBasis() { return arena.totalCostBasis(account); }
+    public long totalRealizedPnl() { return arena.totalRealizedPnl(account); }
+
+    int holderSlotAt(int entry) { return arena.holderSlotOf(arena.entry(account, entry)); }
+    int pendingBuysAt(int entry) { return arena.pendingBuysOf(arena.entry(account, entry)); }
+    int reservedSellsAt(int entry) { return arena.reservedSellsOf(arena.entry(account, entry)); }
+
+    void setQuantityAt(int entry, int shares) { arena.setQuantity(arena.entry(account, entry), shares); }
+    void setCostBasisAt(int entry, long cost) { arena.setCostBasis(arena.entry(account, entry), cost); }
+    void setRealizedPnlAt(int entry, long pnl) { arena.setRealizedPnl(arena.entry(account, entry), pnl); }
+    void setHolderSlotAt(int entry, int slot) { arena.setHolderSlot(arena.entry(account, entry), slot); }
+    void setPendingBuysAt(int entry, int shares) { arena.setPendingBuys(arena.entry(account, entry), shares); }
+    void setReservedSellsAt(int entry, int shares) { arena.setReservedSells(arena.entry(account, entry), shares); }
+    void setOpenPositions(int count) { arena.setOpenPositions(account, count); }
+    void setTotals(long costBasis, long realizedPnl) { arena.setTotals(account, costBasis, realizedPnl); }
+
+    int find(int symbolId) {
+        return arena.find(account, symbolId);
+    }
+
+    boolean hasRoomForEntry() {
+        return arena.hasPositionRoom(account);
+    }
+
+    int entryFor(int symbolId) {
+        int entry = arena.find(account, symbolId);
+        return entry >= 0 ? entry : arena.open(account, symbolId);
+    }
+}
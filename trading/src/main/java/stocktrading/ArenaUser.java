@@ -0,0 +1,44 @@
+package stocktrading;
+
+// Flyweight over one account in an AccountArena: the handle keeps the arena and the account
+// id, and every field, the names included, is read from and written to the mapped file. The
+// password hash stays in the handle, since other processes can map the file.
+class ArenaUser extends User {
+    private final AccountArena arena;
+    private final int accountId;
+    private final String passwordHash;
+    private final ArenaPositionTable positions;
+
+    ArenaUser(AccountArena arena, int accountId, String passwordHash) {
+        this.arena = arena;
+        this.accountId = accountId;
+        this.passwordHash = passwordHash;
+        this.positions = new ArenaPositionTable(arena, accountId);
+    }
+
+    // Moves an account restored on the heap into the arena, positions and all
+    static ArenaUser copyOf(AccountArena arena, User user) {
+        ArenaUser copy = new ArenaUser(arena, arena.addAccount(user.getUsername(), user.getName(), user.getBalance()),
+                                       user.getPasswordHash());
+        PositionTable from = user.getPositions();
+        for (int i = 0; i < from.size(); i++) {
+            copy.positions.restore(from.symbolAt(i), from.quantityAt(i), from.costBasisAt(i), from.realizedPnlAt(i));
+        }
+        return copy;
+    }
+
+    public int getAccountId() { return accountId; }
+    public String getUsername() { return arena.username(accountId); }
+    public String getPasswordHash() { return passwordHash; }
+    public String getName() { return arena.name(accountId); }
+    public long getBalance() { return arena.balance(accountId); }
+    public long getPortfolioValue() { return arena.marketValue(accountId); }
+    public long getReservedCash() { return arena.reservedCash(accountId); }
+    public int getOpenOrders() { return arena.openOrders(accountId); }
+    public PositionTable getPositions() { return positions; }
+
+    void setBalance(long balance) { arena.setBalance(accountId, balance); }
+    void setPortfolioValue(long marketValue) { arena.setMarketValue(accountId, marketValue); }
+    void setReservedCash(long reservedCash) { arena.setReservedCash(accountId, reservedCash); }
+    void setOpenOrders(int openOrders) { arena.setOpenOrders(accountId, openOrders); }
+}
@@ -0,0 +1,104 @@
+package stocktrading;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+// Runs every strategy against every symbol of a tick file, each pairing an independent
+// fork/join task that reads its symbol's rows straight from the mapped file and trades at
+// the tick price. A run's result depends only on the file and the strategy, so the same
+// inputs give the same numbers whatever the pool size or scheduling.
+class Backtest {
+    private static final int LEAF_RUNS = 4;
+
+    private final TickFile ticks;
+    private final List<Supplier<Strategy>> strategies;
+
+    // Results, one entry per run: run = strategy * symbolCount + symbol index
+    final long[] pnl;         // micros, marked to the last price
+    final long[] maxDrawdown; // micros, largest fall from a previous equity high
+    final int[] trades;
+
+    public Backtest(TickFile ticks, List<Supplier<Strategy>> strategies) {
+        this.ticks = ticks;
+        this.strategies = strategies;
+        int runs = strategies.size() * ticks.symbolCount();
+        this.pnl = new long[runs];
+        this.maxDrawdown = new long[runs];
+        this.trades = new int[runs];
+    }
+
+    public int runCount() { return pnl.length; }
+    public int strategyOf(int run) { return run / ticks.symbolCount(); }
+    public int symbolOf(int run) { return run % ticks.symbolCount(); }
+
+    public void run(ForkJoinPool pool) {
+        pool.invoke(new Runs(0, pnl.length));
+    }
+
+    // Order-sensitive hash of every result, for checking that two runs agree
+    public long digest() {
+        long hash = 17;
+        for (int run = 0; run < pnl.length; run++) {
+            hash = hash * 31 + pnl[run];
+            hash = hash * 31 + maxDrawdown[run];
+            hash = hash * 31 + trades[run];
+        }
+        return hash;
+    }
+
+    private void runOne(int run) {
+        Strategy strategy = strategies.get(strategyOf(run)).get();
+        int symbolIndex = symbolOf(run);
+        int rows = ticks.rowCount(symbolIndex);
+        long cash = 0;
+        long position = 0;
+        long peak = 0;
+        long drawdown = 0;
+        int tradeCount = 0;
+        for (int k = 0; k < rows; k++) {
+            int row = ticks.row(symbolIndex, k);
+            long price = ticks.price(row);
+            int target = strategy.onTick(ticks.time(row), price);
+            if (target != position) {
+                cash -= (target - position) * price;
+                position = target;
+                tradeCount++;
+            }
+            long equity = cash + position * price;
+            peak = Math.max(peak, equity);
+            drawdown = Math.max(drawdown, peak - equity);
+        }
+        pnl[run] = rows == 0 ? 0 : cash + position * ticks.price(ticks.row(symbolIndex, rows - 1));
+        maxDrawdown[run] = drawdown;
+        trades[run] = tradeCount;
+    }
+
+    private final class Runs extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Runs(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_RUNS) {
+                int mid = (from + to) >>> 1;
+                Runs right = new Runs(mid, to);
+                right.fork();
+                new Runs(from, mid).compute();
+                right.join();
+                return;
+            }
+            for (int run = from; run < to; run++) {
+                runOne(run);
+            }
+        }
+    }
+}
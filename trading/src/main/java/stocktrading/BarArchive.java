@@ -0,0 +1,288 @@
+package stocktrading;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Bars of one resolution that have aged out of the in-memory rings. They collect in
+// primitive columns and are written out a block at a time as segment files: rows sorted
+// by symbol then time, each column stored as varint deltas and the whole block deflated.
+// Each segment's time range stays in memory, so a query only inflates the segments it
+// overlaps.
+class BarArchive {
+    static final int BLOCK_BARS = 4096;
+
+    private static final int MAGIC = 0x53524142; // "BARS"
+    private static final int HEADER_SIZE = 28;
+
+    private final Path directory;
+    private final String name;
+    private final long resolutionMillis;
+
+    // Pending block
+    private final int[] symbol = new int[BLOCK_BARS];
+    private final long[] start = new long[BLOCK_BARS];
+    private final long[] open = new long[BLOCK_BARS];
+    private final long[] high = new long[BLOCK_BARS];
+    private final long[] low = new long[BLOCK_BARS];
+    private final long[] close = new long[BLOCK_BARS];
+    private final long[] volume = new long[BLOCK_BARS];
+    private int pending = 0;
+
+    // Segment index
+    private long[] segmentFirst = new long[16];
+    private long[] segmentLast = new long[16];
+    private int segments = 0;
+
+    private BarArchive(Path directory, String name, long resolutionMillis) {
+        this.directory = directory;
+        this.name = name;
+        this.resolutionMillis = resolutionMillis;
+    }
+
+    // Indexes the segments already on disk from their headers
+    public static BarArchive open(Path directory, String name, long resolutionMillis) throws IOException {
+        Files.createDirectories(directory);
+        BarArchive archive = new BarArchive(directory, name, resolutionMillis);
+        while (Files.exists(archive.segmentPath(archive.segments))) {
+            ByteBuffer header;
+            try (InputStream in = Files.newInputStream(archive.segmentPath(archive.segments))) {
+                header = ByteBuffer.wrap(in.readNBytes(HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (header.limit() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a bar segment: " + archive.segmentPath(archive.segments));
+            }
+            header.getInt(); // bar count
+            archive.index(header.getLong(), header.getLong());
+        }
+        return archive;
+    }
+
+    public void add(int symbolId, long startMillis, long open, long high, long low, long close, long volume) {
+        int at = pending++;
+        this.symbol[at] = symbolId;
+        this.start[at] = startMillis;
+        this.open[at] = open;
+        this.high[at] = high;
+        this.low[at] = low;
+        this.close[at] = close;
+        this.volume[at] = volume;
+        if (pending == BLOCK_BARS) {
+            flush();
+        }
+    }
+
+    // Writes the pending block as a new segment
+    public void flush() {
+        if (pending == 0) {
+            return;
+        }
+        // Symbol in the high bits and arrival order in the low ones: sorted by symbol, then time
+        long[] order = new long[pending];
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < pending; i++) {
+            order[i] = (long) symbol[i] << 32 | i;
+            first = Math.min(first, start[i]);
+            last = Math.max(last, start[i]);
+        }
+        Arrays.sort(order);
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(pending * 16);
+        long previous = 0;
+        for (long key : order) {
+            int i = (int) key;
+            putVarLong(raw, symbol[i] - previous);
+            previous = symbol[i];
+        }
+        previous = 0;
+        for (long key : order) {
+            long bucket = start[(int) key] / resolutionMillis;
+            putVarLong(raw, zigzag(bucket - previous));
+            previous = bucket;
+        }
+        previous = 0;
+        for (long key : order) {
+            int i = (int) key;
+            putVarLong(raw, zigzag(open[i] - previous));
+            previous = close[i];
+        }
+        for (long key : order) {
+            putVarLong(raw, high[(int) key] - open[(int) key]);
+        }
+        for (long key : order) {
+            putVarLong(raw, open[(int) key] - low[(int) key]);
+        }
+        for (long key : order) {
+            putVarLong(raw, close[(int) key] - low[(int) key]);
+        }
+        for (long key : order) {
+            putVarLong(raw, volume[(int) key]);
+        }
+
+        byte[] bytes = raw.toByteArray();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] compressed = new byte[HEADER_SIZE + bytes.length + 64];
+        int length = HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        deflater.end();
+        ByteBuffer.wrap(compressed).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC).putInt(pending).putLong(first).putLong(last).putInt(bytes.length);
+
+        Path path = segmentPath(segments);
+        Path partial = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.write(partial, Arrays.copyOf(compressed, length));
+            Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index(first, last);
+        pending = 0;
+    }
+
+    // Archived bars of one symbol starting in [fromMillis, toMillis), oldest first
+    public void query(int symbolId, long fromMillis, long toMillis, BarVisitor visitor) {
+        for (int s = 0; s < segments; s++) {
+            if (segmentLast[s] >= fromMillis && segmentFirst[s] < toMillis) {
+                querySegment(s, symbolId, fromMillis, toMillis, visitor);
+            }
+        }
+        for (int i = 0; i < pending; i++) {
+            if (symbol[i] == symbolId && start[i] >= fromMillis && start[i] < toMillis) {
+                visitor.visit(start[i], open[i], high[i], low[i], close[i], volume[i]);
+            }
+        }
+    }
+
+    public int segmentCount() { return segments; }
+
+    private void querySegment(int segment, int symbolId, long fromMillis, long toMillis, BarVisitor visitor) {
+        byte[] file;
+        try {
+            file = Files.readAllBytes(segmentPath(segment));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer header = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        header.position(4);
+        int count = header.getInt();
+        header.position(24);
+        byte[] raw = new byte[header.getInt()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(file, HEADER_SIZE, file.length - HEADER_SIZE);
+            inflater.inflate(raw);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt bar segment " + segmentPath(segment), e);
+        } finally {
+            inflater.end();
+        }
+
+        // Only the rows of the requested symbol are decoded past the symbol column
+        int[] position = {0};
+        int from = -1;
+        int to = -1;
+        long symbolAt = 0;
+        for (int i = 0; i < count; i++) {
+            symbolAt += getVarLong(raw, position);
+            if (symbolAt == symbolId && from < 0) {
+                from = i;
+            }
+            if (symbolAt == symbolId) {
+                to = i + 1;
+            }
+        }
+        if (from < 0) {
+            return;
+        }
+        long[] starts = new long[count];
+        long[] opens = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unzigzag(getVarLong(raw, position));
+            starts[i] = previous * resolutionMillis;
+        }
+        long[] highs = new long[count];
+        long[] lows = new long[count];
+        long[] closes = new long[count];
+        long[] volumes = new long[count];
+        long[][] columns = {highs, lows, closes, volumes};
+        // Opens are deltas from the previous row's close, so they are resolved once closes are known
+        for (int i = 0; i < count; i++) {
+            opens[i] = unzigzag(getVarLong(raw, position));
+        }
+        for (long[] column : columns) {
+            for (int i = 0; i < count; i++) {
+                column[i] = getVarLong(raw, position);
+            }
+        }
+        long previousClose = 0;
+        for (int i = 0; i < to; i++) {
+            long openAt = previousClose + opens[i];
+            long lowAt = openAt - lows[i];
+            previousClose = lowAt + closes[i];
+            if (i >= from && starts[i] >= fromMillis && starts[i] < toMillis) {
+                visitor.visit(starts[i], openAt, openAt + highs[i], lowAt, previousClose, volumes[i]);
+            }
+        }
+    }
+
+    private void index(long first, long last) {
+        if (segments == segmentFirst.length) {
+            segmentFirst = Arrays.copyOf(segmentFirst, segments * 2);
+            segmentLast = Arrays.copyOf(segmentLast, segments * 2);
+        }
+        segmentFirst[segments] = first;
+        segmentLast[segments] = last;
+        segments++;
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("bars-%s-%05d.segment", name, number));
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long getVarLong(byte[] in, int[] position) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
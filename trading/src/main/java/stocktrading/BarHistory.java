@@ -0,0 +1,115 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Streaming OHLCV aggregation of every symbol's ticks into 1 second, 1 minute and 1 hour
+// bars. Recent bars live in per-symbol columnar rings and older ones in each resolution's
+// compressed archive, so a chart over months reads pre-aggregated bars rather than raw
+// trades. Used only from the business-logic thread.
+class BarHistory {
+    static final int SECOND = 0;
+    static final int MINUTE = 1;
+    static final int HOUR = 2;
+    static final long[] RESOLUTION_MILLIS = {1_000, 60_000, 3_600_000};
+    static final String[] RESOLUTION_NAMES = {"1s", "1m", "1h"};
+
+    // About an hour of seconds, a day of minutes and six weeks of hours in memory per symbol
+    private static final int[] RING_CAPACITY = {4096, 2048, 1024};
+
+    private final BarArchive[] archives = new BarArchive[RESOLUTION_MILLIS.length];
+    private final BarSeries[][] series = new BarSeries[RESOLUTION_MILLIS.length][];
+
+    private BarHistory() {
+        Arrays.setAll(series, r -> new BarSeries[0]);
+    }
+
+    public static BarHistory open(Path directory) throws IOException {
+        BarHistory history = new BarHistory();
+        for (int r = 0; r < RESOLUTION_MILLIS.length; r++) {
+            history.archives[r] = BarArchive.open(directory, RESOLUTION_NAMES[r], RESOLUTION_MILLIS[r]);
+        }
+        return history;
+    }
+
+    // A price update carries no volume; an execution carries its quantity
+    public void onTick(int symbolId, long price, long quantity, long timestamp) {
+        for (int r = 0; r < RESOLUTION_MILLIS.length; r++) {
+            BarSeries[] bySymbol = series[r];
+            if (symbolId >= bySymbol.length) {
+                bySymbol = series[r] = Arrays.copyOf(bySymbol, Math.max(symbolId + 1, bySymbol.length * 2));
+            }
+            if (bySymbol[symbolId] == null) {
+                bySymbol[symbolId] = new BarSeries(RING_CAPACITY[r]);
+            }
+            long bucket = timestamp - Math.floorMod(timestamp, RESOLUTION_MILLIS[r]);
+            bySymbol[symbolId].update(symbolId, bucket, price, quantity, archives[r]);
+        }
+    }
+
+    // Bars starting in [fromMillis, toMillis), oldest first. A bucket split across a
+    // restart comes back as one merged bar.
+    public void query(int symbolId, int resolution, long fromMillis, long toMillis, BarVisitor visitor) {
+        MergingVisitor merged = new MergingVisitor(visitor);
+        archives[resolution].query(symbolId, fromMillis, toMillis, merged);
+        BarSeries[] bySymbol = series[resolution];
+        if (symbolId < bySymbol.length && bySymbol[symbolId] != null) {
+            bySymbol[symbolId].forEach(fromMillis, toMillis, merged);
+        }
+        merged.finish();
+    }
+
+    // Moves every in-memory bar to disk; the rings start empty again
+    public void close() {
+        for (int r = 0; r < RESOLUTION_MILLIS.length; r++) {
+            BarSeries[] bySymbol = series[r];
+            for (int symbolId = 0; symbolId < bySymbol.length; symbolId++) {
+                if (bySymbol[symbolId] != null) {
+                    bySymbol[symbolId].drainTo(symbolId, archives[r]);
+                }
+            }
+            archives[r].flush();
+        }
+    }
+
+    public int segmentCount(int resolution) {
+        return archives[resolution].segmentCount();
+    }
+
+    private static final class MergingVisitor implements BarVisitor {
+        private final BarVisitor target;
+        private boolean holding = false;
+        private long start, open, high, low, close, volume;
+
+        MergingVisitor(BarVisitor target) {
+            this.target = target;
+        }
+
+        @Override
+        public void visit(long startMillis, long open, long high, long low, long close, long volume) {
+            if (holding && startMillis == start) {
+                this.high = Math.max(this.high, high);
+                this.low = Math.min(this.low, low);
+                this.close = close;
+                this.volume += volume;
+                return;
+            }
+            finish();
+            holding = true;
+            this.start = startMillis;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+        }
+
+        void finish() {
+            if (holding) {
+                target.visit(start, open, high, low, close, volume);
+                holding = false;
+            }
+        }
+    }
+}
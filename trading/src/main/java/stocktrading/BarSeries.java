@@ -0,0 +1,95 @@
+package stocktrading;
+
+// One symbol's most recent bars at one resolution, a primitive column per field. The ring
+// grows on demand up to its capacity; after that each new bar pushes the oldest one out
+// to the archive.
+class BarSeries {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int capacity; // power of two
+    private long[] start = new long[INITIAL_CAPACITY];
+    private long[] open = new long[INITIAL_CAPACITY];
+    private long[] high = new long[INITIAL_CAPACITY];
+    private long[] low = new long[INITIAL_CAPACITY];
+    private long[] close = new long[INITIAL_CAPACITY];
+    private long[] volume = new long[INITIAL_CAPACITY];
+    private int head = 0; // oldest bar
+    private int count = 0;
+
+    public BarSeries(int capacity) {
+        this.capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(capacity - 1) << 1);
+    }
+
+    public void update(int symbolId, long bucketStart, long price, long quantity, BarArchive archive) {
+        if (count > 0) {
+            int last = slot(count - 1);
+            // A tick stamped before the current bar (clock stepped back) is folded into it
+            if (bucketStart <= start[last]) {
+                high[last] = Math.max(high[last], price);
+                low[last] = Math.min(low[last], price);
+                close[last] = price;
+                volume[last] += quantity;
+                return;
+            }
+        }
+        if (count == start.length) {
+            if (count < capacity) {
+                grow();
+            } else {
+                archive.add(symbolId, start[head], open[head], high[head], low[head], close[head], volume[head]);
+                head = (head + 1) & (start.length - 1);
+                count--;
+            }
+        }
+        int at = slot(count++);
+        start[at] = bucketStart;
+        open[at] = price;
+        high[at] = price;
+        low[at] = price;
+        close[at] = price;
+        volume[at] = quantity;
+    }
+
+    public void forEach(long fromMillis, long toMillis, BarVisitor visitor) {
+        for (int i = 0; i < count; i++) {
+            int at = slot(i);
+            if (start[at] >= fromMillis && start[at] < toMillis) {
+                visitor.visit(start[at], open[at], high[at], low[at], close[at], volume[at]);
+            }
+        }
+    }
+
+    // Moves every bar, oldest first, to the archive
+    public void drainTo(int symbolId, BarArchive archive) {
+        for (int i = 0; i < count; i++) {
+            int at = slot(i);
+            archive.add(symbolId, start[at], open[at], high[at], low[at], close[at], volume[at]);
+        }
+        head = 0;
+        count = 0;
+    }
+
+    public int size() { return count; }
+
+    private int slot(int i) {
+        return (head + i) & (start.length - 1);
+    }
+
+    private void grow() {
+        start = unwrap(start);
+        open = unwrap(open);
+        high = unwrap(high);
+        low = unwrap(low);
+        close = unwrap(close);
+        volume = unwrap(volume);
+        head = 0;
+    }
+
+    private long[] unwrap(long[] column) {
+        long[] grown = new long[column.length * 2];
+        int tail = column.length - head;
+        System.arraycopy(column, head, grown, 0, tail);
+        System.arraycopy(column, 0, grown, tail, head);
+        return grown;
+    }
+}
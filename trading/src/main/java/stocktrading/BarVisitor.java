@@ -0,0 +1,5 @@
+package stocktrading;
+
+interface BarVisitor {
+    void visit(long startMillis, long open, long high, long low, long close, long volume);
+}
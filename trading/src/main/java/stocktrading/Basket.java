@@ -0,0 +1,150 @@
+package stocktrading;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+// A basket of orders submitted together. Lines are parsed, resolved to account and symbol
+// ids and checked on the submitting thread in one pass; the business-logic thread then
+// runs the valid lines grouped by symbol, keeping the basket's order within a symbol, and
+// fills in a result per line.
+//
+// CSV, one order per line: account,symbol,side,shares[,limit]. The account is a username,
+// the side BUY or SELL, and a blank or missing limit makes a market order. Blank lines,
+// lines starting with # and a header line starting with "account" are skipped.
+class Basket {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Orders, one entry per line
+    int[] accountId = new int[INITIAL_CAPACITY];
+    int[] symbolId = new int[INITIAL_CAPACITY];
+    byte[] side = new byte[INITIAL_CAPACITY];
+    int[] quantity = new int[INITIAL_CAPACITY];
+    long[] limitPrice = new long[INITIAL_CAPACITY]; // micros, 0 for market
+    int[] lineNumber = new int[INITIAL_CAPACITY];
+
+    // Results: a Reply status per line, and for accepted orders what they did
+    int[] status = new int[INITIAL_CAPACITY];
+    long[] orderId = new long[INITIAL_CAPACITY];
+    int[] filledQuantity = new int[INITIAL_CAPACITY];
+    long[] filledValue = new long[INITIAL_CAPACITY];
+
+    private int size = 0;
+    private int[] executionOrder; // valid entries grouped by symbol
+
+    public static Basket readCsv(Path file, ToIntFunction<String> accounts, ToIntFunction<String> symbols)
+            throws IOException {
+        Basket basket = new Basket();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int number = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || (number == 1 && line.regionMatches(true, 0, "account", 0, 7))) {
+                    continue;
+                }
+                basket.parseLine(line, number, accounts, symbols);
+            }
+        }
+        return basket;
+    }
+
+    private void parseLine(String line, int number, ToIntFunction<String> accounts, ToIntFunction<String> symbols) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 4 || fields.length > 5) {
+            add(-1, -1, OrderBook.BUY, 0, 0, number, Reply.INVALID);
+            return;
+        }
+        int account = accounts.applyAsInt(fields[0].trim());
+        int symbol = symbols.applyAsInt(fields[1].trim().toUpperCase());
+        String sideName = fields[2].trim().toUpperCase();
+        byte orderSide = sideName.equals("SELL") ? OrderBook.SELL : OrderBook.BUY;
+        int shares;
+        long limit;
+        try {
+            shares = Integer.parseInt(fields[3].trim());
+            limit = fields.length == 5 && !fields[4].isBlank() ? Money.parse(fields[4].trim()) : 0;
+        } catch (NumberFormatException e) {
+            add(account, symbol, orderSide, 0, 0, number, Reply.INVALID);
+            return;
+        }
+
+        int result = Reply.OK;
+        if (account < 0) {
+            result = Reply.UNKNOWN_ACCOUNT;
+        } else if (symbol < 0) {
+            result = Reply.UNKNOWN_STOCK;
+        } else if (shares <= 0 || limit < 0 || !(sideName.equals("BUY") || sideName.equals("SELL"))) {
+            result = Reply.INVALID;
+        }
+        add(account, symbol, orderSide, shares, limit, number, result);
+    }
+
+    // Programmatic entry; status is OK unless the caller already knows the order is invalid
+    public void add(int account, int symbol, byte orderSide, int shares, long limit, int number, int result) {
+        if (size == accountId.length) {
+            grow();
+        }
+        accountId[size] = account;
+        symbolId[size] = symbol;
+        side[size] = orderSide;
+        quantity[size] = shares;
+        limitPrice[size] = limit;
+        lineNumber[size] = number;
+        status[size] = result;
+        size++;
+        executionOrder = null;
+    }
+
+    public int size() { return size; }
+
+    // Valid entries in symbol order, stable within a symbol so each book sees the basket's order
+    int[] executionOrder() {
+        if (executionOrder != null) {
+            return executionOrder;
+        }
+        int symbols = 0;
+        int valid = 0;
+        for (int i = 0; i < size; i++) {
+            if (status[i] == Reply.OK) {
+                symbols = Math.max(symbols, symbolId[i] + 1);
+                valid++;
+            }
+        }
+        int[] start = new int[symbols + 1];
+        for (int i = 0; i < size; i++) {
+            if (status[i] == Reply.OK) {
+                start[symbolId[i] + 1]++;
+            }
+        }
+        for (int s = 0; s < symbols; s++) {
+            start[s + 1] += start[s];
+        }
+        int[] order = new int[valid];
+        for (int i = 0; i < size; i++) {
+            if (status[i] == Reply.OK) {
+                order[start[symbolId[i]]++] = i;
+            }
+        }
+        return executionOrder = order;
+    }
+
+    private void grow() {
+        int capacity = accountId.length * 2;
+        accountId = Arrays.copyOf(accountId, capacity);
+        symbolId = Arrays.copyOf(symbolId, capacity);
+        side = Arrays.copyOf(side, capacity);
+        quantity = Arrays.copyOf(quantity, capacity);
+        limitPrice = Arrays.copyOf(limitPrice, capacity);
+        lineNumber = Arrays.copyOf(lineNumber, capacity);
+        status = Arrays.copyOf(status, capacity);
+        orderId = Arrays.copyOf(orderId, capacity);
+        filledQuantity = Arrays.copyOf(filledQuantity, capacity);
+        filledValue = Arrays.copyOf(filledValue, capacity);
+    }
+}
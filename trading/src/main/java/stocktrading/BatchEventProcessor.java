@@ -0,0 +1,48 @@
+package stocktrading;
+
+// Runs one handler on its own thread over everything its barrier makes available
+class BatchEventProcessor<E> implements Runnable {
+    private final RingBuffer<E> ringBuffer;
+    private final SequenceBarrier barrier;
+    private final EventHandler<E> handler;
+    private final ExceptionHandler<E> exceptionHandler;
+    private final Sequence sequence = new Sequence(-1);
+
+    public BatchEventProcessor(RingBuffer<E> ringBuffer, SequenceBarrier barrier, EventHandler<E> handler,
+                               ExceptionHandler<E> exceptionHandler) {
+        this.ringBuffer = ringBuffer;
+        this.barrier = barrier;
+        this.handler = handler;
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    @Override
+    public void run() {
+        long next = sequence.get() + 1;
+        while (true) {
+            long available = barrier.waitFor(next);
+            if (available < 0) {
+                return;
+            }
+            while (next <= available) {
+                E event = ringBuffer.get(next);
+                try {
+                    handler.onEvent(event, next, next == available);
+                } catch (Throwable failure) {
+                    // Errors included: a dead stage thread would stall every publisher behind it
+                    exceptionHandler.handleEventException(failure, next, event);
+                }
+                next++;
+            }
+            sequence.set(available);
+        }
+    }
+
+    public Sequence getSequence() {
+        return sequence;
+    }
+
+    public void halt() {
+        barrier.alert();
+    }
+}
@@ -0,0 +1,117 @@
+package stocktrading;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Cash moving between the nodes of a cluster, as two-phase transfers. The node that needs
+// the cash coordinates: it records the transfer, asks the account's home node to hold the
+// amount out of its available cash, credits the account locally once the hold is granted,
+// then tells the home node to commit (take the held cash) or abort (give it back).
+//
+// The coordinator's journal decides the outcome: a transfer it credited commits and one
+// it did not aborts. Every step is journaled on the node taking it, so after a crash the
+// coordinator finishes its open transfers from this state, and the home node keeps its
+// holds reserved until told what to do with them.
+final class CashTransfers {
+    static final class Transfer {
+        final long transferId;
+        final int accountId;
+        final int source; // node holding the cash
+        long amount; // requested, then the amount granted once credited
+        boolean credited;
+
+        Transfer(long transferId, int accountId, int source, long amount, boolean credited) {
+            this.transferId = transferId;
+            this.accountId = accountId;
+            this.source = source;
+            this.amount = amount;
+            this.credited = credited;
+        }
+    }
+
+    static final class Hold {
+        final long transferId;
+        final int accountId;
+        final long amount;
+
+        Hold(long transferId, int accountId, long amount) {
+            this.transferId = transferId;
+            this.accountId = accountId;
+            this.amount = amount;
+        }
+    }
+
+    // Transfer ids carry the coordinating node above this many counter bits
+    static final int NODE_SHIFT = 40;
+
+    private final Map<Long, Transfer> transfers = new LinkedHashMap<>(); // coordinated here, not yet ended
+    private final Map<Long, Hold> holds = new LinkedHashMap<>();         // cash held here for another node
+    // Aborted before their hold arrived, as a restarted coordinator's abort can overtake a hold
+    // still buffered from its old connection; that connection dies with this process, so the
+    // set is not journaled
+    private final Set<Long> abandoned = new HashSet<>();
+    private long lastTransferId = 0; // highest id begun here
+
+    static long firstId(int node) {
+        return ((long) node + 1) << NODE_SHIFT;
+    }
+
+    static int coordinatorOf(long transferId) {
+        return (int) (transferId >>> NODE_SHIFT) - 1;
+    }
+
+    long nextId(int node) {
+        return Math.max(lastTransferId + 1, firstId(node));
+    }
+
+    void begin(long transferId, int accountId, int source, long amount) {
+        transfers.put(transferId, new Transfer(transferId, accountId, source, amount, false));
+        lastTransferId = Math.max(lastTransferId, transferId);
+    }
+
+    // Replaces the requested amount with the one the home node granted
+    void credit(long transferId, long amount) {
+        Transfer transfer = transfers.get(transferId);
+        transfer.amount = amount;
+        transfer.credited = true;
+    }
+
+    Transfer end(long transferId) {
+        return transfers.remove(transferId);
+    }
+
+    Transfer transfer(long transferId) {
+        return transfers.get(transferId);
+    }
+
+    void hold(long transferId, int accountId, long amount) {
+        holds.put(transferId, new Hold(transferId, accountId, amount));
+    }
+
+    Hold release(long transferId) {
+        return holds.remove(transferId);
+    }
+
+    boolean isHeld(long transferId) {
+        return holds.containsKey(transferId);
+    }
+
+    void abandon(long transferId) {
+        abandoned.add(transferId);
+    }
+
+    boolean isAbandoned(long transferId) {
+        return abandoned.contains(transferId);
+    }
+
+    Collection<Transfer> transfers() { return transfers.values(); }
+    Collection<Hold> holds() { return holds.values(); }
+    long lastTransferId() { return lastTransferId; }
+
+    void restoreLastTransferId(long transferId) {
+        lastTransferId = Math.max(lastTransferId, transferId);
+    }
+}
@@ -0,0 +1,59 @@
+package stocktrading;
+
+// Mutable ring buffer entry carrying one request into the business-logic thread
+class Command {
+    static final byte PLACE_ORDER = 1;
+    static final byte CANCEL_ORDER = 2;
+    static final byte DEPOSIT = 3;
+    static final byte WITHDRAW = 4;
+    static final byte UPDATE_PRICE = 5;
+    static final byte REGISTER_USER = 6;
+    static final byte LIST_ORDERS = 7;
+    static final byte BAR_HISTORY = 8; // bookId, side = resolution, orderId..price = epoch millis range
+    static final byte SUBMIT_BASKET = 9; // payload = Basket
+    static final byte MARKET_CLOSE = 10; // ends a trading period for the risk scenarios
+    static final byte RISK_REPORT = 11; // payload = RiskAnalytics.Report
+    static final byte PLACE_STOP = 12; // price = trigger, orderId = limit price or 0 for a stop market order
+    static final byte PLACE_TAKE_PROFIT = 13; // price = trigger, orderId = limit price or 0
+    static final byte PLACE_TRAILING_STOP = 14; // price = trail distance
+    static final byte PLACE_OCO = 15; // price = take-profit trigger, orderId = stop trigger
+    // Cluster cash transfers, see CashTransfers; orderId is the transfer id and price the amount
+    static final byte BEGIN_TRANSFER = 16; // bookId = node holding the cash; the reply's orderId is the new id
+    static final byte HOLD_TRANSFER = 17; // price = most to hold; the reply's filledValue is what was held
+    static final byte CREDIT_TRANSFER = 18;
+    static final byte RELEASE_TRANSFER = 19; // side = 1 to take the held cash, 0 to return it
+    static final byte END_TRANSFER = 20;
+    static final byte LIST_STOCK = 21; // payload = Stock; the reply's orderId is its symbol id
+    static final byte CONSOLE_VIEW = 22; // payload = ConsoleView, of accountId or of the stocks alone for -1
+    static final String[] NAMES = {"unknown", "place_order", "cancel_order", "deposit", "withdraw",
+                                   "update_price", "register_user", "list_orders", "bar_history",
+                                   "submit_basket", "market_close", "risk_report", "place_stop",
+                                   "place_take_profit", "place_trailing_stop", "place_oco",
+                                   "begin_transfer", "hold_transfer", "credit_transfer", "release_transfer",
+                                   "end_transfer", "list_stock", "console_view"};
+
+    byte type;
+    int accountId;
+    int bookId;
+    byte side;
+    long price; // limit price, new price or cash amount in micros depending on type
+    int quantity;
+    long orderId;
+    Object payload;
+    Reply reply;
+    long publishedAt; // System.nanoTime(), for the time spent queued
+
+    void set(byte type, int accountId, int bookId, byte side, long price, int quantity,
+             long orderId, Object payload, Reply reply) {
+        this.type = type;
+        this.accountId = accountId;
+        this.bookId = bookId;
+        this.side = side;
+        this.price = price;
+        this.quantity = quantity;
+        this.orderId = orderId;
+        this.payload = payload;
+        this.reply = reply;
+        this.publishedAt = System.nanoTime();
+    }
+}
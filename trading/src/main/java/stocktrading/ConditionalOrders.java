@@ -0,0 +1,370 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// Dormant orders that become ordinary orders when the price crosses their trigger: stops
+// and stop-limits, take-profits (limit-if-touched) and trailing stops, optionally paired
+// one-cancels-other. They hold no reservation while dormant; risk checks run when they fire.
+//
+// Triggers are indexed per symbol so a tick only touches the orders it fires:
+//  - stops and take-profits sit in two PriceLadders keyed by trigger tick, one that fires on
+//    a rise (lowest trigger first) and one that fires on a fall (highest first);
+//  - trailing stops are grouped by trail distance. Within a group, orders are stacked by
+//    the extreme price they trail from, and a new order always starts at the bottom of the
+//    stack (the current price is the least extreme). A new extreme merges the bottom levels
+//    into one instead of moving each order, and a reversal fires levels from the top.
+//
+// Fired orders queue up until the caller takes them, so nothing runs inside the price
+// update that fired them. Used from the business-logic thread.
+class ConditionalOrders {
+    static final long ID_FLAG = 1L << 62; // distinguishes conditional ids from order book ids
+
+    static final byte STOP = 1;          // buy when the price rises to the trigger, sell when it falls
+    static final byte TAKE_PROFIT = 2;   // buy when the price falls to the trigger, sell when it rises
+    static final byte TRAILING_STOP = 3; // sell when the price falls the trail below its high, buy mirrored
+    static final String[] KIND_NAMES = {"", "STOP", "TAKE-PROFIT", "TRAILING"};
+    static final int CANCELLED = -1; // how a cancelled order is journaled as done, in place of a fired order's status
+
+    private final OrderPool pool = new OrderPool(); // price = trigger or trail, in ticks
+    private byte[] kind = new byte[0];
+    private long[] limit = new long[0];  // micros, 0 for market
+    private long[] linked = new long[0]; // the other order of an OCO pair, or 0
+    private boolean[] armed = new boolean[0]; // indexed and waiting for its trigger
+
+    private PriceLadder[] rising = new PriceLadder[16];
+    private PriceLadder[] falling = new PriceLadder[16];
+    private TrailingGroup[][] trailing = new TrailingGroup[16][];
+    private int[] trailingCount = new int[16];
+    private int symbolCount = 0;
+
+    private long[] fired = new long[64]; // order ids, in firing order
+    private int firedHead = 0;
+    private int firedTail = 0;
+    private int[] restored = new int[0];
+    private long[] restoredMarks = new long[0];
+    private int restoredCount = 0;
+    private int live = 0;
+
+    public void addSymbol(int symbolId) {
+        if (symbolId >= rising.length) {
+            int capacity = Math.max(rising.length * 2, symbolId + 1);
+            rising = Arrays.copyOf(rising, capacity);
+            falling = Arrays.copyOf(falling, capacity);
+            trailing = Arrays.copyOf(trailing, capacity);
+            trailingCount = Arrays.copyOf(trailingCount, capacity);
+        }
+        rising[symbolId] = new PriceLadder(false, pool);
+        falling[symbolId] = new PriceLadder(true, pool);
+        trailing[symbolId] = new TrailingGroup[2];
+        symbolCount = Math.max(symbolCount, symbolId + 1);
+    }
+
+    // Whether an order of this kind and side, placed at the given price, would have fired already
+    static boolean isValidTrigger(byte orderKind, byte side, long triggerTicks, long priceTicks) {
+        if (orderKind == TRAILING_STOP) {
+            return triggerTicks > 0;
+        }
+        return firesOnRise(orderKind, side) ? triggerTicks > priceTicks : triggerTicks < priceTicks && triggerTicks > 0;
+    }
+
+    // trigger is the trail distance for a trailing stop; markTicks is the price it trails from
+    public long place(int symbolId, int owner, byte side, byte orderKind, long triggerTicks, long limitPrice,
+                      int quantity, long markTicks) {
+        int node = pool.acquire();
+        fill(node, symbolId, owner, side, orderKind, triggerTicks, limitPrice, quantity);
+        arm(node, markTicks);
+        return pool.orderId(node) | ID_FLAG;
+    }
+
+    // Pairs two live orders one-cancels-other: when either fires the other is cancelled
+    public void link(long orderId, long otherOrderId) {
+        linked[(int) orderId] = otherOrderId;
+        linked[(int) otherOrderId] = orderId;
+    }
+
+    // Returns the quantity cancelled, or 0 if the order is not live or not the owner's
+    public int cancel(long orderId, int owner) {
+        int node = nodeOf(orderId);
+        if (node < 0 || pool.owner[node] != owner) {
+            return 0;
+        }
+        if (armed[node]) {
+            disarm(node);
+        }
+        int quantity = pool.quantity[node];
+        release(node);
+        return quantity;
+    }
+
+    public static boolean isConditional(long orderId) {
+        return (orderId & ID_FLAG) != 0;
+    }
+
+    public boolean isLive(long orderId) {
+        return nodeOf(orderId) >= 0;
+    }
+
+    // Puts an order back under its original id while restoring, before anything is placed;
+    // finishRestore then arms them all
+    public void restore(long orderId, int symbolId, int owner, byte side, byte orderKind, long triggerTicks,
+                        long limitPrice, long linkedOrderId, int quantity, long markTicks) {
+        int node = pool.restore(orderId & ~ID_FLAG);
+        fill(node, symbolId, owner, side, orderKind, triggerTicks, limitPrice, quantity);
+        linked[node] = linkedOrderId;
+        if (restoredCount == restored.length) {
+            restored = Arrays.copyOf(restored, Math.max(16, restoredCount * 2));
+            restoredMarks = Arrays.copyOf(restoredMarks, restored.length);
+        }
+        restored[restoredCount] = node;
+        restoredMarks[restoredCount++] = markTicks;
+    }
+
+    public void finishRestore() {
+        pool.finishRestore();
+        for (int i = 0; i < restoredCount; i++) {
+            arm(restored[i], restoredMarks[i]);
+        }
+        restored = new int[0];
+        restoredMarks = new long[0];
+        restoredCount = 0;
+    }
+
+    // A new price for a symbol: queues every order whose trigger it reached
+    public void onPrice(int symbolId, long priceTicks) {
+        PriceLadder up = rising[symbolId];
+        while (!up.isEmpty() && up.best() <= priceTicks) {
+            fireLevel(up, up.best());
+        }
+        PriceLadder down = falling[symbolId];
+        while (!down.isEmpty() && down.best() >= priceTicks) {
+            fireLevel(down, down.best());
+        }
+        TrailingGroup[] groups = trailing[symbolId];
+        for (int g = 0, count = trailingCount[symbolId]; g < count; g++) {
+            groups[g].onPrice(groups[g].sell ? priceTicks : -priceTicks);
+        }
+    }
+
+    // Next fired order still live, or 0 when the queue is empty. The order stays readable
+    // through the accessors until it is completed.
+    public long nextFired() {
+        while (firedHead < firedTail) {
+            long orderId = fired[firedHead++];
+            if (nodeOf(orderId) >= 0) {
+                return orderId;
+            }
+        }
+        firedHead = 0;
+        firedTail = 0;
+        return 0;
+    }
+
+    public void complete(long orderId) {
+        int node = nodeOf(orderId);
+        if (node >= 0) {
+            release(node);
+        }
+    }
+
+    public int bookOf(long orderId) { return pool.book[(int) orderId]; }
+    public int ownerOf(long orderId) { return pool.owner[(int) orderId]; }
+    public byte sideOf(long orderId) { return pool.side[(int) orderId]; }
+    public byte kindOf(long orderId) { return kind[(int) orderId]; }
+    public long triggerTicksOf(long orderId) { return pool.price[(int) orderId]; }
+    public long limitPriceOf(long orderId) { return limit[(int) orderId]; }
+    public long linkedOf(long orderId) { return linked[(int) orderId]; }
+    public int quantityOf(long orderId) { return pool.quantity[(int) orderId]; }
+    public int liveCount() { return live; }
+
+    public void forEachOpenOrder(int owner, OpenOrderVisitor visitor) {
+        for (int node = 0; node < pool.size(); node++) {
+            if (pool.quantity[node] > 0 && pool.owner[node] == owner) {
+                visitor.visitConditional(pool.orderId(node) | ID_FLAG, pool.book[node], pool.side[node], kind[node],
+                              pool.price[node], limit[node], pool.quantity[node], linked[node]);
+            }
+        }
+    }
+
+    private static boolean firesOnRise(byte orderKind, byte side) {
+        return (orderKind == STOP) == (side == OrderBook.BUY);
+    }
+
+    private int nodeOf(long orderId) {
+        return isConditional(orderId) ? pool.nodeOf(orderId & ~ID_FLAG) : -1;
+    }
+
+    private void fill(int node, int symbolId, int owner, byte side, byte orderKind, long triggerTicks,
+                      long limitPrice, int quantity) {
+        if (node >= kind.length) {
+            int capacity = Math.max(pool.next.length, node + 1);
+            kind = Arrays.copyOf(kind, capacity);
+            limit = Arrays.copyOf(limit, capacity);
+            linked = Arrays.copyOf(linked, capacity);
+            armed = Arrays.copyOf(armed, capacity);
+        }
+        pool.owner[node] = owner;
+        pool.book[node] = symbolId;
+        pool.side[node] = side;
+        pool.price[node] = triggerTicks;
+        pool.quantity[node] = quantity;
+        kind[node] = orderKind;
+        limit[node] = limitPrice;
+        linked[node] = 0;
+        live++;
+    }
+
+    private void arm(int node, long markTicks) {
+        int symbolId = pool.book[node];
+        armed[node] = true;
+        if (kind[node] == TRAILING_STOP) {
+            boolean sell = pool.side[node] == OrderBook.SELL;
+            group(symbolId, pool.price[node], sell).add(node, sell ? markTicks : -markTicks);
+        } else {
+            (firesOnRise(kind[node], pool.side[node]) ? rising : falling)[symbolId].append(node, pool.price[node]);
+        }
+    }
+
+    private void disarm(int node) {
+        armed[node] = false;
+        if (kind[node] == TRAILING_STOP) {
+            pool.next[pool.prev[node]] = pool.next[node];
+            pool.prev[pool.next[node]] = pool.prev[node];
+        } else {
+            (firesOnRise(kind[node], pool.side[node]) ? rising : falling)[pool.book[node]].remove(node, pool.price[node]);
+        }
+    }
+
+    private void fireLevel(PriceLadder ladder, long tick) {
+        for (int node = ladder.head(tick); node >= 0; node = ladder.head(tick)) {
+            ladder.remove(node, tick);
+            fire(node);
+        }
+    }
+
+    private void fire(int node) {
+        armed[node] = false;
+        if (firedTail == fired.length) {
+            fired = Arrays.copyOf(fired, fired.length * 2);
+        }
+        fired[firedTail++] = pool.orderId(node) | ID_FLAG;
+    }
+
+    private void release(int node) {
+        linked[node] = 0;
+        pool.release(node);
+        live--;
+    }
+
+    private TrailingGroup group(int symbolId, long trailTicks, boolean sell) {
+        TrailingGroup[] groups = trailing[symbolId];
+        int count = trailingCount[symbolId];
+        for (int g = 0; g < count; g++) {
+            if (groups[g].trail == trailTicks && groups[g].sell == sell) {
+                return groups[g];
+            }
+        }
+        if (count == groups.length) {
+            groups = trailing[symbolId] = Arrays.copyOf(groups, count * 2);
+        }
+        trailingCount[symbolId] = count + 1;
+        return groups[count] = new TrailingGroup(trailTicks, sell);
+    }
+
+    // Trailing stops of one symbol, side and trail distance. Prices are keyed so that the
+    // extreme an order trails from is the highest key: the price itself for sells, negated
+    // for buys. Levels run from the highest mark (index top) down to the lowest (bottom - 1),
+    // each a circular list of nodes through a sentinel node from the pool.
+    private final class TrailingGroup {
+        final long trail;
+        final boolean sell;
+        private int[] sentinel = new int[8];
+        private long[] mark = new long[8];
+        private int top = 0;
+        private int bottom = 0;
+
+        TrailingGroup(long trail, boolean sell) {
+            this.trail = trail;
+            this.sell = sell;
+        }
+
+        void add(int node, long key) {
+            raise(key);
+            if (bottom == top || mark[bottom - 1] != key) {
+                if (bottom == sentinel.length) {
+                    compact();
+                }
+                int level = pool.acquire();
+                pool.next[level] = level;
+                pool.prev[level] = level;
+                sentinel[bottom] = level;
+                mark[bottom++] = key;
+            }
+            int level = sentinel[bottom - 1];
+            int last = pool.prev[level];
+            pool.next[last] = node;
+            pool.prev[node] = last;
+            pool.next[node] = level;
+            pool.prev[level] = node;
+        }
+
+        void onPrice(long key) {
+            raise(key);
+            // The most extreme levels fire while the price is a trail or more back from them
+            while (top < bottom && (mark[top] - trail >= key || pool.next[sentinel[top]] == sentinel[top])) {
+                int level = sentinel[top++];
+                for (int node = pool.next[level]; node != level; ) {
+                    int next = pool.next[node];
+                    fire(node);
+                    node = next;
+                }
+                pool.release(level);
+            }
+            if (top == bottom) {
+                top = 0;
+                bottom = 0;
+            }
+        }
+
+        // Every level the price has moved past now trails from the price: one merged level
+        private void raise(long key) {
+            if (bottom > top && mark[bottom - 1] < key) {
+                int merged = bottom - 1;
+                while (merged > top && mark[merged - 1] < key) {
+                    merged--;
+                }
+                for (int level = merged + 1; level < bottom; level++) {
+                    splice(sentinel[merged], sentinel[level]);
+                }
+                mark[merged] = key;
+                bottom = merged + 1;
+            }
+        }
+
+        // Moves the nodes of level from onto the end of level to and frees from's sentinel
+        private void splice(int to, int from) {
+            if (pool.next[from] != from) {
+                int first = pool.next[from];
+                int last = pool.prev[from];
+                int tail = pool.prev[to];
+                pool.next[tail] = first;
+                pool.prev[first] = tail;
+                pool.next[last] = to;
+                pool.prev[to] = last;
+            }
+            pool.release(from);
+        }
+
+        private void compact() {
+            if (top > 0) {
+                System.arraycopy(sentinel, top, sentinel, 0, bottom - top);
+                System.arraycopy(mark, top, mark, 0, bottom - top);
+                bottom -= top;
+                top = 0;
+            }
+            if (bottom == sentinel.length) {
+                sentinel = Arrays.copyOf(sentinel, bottom * 2);
+                mark = Arrays.copyOf(mark, bottom * 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package stocktrading;
+
+// A console's copy of one account and of every listed stock's price, filled on the business
+// thread by a CONSOLE_VIEW command, so the console prints balances, positions and prices
+// without reading state the business thread is changing.
+final class ConsoleView {
+    // The account, when the view was asked for one
+    long balance;
+    long reservedCash;
+    long portfolioValue;
+    long costBasis;
+    long realizedPnl;
+    int positionCount;
+    int[] positionSymbol = new int[0];
+    int[] positionShares = new int[0];
+    int[] positionAvailable = new int[0]; // shares not promised to open sell orders
+    long[] positionCost = new long[0];
+
+    // Per listed stock, by symbol id
+    int stockCount;
+    long[] price = new long[0];
+    long[] previousPrice = new long[0];
+    int[] availableShares = new int[0];
+
+    void fill(User user, PagedStore<Stock> stocks) {
+        if (user != null) {
+            PositionTable positions = user.getPositions();
+            balance = user.getBalance();
+            reservedCash = user.getReservedCash();
+            portfolioValue = user.getPortfolioValue();
+            costBasis = positions.totalCostBasis();
+            realizedPnl = positions.totalRealizedPnl();
+            positionSymbol = new int[positions.openPositions()];
+            positionShares = new int[positionSymbol.length];
+            positionAvailable = new int[positionSymbol.length];
+            positionCost = new long[positionSymbol.length];
+            positionCount = 0;
+            for (int entry = 0; entry < positions.size() && positionCount < positionSymbol.length; entry++) {
+                int shares = positions.quantityAt(entry);
+                if (shares != 0) {
+                    int symbolId = positions.symbolAt(entry);
+                    positionSymbol[positionCount] = symbolId;
+                    positionShares[positionCount] = shares;
+                    positionAvailable[positionCount] = positions.availableToSell(symbolId);
+                    positionCost[positionCount] = positions.costBasisAt(entry);
+                    positionCount++;
+                }
+            }
+        }
+        stockCount = stocks.size();
+        price = new long[stockCount];
+        previousPrice = new long[stockCount];
+        availableShares = new int[stockCount];
+        for (int i = 0; i < stockCount; i++) {
+            Stock stock = stocks.get(i);
+            price[i] = stock.getCurrentPrice();
+            previousPrice[i] = stock.getPreviousPrice();
+            availableShares[i] = stock.getAvailableShares();
+        }
+    }
+
+    long availableCash() {
+        return balance - reservedCash;
+    }
+
+    long unrealizedPnl() {
+        return portfolioValue - costBasis;
+    }
+
+    int shares(int symbolId) {
+        int position = position(symbolId);
+        return position < 0 ? 0 : positionShares[position];
+    }
+
+    int availableToSell(int symbolId) {
+        int position = position(symbolId);
+        return position < 0 ? 0 : positionAvailable[position];
+    }
+
+    private int position(int symbolId) {
+        for (int i = 0; i < positionCount; i++) {
+            if (positionSymbol[i] == symbolId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,40 @@
+package stocktrading;
+
+import java.util.SplittableRandom;
+
+// Single-factor GBM: every symbol's shock mixes one market-wide draw per step with its
+// own, giving a pairwise correlation of rho. The market path is drawn up front so the
+// workers only read it.
+class CorrelatedModel implements PriceModel {
+    private final double marketWeight;
+    private final double ownWeight;
+    private double[] market = new double[0];
+
+    public CorrelatedModel(double rho) {
+        this.marketWeight = Math.sqrt(rho);
+        this.ownWeight = Math.sqrt(1 - rho);
+    }
+
+    @Override
+    public void prepare(int steps, SplittableRandom random) {
+        if (market.length < steps) {
+            market = new double[steps];
+        }
+        for (int step = 0; step < steps; step++) {
+            market[step] = random.nextGaussian();
+        }
+    }
+
+    @Override
+    public void logReturns(MarketSimulator market, int from, int to, int step, double[] returns,
+                           SplittableRandom random) {
+        double dt = market.dt;
+        double sqrtDt = Math.sqrt(dt);
+        double common = marketWeight * this.market[step];
+        for (int i = from; i < to; i++) {
+            double sigma = market.volatility[i];
+            double z = common + ownWeight * random.nextGaussian();
+            returns[i - from] = (market.drift[i] - 0.5 * sigma * sigma) * dt + sigma * sqrtDt * z;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package stocktrading;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Passwords are only ever stored as salted PBKDF2 hashes, "pbkdf2$iterations$salt$hash" in
+// base64, so the journal, snapshots and standbys never hold one in the clear. A password is
+// hashed on the thread that received it, before its registration reaches the sequencer, and
+// checked on the thread that takes the login; the business thread never pays for either.
+final class Credentials {
+    private static final String PREFIX = "pbkdf2$";
+    private static final int ITERATIONS = Integer.getInteger("trading.password.iterations", 10_000);
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private Credentials() {
+    }
+
+    static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + ITERATIONS + "$" + base64.encodeToString(salt) + "$"
+               + base64.encodeToString(derive(password, salt, ITERATIONS));
+    }
+
+    static boolean matches(String password, String stored) {
+        if (!isHash(stored)) {
+            return false;
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            return parts.length == 3 && MessageDigest.isEqual(
+                    base64.decode(parts[2]), derive(password, base64.decode(parts[1]), Integer.parseInt(parts[0])));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Journals and snapshots written before passwords were hashed hold them as typed
+    static boolean isHash(String value) {
+        return value.startsWith(PREFIX);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 is missing from this JVM", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
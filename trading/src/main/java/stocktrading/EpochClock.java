@@ -0,0 +1,14 @@
+package stocktrading;
+
+// Epoch nanoseconds without allocating: the wall clock read once at startup plus the
+// monotonic clock since, so stamps never run backwards when the system time is adjusted
+class EpochClock {
+    private static final long OFFSET = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+    private EpochClock() {
+    }
+
+    static long nanos() {
+        return System.nanoTime() + OFFSET;
+    }
+}
@@ -0,0 +1,5 @@
+package stocktrading;
+
+interface EventHandler<E> {
+    void onEvent(E event, long sequence, boolean endOfBatch);
+}
@@ -0,0 +1,6 @@
+package stocktrading;
+
+// Told when a stage's handler throws on an event; the processor then moves on to the next one
+interface ExceptionHandler<E> {
+    void handleEventException(Throwable failure, long sequence, E event);
+}
@@ -0,0 +1,406 @@
+package stocktrading;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Exchange state rebuilt from the journal alone: stocks, accounts with their positions and
+// every resting order, as of a journal position. The business thread never touches a
+// replica, so one can be brought forward and written out while trading goes on, and a
+// restart only has to replay the journal records written after the snapshot it loads.
+//
+// Snapshot file, big-endian: header, then stocks and accounts in id order, then resting
+// orders in the order they came to rest, which is their priority at each price level,
+// then (from version 2) the armed conditional orders in the order they were placed, then
+// (from version 3) the cluster cash transfers this node coordinates and the holds it keeps,
+// then (from version 4) the journal's chain heads and time index at the snapshot's position.
+class ExchangeReplica {
+    private static final int MAGIC = 0x45584348; // "EXCH"
+    private static final int VERSION = 4;
+
+    static final class RestingOrder {
+        final long orderId;
+        final int accountId;
+        final int bookId;
+        final byte side;
+        final long limitPrice; // micros
+        int quantity;
+
+        RestingOrder(long orderId, int accountId, int bookId, byte side, long limitPrice, int quantity) {
+            this.orderId = orderId;
+            this.accountId = accountId;
+            this.bookId = bookId;
+            this.side = side;
+            this.limitPrice = limitPrice;
+            this.quantity = quantity;
+        }
+    }
+
+    static final class ConditionalOrder {
+        final long orderId;
+        final int accountId;
+        final int bookId;
+        final byte side;
+        final byte kind;
+        final long trigger;    // micros; the trail distance for a trailing stop
+        final long limitPrice; // micros, 0 for market
+        final long linkedOrderId;
+        final int quantity;
+
+        ConditionalOrder(long orderId, int accountId, int bookId, byte side, byte kind, long trigger,
+                         long limitPrice, long linkedOrderId, int quantity) {
+            this.orderId = orderId;
+            this.accountId = accountId;
+            this.bookId = bookId;
+            this.side = side;
+            this.kind = kind;
+            this.trigger = trigger;
+            this.limitPrice = limitPrice;
+            this.linkedOrderId = linkedOrderId;
+            this.quantity = quantity;
+        }
+    }
+
+    private final List<Stock> stocks = new ArrayList<>();
+    private final List<User> users = new ArrayList<>();
+    private final Map<Long, RestingOrder> orders = new LinkedHashMap<>();
+    private final Map<Long, ConditionalOrder> conditionals = new LinkedHashMap<>();
+    private final CashTransfers transfers = new CashTransfers();
+    private long journalPosition = 0; // next journal record to apply
+    private JournalIndex journalIndex = new JournalIndex(); // null if restored from a snapshot without one
+
+    public void listStock(Stock stock) {
+        stocks.add(stock);
+    }
+
+    // Passwords journaled before they were hashed are hashed as they are read
+    public User addUser(String username, String passwordHash, String name, long initialBalance) {
+        if (!Credentials.isHash(passwordHash)) {
+            passwordHash = Credentials.hash(passwordHash);
+        }
+        User user = new HeapUser(users.size(), username, passwordHash, name, initialBalance);
+        users.add(user);
+        return user;
+    }
+
+    // Applies the journal records from the replica's position up to end
+    public void apply(TransactionJournal journal, long end) {
+        long index = journalPosition;
+        while (index < end) {
+            int accountId = journal.accountId(index);
+            if (journalIndex != null) {
+                journalIndex.add(index, journal.type(index), accountId, journal.bookId(index), journal.timestamp(index));
+            }
+            switch (journal.type(index)) {
+                case TransactionJournal.REGISTER:
+                    String[] details = journal.registrationDetails(index);
+                    addUser(details[0], details[1], details[2], journal.price(index));
+                    break;
+                case TransactionJournal.DEPOSIT:
+                    users.get(accountId).deposit(journal.price(index));
+                    break;
+                case TransactionJournal.WITHDRAW:
+                    users.get(accountId).withdraw(journal.price(index));
+                    break;
+                case TransactionJournal.BUY:
+                case TransactionJournal.SELL:
+                    applyTrade(journal, index);
+                    break;
+                case TransactionJournal.ORDER:
+                    orders.put(journal.orderId(index),
+                               new RestingOrder(journal.orderId(index), accountId, journal.bookId(index),
+                                                (byte) journal.counterparty(index), journal.price(index),
+                                                journal.shares(index)));
+                    break;
+                case TransactionJournal.CANCEL:
+                    orders.remove(journal.orderId(index));
+                    break;
+                case TransactionJournal.CONDITIONAL:
+                    int sideAndKind = journal.counterparty(index);
+                    conditionals.put(journal.orderId(index),
+                                     new ConditionalOrder(journal.orderId(index), accountId, journal.bookId(index),
+                                                          (byte) sideAndKind, (byte) (sideAndKind >> 8),
+                                                          journal.price(index), journal.limitPrice(index),
+                                                          journal.linkedOrderId(index), journal.shares(index)));
+                    break;
+                case TransactionJournal.CONDITIONAL_DONE:
+                    conditionals.remove(journal.orderId(index));
+                    break;
+                case TransactionJournal.TRANSFER_BEGIN:
+                    transfers.begin(journal.orderId(index), accountId, journal.bookId(index), journal.price(index));
+                    break;
+                case TransactionJournal.TRANSFER_HOLD:
+                    transfers.hold(journal.orderId(index), accountId, journal.price(index));
+                    break;
+                case TransactionJournal.TRANSFER_CREDIT:
+                    users.get(accountId).deposit(journal.price(index));
+                    transfers.credit(journal.orderId(index), journal.price(index));
+                    break;
+                case TransactionJournal.TRANSFER_RELEASE:
+                    transfers.release(journal.orderId(index));
+                    if (journal.counterparty(index) == 1) {
+                        users.get(accountId).withdraw(journal.price(index));
+                    }
+                    break;
+                case TransactionJournal.TRANSFER_END:
+                    transfers.end(journal.orderId(index));
+                    break;
+                case TransactionJournal.LISTING:
+                    String[] listing = journal.listingDetails(index);
+                    listStock(new Stock(listing[0], listing[1], journal.price(index), (int) journal.orderId(index)));
+                    break;
+                case TransactionJournal.PRICE_MOVE:
+                    Stock stock = stocks.get(journal.bookId(index));
+                    stock.updatePrice(journal.orderId(index));
+                    stock.updatePrice(journal.price(index));
+                    break;
+            }
+            index += Math.max(1, journal.span(index));
+        }
+        journalPosition = index;
+        if (journalIndex != null) {
+            journalIndex.position = index;
+        }
+    }
+
+    // Catches up on the journal index a replica restored from an older snapshot lacks
+    public void indexJournal(TransactionJournal journal) {
+        if (journalIndex == null) {
+            journalIndex = JournalIndex.of(journal, journalPosition);
+        }
+    }
+
+    // One record per account side; the stock's price and float move once per execution
+    private void applyTrade(TransactionJournal journal, long index) {
+        User user = users.get(journal.accountId(index));
+        Stock stock = stocks.get(journal.bookId(index));
+        int shares = journal.shares(index);
+        long price = journal.price(index);
+        boolean againstHouse = journal.counterparty(index) == MatchingEngine.HOUSE;
+
+        if (journal.type(index) == TransactionJournal.BUY) {
+            user.buyStock(journal.bookId(index), shares, price);
+            if (againstHouse) {
+                stock.updateShares(-shares);
+            }
+            stock.recordExecution(price);
+        } else {
+            user.sellStock(journal.bookId(index), shares, price);
+            if (againstHouse) {
+                stock.updateShares(shares);
+                stock.recordExecution(price);
+            }
+        }
+
+        RestingOrder order = orders.get(journal.orderId(index));
+        if (order != null && (order.quantity -= shares) <= 0) {
+            orders.remove(order.orderId);
+        }
+    }
+
+    public List<Stock> stocks() { return stocks; }
+    public List<User> users() { return users; }
+    public Collection<RestingOrder> orders() { return orders.values(); }
+    public Collection<ConditionalOrder> conditionals() { return conditionals.values(); }
+    public CashTransfers transfers() { return transfers; }
+    public long journalPosition() { return journalPosition; }
+    public JournalIndex journalIndex() { return journalIndex; }
+
+    // Written beside the target and renamed over it, so a crash never leaves half a snapshot
+    public void write(Path file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(journalPosition);
+        out.writeInt(stocks.size());
+        out.writeInt(users.size());
+        out.writeInt(orders.size());
+
+        for (Stock stock : stocks) {
+            out.writeLong(stock.getPreviousPrice());
+            out.writeLong(stock.getCurrentPrice());
+            out.writeInt(stock.getAvailableShares());
+            writeString(out, stock.getSymbol());
+            writeString(out, stock.getCompanyName());
+        }
+        for (User user : users) {
+            out.writeLong(user.getBalance());
+            writeString(out, user.getUsername());
+            writeString(out, user.getPasswordHash());
+            writeString(out, user.getName());
+            PositionTable positions = user.getPositions();
+            out.writeInt(positions.size());
+            for (int i = 0; i < positions.size(); i++) {
+                out.writeInt(positions.symbolAt(i));
+                out.writeInt(positions.quantityAt(i));
+                out.writeLong(positions.costBasisAt(i));
+                out.writeLong(positions.realizedPnlAt(i));
+            }
+        }
+        for (RestingOrder order : orders.values()) {
+            out.writeLong(order.orderId);
+            out.writeInt(order.accountId);
+            out.writeInt(order.bookId);
+            out.writeByte(order.side);
+            out.writeLong(order.limitPrice);
+            out.writeInt(order.quantity);
+        }
+        out.writeInt(conditionals.size());
+        for (ConditionalOrder order : conditionals.values()) {
+            out.writeLong(order.orderId);
+            out.writeInt(order.accountId);
+            out.writeInt(order.bookId);
+            out.writeByte(order.side);
+            out.writeByte(order.kind);
+            out.writeLong(order.trigger);
+            out.writeLong(order.limitPrice);
+            out.writeLong(order.linkedOrderId);
+            out.writeInt(order.quantity);
+        }
+        out.writeLong(transfers.lastTransferId());
+        out.writeInt(transfers.transfers().size());
+        for (CashTransfers.Transfer transfer : transfers.transfers()) {
+            out.writeLong(transfer.transferId);
+            out.writeInt(transfer.accountId);
+            out.writeInt(transfer.source);
+            out.writeLong(transfer.amount);
+            out.writeBoolean(transfer.credited);
+        }
+        out.writeInt(transfers.holds().size());
+        for (CashTransfers.Hold hold : transfers.holds()) {
+            out.writeLong(hold.transferId);
+            out.writeInt(hold.accountId);
+            out.writeLong(hold.amount);
+        }
+        out.writeBoolean(journalIndex != null);
+        if (journalIndex != null) {
+            writeLongs(out, journalIndex.accountHead);
+            writeLongs(out, journalIndex.bookHead);
+            writeLongs(out, journalIndex.blockLatest);
+        }
+        out.flush();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ExchangeReplica load(Path file) throws IOException {
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 28 || in.getInt() != MAGIC) {
+            throw new IOException("Not an exchange snapshot: " + file);
+        }
+        int version = in.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported exchange snapshot version " + version + ": " + file);
+        }
+        ExchangeReplica replica = new ExchangeReplica();
+        replica.journalPosition = in.getLong();
+        int stockCount = in.getInt();
+        int userCount = in.getInt();
+        int orderCount = in.getInt();
+
+        for (int i = 0; i < stockCount; i++) {
+            long previousPrice = in.getLong();
+            long currentPrice = in.getLong();
+            int availableShares = in.getInt();
+            Stock stock = new Stock(readString(in), readString(in), previousPrice, availableShares);
+            stock.updatePrice(currentPrice);
+            replica.stocks.add(stock);
+        }
+        for (int i = 0; i < userCount; i++) {
+            long balance = in.getLong();
+            User user = replica.addUser(readString(in), readString(in), readString(in), balance);
+            int positionCount = in.getInt();
+            for (int p = 0; p < positionCount; p++) {
+                user.getPositions().restore(in.getInt(), in.getInt(), in.getLong(), in.getLong());
+            }
+        }
+        for (int i = 0; i < orderCount; i++) {
+            RestingOrder order = new RestingOrder(in.getLong(), in.getInt(), in.getInt(), in.get(),
+                                                  in.getLong(), in.getInt());
+            replica.orders.put(order.orderId, order);
+        }
+        int conditionalCount = version >= 2 ? in.getInt() : 0;
+        for (int i = 0; i < conditionalCount; i++) {
+            ConditionalOrder order = new ConditionalOrder(in.getLong(), in.getInt(), in.getInt(), in.get(), in.get(),
+                                                          in.getLong(), in.getLong(), in.getLong(), in.getInt());
+            replica.conditionals.put(order.orderId, order);
+        }
+        if (version >= 3) {
+            replica.transfers.restoreLastTransferId(in.getLong());
+            int transferCount = in.getInt();
+            for (int i = 0; i < transferCount; i++) {
+                long transferId = in.getLong();
+                replica.transfers.begin(transferId, in.getInt(), in.getInt(), in.getLong());
+                if (in.get() != 0) {
+                    replica.transfers.credit(transferId, replica.transfers.transfer(transferId).amount);
+                }
+            }
+            int holdCount = in.getInt();
+            for (int i = 0; i < holdCount; i++) {
+                replica.transfers.hold(in.getLong(), in.getInt(), in.getLong());
+            }
+        }
+        replica.journalIndex = null;
+        if (version >= 4 && in.get() != 0) {
+            replica.journalIndex = new JournalIndex();
+            replica.journalIndex.position = replica.journalPosition;
+            replica.journalIndex.accountHead = readLongs(in);
+            replica.journalIndex.bookHead = readLongs(in);
+            replica.journalIndex.blockLatest = readLongs(in);
+        }
+        return replica;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.getLong();
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,7 @@
+package stocktrading;
+
+// Receives every fill produced by the MatchingEngine, in match order.
+// Order ids are 0 for the house and for the aggressing part of an order that never rested.
+interface ExecutionListener {
+    void onExecution(int bookId, long buyOrderId, int buyer, long sellOrderId, int seller, long priceTicks, int quantity);
+}
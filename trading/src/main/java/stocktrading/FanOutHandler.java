@@ -0,0 +1,37 @@
+package stocktrading;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Output stage that hands every settled execution to registered listeners
+class FanOutHandler implements EventHandler<TradeEvent> {
+    private final CopyOnWriteArrayList<ExecutionListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(ExecutionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ExecutionListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void onEvent(TradeEvent event, long sequence, boolean endOfBatch) {
+        if (event.type == TradeEvent.BATCH) {
+            TradeBatch batch = event.batch;
+            for (ExecutionListener listener : listeners) {
+                for (int i = 0; i < batch.executionCount(); i++) {
+                    listener.onExecution(batch.executionBook[i], batch.buyOrderId[i], batch.buyer[i],
+                                         batch.sellOrderId[i], batch.seller[i], batch.priceTicks[i], batch.quantity[i]);
+                }
+            }
+            return;
+        }
+        if (event.type != TradeEvent.EXECUTION) {
+            return;
+        }
+        for (ExecutionListener listener : listeners) {
+            listener.onExecution(event.bookId, event.buyOrderId, event.buyer, event.sellOrderId,
+                                 event.seller, event.priceTicks, event.quantity);
+        }
+    }
+}
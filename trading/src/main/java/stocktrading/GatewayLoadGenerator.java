@@ -0,0 +1,239 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+// Drives a running gateway (StockTradingSystem --server) from many concurrent connections
+// on one selector thread. Each client registers its own account, logs in and then keeps a
+// window of market orders in flight, alternating one-share buys and sells of one symbol.
+// Given several symbols, client i trades symbol i modulo their count.
+//
+// With -Dtrading.cluster set as for the nodes, host and port are ignored: each client
+// trades on the node owning its symbol, and is first registered with its cash on its home
+// node, so its first buy draws that cash across.
+//
+//   java -cp trading.jar stocktrading.GatewayLoadGenerator [host] [port] [clients] [orders] [window] [symbol,...]
+public class GatewayLoadGenerator {
+    private static final int REGISTERING = 0;
+    private static final int LOGGING_IN = 1;
+    private static final int TRADING = 2;
+    private static final int DONE = 3;
+
+    private static final class Client {
+        final SocketChannel channel;
+        final String username;
+        final String symbol;
+        final int node;
+        final ByteBuffer in = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        final long[] sentAt;
+        int state = REGISTERING;
+        int symbolId = -1;
+        int sent = 0;
+        int received = 0;
+
+        Client(SocketChannel channel, String username, String symbol, int node, int window) {
+            this.channel = channel;
+            this.username = username;
+            this.symbol = symbol;
+            this.node = node;
+            this.sentAt = new long[window];
+        }
+    }
+
+    private static final long INITIAL_BALANCE = Money.of(1_000_000.00);
+
+    private final int orders;
+    private final int window;
+    private final String[] symbols;
+    private final PartitionMap partitions; // null against a single gateway
+    private final int[] nodeOrders;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final long[] latencies;
+    private int latencyCount = 0;
+    private int rejected = 0;
+    private int finished = 0;
+    private long tradingStart = 0;
+
+    private GatewayLoadGenerator(int clients, int orders, int window, String[] symbols, PartitionMap partitions) {
+        this.orders = orders;
+        this.window = window;
+        this.symbols = symbols;
+        this.partitions = partitions;
+        this.nodeOrders = new int[partitions != null ? partitions.nodeCount() : 1];
+        this.latencies = new long[clients * orders];
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 9090;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int orders = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int window = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+        String[] symbols = (args.length > 5 ? args[5] : "AAPL").split(",");
+        String cluster = System.getProperty("trading.cluster");
+        new GatewayLoadGenerator(clients, orders, window, symbols, cluster != null ? PartitionMap.parse(cluster) : null)
+                .run(new InetSocketAddress(host, port), clients);
+    }
+
+    private void run(InetSocketAddress address, int clients) throws IOException {
+        Selector selector = Selector.open();
+        for (int i = 0; i < clients; i++) {
+            String username = "load-" + runId + "-" + i;
+            String symbol = symbols[i % symbols.length];
+            int node = 0;
+            if (partitions != null) {
+                node = partitions.ownerOf(symbol);
+                address = partitions.address(node);
+                int home = partitions.ownerOf(username);
+                if (home != node) {
+                    registerAt(partitions.address(home), username, i);
+                }
+            }
+            SocketChannel channel = SocketChannel.open(address);
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Client client = new Client(channel, username, symbol, node, window);
+            channel.register(selector, SelectionKey.OP_READ, client);
+            // Lookups are answered at once, so the symbol id is known before the registration completes
+            GatewayProtocol.lookup(client.out, -1, symbol);
+            GatewayProtocol.register(client.out, 0, client.username, "load", "Load Client " + i, INITIAL_BALANCE);
+            flush(client);
+        }
+        System.out.println("Connected " + clients + " clients");
+
+        while (finished < clients) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                if (key.isReadable() && client.channel.read(client.in) < 0) {
+                    throw new IOException("Gateway closed the connection");
+                }
+                handleResponses(client);
+                flush(client);
+                key.interestOps(client.out.position() > 0
+                        ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+        long elapsed = System.nanoTime() - tradingStart;
+
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        report(elapsed);
+    }
+
+    // Opens the account on its home node, which keeps the cash; the trading node registers it empty
+    private static void registerAt(InetSocketAddress home, String username, int i) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(home)) {
+            ByteBuffer buffer = ByteBuffer.allocate(GatewayProtocol.MAX_FRAME).order(ByteOrder.LITTLE_ENDIAN);
+            GatewayProtocol.register(buffer, 0, username, "load", "Load Client " + i, INITIAL_BALANCE);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear().limit(GatewayProtocol.RESPONSE_FRAME);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Home node closed the connection");
+                }
+            }
+            int status = buffer.get(GatewayProtocol.LENGTH_FIELD + 1 + 4);
+            if (status != Reply.OK) {
+                throw new IllegalStateException("Registration at home node failed with status " + status);
+            }
+        }
+    }
+
+    private void handleResponses(Client client) {
+        ByteBuffer in = client.in;
+        in.flip();
+        while (in.remaining() >= GatewayProtocol.RESPONSE_FRAME) {
+            in.getShort();
+            byte type = (byte) (in.get() & ~GatewayProtocol.RESPONSE);
+            int correlationId = in.getInt();
+            int status = in.get();
+            long id = in.getLong();
+            in.position(in.position() + 16); // filled quantity, filled value, cancelled quantity
+
+            if (type == GatewayProtocol.LOOKUP) {
+                if (status != Reply.OK) {
+                    throw new IllegalStateException("Unknown symbol " + client.symbol);
+                }
+                client.symbolId = (int) id;
+            } else if (type == GatewayProtocol.REGISTER) {
+                if (status != Reply.OK) {
+                    throw new IllegalStateException("Registration failed with status " + status);
+                }
+                client.state = LOGGING_IN;
+                GatewayProtocol.login(client.out, 0, client.username, "load");
+            } else if (type == GatewayProtocol.LOGIN) {
+                if (status != Reply.OK) {
+                    throw new IllegalStateException("Login failed with status " + status);
+                }
+                client.state = TRADING;
+                if (tradingStart == 0) {
+                    tradingStart = System.nanoTime();
+                }
+            } else {
+                latencies[latencyCount++] = System.nanoTime() - client.sentAt[correlationId % window];
+                if (status != Reply.OK) {
+                    rejected++;
+                }
+                nodeOrders[client.node]++;
+                if (++client.received == orders) {
+                    client.state = DONE;
+                    finished++;
+                }
+            }
+        }
+        in.compact();
+
+        while (client.state == TRADING && client.sent < orders
+                && client.sent - client.received < window) {
+            byte side = client.sent % 2 == 0 ? OrderBook.BUY : OrderBook.SELL;
+            client.sentAt[client.sent % window] = System.nanoTime();
+            GatewayProtocol.order(client.out, client.sent, side, client.symbolId, 1, 0);
+            client.sent++;
+        }
+    }
+
+    private static void flush(Client client) {
+        client.out.flip();
+        try {
+            client.channel.write(client.out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Write to gateway failed", e);
+        }
+        client.out.compact();
+    }
+
+    private void report(long elapsedNanos) {
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        System.out.printf("%d orders in %.1f ms (%.0f orders/s), %d rejected%n",
+                          latencyCount, elapsedNanos / 1e6, latencyCount * 1e9 / elapsedNanos, rejected);
+        if (latencyCount > 0) {
+            System.out.printf("Latency us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                              sorted[latencyCount / 2] / 1e3, sorted[(int) (latencyCount * 0.99)] / 1e3,
+                              sorted[(int) (latencyCount * 0.999)] / 1e3, sorted[latencyCount - 1] / 1e3);
+        }
+        if (partitions != null) {
+            for (int node = 0; node < nodeOrders.length; node++) {
+                System.out.printf("Node %d (%s): %d orders%n", node, partitions.address(node), nodeOrders[node]);
+            }
+        }
+    }
+}
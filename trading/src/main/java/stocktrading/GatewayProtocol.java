@@ -0,0 +1,156 @@
+package stocktrading;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Binary order-entry protocol, little-endian. Every frame is a u16 length (not counting
+// itself), a u8 message type and a u32 correlation id the response echoes back.
+//
+//   LOGIN     str username, str password          -> orderId field holds the account id
+//   REGISTER  str username, str password, str name, i64 initial balance
+//   BUY/SELL  i32 symbol id, i32 quantity, i64 limit price (0 = market)
+//   CANCEL    i64 order id
+//   DEPOSIT/WITHDRAW  i64 amount
+//   LOOKUP    str symbol                           -> orderId field holds the symbol id
+//
+// Between the nodes of a cluster (see CashTransfers), on a connection that opened with PEER
+// instead of logging in; they are refused on any other:
+//   PEER      i32 node id, str cluster secret
+//   HOLD      i64 transfer id, str username, i64 amount -> filled value holds the amount held
+//   RELEASE   i64 transfer id, u8 1 to commit or 0 to abort
+//
+// Strings are a u8 byte count followed by UTF-8. Amounts and prices are Money micros.
+// Every request gets one fixed-size response: type | RESPONSE, correlation id, u8 Reply
+// status, i64 order id, i32 filled quantity, i64 filled value, i32 cancelled quantity.
+// A buy rejected for insufficient funds reports the shortfall as its filled value.
+final class GatewayProtocol {
+    static final byte LOGIN = 1;
+    static final byte REGISTER = 2;
+    static final byte BUY = 3;
+    static final byte SELL = 4;
+    static final byte CANCEL = 5;
+    static final byte DEPOSIT = 6;
+    static final byte WITHDRAW = 7;
+    static final byte LOOKUP = 8;
+    static final byte HOLD = 9;
+    static final byte RELEASE = 10;
+    static final byte PEER = 11;
+    static final byte RESPONSE = (byte) 0x80;
+
+    static final int LENGTH_FIELD = 2;
+    static final int MIN_FRAME = 5; // type and correlation id
+    static final int MAX_FRAME = 1024;
+    static final int RESPONSE_FRAME = LENGTH_FIELD + 1 + 4 + 1 + 8 + 4 + 8 + 4;
+
+    private GatewayProtocol() {
+    }
+
+    static void login(ByteBuffer out, int correlationId, String username, String password) {
+        int start = begin(out, LOGIN, correlationId);
+        putString(out, username);
+        putString(out, password);
+        end(out, start);
+    }
+
+    static void register(ByteBuffer out, int correlationId, String username, String password, String name,
+                         long initialBalance) {
+        int start = begin(out, REGISTER, correlationId);
+        putString(out, username);
+        putString(out, password);
+        putString(out, name);
+        out.putLong(initialBalance);
+        end(out, start);
+    }
+
+    static void order(ByteBuffer out, int correlationId, byte side, int symbolId, int quantity, long limitPrice) {
+        int start = begin(out, side == OrderBook.BUY ? BUY : SELL, correlationId);
+        out.putInt(symbolId);
+        out.putInt(quantity);
+        out.putLong(limitPrice);
+        end(out, start);
+    }
+
+    static void cancel(ByteBuffer out, int correlationId, long orderId) {
+        int start = begin(out, CANCEL, correlationId);
+        out.putLong(orderId);
+        end(out, start);
+    }
+
+    static void cash(ByteBuffer out, int correlationId, byte type, long amount) {
+        int start = begin(out, type, correlationId);
+        out.putLong(amount);
+        end(out, start);
+    }
+
+    static void lookup(ByteBuffer out, int correlationId, String symbol) {
+        int start = begin(out, LOOKUP, correlationId);
+        putString(out, symbol);
+        end(out, start);
+    }
+
+    static void peer(ByteBuffer out, int correlationId, int node, String secret) {
+        int start = begin(out, PEER, correlationId);
+        out.putInt(node);
+        putString(out, secret);
+        end(out, start);
+    }
+
+    static void hold(ByteBuffer out, int correlationId, long transferId, String username, long amount) {
+        int start = begin(out, HOLD, correlationId);
+        out.putLong(transferId);
+        putString(out, username);
+        out.putLong(amount);
+        end(out, start);
+    }
+
+    static void release(ByteBuffer out, int correlationId, long transferId, boolean commit) {
+        int start = begin(out, RELEASE, correlationId);
+        out.putLong(transferId);
+        out.put((byte) (commit ? 1 : 0));
+        end(out, start);
+    }
+
+    static void response(ByteBuffer out, byte requestType, int correlationId, int status, long orderId,
+                         int filledQuantity, long filledValue, int cancelledQuantity) {
+        int start = begin(out, (byte) (requestType | RESPONSE), correlationId);
+        out.put((byte) status);
+        out.putLong(orderId);
+        out.putInt(filledQuantity);
+        out.putLong(filledValue);
+        out.putInt(cancelledQuantity);
+        end(out, start);
+    }
+
+    // Length of the frame starting at the buffer's position, or -1 if the length is not there yet
+    static int frameLength(ByteBuffer in) {
+        return in.remaining() < LENGTH_FIELD ? -1 : in.getShort(in.position()) & 0xFFFF;
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = in.get() & 0xFF;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 255) {
+            throw new IllegalArgumentException("String too long for the protocol: " + value);
+        }
+        out.put((byte) bytes.length);
+        out.put(bytes);
+    }
+
+    private static int begin(ByteBuffer out, byte type, int correlationId) {
+        int start = out.position();
+        out.putShort((short) 0);
+        out.put(type);
+        out.putInt(correlationId);
+        return start;
+    }
+
+    private static void end(ByteBuffer out, int start) {
+        out.putShort(start, (short) (out.position() - start - LENGTH_FIELD));
+    }
+}
@@ -0,0 +1,17 @@
+package stocktrading;
+
+import java.util.SplittableRandom;
+
+// Independent log-normal moves: d ln S = (mu - sigma^2 / 2) dt + sigma sqrt(dt) Z
+class GeometricBrownianMotion implements PriceModel {
+    @Override
+    public void logReturns(MarketSimulator market, int from, int to, int step, double[] returns,
+                           SplittableRandom random) {
+        double dt = market.dt;
+        double sqrtDt = Math.sqrt(dt);
+        for (int i = from; i < to; i++) {
+            double sigma = market.volatility[i];
+            returns[i - from] = (market.drift[i] - 0.5 * sigma * sigma) * dt + sigma * sqrtDt * random.nextGaussian();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// Positions in parallel primitive arrays in the order they were opened, with a small
+// open-addressing index from symbol id to entry, so updating an existing position never
+// allocates.
+class HeapPositionTable extends PositionTable {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] symbol = new int[INITIAL_CAPACITY];
+    private int[] quantity = new int[INITIAL_CAPACITY];
+    private long[] costBasis = new long[INITIAL_CAPACITY];
+    private long[] realizedPnl = new long[INITIAL_CAPACITY];
+    private int[] holderSlot = new int[INITIAL_CAPACITY];
+    private int[] pendingBuys = new int[INITIAL_CAPACITY];
+    private int[] reservedSells = new int[INITIAL_CAPACITY];
+    private int[] index = new int[INITIAL_CAPACITY * 2]; // entry + 1, 0 = empty slot
+    private int size = 0;
+    private int openPositions = 0;
+    private long totalCostBasis = 0;
+    private long totalRealizedPnl = 0;
+
+    public int size() { return size; }
+    public int symbolAt(int entry) { return symbol[entry]; }
+    public int quantityAt(int entry) { return quantity[entry]; }
+    public long costBasisAt(int entry) { return costBasis[entry]; }
+    public long realizedPnlAt(int entry) { return realizedPnl[entry]; }
+    public int openPositions() { return openPositions; }
+    public long totalCostBasis() { return totalCostBasis; }
+    public long totalRealizedPnl() { return totalRealizedPnl; }
+
+    int holderSlotAt(int entry) { return holderSlot[entry]; }
+    int pendingBuysAt(int entry) { return pendingBuys[entry]; }
+    int reservedSellsAt(int entry) { return reservedSells[entry]; }
+
+    void setQuantityAt(int entry, int shares) { quantity[entry] = shares; }
+    void setCostBasisAt(int entry, long cost) { costBasis[entry] = cost; }
+    void setRealizedPnlAt(int entry, long pnl) { realizedPnl[entry] = pnl; }
+    void setHolderSlotAt(int entry, int slot) { holderSlot[entry] = slot; }
+    void setPendingBuysAt(int entry, int shares) { pendingBuys[entry] = shares; }
+    void setReservedSellsAt(int entry, int shares) { reservedSells[entry] = shares; }
+    void setOpenPositions(int count) { openPositions = count; }
+
+    void setTotals(long costBasis, long realizedPnl) {
+        totalCostBasis = costBasis;
+        totalRealizedPnl = realizedPnl;
+    }
+
+    int find(int symbolId) {
+        int mask = index.length - 1;
+        for (int slot = mix(symbolId) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            if (symbol[index[slot] - 1] == symbolId) {
+                return index[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    boolean hasRoomForEntry() {
+        return true;
+    }
+
+    int entryFor(int symbolId) {
+        int entry = find(symbolId);
+        if (entry >= 0) {
+            return entry;
+        }
+        if (size == symbol.length) {
+            grow();
+        }
+        entry = size++;
+        symbol[entry] = symbolId;
+        holderSlot[entry] = -1;
+        insert(entry);
+        return entry;
+    }
+
+    private void insert(int entry) {
+        int mask = index.length - 1;
+        int slot = mix(symbol[entry]) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = entry + 1;
+    }
+
+    private void grow() {
+        int capacity = symbol.length * 2;
+        symbol = Arrays.copyOf(symbol, capacity);
+        quantity = Arrays.copyOf(quantity, capacity);
+        costBasis = Arrays.copyOf(costBasis, capacity);
+        realizedPnl = Arrays.copyOf(realizedPnl, capacity);
+        holderSlot = Arrays.copyOf(holderSlot, capacity);
+        pendingBuys = Arrays.copyOf(pendingBuys, capacity);
+        reservedSells = Arrays.copyOf(reservedSells, capacity);
+        index = new int[capacity * 2];
+        for (int entry = 0; entry < size; entry++) {
+            insert(entry);
+        }
+    }
+
+    private static int mix(int symbolId) {
+        return symbolId * 0x9E3779B9 >>> 16;
+    }
+}
@@ -0,0 +1,38 @@
+package stocktrading;
+
+class HeapUser extends User {
+    private int accountId;
+    private String username;
+    private String passwordHash;
+    private String name;
+    private long balance;
+    private final PositionTable positions;
+    private long marketValue;
+    private long reservedCash;
+    private int openOrders;
+    
+    public HeapUser(int accountId, String username, String passwordHash, String name, long initialBalance) {
+        this.accountId = accountId;
+        this.username = username;
+        this.passwordHash = passwordHash;
+        this.name = name;
+        this.balance = initialBalance;
+        this.positions = new HeapPositionTable();
+    }
+    
+    // Getters
+    public int getAccountId() { return accountId; }
+    public String getUsername() { return username; }
+    public String getPasswordHash() { return passwordHash; }
+    public String getName() { return name; }
+    public long getBalance() { return balance; }
+    public long getPortfolioValue() { return marketValue; }
+    public long getReservedCash() { return reservedCash; }
+    public int getOpenOrders() { return openOrders; }
+    public PositionTable getPositions() { return positions; }
+    
+    void setBalance(long balance) { this.balance = balance; }
+    void setPortfolioValue(long marketValue) { this.marketValue = marketValue; }
+    void setReservedCash(long reservedCash) { this.reservedCash = reservedCash; }
+    void setOpenOrders(int openOrders) { this.openOrders = openOrders; }
+}
@@ -0,0 +1,89 @@
+package stocktrading;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+// Hot standby side of journal replication: copies a leader's journal (JournalReplicator)
+// into this process's own, record for record, and applies each batch to a replica of the
+// exchange as it lands, so taking over needs no replay. A dropped connection is retried
+// from wherever this journal ends; follow() returns once the leader has been unreachable
+// for the timeout, and the caller takes over with the replica as it stands. A leader that
+// turns down this follower's secret is never taken over from.
+class JournalFollower {
+    private static final long RETRY_MILLIS = 200;
+
+    private final InetSocketAddress leader;
+    private final TransactionJournal journal;
+    private final ExchangeReplica replica;
+    private final int timeoutMillis;
+    private final String secret;
+
+    JournalFollower(InetSocketAddress leader, TransactionJournal journal, ExchangeReplica replica, int timeoutMillis,
+                    String secret) {
+        this.leader = leader;
+        this.secret = secret;
+        this.journal = journal;
+        this.replica = replica;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void follow() throws InterruptedException {
+        ByteBuffer batch = ByteBuffer.allocate(1024 * TransactionJournal.RECORD_SIZE);
+        boolean followed = false;
+        long lostAt = 0;
+        System.out.println("Standing by for " + leader);
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(leader, timeoutMillis);
+                socket.setSoTimeout(timeoutMillis); // a leader sends at least a heartbeat well within it
+                socket.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeUTF(secret);
+                out.writeLong(journal.size());
+                out.flush();
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                boolean joined = false;
+                while (true) {
+                    long first = in.readLong();
+                    int count = in.readInt();
+                    // A leader that refuses the secret hangs up without sending anything, which is
+                    // not the same as losing one that was followed
+                    if (!joined) {
+                        System.out.println("Following " + leader + " from journal record " + journal.size());
+                        joined = followed = true;
+                        lostAt = 0;
+                    }
+                    if (first != journal.size()) {
+                        throw new IllegalStateException("Leader sent journal record " + first + " but this journal has "
+                                                        + journal.size() + "; the journals have diverged");
+                    }
+                    if (count > 0) {
+                        int bytes = count * TransactionJournal.RECORD_SIZE;
+                        if (bytes > batch.capacity()) {
+                            batch = ByteBuffer.allocate(bytes);
+                        }
+                        batch.clear();
+                        in.readFully(batch.array(), 0, bytes);
+                        batch.limit(bytes);
+                        journal.appendRecords(batch, count);
+                        replica.apply(journal, journal.size());
+                    }
+                }
+            } catch (IOException e) {
+                if (followed && lostAt == 0) {
+                    lostAt = System.currentTimeMillis();
+                    System.out.println("Lost leader at journal record " + journal.size() + ": " + e);
+                }
+            }
+            if (followed && System.currentTimeMillis() - lostAt >= timeoutMillis) {
+                return;
+            }
+            Thread.sleep(RETRY_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// The journal's in-memory indexes as they stood at one journal position: the head of every
+// account's and symbol's trade chain and the running latest timestamp per block of records.
+// A replica keeps one in step with the records it applies and its snapshot carries it, so
+// opening the journal only has to scan and index the records written after the snapshot.
+final class JournalIndex {
+    long position;                    // next journal record; everything before it is indexed
+    long[] accountHead = new long[0]; // latest trade index + 1 per account
+    long[] bookHead = new long[0];    // latest trade index + 1 per symbol
+    long[] blockLatest = new long[0]; // running maximum timestamp up to each block
+
+    void add(long index, byte type, int accountId, int bookId, long timestamp) {
+        int block = (int) (index >>> TransactionJournal.TIME_BLOCK_BITS);
+        if (block >= blockLatest.length) {
+            blockLatest = Arrays.copyOf(blockLatest, Math.max(block + 1, blockLatest.length * 2));
+        }
+        long previousMax = block > 0 ? blockLatest[block - 1] : 0;
+        blockLatest[block] = Math.max(Math.max(blockLatest[block], previousMax), timestamp);
+        if (type == TransactionJournal.BUY || type == TransactionJournal.SELL) {
+            if (accountId >= accountHead.length) {
+                accountHead = Arrays.copyOf(accountHead, Math.max(accountId + 1, accountHead.length * 2));
+            }
+            if (bookId >= bookHead.length) {
+                bookHead = Arrays.copyOf(bookHead, Math.max(bookId + 1, bookHead.length * 2));
+            }
+            accountHead[accountId] = index + 1;
+            bookHead[bookId] = index + 1;
+        }
+    }
+
+    // Indexes a journal's records from the start up to position, for a replica restored without one
+    static JournalIndex of(TransactionJournal journal, long position) {
+        JournalIndex index = new JournalIndex();
+        for (long record = 0; record < position; record += Math.max(1, journal.span(record))) {
+            index.add(record, journal.type(record), journal.accountId(record), journal.bookId(record),
+                      journal.timestamp(record));
+        }
+        index.position = position;
+        return index;
+    }
+}
@@ -0,0 +1,136 @@
+package stocktrading;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.locks.LockSupport;
+
+// Streams the journal to hot standbys (JournalFollower) over TCP. A follower connects and
+// sends the replication secret and how many records it already has, then gets every record
+// after that as it is
+// appended, in batches that never split a registration from its continuation records,
+// plus a heartbeat while the journal is idle. Each follower has its own thread reading
+// the mapped journal like the snapshot writer does, so the business thread never waits
+// for a follower; the price is that a failover can lose the last records the leader wrote.
+class JournalReplicator extends Thread {
+    private static final int MAX_BATCH = 1024; // records
+    private static final long HEARTBEAT_NANOS = 100_000_000L;
+    private static final long POLL_NANOS = 500_000L;
+    private static final int AUTHENTICATION_MILLIS = 5000;
+
+    private final TransactionJournal journal;
+    private final byte[] secret;
+    private final ServerSocket server;
+    private volatile boolean running = true;
+    private volatile long shipped = 0; // records the furthest follower has been sent
+    private int followers = 0;
+
+    // The journal holds every account's credentials, so only followers with the secret get it
+    JournalReplicator(TransactionJournal journal, InetSocketAddress address, String secret) throws IOException {
+        super("journal-replicator");
+        setDaemon(true);
+        this.journal = journal;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.server = new ServerSocket();
+        server.bind(address);
+    }
+
+    public int getPort() { return server.getLocalPort(); }
+
+    public InetAddress getAddress() { return server.getInetAddress(); }
+
+    public long shipped() { return shipped; }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                Thread follower = new Thread(() -> serve(socket), "journal-follower-" + followers++);
+                follower.setDaemon(true);
+                follower.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Journal replication stopped: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    public void close() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Nothing useful to do with a failed close
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket follower = socket) {
+            follower.setTcpNoDelay(true);
+            follower.setSoTimeout(AUTHENTICATION_MILLIS);
+            DataInputStream in = new DataInputStream(follower.getInputStream());
+            if (!MessageDigest.isEqual(in.readUTF().getBytes(StandardCharsets.UTF_8), secret)) {
+                System.out.println("Follower " + follower.getRemoteSocketAddress() + " refused: wrong replication secret");
+                return;
+            }
+            long position = in.readLong();
+            follower.setSoTimeout(0);
+            if (position < 0 || position > journal.size()) {
+                System.out.println("Follower " + follower.getRemoteSocketAddress() + " has " + position
+                                   + " journal records, more than this leader's " + journal.size());
+                return;
+            }
+            System.out.println("Follower " + follower.getRemoteSocketAddress() + " joined at journal record " + position);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(follower.getOutputStream(), 1 << 16));
+            ByteBuffer batch = ByteBuffer.allocate(MAX_BATCH * TransactionJournal.RECORD_SIZE);
+            long lastSent = System.nanoTime();
+            while (running) {
+                int count = wholeRecords(position, journal.size());
+                if (count > 0) {
+                    batch.clear();
+                    journal.copyRecords(position, count, batch);
+                    out.writeLong(position);
+                    out.writeInt(count);
+                    out.write(batch.array(), 0, count * TransactionJournal.RECORD_SIZE);
+                    out.flush();
+                    position += count;
+                    shipped = Math.max(shipped, position);
+                    lastSent = System.nanoTime();
+                } else if (System.nanoTime() - lastSent >= HEARTBEAT_NANOS) {
+                    out.writeLong(position);
+                    out.writeInt(0);
+                    out.flush();
+                    lastSent = System.nanoTime();
+                } else {
+                    LockSupport.parkNanos(POLL_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Follower " + socket.getRemoteSocketAddress() + " left: " + e.getMessage());
+        }
+    }
+
+    // Records from first that end by end and fit one batch, counting whole registrations only
+    private int wholeRecords(long first, long end) {
+        long index = first;
+        while (index < end) {
+            int span = Math.max(1, journal.span(index));
+            if (index + span - first > MAX_BATCH) {
+                break;
+            }
+            index += span;
+        }
+        return (int) (index - first);
+    }
+}
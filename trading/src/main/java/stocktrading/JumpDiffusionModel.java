@@ -0,0 +1,34 @@
+package stocktrading;
+
+import java.util.SplittableRandom;
+
+// Merton jump diffusion: GBM plus Poisson-arriving jumps with normally distributed
+// log size. The drift is compensated so the expected return matches plain GBM.
+class JumpDiffusionModel implements PriceModel {
+    private final double intensity; // expected jumps per year
+    private final double jumpMean;  // mean log jump size
+    private final double jumpVolatility;
+
+    public JumpDiffusionModel(double intensity, double jumpMean, double jumpVolatility) {
+        this.intensity = intensity;
+        this.jumpMean = jumpMean;
+        this.jumpVolatility = jumpVolatility;
+    }
+
+    @Override
+    public void logReturns(MarketSimulator market, int from, int to, int step, double[] returns,
+                           SplittableRandom random) {
+        double dt = market.dt;
+        double sqrtDt = Math.sqrt(dt);
+        double jumpProbability = intensity * dt;
+        double compensation = intensity * (Math.exp(jumpMean + 0.5 * jumpVolatility * jumpVolatility) - 1);
+        for (int i = from; i < to; i++) {
+            double sigma = market.volatility[i];
+            double r = (market.drift[i] - compensation - 0.5 * sigma * sigma) * dt + sigma * sqrtDt * random.nextGaussian();
+            if (random.nextDouble() < jumpProbability) {
+                r += jumpMean + jumpVolatility * random.nextGaussian();
+            }
+            returns[i - from] = r;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package stocktrading;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Log-linear histogram of nanosecond durations in the style of HdrHistogram: exact below
+// 64ns, then 32 sub-buckets per power of two, so any recorded value is reported within
+// about 3%. Recording is a bucket increment into a preallocated array. There is one
+// writing thread per histogram; any thread may read, and sees counts that are at most
+// a few records stale.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle COUNT;
+    private static final VarHandle TOTAL;
+    private static final VarHandle MAX;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            COUNT = lookup.findVarHandle(LatencyHistogram.class, "count", long.class);
+            TOTAL = lookup.findVarHandle(LatencyHistogram.class, "total", long.class);
+            MAX = lookup.findVarHandle(LatencyHistogram.class, "max", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Written with opaque stores so readers never see a torn value, without fencing the writer
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long total = 0; // sum of recorded nanos
+    private long max = 0;
+
+    // Single writer
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int bucket = bucketOf(nanos);
+        COUNTS.setOpaque(counts, bucket, counts[bucket] + 1);
+        TOTAL.setOpaque(this, total + nanos);
+        if (nanos > max) {
+            MAX.setOpaque(this, nanos);
+        }
+        COUNT.setOpaque(this, count + 1);
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() { return (long) COUNT.getOpaque(this); }
+    public long total() { return (long) TOTAL.getOpaque(this); }
+    public long max() { return (long) MAX.getOpaque(this); }
+
+    public long mean() {
+        long n = count();
+        return n == 0 ? 0 : total() / n;
+    }
+
+    // Highest value equivalent to the one at the given percentile (0-100), 0 when empty
+    public long valueAtPercentile(double percentile) {
+        long n = count();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += (long) COUNTS.getOpaque(counts, bucket);
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(bucket), max());
+            }
+        }
+        return max();
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < LINEAR_LIMIT) {
+            return (int) nanos;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestEquivalent(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long sub = SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1));
+        return ((sub + 1) << shift) - 1;
+    }
+}
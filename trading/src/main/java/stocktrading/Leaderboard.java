@@ -0,0 +1,203 @@
+package stocktrading;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+
+// The top accounts by some score, kept as an indexed min-heap so a changed score is an
+// O(log n) sift rather than a scan. The heap is exact while no account outside it scores
+// above its minimum. Outside scores are only seen as they change, so the board tracks an
+// upper bound for them: the highest score it has seen outside or evicted. When a member
+// falls below that bound the board is stale, and the next read rebuilds it with a
+// parallel pass over every account. Used from the business-logic thread.
+class Leaderboard {
+    private final int capacity;
+    private final IntToLongFunction score;
+    private final int[] heap;        // account ids, lowest score first
+    private final long[] heapScore;  // score each member was last placed with
+    private int size = 0;
+    private int[] position = new int[16]; // per account id: heap index + 1, or 0 when outside
+    private long outsideBound = Long.MIN_VALUE;
+    private boolean stale = false;
+
+    public Leaderboard(int capacity, IntToLongFunction score) {
+        this.capacity = capacity;
+        this.score = score;
+        this.heap = new int[capacity];
+        this.heapScore = new long[capacity];
+    }
+
+    // The account's score may have changed, or it is new
+    public void update(int accountId) {
+        if (accountId >= position.length) {
+            position = Arrays.copyOf(position, Math.max(position.length * 2, accountId + 1));
+        }
+        long value = score.applyAsLong(accountId);
+        int at = position[accountId] - 1;
+        if (at >= 0) {
+            heapScore[at] = value;
+            siftDown(siftUp(at));
+        } else if (size < capacity) {
+            place(size++, accountId, value);
+            siftUp(size - 1);
+        } else if (value > heapScore[0]) {
+            outsideBound = Math.max(outsideBound, heapScore[0]);
+            position[heap[0]] = 0;
+            place(0, accountId, value);
+            siftDown(0);
+        } else {
+            outsideBound = Math.max(outsideBound, value);
+        }
+        if (size == capacity && heapScore[0] < outsideBound) {
+            stale = true;
+        }
+    }
+
+    public boolean isStale() { return stale; }
+
+    // Recomputes the board from every account in [0, accountCount); the scores must not
+    // change while it runs
+    public void rebuild(int accountCount) {
+        Top top = IntStream.range(0, accountCount).parallel()
+                .collect(() -> new Top(capacity + 1), (t, id) -> t.offer(id, score.applyAsLong(id)), Top::merge);
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = 0;
+        }
+        if (accountCount > position.length) {
+            position = Arrays.copyOf(position, accountCount);
+        }
+        // The one left out of the board is the best outside score
+        outsideBound = Long.MIN_VALUE;
+        if (top.size > capacity) {
+            outsideBound = top.scores[0];
+            top.removeMin();
+        }
+        size = 0;
+        for (int i = 0; i < top.size; i++) {
+            place(size++, top.ids[i], top.scores[i]);
+        }
+        stale = false;
+    }
+
+    // Copies the board, highest score first, and returns how many entries it holds
+    public int copyTop(int[] ids, long[] scores) {
+        int n = Math.min(size, ids.length);
+        int[] order = IntStream.range(0, size).boxed()
+                .sorted((a, b) -> Long.compare(heapScore[b], heapScore[a]))
+                .mapToInt(Integer::intValue).limit(n).toArray();
+        for (int i = 0; i < n; i++) {
+            ids[i] = heap[order[i]];
+            scores[i] = heapScore[order[i]];
+        }
+        return n;
+    }
+
+    private void place(int at, int accountId, long value) {
+        heap[at] = accountId;
+        heapScore[at] = value;
+        position[accountId] = at + 1;
+    }
+
+    private int siftUp(int at) {
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (heapScore[parent] <= heapScore[at]) {
+                break;
+            }
+            swap(at, parent);
+            at = parent;
+        }
+        return at;
+    }
+
+    private void siftDown(int at) {
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && heapScore[child + 1] < heapScore[child]) {
+                child++;
+            }
+            if (heapScore[at] <= heapScore[child]) {
+                return;
+            }
+            swap(at, child);
+            at = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = heap[a];
+        long value = heapScore[a];
+        place(a, heap[b], heapScore[b]);
+        place(b, id, value);
+    }
+
+    // Bounded min-heap for one parallel worker's share of a rebuild
+    private static final class Top {
+        final int[] ids;
+        final long[] scores;
+        int size = 0;
+
+        Top(int capacity) {
+            ids = new int[capacity];
+            scores = new long[capacity];
+        }
+
+        void offer(int id, long value) {
+            if (size < ids.length) {
+                ids[size] = id;
+                scores[size] = value;
+                up(size++);
+            } else if (value > scores[0]) {
+                ids[0] = id;
+                scores[0] = value;
+                down(0);
+            }
+        }
+
+        void merge(Top other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.ids[i], other.scores[i]);
+            }
+        }
+
+        void removeMin() {
+            size--;
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            down(0);
+        }
+
+        private void up(int at) {
+            while (at > 0 && scores[(at - 1) >>> 1] > scores[at]) {
+                swap(at, (at - 1) >>> 1);
+                at = (at - 1) >>> 1;
+            }
+        }
+
+        private void down(int at) {
+            while (2 * at + 1 < size) {
+                int child = 2 * at + 1;
+                if (child + 1 < size && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (scores[at] <= scores[child]) {
+                    return;
+                }
+                swap(at, child);
+                at = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int id = ids[a];
+            long value = scores[a];
+            ids[a] = ids[b];
+            scores[a] = scores[b];
+            ids[b] = id;
+            scores[b] = value;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package stocktrading;
+
+// Callbacks from MarketDataSubscriber; implement the ones you need. Prices are Money
+// micros, and a side with no resting orders reports price and quantity 0.
+interface MarketDataListener {
+    default void onTrade(long sequence, int symbolId, long price, long quantity, long timestamp) {
+    }
+
+    default void onQuote(long sequence, int symbolId, long referencePrice, long floatShares,
+                         long bidPrice, int bidQuantity, long askPrice, int askQuantity, long timestamp) {
+    }
+
+    // The subscriber fell behind by more than the tape holds; the latest state of every
+    // symbol follows as onSnapshot calls and the tape resumes after them
+    default void onGap(long expectedSequence, long resumeSequence) {
+    }
+
+    default void onSnapshot(long sequence, int symbolId, long lastPrice, long volume, long referencePrice,
+                            long bidPrice, int bidQuantity, long askPrice, int askQuantity) {
+    }
+}
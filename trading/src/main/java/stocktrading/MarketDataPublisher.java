@@ -0,0 +1,165 @@
+package stocktrading;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Market data for every symbol, written by the business-logic thread and read by any
+// number of subscribers without locks. The tape is an off-heap ring of fixed 64 byte
+// records, one per trade or top-of-book change. A slot's sequence number is cleared
+// before its record is rewritten and stored last with release semantics, so readers
+// poll it, and a reader that finds it unchanged after copying the record knows the copy
+// is whole; one that does not has been lapped and resynchronizes. Next to the tape each
+// symbol has a conflated snapshot guarded by a seqlock, which slow readers use instead of
+// replaying everything they missed.
+class MarketDataPublisher {
+    static final byte TRADE = 1;
+    static final byte QUOTE = 2;
+
+    static final int RECORD_SIZE = 64;
+    private static final int SNAPSHOT_PAGE_BITS = 10;
+    private static final int SNAPSHOT_PAGE_SIZE = 1 << SNAPSHOT_PAGE_BITS;
+
+    // Tape record layout
+    static final int SEQUENCE = 0;
+    static final int TIMESTAMP = 8;
+    static final int SYMBOL = 16;
+    static final int TYPE = 20;
+    static final int PRICE = 24;     // trade price, or reference price of a quote
+    static final int QUANTITY = 32;  // trade quantity, or float shares of a quote
+    static final int BID = 40;
+    static final int ASK = 48;
+    static final int BID_QUANTITY = 56;
+    static final int ASK_QUANTITY = 60;
+
+    // Snapshot layout
+    static final int VERSION = 0;    // odd while the writer is inside
+    static final int LAST_SEQUENCE = 8;
+    static final int LAST_PRICE = 16;
+    static final int VOLUME = 24;
+    static final int REFERENCE = 32;
+    // BID, ASK, BID_QUANTITY and ASK_QUANTITY share the tape offsets
+
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer tape;
+    private final int mask;
+    private volatile ByteBuffer[] snapshotPages = new ByteBuffer[0]; // replaced, never mutated
+    private volatile int symbolCount = 0;
+    private final Sequence published = new Sequence(0); // the first record is 1
+    private long sequence = 0;
+
+    public MarketDataPublisher(int capacity) {
+        int records = Integer.highestOneBit(capacity - 1) << 1;
+        this.tape = ByteBuffer.allocateDirect(records * RECORD_SIZE + 8).alignedSlice(8).order(ByteOrder.LITTLE_ENDIAN);
+        this.mask = records - 1;
+    }
+
+    public void addSymbol(int symbolId) {
+        int page = symbolId >>> SNAPSHOT_PAGE_BITS;
+        while (page >= snapshotPages.length) {
+            ByteBuffer[] grown = Arrays.copyOf(snapshotPages, snapshotPages.length + 1);
+            grown[snapshotPages.length] = ByteBuffer.allocateDirect(SNAPSHOT_PAGE_SIZE * RECORD_SIZE + 8)
+                    .alignedSlice(8).order(ByteOrder.LITTLE_ENDIAN);
+            snapshotPages = grown;
+        }
+        symbolCount = Math.max(symbolCount, symbolId + 1);
+    }
+
+    public void trade(int symbolId, long price, long quantity) {
+        long timestamp = System.currentTimeMillis();
+        long seq = ++sequence;
+        int offset = slot(seq);
+        claim(offset);
+        tape.putLong(offset + TIMESTAMP, timestamp);
+        tape.putInt(offset + SYMBOL, symbolId);
+        tape.put(offset + TYPE, TRADE);
+        tape.putLong(offset + PRICE, price);
+        tape.putLong(offset + QUANTITY, quantity);
+
+        ByteBuffer page = snapshotPage(symbolId);
+        int at = snapshotOffset(symbolId);
+        beginWrite(page, at);
+        page.putLong(at + LAST_SEQUENCE, seq);
+        page.putLong(at + LAST_PRICE, price);
+        page.putLong(at + VOLUME, page.getLong(at + VOLUME) + quantity);
+        endWrite(page, at);
+        commit(offset, seq);
+    }
+
+    // Publishes a quote only if something differs from the symbol's snapshot
+    public void quote(int symbolId, long referencePrice, long floatShares,
+                      long bidPrice, int bidQuantity, long askPrice, int askQuantity) {
+        ByteBuffer page = snapshotPage(symbolId);
+        int at = snapshotOffset(symbolId);
+        if (page.getLong(at + LAST_SEQUENCE) != 0 && page.getLong(at + REFERENCE) == referencePrice
+                && page.getLong(at + BID) == bidPrice && page.getInt(at + BID_QUANTITY) == bidQuantity
+                && page.getLong(at + ASK) == askPrice && page.getInt(at + ASK_QUANTITY) == askQuantity) {
+            return;
+        }
+
+        long timestamp = System.currentTimeMillis();
+        long seq = ++sequence;
+        int offset = slot(seq);
+        claim(offset);
+        tape.putLong(offset + TIMESTAMP, timestamp);
+        tape.putInt(offset + SYMBOL, symbolId);
+        tape.put(offset + TYPE, QUOTE);
+        tape.putLong(offset + PRICE, referencePrice);
+        tape.putLong(offset + QUANTITY, floatShares);
+        tape.putLong(offset + BID, bidPrice);
+        tape.putLong(offset + ASK, askPrice);
+        tape.putInt(offset + BID_QUANTITY, bidQuantity);
+        tape.putInt(offset + ASK_QUANTITY, askQuantity);
+
+        beginWrite(page, at);
+        page.putLong(at + LAST_SEQUENCE, seq);
+        page.putLong(at + REFERENCE, referencePrice);
+        page.putLong(at + BID, bidPrice);
+        page.putLong(at + ASK, askPrice);
+        page.putInt(at + BID_QUANTITY, bidQuantity);
+        page.putInt(at + ASK_QUANTITY, askQuantity);
+        endWrite(page, at);
+        commit(offset, seq);
+    }
+
+    // New subscribers start with the next update; callable from any thread
+    public MarketDataSubscriber subscribe() {
+        return new MarketDataSubscriber(this, published.get() + 1);
+    }
+
+    public long publishedSequence() { return published.get(); }
+
+    public int symbolCount() { return symbolCount; }
+    int capacity() { return mask + 1; }
+    ByteBuffer tape() { return tape; }
+    int slot(long seq) { return (int) (seq & mask) * RECORD_SIZE; }
+
+    ByteBuffer snapshotPage(int symbolId) { return snapshotPages[symbolId >>> SNAPSHOT_PAGE_BITS]; }
+    static int snapshotOffset(int symbolId) { return (symbolId & (SNAPSHOT_PAGE_SIZE - 1)) * RECORD_SIZE; }
+
+    // Invalidates a slot before any of its fields change: a reader still copying the old
+    // record then fails its second sequence check instead of keeping a torn copy
+    private void claim(int offset) {
+        LONGS.setOpaque(tape, offset + SEQUENCE, 0L);
+        VarHandle.storeStoreFence();
+    }
+
+    // Snapshots are updated before the record is committed, so a reader that has seen
+    // sequence N finds every snapshot at N or later
+    private void commit(int offset, long seq) {
+        LONGS.setRelease(tape, offset + SEQUENCE, seq);
+        published.set(seq);
+    }
+
+    private static void beginWrite(ByteBuffer page, int at) {
+        LONGS.setOpaque(page, at + VERSION, page.getLong(at + VERSION) + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    private static void endWrite(ByteBuffer page, int at) {
+        LONGS.setRelease(page, at + VERSION, page.getLong(at + VERSION) + 1);
+    }
+}
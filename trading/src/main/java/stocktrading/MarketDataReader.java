@@ -0,0 +1,89 @@
+package stocktrading;
+
+// Load-test consumer: one thread following a group of subscribers round robin, counting
+// what each delivers. Stops once asked to and every subscriber has caught up.
+class MarketDataReader extends Thread implements MarketDataListener {
+    private static final int BATCH = 256;
+
+    private final MarketDataSubscriber[] subscribers;
+    private final MarketDataPublisher publisher;
+    private volatile boolean stopping = false;
+    private long updates = 0;
+    private long snapshots = 0;
+
+    MarketDataReader(MarketDataPublisher publisher, int subscriberCount, int index) {
+        super("market-data-reader-" + index);
+        setDaemon(true);
+        this.publisher = publisher;
+        this.subscribers = new MarketDataSubscriber[subscriberCount];
+        for (int i = 0; i < subscriberCount; i++) {
+            subscribers[i] = publisher.subscribe();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean done = stopping;
+            int delivered = 0;
+            for (MarketDataSubscriber subscriber : subscribers) {
+                delivered += subscriber.poll(this, BATCH);
+            }
+            if (delivered == 0) {
+                if (done && caughtUp()) {
+                    return;
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private boolean caughtUp() {
+        long published = publisher.publishedSequence();
+        for (MarketDataSubscriber subscriber : subscribers) {
+            if (subscriber.nextSequence() <= published) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void finish() {
+        stopping = true;
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onTrade(long sequence, int symbolId, long price, long quantity, long timestamp) {
+        updates++;
+    }
+
+    @Override
+    public void onQuote(long sequence, int symbolId, long referencePrice, long floatShares,
+                        long bidPrice, int bidQuantity, long askPrice, int askQuantity, long timestamp) {
+        updates++;
+    }
+
+    @Override
+    public void onSnapshot(long sequence, int symbolId, long lastPrice, long volume, long referencePrice,
+                           long bidPrice, int bidQuantity, long askPrice, int askQuantity) {
+        snapshots++;
+    }
+
+    long updates() { return updates; }
+    long snapshots() { return snapshots; }
+
+    long gaps() {
+        long gaps = 0;
+        for (MarketDataSubscriber subscriber : subscribers) {
+            gaps += subscriber.gaps();
+        }
+        return gaps;
+    }
+
+    int subscriberCount() { return subscribers.length; }
+}
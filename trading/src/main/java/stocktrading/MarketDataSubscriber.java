@@ -0,0 +1,114 @@
+package stocktrading;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static stocktrading.MarketDataPublisher.*;
+
+// One reader's cursor into the market data tape. Subscribers share nothing with each
+// other or with the writer beyond the publisher's buffers, so any number of them can
+// poll from their own threads; the writer never waits for them. A subscriber that falls
+// a whole tape behind is resynchronized from the conflated snapshots instead.
+class MarketDataSubscriber {
+    private final MarketDataPublisher publisher;
+    private final ByteBuffer tape;
+    private long next;
+    private long[] snapshotSequence = new long[0]; // updates at or below these were in the last resync
+    private long gaps = 0;
+
+    MarketDataSubscriber(MarketDataPublisher publisher, long next) {
+        this.publisher = publisher;
+        this.tape = publisher.tape();
+        this.next = next;
+    }
+
+    // Delivers up to limit updates in sequence order and returns how many were delivered
+    public int poll(MarketDataListener listener, int limit) {
+        int delivered = 0;
+        while (delivered < limit) {
+            int offset = publisher.slot(next);
+            long seq = (long) LONGS.getAcquire(tape, offset + SEQUENCE);
+            if (seq < next) {
+                break; // not yet published, or cleared while being rewritten
+            }
+            if (seq > next) {
+                resync(listener);
+                continue;
+            }
+
+            long timestamp = tape.getLong(offset + TIMESTAMP);
+            int symbolId = tape.getInt(offset + SYMBOL);
+            byte type = tape.get(offset + TYPE);
+            long price = tape.getLong(offset + PRICE);
+            long quantity = tape.getLong(offset + QUANTITY);
+            long bid = tape.getLong(offset + BID);
+            long ask = tape.getLong(offset + ASK);
+            int bidQuantity = tape.getInt(offset + BID_QUANTITY);
+            int askQuantity = tape.getInt(offset + ASK_QUANTITY);
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getOpaque(tape, offset + SEQUENCE) != seq) {
+                resync(listener); // claimed for a newer record while we copied it
+                continue;
+            }
+
+            next++;
+            if (symbolId < snapshotSequence.length && seq <= snapshotSequence[symbolId]) {
+                continue;
+            }
+            if (type == TRADE) {
+                listener.onTrade(seq, symbolId, price, quantity, timestamp);
+            } else {
+                listener.onQuote(seq, symbolId, price, quantity, bid, bidQuantity, ask, askQuantity, timestamp);
+            }
+            delivered++;
+        }
+        return delivered;
+    }
+
+    // Latest conflated state of one symbol; returns the sequence it reflects, 0 if none yet
+    public long snapshot(int symbolId, MarketDataListener listener) {
+        ByteBuffer page = publisher.snapshotPage(symbolId);
+        int at = snapshotOffset(symbolId);
+        while (true) {
+            long version = (long) LONGS.getAcquire(page, at + VERSION);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long seq = page.getLong(at + LAST_SEQUENCE);
+            long lastPrice = page.getLong(at + LAST_PRICE);
+            long volume = page.getLong(at + VOLUME);
+            long reference = page.getLong(at + REFERENCE);
+            long bid = page.getLong(at + BID);
+            long ask = page.getLong(at + ASK);
+            int bidQuantity = page.getInt(at + BID_QUANTITY);
+            int askQuantity = page.getInt(at + ASK_QUANTITY);
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getOpaque(page, at + VERSION) == version) {
+                if (seq != 0) {
+                    listener.onSnapshot(seq, symbolId, lastPrice, volume, reference, bid, bidQuantity, ask, askQuantity);
+                }
+                return seq;
+            }
+        }
+    }
+
+    private void resync(MarketDataListener listener) {
+        long resume = publisher.publishedSequence() + 1;
+        listener.onGap(next, resume);
+        gaps++;
+
+        int symbols = publisher.symbolCount();
+        if (snapshotSequence.length < symbols) {
+            snapshotSequence = Arrays.copyOf(snapshotSequence, symbols);
+        }
+        for (int symbolId = 0; symbolId < symbols; symbolId++) {
+            snapshotSequence[symbolId] = snapshot(symbolId, listener);
+        }
+        next = resume;
+    }
+
+    public long nextSequence() { return next; }
+    public long gaps() { return gaps; }
+}
@@ -0,0 +1,96 @@
+package stocktrading;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Generates price paths for every listed symbol. Price, drift and volatility are
+// parallel arrays indexed by symbol id. A run splits the symbols into ranges that
+// fork/join workers advance through every step on their own, each with its own split
+// of the random stream, so runs are repeatable for a given seed.
+class MarketSimulator {
+    private static final int LEAF_SYMBOLS = 512;
+
+    final double dt; // step length in years
+    double[] price = new double[16];
+    double[] drift = new double[16];
+    double[] volatility = new double[16];
+
+    private final PriceModel model;
+    private final SplittableRandom random;
+    private int size = 0;
+
+    public MarketSimulator(PriceModel model, double dt, long seed) {
+        this.model = model;
+        this.dt = dt;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public void addSymbol(int symbolId, double initialPrice, double annualDrift, double annualVolatility) {
+        if (symbolId >= price.length) {
+            int capacity = Math.max(price.length * 2, symbolId + 1);
+            price = Arrays.copyOf(price, capacity);
+            drift = Arrays.copyOf(drift, capacity);
+            volatility = Arrays.copyOf(volatility, capacity);
+        }
+        price[symbolId] = initialPrice;
+        drift[symbolId] = annualDrift;
+        volatility[symbolId] = annualVolatility;
+        size = Math.max(size, symbolId + 1);
+    }
+
+    // Re-anchors a symbol, e.g. to its last traded price before a run
+    public void setPrice(int symbolId, double newPrice) {
+        price[symbolId] = newPrice;
+    }
+
+    public double getPrice(int symbolId) { return price[symbolId]; }
+    public int size() { return size; }
+
+    // Advances every symbol by the given number of steps; returns once all ticks are delivered
+    public void run(int steps, TickSink sink) {
+        model.prepare(steps, random);
+        ForkJoinPool.commonPool().invoke(new Advance(0, size, steps, sink, random.split()));
+    }
+
+    private final class Advance extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int steps;
+        private final TickSink sink;
+        private final SplittableRandom random;
+
+        Advance(int from, int to, int steps, TickSink sink, SplittableRandom random) {
+            this.from = from;
+            this.to = to;
+            this.steps = steps;
+            this.sink = sink;
+            this.random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SYMBOLS) {
+                int mid = (from + to) >>> 1;
+                Advance right = new Advance(mid, to, steps, sink, random.split());
+                right.fork();
+                new Advance(from, mid, steps, sink, random).compute();
+                right.join();
+                return;
+            }
+            double[] returns = new double[to - from];
+            for (int step = 0; step < steps; step++) {
+                model.logReturns(MarketSimulator.this, from, to, step, returns, random);
+                for (int i = from; i < to; i++) {
+                    price[i] *= Math.exp(returns[i - from]);
+                }
+                for (int i = from; i < to; i++) {
+                    sink.onTick(i, Math.max(1, Math.round(price[i] * Money.SCALE)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// Owns one OrderBook per listed stock and a shared pool of order nodes.
+// All calls are expected from a single thread; nothing here allocates per order.
+class MatchingEngine {
+    static final int HOUSE = -1; // account id of the issuer float
+    static final long TICK_SIZE = Money.SCALE / 100; // one tick = one cent, in micros
+
+    private final OrderPool pool = new OrderPool();
+    private final ExecutionListener listener;
+    private OrderBook[] books = new OrderBook[16];
+    private int bookCount = 0;
+
+    private int lastFilledQuantity;
+    private long lastFilledValue;
+
+    public MatchingEngine(ExecutionListener listener) {
+        this.listener = listener;
+    }
+
+    public int addBook() {
+        if (bookCount == books.length) {
+            books = Arrays.copyOf(books, books.length * 2);
+        }
+        books[bookCount] = new OrderBook(bookCount, pool, this);
+        return bookCount++;
+    }
+
+    public OrderBook getBook(int bookId) {
+        return books[bookId];
+    }
+
+    public void quote(int bookId, long referencePrice, int floatShares) {
+        books[bookId].setHouseQuote(toTicks(referencePrice), floatShares);
+    }
+
+    public long submit(int bookId, int owner, byte side, long limitPrice, int quantity) {
+        lastFilledQuantity = 0;
+        lastFilledValue = 0;
+        long limitTicks = limitPrice <= 0 ? OrderBook.MARKET : toTicks(limitPrice);
+        return books[bookId].submit(owner, side, limitTicks, quantity);
+    }
+
+    public int cancel(long orderId, int owner) {
+        int node = pool.nodeOf(orderId);
+        if (node < 0 || pool.owner[node] != owner) {
+            return 0;
+        }
+        return books[pool.book[node]].cancel(node);
+    }
+
+    // Puts a resting order back under its original id; call finishRestore once all are back
+    public void restore(long orderId, int bookId, int owner, byte side, long limitPrice, int quantity) {
+        books[bookId].restore(pool.restore(orderId), owner, side, toTicks(limitPrice), quantity);
+    }
+
+    public void finishRestore() {
+        pool.finishRestore();
+    }
+
+    public boolean isLive(long orderId) {
+        return pool.nodeOf(orderId) >= 0;
+    }
+
+    // Details of a live order, or of a resting order inside onExecution even when that fill completes it
+    public int bookOf(long orderId) { return pool.book[(int) orderId]; }
+    public byte sideOf(long orderId) { return pool.side[(int) orderId]; }
+    public long limitTicksOf(long orderId) { return pool.price[(int) orderId]; }
+    public int openQuantityOf(long orderId) { return pool.quantity[(int) orderId]; }
+
+    public void forEachOpenOrder(int owner, OpenOrderVisitor visitor) {
+        for (int node = 0; node < pool.size(); node++) {
+            if (pool.quantity[node] > 0 && pool.owner[node] == owner) {
+                visitor.visit(pool.orderId(node), pool.book[node], pool.side[node],
+                              pool.price[node], pool.quantity[node]);
+            }
+        }
+    }
+
+    // Fill totals for the aggressing side of the most recent submit
+    public int getLastFilledQuantity() { return lastFilledQuantity; }
+    public long getLastFilledValue() { return toPrice(lastFilledValue); }
+
+    void onFill(int bookId, long buyOrderId, int buyer, long sellOrderId, int seller, long tick, int quantity) {
+        lastFilledQuantity += quantity;
+        lastFilledValue += tick * quantity;
+        listener.onExecution(bookId, buyOrderId, buyer, sellOrderId, seller, tick, quantity);
+    }
+
+    // Rounds a micros price to the nearest tick
+    static long toTicks(long price) {
+        return (price + TICK_SIZE / 2) / TICK_SIZE;
+    }
+
+    static long toPrice(long ticks) {
+        return ticks * TICK_SIZE;
+    }
+}
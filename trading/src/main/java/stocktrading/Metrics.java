@@ -0,0 +1,233 @@
+package stocktrading;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.NotificationEmitter;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+
+// Named latency histograms, counters and gauges for the running exchange. Everything is
+// registered at startup, before any thread records, and the maps are never changed after
+// that, so recording is a field or array update on the recording thread and readers (the
+// console, JMX and the scrape endpoint) only walk the maps.
+//
+// JMX exposes every value as a read-only long attribute of stocktrading:type=Metrics;
+// histograms contribute <name>.count, .meanNanos, .p50Nanos, .p99Nanos, .p999Nanos and
+// .maxNanos.
+class Metrics implements DynamicMBean {
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+    private static final String[] QUANTILES = {"0.5", "0.99", "0.999"};
+    private static final String[] HISTOGRAM_FIELDS = {"count", "meanNanos", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"};
+
+    // Monotonic count with a single incrementing thread
+    static final class Counter {
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(Counter.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private long value = 0;
+
+        void increment(long delta) {
+            VALUE.setOpaque(this, value + delta);
+        }
+
+        long get() {
+            return (long) VALUE.getOpaque(this);
+        }
+    }
+
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+    private final Map<String, String> help = new LinkedHashMap<>();
+
+    public LatencyHistogram histogram(String name, String description) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histograms.put(name, histogram);
+        help.put(name, description);
+        return histogram;
+    }
+
+    public Counter counter(String name, String description) {
+        Counter counter = new Counter();
+        counters.put(name, counter);
+        help.put(name, description);
+        return counter;
+    }
+
+    public void gauge(String name, String description, LongSupplier value) {
+        gauges.put(name, value);
+        help.put(name, description);
+    }
+
+    public Map<String, LatencyHistogram> histograms() { return Collections.unmodifiableMap(histograms); }
+    public Map<String, Counter> counters() { return Collections.unmodifiableMap(counters); }
+    public Map<String, LongSupplier> gauges() { return Collections.unmodifiableMap(gauges); }
+
+    // Records the duration of every collection the JVM reports into a gc_pause histogram,
+    // alongside the collectors' cumulative counts and times
+    public void watchGarbageCollection() {
+        LatencyHistogram pauses = histogram("gc_pause", "Garbage collection durations reported by the JVM");
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        for (GarbageCollectorMXBean collector : collectors) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                    if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                        GarbageCollectionNotificationInfo info =
+                                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                        pauses.record(info.getGcInfo().getDuration() * 1_000_000);
+                    }
+                }, null, null);
+            }
+        }
+        gauge("gc_collections", "Collections since startup, all collectors", () -> {
+            long total = 0;
+            for (GarbageCollectorMXBean collector : collectors) {
+                total += Math.max(0, collector.getCollectionCount());
+            }
+            return total;
+        });
+        gauge("gc_time_millis", "Time spent collecting since startup, all collectors", () -> {
+            long total = 0;
+            for (GarbageCollectorMXBean collector : collectors) {
+                total += Math.max(0, collector.getCollectionTime());
+            }
+            return total;
+        });
+    }
+
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("stocktrading:type=Metrics"));
+        } catch (JMException e) {
+            System.out.println("Could not register metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    // Prometheus text exposition format; histograms become summaries in seconds
+    public void writePrometheus(StringBuilder out) {
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            String name = "stocktrading_" + entry.getKey() + "_seconds";
+            LatencyHistogram histogram = entry.getValue();
+            header(out, name, entry.getKey(), "summary");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                out.append(name).append("{quantile=\"").append(QUANTILES[i]).append("\"} ")
+                   .append(histogram.valueAtPercentile(PERCENTILES[i]) / 1e9).append('\n');
+            }
+            out.append(name).append("_sum ").append(histogram.total() / 1e9).append('\n');
+            out.append(name).append("_count ").append(histogram.count()).append('\n');
+            header(out, name + "_max", entry.getKey(), "gauge");
+            out.append(name).append("_max ").append(histogram.max() / 1e9).append('\n');
+        }
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            String name = "stocktrading_" + entry.getKey() + "_total";
+            header(out, name, entry.getKey(), "counter");
+            out.append(name).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            String name = "stocktrading_" + entry.getKey();
+            header(out, name, entry.getKey(), "gauge");
+            out.append(name).append(' ').append(entry.getValue().getAsLong()).append('\n');
+        }
+    }
+
+    private void header(StringBuilder out, String name, String key, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help.get(key)).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        if (counters.containsKey(attribute)) {
+            return counters.get(attribute).get();
+        }
+        if (gauges.containsKey(attribute)) {
+            return gauges.get(attribute).getAsLong();
+        }
+        int dot = attribute.lastIndexOf('.');
+        LatencyHistogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+        if (histogram != null) {
+            switch (attribute.substring(dot + 1)) {
+                case "count": return histogram.count();
+                case "meanNanos": return histogram.mean();
+                case "p50Nanos": return histogram.valueAtPercentile(50);
+                case "p99Nanos": return histogram.valueAtPercentile(99);
+                case "p999Nanos": return histogram.valueAtPercentile(99.9);
+                case "maxNanos": return histogram.max();
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Left out, as the DynamicMBean contract allows
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "Metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : histograms.keySet()) {
+            for (String field : HISTOGRAM_FIELDS) {
+                attributes.add(new MBeanAttributeInfo(name + "." + field, "long", help.get(name), true, false, false));
+            }
+        }
+        for (String name : counters.keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "long", help.get(name), true, false, false));
+        }
+        for (String name : gauges.keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "long", help.get(name), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Stock trading latency and throughput",
+                             attributes.toArray(new MBeanAttributeInfo[0]), null,
+                             new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+}
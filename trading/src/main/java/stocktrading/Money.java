@@ -0,0 +1,37 @@
+package stocktrading;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Fixed-point money. Prices, balances and cost basis are longs in millionths of a
+// dollar (micros); conversion to decimal happens only when reading input or printing.
+final class Money {
+    static final long SCALE = 1_000_000;
+    static final int DECIMALS = 6;
+
+    private Money() {
+    }
+
+    static long of(double amount) {
+        return Math.round(amount * SCALE);
+    }
+
+    // Exact decimal parse of user input; throws NumberFormatException like Double.parseDouble
+    static long parse(String text) {
+        try {
+            return new BigDecimal(text).setScale(DECIMALS, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException(text);
+        }
+    }
+
+    static double toDouble(long micros) {
+        return (double) micros / SCALE;
+    }
+
+    // Up to two decimals without trailing zeros, matching the "#.##" display format
+    static String format(long micros) {
+        BigDecimal value = BigDecimal.valueOf(micros, DECIMALS).setScale(2, RoundingMode.HALF_EVEN);
+        return value.stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,37 @@
+package stocktrading;
+
+// Long while the fast simple moving average of the price is above the slow one, flat
+// otherwise. Both averages are kept as running sums over a ring of the last slow prices.
+class MovingAverageCrossover implements Strategy {
+    private final int fast;
+    private final int slow;
+    private final int shares;
+    private final long[] window;
+    private long fastSum = 0;
+    private long slowSum = 0;
+    private long seen = 0;
+
+    public MovingAverageCrossover(int fast, int slow, int shares) {
+        if (fast <= 0 || slow <= fast) {
+            throw new IllegalArgumentException("Need 0 < fast < slow: " + fast + ", " + slow);
+        }
+        this.fast = fast;
+        this.slow = slow;
+        this.shares = shares;
+        this.window = new long[slow];
+    }
+
+    @Override
+    public int onTick(long timeMillis, long price) {
+        int at = (int) (seen % slow);
+        slowSum += price - window[at];
+        fastSum += price - window[(int) ((seen + slow - fast) % slow)];
+        window[at] = price;
+        seen++;
+        if (seen < slow) {
+            return 0;
+        }
+        // fastSum / fast > slowSum / slow, without dividing
+        return fastSum * slow > slowSum * fast ? shares : 0;
+    }
+}
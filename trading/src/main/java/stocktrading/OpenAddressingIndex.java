@@ -0,0 +1,96 @@
+package stocktrading;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// String -> int map with linear probing over parallel arrays.
+// One writer may insert while any number of threads read: a slot's value is
+// stored before its key is released, and a resize publishes a new table.
+class OpenAddressingIndex {
+    static final int MISSING = -1;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(String[].class);
+
+    private static final class Table {
+        final String[] keys;
+        final int[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new String[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table;
+    private int size = 0;
+
+    public OpenAddressingIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        table = new Table(capacity);
+    }
+
+    public int get(String key) {
+        Table current = table;
+        int slot = mix(key.hashCode()) & current.mask;
+        while (true) {
+            String existing = (String) KEYS.getAcquire(current.keys, slot);
+            if (existing == null) {
+                return MISSING;
+            }
+            if (existing.equals(key)) {
+                return current.values[slot];
+            }
+            slot = (slot + 1) & current.mask;
+        }
+    }
+
+    // Single writer only; returns the previous value or MISSING
+    public int put(String key, int value) {
+        Table current = table;
+        if ((size + 1) * 2 > current.keys.length) {
+            current = resize(current);
+        }
+        int slot = mix(key.hashCode()) & current.mask;
+        while (true) {
+            String existing = current.keys[slot];
+            if (existing == null) {
+                current.values[slot] = value;
+                KEYS.setRelease(current.keys, slot, key);
+                size++;
+                return MISSING;
+            }
+            if (existing.equals(key)) {
+                int previous = current.values[slot];
+                current.values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & current.mask;
+        }
+    }
+
+    public int size() { return size; }
+
+    private Table resize(Table old) {
+        Table grown = new Table(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            String key = old.keys[i];
+            if (key != null) {
+                int slot = mix(key.hashCode()) & grown.mask;
+                while (grown.keys[slot] != null) {
+                    slot = (slot + 1) & grown.mask;
+                }
+                grown.keys[slot] = key;
+                grown.values[slot] = old.values[i];
+            }
+        }
+        table = grown;
+        return grown;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
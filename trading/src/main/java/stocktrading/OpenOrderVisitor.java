@@ -0,0 +1,10 @@
+package stocktrading;
+
+interface OpenOrderVisitor {
+    void visit(long orderId, int bookId, byte side, long priceTicks, int quantity);
+
+    // Dormant conditional orders; triggerTicks is the trail distance for a trailing stop
+    default void visitConditional(long orderId, int bookId, byte side, byte kind, long triggerTicks,
+                                  long limitPrice, int quantity, long linkedOrderId) {
+    }
+}
@@ -0,0 +1,150 @@
+package stocktrading;
+
+// Limit order book for a single symbol with price-time priority.
+// Resting orders sit on two PriceLadders; the house (the issuer float) quotes both
+// sides at the reference price and is the counterparty of last resort.
+class OrderBook {
+    static final byte BUY = 0;
+    static final byte SELL = 1;
+    static final long MARKET = 0; // limit price of a market order
+
+    private final int bookId;
+    private final OrderPool pool;
+    private final MatchingEngine engine;
+    private final PriceLadder bids;
+    private final PriceLadder asks;
+
+    private long houseTicks = 0;
+    private int houseAskQuantity = 0;
+
+    public OrderBook(int bookId, OrderPool pool, MatchingEngine engine) {
+        this.bookId = bookId;
+        this.pool = pool;
+        this.engine = engine;
+        this.bids = new PriceLadder(true, pool);
+        this.asks = new PriceLadder(false, pool);
+    }
+
+    // Moves the house quote and lets it trade with any resting order it now strictly crosses
+    public void setHouseQuote(long ticks, int askQuantity) {
+        houseTicks = ticks;
+        houseAskQuantity = askQuantity;
+        if (ticks <= 0) {
+            return;
+        }
+        while (houseAskQuantity > 0 && bids.best() > houseTicks) {
+            long tick = bids.best();
+            int node = bids.head(tick);
+            int fill = Math.min(pool.quantity[node], houseAskQuantity);
+            houseAskQuantity -= fill;
+            fillResting(bids, node, tick, fill);
+            engine.onFill(bookId, pool.orderId(node), pool.owner[node], 0, MatchingEngine.HOUSE, tick, fill);
+            releaseIfFilled(bids, node, tick);
+        }
+        while (!asks.isEmpty() && asks.best() < houseTicks) {
+            long tick = asks.best();
+            int node = asks.head(tick);
+            int fill = pool.quantity[node];
+            houseAskQuantity += fill;
+            fillResting(asks, node, tick, fill);
+            engine.onFill(bookId, 0, MatchingEngine.HOUSE, pool.orderId(node), pool.owner[node], tick, fill);
+            releaseIfFilled(asks, node, tick);
+        }
+    }
+
+    // Matches an incoming order and rests any limit remainder; returns the resting order id or 0
+    public long submit(int owner, byte side, long limitTicks, int quantity) {
+        int remaining = quantity;
+        PriceLadder opposite = side == BUY ? asks : bids;
+
+        while (remaining > 0) {
+            long restingTick = opposite.best();
+            boolean houseAvailable = houseTicks > 0 && (side == SELL || houseAskQuantity > 0);
+            boolean houseFirst = houseAvailable && (restingTick == PriceLadder.NONE
+                    || (side == BUY ? houseTicks < restingTick : houseTicks > restingTick));
+            long tick = houseFirst ? houseTicks : restingTick;
+            if (tick == PriceLadder.NONE || !crosses(side, limitTicks, tick)) {
+                break;
+            }
+
+            if (houseFirst) {
+                int fill = side == BUY ? Math.min(remaining, houseAskQuantity) : remaining;
+                houseAskQuantity += side == BUY ? -fill : fill;
+                remaining -= fill;
+                emit(side, 0, owner, 0, MatchingEngine.HOUSE, tick, fill);
+            } else {
+                int node = opposite.head(tick);
+                int fill = Math.min(remaining, pool.quantity[node]);
+                remaining -= fill;
+                fillResting(opposite, node, tick, fill);
+                emit(side, 0, owner, pool.orderId(node), pool.owner[node], tick, fill);
+                releaseIfFilled(opposite, node, tick);
+            }
+        }
+
+        if (remaining == 0 || limitTicks == MARKET) {
+            return 0;
+        }
+
+        int node = pool.acquire();
+        pool.owner[node] = owner;
+        pool.book[node] = bookId;
+        pool.side[node] = side;
+        pool.price[node] = limitTicks;
+        pool.quantity[node] = remaining;
+        (side == BUY ? bids : asks).append(node, limitTicks);
+        return pool.orderId(node);
+    }
+
+    // Rests a restored order at the back of its level without matching it
+    public void restore(int node, int owner, byte side, long limitTicks, int quantity) {
+        pool.owner[node] = owner;
+        pool.book[node] = bookId;
+        pool.side[node] = side;
+        pool.price[node] = limitTicks;
+        pool.quantity[node] = quantity;
+        (side == BUY ? bids : asks).append(node, limitTicks);
+    }
+
+    // Returns the quantity that was still open, or 0 if the order is no longer live
+    public int cancel(int node) {
+        int open = pool.quantity[node];
+        long tick = pool.price[node];
+        (pool.side[node] == BUY ? bids : asks).remove(node, tick);
+        pool.release(node);
+        return open;
+    }
+
+    public long bestBid() { return bids.best(); }
+    public long bestAsk() { return asks.best(); }
+    public long bidQuantityAt(long tick) { return bids.quantityAt(tick); }
+    public long askQuantityAt(long tick) { return asks.quantityAt(tick); }
+    public long getHouseTicks() { return houseTicks; }
+
+    private static boolean crosses(byte side, long limitTicks, long tick) {
+        if (limitTicks == MARKET) {
+            return true;
+        }
+        return side == BUY ? tick <= limitTicks : tick >= limitTicks;
+    }
+
+    private void emit(byte side, long aggressorId, int aggressor, long restingId, int resting, long tick, int fill) {
+        if (side == BUY) {
+            engine.onFill(bookId, aggressorId, aggressor, restingId, resting, tick, fill);
+        } else {
+            engine.onFill(bookId, restingId, resting, aggressorId, aggressor, tick, fill);
+        }
+    }
+
+    private void fillResting(PriceLadder ladder, int node, long tick, int fill) {
+        pool.quantity[node] -= fill;
+        ladder.reduce(tick, fill);
+    }
+
+    private void releaseIfFilled(PriceLadder ladder, int node, long tick) {
+        if (pool.quantity[node] == 0) {
+            ladder.remove(node, tick);
+            pool.release(node);
+        }
+    }
+}
@@ -0,0 +1,911 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+// Headless order entry over TCP. One thread runs a selector loop over every client
+// connection, decodes GatewayProtocol frames and publishes them to the sequencer without
+// waiting. The business-logic thread hands each completed reply back through a
+// single-producer queue and wakes the selector. Replies come from a fixed pool the
+// queue is sized for, so the business thread never blocks on the gateway; when the
+// pool or a connection's window runs out the gateway stops reading until replies drain.
+//
+// As a cluster node it only takes orders for the symbols it owns, and it coordinates the
+// cash transfers its buyers need (see CashTransfers) over links to the other nodes'
+// gateways, on the same selector. Those links open with the cluster secret, and only a
+// connection that presented it may hold or release cash here. A buy short of cash here is parked while the shortfall
+// is drawn from the account's home node, then placed once more; its connection is not
+// read meanwhile, so only requests already in flight behind the buy can overtake it.
+class OrderGateway implements Runnable {
+    private static final int MAX_IN_FLIGHT = 1 << 16;
+    private static final int CONNECTION_IN_FLIGHT = 128;
+    private static final int INPUT_BUFFER = 8 * 1024;
+    private static final int OUTPUT_BUFFER = 2 * CONNECTION_IN_FLIGHT * GatewayProtocol.RESPONSE_FRAME;
+    private static final int MAX_TRANSFERS = 1024;
+    private static final int PEER_OUTPUT_BUFFER = GatewayProtocol.MAX_FRAME
+            + MAX_TRANSFERS * (GatewayProtocol.LENGTH_FIELD + 1 + 4 + 8 + 256 + 8);
+    private static final long RECONNECT_NANOS = 500_000_000L;
+    private static final long HOLD_TIMEOUT_NANOS = 1_000_000_000L;
+
+    static final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(INPUT_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.allocate(OUTPUT_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        int accountId = -1;
+        String username;
+        int home = -1; // the account's home node in a cluster
+        int peer = -1; // the node at the other end, once it has presented the cluster secret
+        int inFlight = 0;
+        int parked = 0; // buys waiting for cash; nothing more is read until they are placed again
+        boolean open = true;
+        boolean dirty = false;
+        boolean stalled = false;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    static final class GatewayReply extends Reply {
+        private final OrderGateway gateway;
+        Connection connection;
+        byte requestType;
+        int correlationId;
+        Transfer transfer; // set on a transfer's own steps, which answer no client
+        int symbolId;      // a buy's order, kept so it can be placed again once funded
+        int quantity;
+        long limitPrice;
+        boolean funded;
+
+        GatewayReply(OrderGateway gateway) {
+            this.gateway = gateway;
+        }
+
+        @Override
+        void onComplete() {
+            gateway.completed(this);
+        }
+    }
+
+    // A cash transfer this node coordinates, from its first journal record to its last
+    static final class Transfer {
+        static final byte BEGINNING = 0;
+        static final byte HOLDING = 1;
+        static final byte CREDITING = 2;
+        static final byte RELEASING = 3;
+        static final byte ENDING = 4;
+
+        final GatewayReply step;
+        final int accountId;
+        final String username;
+        final int source;
+        long transferId;
+        long amount;
+        GatewayReply order; // the buy waiting for the cash, until it is answered
+        byte state;
+        boolean commit;
+        long deadline; // System.nanoTime() by which a hold must be answered
+
+        Transfer(OrderGateway gateway, int accountId, String username, int source, long amount) {
+            this.step = new GatewayReply(gateway);
+            this.step.transfer = this;
+            this.accountId = accountId;
+            this.username = username;
+            this.source = source;
+            this.amount = amount;
+        }
+    }
+
+    // Outbound connection to another node's gateway, reconnected whenever it drops
+    static final class PeerLink {
+        final int node;
+        final InetSocketAddress address;
+        final ByteBuffer in = ByteBuffer.allocate(INPUT_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.allocate(PEER_OUTPUT_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        final HashMap<Integer, Transfer> awaiting = new HashMap<>(); // by correlation id
+        final ArrayList<Transfer> unsent = new ArrayList<>();       // releases waiting for the link
+        SocketChannel channel;
+        SelectionKey key;
+        boolean connected = false;
+        long retryAt = 0;
+        int nextCorrelation = 0;
+        int handshake = -1; // correlation id of the PEER frame that opened the link
+
+        PeerLink(int node, InetSocketAddress address) {
+            this.node = node;
+            this.address = address;
+        }
+    }
+
+    private final InetSocketAddress address;
+    private final Sequencer sequencer;
+    private final SymbolTable symbols;
+    private final BiFunction<String, String, User> login;
+
+    private final GatewayReply[] free = new GatewayReply[MAX_IN_FLIGHT];
+    private int freeCount = MAX_IN_FLIGHT;
+    private final GatewayReply[] completions = new GatewayReply[2 * MAX_IN_FLIGHT]; // room for transfer steps too
+    private final Sequence completionTail = new Sequence(0);
+    private long completionHead = 0;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    private final ArrayList<Connection> dirty = new ArrayList<>();
+    private final ArrayList<Connection> stalled = new ArrayList<>();
+    // Cluster node state, gateway thread only; partitions stays null outside a cluster
+    private PartitionMap partitions;
+    private int node;
+    private long transferChunk;
+    private ToIntFunction<String> accountIdOf;
+    private String secret;
+    private PeerLink[] peers;
+    private byte[] owned = new byte[64]; // per symbol id: 0 not yet looked up, 1 here, 2 on another node
+    private int activeTransfers = 0;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean running;
+
+    public OrderGateway(InetSocketAddress address, Sequencer sequencer, SymbolTable symbols,
+                        BiFunction<String, String, User> login) {
+        this.address = address;
+        this.sequencer = sequencer;
+        this.symbols = symbols;
+        this.login = login;
+        for (int i = 0; i < MAX_IN_FLIGHT; i++) {
+            free[i] = new GatewayReply(this);
+        }
+    }
+
+    // Makes this gateway a cluster node; call before start. Transfers left open by an earlier
+    // run are finished first: credited ones commit at their home nodes, the rest abort.
+    public void joinCluster(PartitionMap partitions, int node, String secret, long transferChunk,
+                            ToIntFunction<String> accountIdOf, Collection<CashTransfers.Transfer> unfinished) {
+        this.partitions = partitions;
+        this.node = node;
+        this.secret = secret;
+        this.transferChunk = transferChunk;
+        this.accountIdOf = accountIdOf;
+        peers = new PeerLink[partitions.nodeCount()];
+        for (int i = 0; i < peers.length; i++) {
+            if (i != node) {
+                peers[i] = new PeerLink(i, partitions.address(i));
+            }
+        }
+        for (CashTransfers.Transfer open : unfinished) {
+            Transfer transfer = new Transfer(this, open.accountId, null, open.source, open.amount);
+            transfer.transferId = open.transferId;
+            transfer.commit = open.credited;
+            transfer.state = Transfer.RELEASING;
+            peers[open.source].unsent.add(transfer);
+            activeTransfers++;
+        }
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        if (peers != null) {
+            for (PeerLink link : peers) {
+                if (link != null) {
+                    connect(link);
+                }
+            }
+        }
+        running = true;
+        thread = new Thread(this, "order-gateway");
+        thread.start();
+    }
+
+    public int getPort() { return server.socket().getLocalPort(); }
+
+    // Stops accepting and reading; commands already published still complete in the sequencer
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                // Peer links that dropped are retried on a timer
+                selector.select(peers != null ? 100 : 0);
+                wakeupPending.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (key.attachment() instanceof PeerLink) {
+                        service((PeerLink) key.attachment(), key);
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isWritable()) {
+                        markDirty(connection);
+                    }
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                }
+                drainCompletions();
+                flushDirty();
+                // Flushing can free output space a stalled connection was waiting for
+                retryStalled();
+                flushDirty();
+                if (peers != null) {
+                    reconnectPeers();
+                    expireHolds();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Order gateway stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    // Business-logic thread only
+    private void completed(GatewayReply reply) {
+        long tail = completionTail.get();
+        completions[(int) (tail & (completions.length - 1))] = reply;
+        completionTail.set(tail + 1);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        }
+    }
+
+    private void read(Connection connection) {
+        try {
+            if (connection.channel.read(connection.in) < 0) {
+                close(connection);
+                return;
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        process(connection);
+    }
+
+    // Handles every complete frame the connection's window allows
+    private void process(Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        try {
+            while (connection.open) {
+                int length = GatewayProtocol.frameLength(in);
+                if (length < 0) {
+                    break;
+                }
+                if (length < GatewayProtocol.MIN_FRAME || length > GatewayProtocol.MAX_FRAME) {
+                    close(connection);
+                    return;
+                }
+                if (in.remaining() < GatewayProtocol.LENGTH_FIELD + length) {
+                    break;
+                }
+                if (!canAccept(connection)) {
+                    stall(connection);
+                    break;
+                }
+                int end = in.position() + GatewayProtocol.LENGTH_FIELD + length;
+                int limit = in.limit();
+                in.position(in.position() + GatewayProtocol.LENGTH_FIELD);
+                in.limit(end);
+                handle(connection, in);
+                in.limit(limit);
+                in.position(end);
+            }
+        } catch (BufferUnderflowException e) {
+            close(connection);
+            return;
+        } finally {
+            if (connection.open) {
+                in.compact();
+            }
+        }
+    }
+
+    private boolean canAccept(Connection connection) {
+        return freeCount > 0 && connection.inFlight < CONNECTION_IN_FLIGHT && connection.parked == 0
+                && connection.out.remaining() >= (connection.inFlight + 1) * GatewayProtocol.RESPONSE_FRAME;
+    }
+
+    private void handle(Connection connection, ByteBuffer in) {
+        byte type = in.get();
+        int correlationId = in.getInt();
+        switch (type) {
+            case GatewayProtocol.LOGIN: {
+                User user = login.apply(GatewayProtocol.getString(in), GatewayProtocol.getString(in));
+                if (user != null) {
+                    connection.accountId = user.getAccountId();
+                    connection.username = user.getUsername();
+                    connection.home = partitions != null ? partitions.ownerOf(user.getUsername()) : -1;
+                }
+                respond(connection, type, correlationId, user == null ? Reply.UNKNOWN_ACCOUNT : Reply.OK,
+                        user == null ? -1 : user.getAccountId());
+                return;
+            }
+            case GatewayProtocol.LOOKUP: {
+                int symbolId = symbols.idOf(GatewayProtocol.getString(in));
+                respond(connection, type, correlationId, symbolId < 0 ? Reply.UNKNOWN_STOCK : Reply.OK, symbolId);
+                return;
+            }
+            case GatewayProtocol.REGISTER: {
+                String[] details = {GatewayProtocol.getString(in), GatewayProtocol.getString(in),
+                                    GatewayProtocol.getString(in)};
+                long initialBalance = in.getLong();
+                if (initialBalance < 0) {
+                    respond(connection, type, correlationId, Reply.INVALID, 0);
+                    return;
+                }
+                // An account's cash starts out on its home node; elsewhere it is drawn on as needed
+                if (partitions != null && partitions.ownerOf(details[0]) != node) {
+                    initialBalance = 0;
+                }
+                details[1] = Credentials.hash(details[1]);
+                sequencer.publish(Command.REGISTER_USER, -1, -1, (byte) 0, initialBalance, 0, 0, details,
+                                  acquire(connection, type, correlationId));
+                return;
+            }
+            case GatewayProtocol.PEER: {
+                int peer = in.getInt();
+                byte[] presented = GatewayProtocol.getString(in).getBytes(StandardCharsets.UTF_8);
+                boolean known = partitions != null && peer >= 0 && peer < partitions.nodeCount() && peer != node
+                        && MessageDigest.isEqual(presented, secret.getBytes(StandardCharsets.UTF_8));
+                if (known) {
+                    connection.peer = peer;
+                }
+                respond(connection, type, correlationId, known ? Reply.OK : Reply.INVALID, 0);
+                return;
+            }
+            case GatewayProtocol.HOLD:
+            case GatewayProtocol.RELEASE:
+                if (connection.peer < 0) {
+                    respond(connection, type, correlationId, Reply.INVALID, 0);
+                } else {
+                    handlePeer(connection, type, correlationId, in);
+                }
+                return;
+            default:
+                break;
+        }
+
+        if (connection.accountId < 0) {
+            respond(connection, type, correlationId, Reply.UNKNOWN_ACCOUNT, 0);
+            return;
+        }
+        switch (type) {
+            case GatewayProtocol.BUY:
+            case GatewayProtocol.SELL: {
+                int symbolId = in.getInt();
+                int quantity = in.getInt();
+                long limitPrice = in.getLong();
+                if (limitPrice < 0) {
+                    respond(connection, type, correlationId, Reply.INVALID, 0);
+                    return;
+                }
+                if (partitions != null && !isOwned(symbolId)) {
+                    respond(connection, type, correlationId, Reply.WRONG_PARTITION, 0);
+                    return;
+                }
+                byte side = type == GatewayProtocol.BUY ? OrderBook.BUY : OrderBook.SELL;
+                GatewayReply reply = acquire(connection, type, correlationId);
+                reply.symbolId = symbolId;
+                reply.quantity = quantity;
+                reply.limitPrice = limitPrice;
+                reply.funded = false;
+                sequencer.publish(Command.PLACE_ORDER, connection.accountId, symbolId, side, limitPrice, quantity,
+                                  0, null, reply);
+                return;
+            }
+            case GatewayProtocol.CANCEL:
+                sequencer.publish(Command.CANCEL_ORDER, connection.accountId, -1, (byte) 0, 0, 0, in.getLong(),
+                                  null, acquire(connection, type, correlationId));
+                return;
+            case GatewayProtocol.DEPOSIT:
+            case GatewayProtocol.WITHDRAW: {
+                long amount = in.getLong();
+                if (amount <= 0) {
+                    respond(connection, type, correlationId, Reply.INVALID, 0);
+                    return;
+                }
+                byte command = type == GatewayProtocol.DEPOSIT ? Command.DEPOSIT : Command.WITHDRAW;
+                sequencer.publish(command, connection.accountId, -1, (byte) 0, amount, 0, 0, null,
+                                  acquire(connection, type, correlationId));
+                return;
+            }
+            default:
+                respond(connection, type, correlationId, Reply.INVALID, 0);
+        }
+    }
+
+    // Another node coordinating a transfer asks for cash to be held here or for a hold to be settled
+    private void handlePeer(Connection connection, byte type, int correlationId, ByteBuffer in) {
+        long transferId = in.getLong();
+        if (type == GatewayProtocol.RELEASE) {
+            sequencer.publish(Command.RELEASE_TRANSFER, -1, -1, in.get(), 0, 0, transferId, null,
+                              acquire(connection, type, correlationId));
+            return;
+        }
+        int accountId = accountIdOf.applyAsInt(GatewayProtocol.getString(in));
+        long amount = in.getLong();
+        if (accountId == OpenAddressingIndex.MISSING || amount <= 0) {
+            respond(connection, type, correlationId,
+                    accountId == OpenAddressingIndex.MISSING ? Reply.UNKNOWN_ACCOUNT : Reply.INVALID, 0);
+            return;
+        }
+        sequencer.publish(Command.HOLD_TRANSFER, accountId, -1, (byte) 0, amount, 0, transferId, null,
+                          acquire(connection, type, correlationId));
+    }
+
+    // Unknown symbol ids pass, for the business thread to reject
+    private boolean isOwned(int symbolId) {
+        if (symbolId < 0 || symbolId >= symbols.size()) {
+            return true;
+        }
+        if (symbolId >= owned.length) {
+            owned = Arrays.copyOf(owned, Math.max(owned.length * 2, symbolId + 1));
+        }
+        if (owned[symbolId] == 0) {
+            owned[symbolId] = (byte) (partitions.ownerOf(symbols.symbolOf(symbolId)) == node ? 1 : 2);
+        }
+        return owned[symbolId] == 1;
+    }
+
+    private GatewayReply acquire(Connection connection, byte type, int correlationId) {
+        GatewayReply reply = free[--freeCount];
+        reply.reset();
+        reply.connection = connection;
+        reply.requestType = type;
+        reply.correlationId = correlationId;
+        connection.inFlight++;
+        return reply;
+    }
+
+    private void respond(Connection connection, byte type, int correlationId, int status, long id) {
+        GatewayProtocol.response(connection.out, type, correlationId, status, id, 0, 0, 0);
+        markDirty(connection);
+    }
+
+    private void drainCompletions() {
+        long tail = completionTail.get();
+        for (; completionHead < tail; completionHead++) {
+            int slot = (int) (completionHead & (completions.length - 1));
+            GatewayReply reply = completions[slot];
+            completions[slot] = null;
+            if (reply.transfer != null) {
+                stepCompleted(reply.transfer);
+            } else if (needsCash(reply)) {
+                startTransfer(reply);
+            } else {
+                finish(reply);
+            }
+        }
+    }
+
+    private void finish(GatewayReply reply) {
+        Connection connection = reply.connection;
+        connection.inFlight--;
+        if (connection.open) {
+            GatewayProtocol.response(connection.out, reply.requestType, reply.correlationId, reply.status,
+                                     reply.orderId, reply.filledQuantity, reply.filledValue,
+                                     reply.cancelledQuantity);
+            markDirty(connection);
+        }
+        reply.connection = null;
+        free[freeCount++] = reply;
+    }
+
+    // A buy short of cash on a node that is not the account's home can draw on the home node once
+    private boolean needsCash(GatewayReply reply) {
+        Connection connection = reply.connection;
+        return partitions != null && reply.requestType == GatewayProtocol.BUY
+                && reply.status == Reply.INSUFFICIENT_FUNDS && reply.filledValue > 0 && !reply.funded
+                && connection.open && connection.home != node && peers[connection.home].connected
+                && activeTransfers < MAX_TRANSFERS;
+    }
+
+    // Parks the buy and draws its shortfall, or the transfer chunk if larger, from the home node
+    private void startTransfer(GatewayReply order) {
+        Connection connection = order.connection;
+        Transfer transfer = new Transfer(this, connection.accountId, connection.username, connection.home,
+                                         Math.max(order.filledValue, transferChunk));
+        transfer.order = order;
+        order.funded = true;
+        connection.parked++;
+        activeTransfers++;
+        transfer.state = Transfer.BEGINNING;
+        publishStep(transfer, Command.BEGIN_TRANSFER, transfer.source, (byte) 0, transfer.amount);
+    }
+
+    private void publishStep(Transfer transfer, byte type, int bookId, byte side, long amount) {
+        transfer.step.reset();
+        sequencer.publish(type, transfer.accountId, bookId, side, amount, 0, transfer.transferId, null, transfer.step);
+    }
+
+    // One of the transfer's own journal steps went through the business thread
+    private void stepCompleted(Transfer transfer) {
+        GatewayReply step = transfer.step;
+        switch (transfer.state) {
+            case Transfer.BEGINNING: {
+                if (step.status != Reply.OK) {
+                    answerOrder(transfer, Reply.INSUFFICIENT_FUNDS);
+                    activeTransfers--;
+                    return;
+                }
+                transfer.transferId = step.orderId;
+                PeerLink link = peers[transfer.source];
+                if (!link.connected) {
+                    // Nothing was asked of the home node, so nothing is held there
+                    answerOrder(transfer, Reply.INSUFFICIENT_FUNDS);
+                    end(transfer);
+                    return;
+                }
+                transfer.state = Transfer.HOLDING;
+                transfer.deadline = System.nanoTime() + HOLD_TIMEOUT_NANOS;
+                int correlationId = link.nextCorrelation++;
+                link.awaiting.put(correlationId, transfer);
+                GatewayProtocol.hold(link.out, correlationId, transfer.transferId, transfer.username, transfer.amount);
+                flush(link);
+                return;
+            }
+            case Transfer.CREDITING:
+                transfer.commit = step.status == Reply.OK;
+                if (transfer.commit) {
+                    placeAgain(transfer);
+                } else {
+                    answerOrder(transfer, Reply.INSUFFICIENT_FUNDS);
+                }
+                release(transfer);
+                return;
+            case Transfer.ENDING:
+                activeTransfers--;
+                return;
+            default:
+                break;
+        }
+    }
+
+    // The home node answered a hold or a release
+    private void peerAnswered(Transfer transfer, int status, long held) {
+        if (transfer.state != Transfer.HOLDING) {
+            end(transfer);
+        } else if (status == Reply.OK) {
+            transfer.amount = held;
+            transfer.state = Transfer.CREDITING;
+            publishStep(transfer, Command.CREDIT_TRANSFER, -1, (byte) 0, held);
+        } else {
+            answerOrder(transfer, Reply.INSUFFICIENT_FUNDS);
+            end(transfer);
+        }
+    }
+
+    private void release(Transfer transfer) {
+        transfer.state = Transfer.RELEASING;
+        PeerLink link = peers[transfer.source];
+        if (link.connected) {
+            sendRelease(link, transfer);
+            flush(link);
+        } else {
+            link.unsent.add(transfer);
+        }
+    }
+
+    private void sendRelease(PeerLink link, Transfer transfer) {
+        int correlationId = link.nextCorrelation++;
+        link.awaiting.put(correlationId, transfer);
+        GatewayProtocol.release(link.out, correlationId, transfer.transferId, transfer.commit);
+    }
+
+    private void end(Transfer transfer) {
+        transfer.state = Transfer.ENDING;
+        publishStep(transfer, Command.END_TRANSFER, -1, (byte) 0, 0);
+    }
+
+    // The cash is here now, so the parked buy goes through the sequencer again
+    private void placeAgain(Transfer transfer) {
+        GatewayReply order = transfer.order;
+        transfer.order = null;
+        order.connection.parked--;
+        if (!order.connection.open) {
+            finish(order);
+            return;
+        }
+        order.reset();
+        sequencer.publish(Command.PLACE_ORDER, order.connection.accountId, order.symbolId, OrderBook.BUY,
+                          order.limitPrice, order.quantity, 0, null, order);
+    }
+
+    private void answerOrder(Transfer transfer, int status) {
+        GatewayReply order = transfer.order;
+        if (order != null) {
+            transfer.order = null;
+            order.connection.parked--;
+            order.reset();
+            order.status = status;
+            finish(order);
+        }
+    }
+
+    private void connect(PeerLink link) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            link.channel = channel;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (channel.connect(link.address)) {
+                link.key = channel.register(selector, SelectionKey.OP_READ, link);
+                linked(link);
+            } else {
+                link.key = channel.register(selector, SelectionKey.OP_CONNECT, link);
+            }
+        } catch (IOException e) {
+            unlinked(link);
+        }
+    }
+
+    private void reconnectPeers() {
+        long now = System.nanoTime();
+        for (PeerLink link : peers) {
+            if (link != null && link.channel == null && now - link.retryAt >= 0) {
+                connect(link);
+            }
+        }
+    }
+
+    // A home node that holds the line open but stops answering must not keep a buy parked.
+    // The abort goes out behind the hold on the same connection, so it can never overtake it.
+    private void expireHolds() {
+        long now = System.nanoTime();
+        for (PeerLink link : peers) {
+            if (link == null || link.awaiting.isEmpty()) {
+                continue;
+            }
+            ArrayList<Transfer> expired = null;
+            Iterator<Transfer> waiting = link.awaiting.values().iterator();
+            while (waiting.hasNext()) {
+                Transfer transfer = waiting.next();
+                if (transfer.state == Transfer.HOLDING && now - transfer.deadline >= 0) {
+                    waiting.remove();
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(transfer);
+                }
+            }
+            if (expired != null) {
+                for (Transfer transfer : expired) {
+                    transfer.commit = false;
+                    answerOrder(transfer, Reply.INSUFFICIENT_FUNDS);
+                    release(transfer);
+                }
+            }
+        }
+    }
+
+    private void service(PeerLink link, SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                if (!link.channel.finishConnect()) {
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                linked(link);
+            }
+            if (key.isValid() && key.isReadable()) {
+                if (link.channel.read(link.in) < 0) {
+                    throw new IOException("Closed by node " + link.node);
+                }
+                peerResponses(link);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(link);
+            }
+        } catch (IOException e) {
+            unlinked(link);
+        }
+    }
+
+    private void peerResponses(PeerLink link) {
+        ByteBuffer in = link.in;
+        in.flip();
+        while (in.remaining() >= GatewayProtocol.RESPONSE_FRAME) {
+            in.position(in.position() + GatewayProtocol.LENGTH_FIELD + 1);
+            int correlationId = in.getInt();
+            int status = in.get();
+            in.position(in.position() + 12); // order id, filled quantity
+            long filledValue = in.getLong();
+            in.getInt();
+            if (correlationId == link.handshake && status != Reply.OK) {
+                System.out.println("Node " + link.node + " refused this node's cluster secret");
+            }
+            Transfer transfer = link.awaiting.remove(correlationId);
+            if (transfer != null) {
+                peerAnswered(transfer, status, filledValue);
+            }
+        }
+        in.compact();
+    }
+
+    // The link opens with the cluster secret; settlements that were waiting for it go out next
+    private void linked(PeerLink link) {
+        link.connected = true;
+        System.out.println("Linked to node " + link.node + " at " + link.address);
+        link.handshake = link.nextCorrelation++;
+        GatewayProtocol.peer(link.out, link.handshake, node, secret);
+        for (Transfer transfer : link.unsent) {
+            sendRelease(link, transfer);
+        }
+        link.unsent.clear();
+        flush(link);
+    }
+
+    // A hold the home node may or may not have granted is given up and returned
+    private void unlinked(PeerLink link) {
+        boolean wasConnected = link.connected;
+        link.connected = false;
+        if (link.key != null) {
+            closeQuietly(link.key);
+        } else if (link.channel != null) {
+            closeQuietly(link.channel);
+        }
+        link.key = null;
+        link.channel = null;
+        link.in.clear();
+        link.out.clear();
+        link.retryAt = System.nanoTime() + RECONNECT_NANOS;
+        for (Transfer transfer : link.awaiting.values()) {
+            if (transfer.state == Transfer.HOLDING) {
+                transfer.commit = false;
+                answerOrder(transfer, Reply.INSUFFICIENT_FUNDS);
+                transfer.state = Transfer.RELEASING;
+            }
+            link.unsent.add(transfer);
+        }
+        link.awaiting.clear();
+        if (wasConnected) {
+            System.out.println("Lost link to node " + link.node);
+        }
+    }
+
+    private void flush(PeerLink link) {
+        if (!link.connected) {
+            return;
+        }
+        ByteBuffer out = link.out;
+        out.flip();
+        try {
+            link.channel.write(out);
+        } catch (IOException e) {
+            out.compact();
+            unlinked(link);
+            return;
+        }
+        out.compact();
+        link.key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void stall(Connection connection) {
+        if (!connection.stalled) {
+            connection.stalled = true;
+            stalled.add(connection);
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    private void retryStalled() {
+        if (stalled.isEmpty() || freeCount == 0) {
+            return;
+        }
+        Connection[] waiting = stalled.toArray(new Connection[0]);
+        stalled.clear();
+        for (Connection connection : waiting) {
+            connection.stalled = false;
+            if (connection.open) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+                process(connection);
+            }
+        }
+    }
+
+    private void markDirty(Connection connection) {
+        if (!connection.dirty) {
+            connection.dirty = true;
+            dirty.add(connection);
+        }
+    }
+
+    private void flushDirty() {
+        for (int i = 0; i < dirty.size(); i++) {
+            Connection connection = dirty.get(i);
+            connection.dirty = false;
+            if (connection.open) {
+                flush(connection);
+            }
+        }
+        dirty.clear();
+    }
+
+    private void flush(Connection connection) {
+        ByteBuffer out = connection.out;
+        out.flip();
+        try {
+            connection.channel.write(out);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        out.compact();
+        int ops = connection.key.interestOps();
+        connection.key.interestOps(out.position() > 0 ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
+    }
+
+    // Replies still in the sequencer are returned to the pool when they complete
+    private void close(Connection connection) {
+        connection.open = false;
+        closeQuietly(connection.key);
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        closeQuietly(key.channel());
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing useful to do with a failed close
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// Pre-allocated order nodes stored as parallel primitive arrays.
+// A node index plus its generation forms the order id, so cancelled or filled
+// nodes can be recycled without handing out stale ids.
+class OrderPool {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    int[] next;
+    int[] prev;
+    int[] owner;
+    int[] book;
+    int[] quantity;
+    int[] generation;
+    long[] price;
+    byte[] side;
+
+    private int size = 0;
+    private int freeHead = -1;
+
+    public OrderPool() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public int acquire() {
+        int node;
+        if (freeHead >= 0) {
+            node = freeHead;
+            freeHead = next[node];
+        } else {
+            if (size == next.length) {
+                allocate(next.length * 2);
+            }
+            node = size++;
+            generation[node] = 1;
+        }
+        next[node] = -1;
+        prev[node] = -1;
+        return node;
+    }
+
+    // Recreates the node behind an order id while restoring, before anything is acquired;
+    // finishRestore then chains every unused node into the free list
+    public int restore(long orderId) {
+        int node = (int) orderId;
+        while (node >= next.length) {
+            allocate(next.length * 2);
+        }
+        size = Math.max(size, node + 1);
+        generation[node] = (int) (orderId >>> 32);
+        next[node] = -1;
+        prev[node] = -1;
+        return node;
+    }
+
+    public void finishRestore() {
+        freeHead = -1;
+        for (int node = size - 1; node >= 0; node--) {
+            if (quantity[node] == 0) {
+                generation[node] = Math.max(generation[node], 1);
+                next[node] = freeHead;
+                freeHead = node;
+            }
+        }
+    }
+
+    public void release(int node) {
+        quantity[node] = 0;
+        generation[node]++;
+        next[node] = freeHead;
+        freeHead = node;
+    }
+
+    public long orderId(int node) {
+        return ((long) generation[node] << 32) | node;
+    }
+
+    // Returns the node for a live order id, or -1 if it was filled or cancelled
+    public int nodeOf(long orderId) {
+        int node = (int) orderId;
+        if (node < 0 || node >= size) {
+            return -1;
+        }
+        if (generation[node] != (int) (orderId >>> 32) || quantity[node] == 0) {
+            return -1;
+        }
+        return node;
+    }
+
+    public int size() { return size; }
+
+    private void allocate(int capacity) {
+        next = grow(next, capacity);
+        prev = grow(prev, capacity);
+        owner = grow(owner, capacity);
+        book = grow(book, capacity);
+        quantity = grow(quantity, capacity);
+        generation = grow(generation, capacity);
+        price = price == null ? new long[capacity] : Arrays.copyOf(price, capacity);
+        side = side == null ? new byte[capacity] : Arrays.copyOf(side, capacity);
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
@@ -0,0 +1,48 @@
+package stocktrading;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Unbounded id -> entry storage: a growable array kept in fixed-size pages, so growth
+// copies only the page directory and never the entries. One writer appends; readers may
+// look up any id below size() at the same time.
+class PagedStore<T> {
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile Object[][] pages = new Object[0][];
+    private volatile int size = 0;
+
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        return (T) pages[id >>> PAGE_BITS][id & PAGE_MASK];
+    }
+
+    // Single writer only; the new entry's id is the previous size()
+    public int add(T value) {
+        int id = size;
+        int page = id >>> PAGE_BITS;
+        if (page == pages.length) {
+            Object[][] grown = Arrays.copyOf(pages, page + 1);
+            grown[page] = new Object[PAGE_SIZE];
+            pages = grown;
+        }
+        pages[page][id & PAGE_MASK] = value;
+        size = id + 1;
+        return id;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < size;
+    }
+
+    public int size() { return size; }
+
+    public void forEach(Consumer<? super T> action) {
+        int count = size;
+        for (int id = 0; id < count; id++) {
+            action.accept(get(id));
+        }
+    }
+}
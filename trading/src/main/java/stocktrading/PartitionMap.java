@@ -0,0 +1,90 @@
+package stocktrading;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Consistent hashing of symbols and usernames onto the nodes of a cluster. Each node owns
+// many points on a 64-bit ring and a key belongs to the first point at or after its hash,
+// so every JVM given the same node list agrees on every owner without talking, and adding
+// a node only moves the keys that land on its new points.
+//
+// A symbol's owner holds its order book and every position traded in it. A username's
+// owner is the account's home node, which holds its cash until other nodes draw on it.
+final class PartitionMap {
+    static final int POINTS_PER_NODE = 128;
+
+    private final InetSocketAddress[] nodes;
+    private final long[] points; // sorted ring positions
+    private final int[] owners;  // node owning each point
+
+    PartitionMap(InetSocketAddress[] nodes) {
+        this.nodes = nodes.clone();
+        int count = nodes.length * POINTS_PER_NODE;
+        long[] keys = new long[count];
+        for (int node = 0; node < nodes.length; node++) {
+            for (int point = 0; point < POINTS_PER_NODE; point++) {
+                // Point positions sit in the high bits and the node in the low ones, so sorting keeps them paired.
+                // The ring is searched unsigned, so the sign bit is flipped for the signed sort.
+                long key = hash("node-" + node + "#" + point) & ~0xFFFFL | node;
+                keys[node * POINTS_PER_NODE + point] = key ^ Long.MIN_VALUE;
+            }
+        }
+        Arrays.sort(keys);
+        points = new long[count];
+        owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = (keys[i] ^ Long.MIN_VALUE) & ~0xFFFFL;
+            owners[i] = (int) (keys[i] & 0xFFFF);
+        }
+    }
+
+    // "host:port,host:port,..." in node id order
+    static PartitionMap parse(String list) {
+        String[] entries = list.split(",");
+        InetSocketAddress[] nodes = new InetSocketAddress[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            nodes[i] = parseAddress(entries[i].trim());
+        }
+        return new PartitionMap(nodes);
+    }
+
+    static InetSocketAddress parseAddress(String hostAndPort) {
+        int colon = hostAndPort.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress("localhost", Integer.parseInt(hostAndPort));
+        }
+        return new InetSocketAddress(hostAndPort.substring(0, colon), Integer.parseInt(hostAndPort.substring(colon + 1)));
+    }
+
+    public int nodeCount() { return nodes.length; }
+
+    public InetSocketAddress address(int node) { return nodes[node]; }
+
+    public int ownerOf(String key) {
+        long hash = hash(key) & ~0xFFFFL;
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return owners[low == points.length ? 0 : low];
+    }
+
+    // FNV-1a over the UTF-8 bytes with a final avalanche, identical in every JVM
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
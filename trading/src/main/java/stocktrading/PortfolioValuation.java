@@ -0,0 +1,96 @@
+package stocktrading;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Keeps every account's market value current as deltas. Each symbol has a list of the
+// accounts holding it, with their quantities, so a price tick only visits that
+// symbol's holders and a fill only touches the two accounts involved. Every account
+// revalued is passed on to the listener. Driven from the business-logic thread.
+class PortfolioValuation {
+    private static final int INITIAL_HOLDERS = 4;
+
+    private final IntConsumer revalued; // account id
+
+    private long[] marks = new long[16]; // last price per symbol id, in micros
+    private User[][] holders = new User[16][];
+    private int[][] holderQuantity = new int[16][];
+    private int[] holderCount = new int[16];
+
+    public PortfolioValuation() {
+        this(accountId -> { });
+    }
+
+    public PortfolioValuation(IntConsumer revalued) {
+        this.revalued = revalued;
+    }
+
+    public void addSymbol(int symbolId, long price) {
+        if (symbolId >= marks.length) {
+            int capacity = Math.max(marks.length * 2, symbolId + 1);
+            marks = Arrays.copyOf(marks, capacity);
+            holders = Arrays.copyOf(holders, capacity);
+            holderQuantity = Arrays.copyOf(holderQuantity, capacity);
+            holderCount = Arrays.copyOf(holderCount, capacity);
+        }
+        marks[symbolId] = price;
+        holders[symbolId] = new User[INITIAL_HOLDERS];
+        holderQuantity[symbolId] = new int[INITIAL_HOLDERS];
+    }
+
+    // Call after the user's position in symbolId has changed by quantityDelta
+    public void onPositionChange(User user, int symbolId, int quantityDelta) {
+        user.revalue(quantityDelta * marks[symbolId]);
+        PositionTable positions = user.getPositions();
+        int quantity = positions.quantity(symbolId);
+        int slot = positions.holderSlot(symbolId);
+        if (slot >= 0 && quantity > 0) {
+            holderQuantity[symbolId][slot] = quantity;
+        } else if (slot >= 0) {
+            removeHolder(symbolId, slot);
+            positions.setHolderSlot(symbolId, -1);
+        } else if (quantity > 0) {
+            positions.setHolderSlot(symbolId, addHolder(symbolId, user, quantity));
+        }
+        revalued.accept(user.getAccountId());
+    }
+
+    public void onPriceChange(int symbolId, long price) {
+        long delta = price - marks[symbolId];
+        marks[symbolId] = price;
+        if (delta == 0) {
+            return;
+        }
+        User[] symbolHolders = holders[symbolId];
+        int[] quantities = holderQuantity[symbolId];
+        for (int slot = 0, count = holderCount[symbolId]; slot < count; slot++) {
+            symbolHolders[slot].revalue(quantities[slot] * delta);
+            revalued.accept(symbolHolders[slot].getAccountId());
+        }
+    }
+
+    public int holderCount(int symbolId) { return holderCount[symbolId]; }
+
+    private int addHolder(int symbolId, User user, int quantity) {
+        int slot = holderCount[symbolId]++;
+        if (slot == holders[symbolId].length) {
+            holders[symbolId] = Arrays.copyOf(holders[symbolId], slot * 2);
+            holderQuantity[symbolId] = Arrays.copyOf(holderQuantity[symbolId], slot * 2);
+        }
+        holders[symbolId][slot] = user;
+        holderQuantity[symbolId][slot] = quantity;
+        return slot;
+    }
+
+    // Moves the last holder into the freed slot
+    private void removeHolder(int symbolId, int slot) {
+        int last = --holderCount[symbolId];
+        User moved = holders[symbolId][last];
+        holders[symbolId][slot] = moved;
+        holderQuantity[symbolId][slot] = holderQuantity[symbolId][last];
+        holders[symbolId][last] = null;
+        if (slot != last) {
+            moved.getPositions().setHolderSlot(symbolId, slot);
+        }
+    }
+}
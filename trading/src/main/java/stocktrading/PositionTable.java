@@ -0,0 +1,148 @@
+package stocktrading;
+
+// One account's positions keyed by symbol id, as entries numbered in the order they were
+// opened. A position that goes flat keeps its entry so its realized P&L is not lost.
+// The bookkeeping lives here; subclasses decide where the entries are stored, on the heap
+// (HeapPositionTable) or in a shared account arena (ArenaPositionTable).
+abstract class PositionTable {
+
+    public void buy(int symbolId, int shares, long price) {
+        int entry = entryFor(symbolId);
+        if (quantityAt(entry) == 0) {
+            setOpenPositions(openPositions() + 1);
+        }
+        long cost = shares * price;
+        setQuantityAt(entry, quantityAt(entry) + shares);
+        setCostBasisAt(entry, costBasisAt(entry) + cost);
+        setTotals(totalCostBasis() + cost, totalRealizedPnl());
+    }
+
+    // Releases the sold shares' share of the cost basis; returns false if not enough are held
+    public boolean sell(int symbolId, int shares, long price) {
+        int entry = find(symbolId);
+        if (entry < 0 || quantityAt(entry) < shares) {
+            return false;
+        }
+        int held = quantityAt(entry);
+        long basis = costBasisAt(entry);
+        // Divided first: basis * shares overflows for large positions, while the remainder
+        // times shares stays under 2^62 and the result is the same truncated quotient
+        long released = held == shares ? basis : basis / held * shares + basis % held * shares / held;
+        long pnl = shares * price - released;
+        setQuantityAt(entry, held - shares);
+        setCostBasisAt(entry, basis - released);
+        setRealizedPnlAt(entry, realizedPnlAt(entry) + pnl);
+        setTotals(totalCostBasis() - released, totalRealizedPnl() + pnl);
+        if (held == shares) {
+            setOpenPositions(openPositions() - 1);
+        }
+        return true;
+    }
+
+    // Reinstates a position from a snapshot; reservations are rebuilt from the open orders
+    void restore(int symbolId, int shares, long cost, long pnl) {
+        int entry = entryFor(symbolId);
+        if (quantityAt(entry) == 0 && shares != 0) {
+            setOpenPositions(openPositions() + 1);
+        }
+        setQuantityAt(entry, quantityAt(entry) + shares);
+        setCostBasisAt(entry, costBasisAt(entry) + cost);
+        setRealizedPnlAt(entry, realizedPnlAt(entry) + pnl);
+        setTotals(totalCostBasis() + cost, totalRealizedPnl() + pnl);
+    }
+
+    public int quantity(int symbolId) {
+        int entry = find(symbolId);
+        return entry < 0 ? 0 : quantityAt(entry);
+    }
+
+    public long costBasis(int symbolId) {
+        int entry = find(symbolId);
+        return entry < 0 ? 0 : costBasisAt(entry);
+    }
+
+    public long averagePrice(int symbolId) {
+        int entry = find(symbolId);
+        return entry < 0 || quantityAt(entry) == 0 ? 0 : costBasisAt(entry) / quantityAt(entry);
+    }
+
+    public int pendingBuys(int symbolId) {
+        int entry = find(symbolId);
+        return entry < 0 ? 0 : pendingBuysAt(entry);
+    }
+
+    public int availableToSell(int symbolId) {
+        int entry = find(symbolId);
+        return entry < 0 ? 0 : quantityAt(entry) - reservedSellsAt(entry);
+    }
+
+    // Whether a buy of symbolId has an entry to land in; only a fixed-size store runs out
+    boolean canOpen(int symbolId) {
+        return find(symbolId) >= 0 || hasRoomForEntry();
+    }
+
+    void reserveBuy(int symbolId, int shares) {
+        int entry = entryFor(symbolId); // may grow the storage, so resolve it before indexing
+        setPendingBuysAt(entry, pendingBuysAt(entry) + shares);
+    }
+
+    void releaseBuy(int symbolId, int shares) {
+        int entry = find(symbolId);
+        setPendingBuysAt(entry, pendingBuysAt(entry) - shares);
+    }
+
+    void reserveSell(int symbolId, int shares) {
+        int entry = find(symbolId);
+        setReservedSellsAt(entry, reservedSellsAt(entry) + shares);
+    }
+
+    void releaseSell(int symbolId, int shares) {
+        int entry = find(symbolId);
+        setReservedSellsAt(entry, reservedSellsAt(entry) - shares);
+    }
+
+    public long realizedPnl(int symbolId) {
+        int entry = find(symbolId);
+        return entry < 0 ? 0 : realizedPnlAt(entry);
+    }
+
+    public int holderSlot(int symbolId) {
+        int entry = find(symbolId);
+        return entry < 0 ? -1 : holderSlotAt(entry);
+    }
+
+    void setHolderSlot(int symbolId, int slot) {
+        setHolderSlotAt(find(symbolId), slot);
+    }
+
+    // Entries are indexed 0..size()-1 in the order they were opened, including flat ones
+    public abstract int size();
+    public abstract int symbolAt(int entry);
+    public abstract int quantityAt(int entry);
+    public abstract long costBasisAt(int entry); // total cost of the shares held, in micros
+    public abstract long realizedPnlAt(int entry);
+
+    public abstract int openPositions();
+    public abstract long totalCostBasis();
+    public abstract long totalRealizedPnl();
+
+    // Entry holding symbolId, or -1
+    abstract int find(int symbolId);
+
+    // Entry holding symbolId, opening an empty one (with no holder slot) if there is none
+    abstract int entryFor(int symbolId);
+    abstract boolean hasRoomForEntry();
+
+    abstract int holderSlotAt(int entry);   // slot in the valuation's holder list, -1 if none
+    abstract int pendingBuysAt(int entry);  // shares on accepted buy orders not yet filled
+    abstract int reservedSellsAt(int entry); // held shares promised to open sell orders
+
+    abstract void setQuantityAt(int entry, int shares);
+    abstract void setCostBasisAt(int entry, long cost);
+    abstract void setRealizedPnlAt(int entry, long pnl);
+    abstract void setHolderSlotAt(int entry, int slot);
+    abstract void setPendingBuysAt(int entry, int shares);
+    abstract void setReservedSellsAt(int entry, int shares);
+    abstract void setOpenPositions(int count);
+    abstract void setTotals(long costBasis, long realizedPnl);
+}
@@ -0,0 +1,120 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// Pre-trade checks and reservations, run on the business-logic thread as an order is
+// accepted. A buy reserves cash for its full quantity at its limit (market buys at the
+// house quote, the reference price rounded to its tick: resting asks below it trade with
+// the house first, so no fill costs more) and a sell reserves its shares, so resting
+// orders can never overdraw an account. Fills and cancels release
+// what they used. Every counter is per account or per position, so a check is a handful
+// of field reads and no lock is ever taken.
+//
+// Limit prices must also sit within a band around the reference price. Besides catching
+// mistyped prices, this bounds the order books: a book's price levels are a dense array
+// spanning its resting prices, so one order a million ticks out would allocate them all.
+// Conditional orders' triggers sit in ladders of the same kind and get the same band.
+class PreTradeRisk {
+    private final long maxOrderNotional; // per account, per order
+    private final int maxOpenOrders;     // per account
+    private final int priceBand;         // percent of the reference price a limit may sit away from it
+    private final int defaultMaxOrderQuantity;
+    private final int defaultMaxPosition;
+    private int[] maxOrderQuantity = new int[16]; // per symbol
+    private int[] maxPosition = new int[16];      // per symbol, shares held plus pending buys
+
+    public PreTradeRisk(long maxOrderNotional, int maxOpenOrders, int maxOrderQuantity, int maxPosition,
+                        int priceBand) {
+        this.maxOrderNotional = maxOrderNotional;
+        this.maxOpenOrders = maxOpenOrders;
+        this.priceBand = priceBand;
+        this.defaultMaxOrderQuantity = maxOrderQuantity;
+        this.defaultMaxPosition = maxPosition;
+    }
+
+    public void addSymbol(int symbolId) {
+        if (symbolId >= maxOrderQuantity.length) {
+            int capacity = Math.max(maxOrderQuantity.length * 2, symbolId + 1);
+            maxOrderQuantity = Arrays.copyOf(maxOrderQuantity, capacity);
+            maxPosition = Arrays.copyOf(maxPosition, capacity);
+        }
+        setSymbolLimits(symbolId, defaultMaxOrderQuantity, defaultMaxPosition);
+    }
+
+    public void setSymbolLimits(int symbolId, int orderQuantity, int position) {
+        maxOrderQuantity[symbolId] = orderQuantity;
+        maxPosition[symbolId] = position;
+    }
+
+    // Per-share price an order is reserved and checked at, rounded to the tick it will trade on
+    static long reservePrice(long limitPrice, long referencePrice) {
+        return MatchingEngine.toPrice(MatchingEngine.toTicks(limitPrice > 0 ? limitPrice : referencePrice));
+    }
+
+    public boolean withinBand(long price, long referencePrice) {
+        long band = referencePrice / 100 * priceBand;
+        return price >= referencePrice - band && price <= referencePrice + band;
+    }
+
+    // A trailing stop's trigger is its trail distance, and its trigger price sits that far from the mark
+    public boolean triggerWithinBand(byte orderKind, long trigger, long referencePrice) {
+        return withinBand(orderKind == ConditionalOrders.TRAILING_STOP ? referencePrice + trigger : trigger,
+                          referencePrice);
+    }
+
+    // Returns a Reply status; on OK the order's cash or shares are reserved and it counts as open
+    public int accept(User user, int symbolId, byte side, long reservePrice, long referencePrice, int quantity) {
+        long notional = quantity * reservePrice;
+        if (quantity > maxOrderQuantity[symbolId] || notional > maxOrderNotional
+                || user.getOpenOrders() >= maxOpenOrders || !withinBand(reservePrice, referencePrice)) {
+            return Reply.RISK_LIMIT;
+        }
+        PositionTable positions = user.getPositions();
+        if (side == OrderBook.BUY) {
+            if (notional > user.getAvailableCash()) {
+                return Reply.INSUFFICIENT_FUNDS;
+            }
+            // The reservation opens the position its fills land in, so a full account arena refuses it here
+            if (!positions.canOpen(symbolId)) {
+                return Reply.RISK_LIMIT;
+            }
+            if ((long) positions.quantity(symbolId) + positions.pendingBuys(symbolId) + quantity > maxPosition[symbolId]) {
+                return Reply.RISK_LIMIT;
+            }
+            user.reserveCash(notional);
+            positions.reserveBuy(symbolId, quantity);
+        } else {
+            if (quantity > positions.availableToSell(symbolId)) {
+                return Reply.INSUFFICIENT_SHARES;
+            }
+            positions.reserveSell(symbolId, quantity);
+        }
+        user.orderOpened();
+        return Reply.OK;
+    }
+
+    // Reserves for an order restored at startup; it was accepted before, so nothing is checked
+    public void restore(User user, int symbolId, byte side, long reservePrice, int quantity) {
+        if (side == OrderBook.BUY) {
+            user.reserveCash(quantity * reservePrice);
+            user.getPositions().reserveBuy(symbolId, quantity);
+        } else {
+            user.getPositions().reserveSell(symbolId, quantity);
+        }
+        user.orderOpened();
+    }
+
+    // Releases the reservation behind quantity shares once their fill has been applied or they were cancelled
+    public void release(User user, int symbolId, byte side, long reservePrice, int quantity) {
+        if (side == OrderBook.BUY) {
+            user.releaseCash(quantity * reservePrice);
+            user.getPositions().releaseBuy(symbolId, quantity);
+        } else {
+            user.getPositions().releaseSell(symbolId, quantity);
+        }
+    }
+
+    public void orderClosed(User user) {
+        user.orderClosed();
+    }
+}
@@ -0,0 +1,128 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// One side of an order book: an array of FIFO price levels indexed by tick.
+// The window re-centres and grows when an order arrives outside it; PreTradeRisk keeps
+// limit prices within a band of the reference price, which bounds how far it can grow.
+class PriceLadder {
+    static final long NONE = -1;
+    private static final int INITIAL_LEVELS = 1024;
+
+    private final boolean bidSide;
+    private final OrderPool pool;
+    private long baseTick = -1;
+    private int[] head = new int[0];
+    private int[] tail = new int[0];
+    private long[] levelQuantity = new long[0];
+    private long best = NONE;
+    private int orderCount = 0;
+
+    public PriceLadder(boolean bidSide, OrderPool pool) {
+        this.bidSide = bidSide;
+        this.pool = pool;
+    }
+
+    public void append(int node, long tick) {
+        int level = ensureLevel(tick);
+        pool.prev[node] = tail[level];
+        pool.next[node] = -1;
+        if (tail[level] >= 0) {
+            pool.next[tail[level]] = node;
+        } else {
+            head[level] = node;
+        }
+        tail[level] = node;
+        levelQuantity[level] += pool.quantity[node];
+        orderCount++;
+        if (best == NONE || (bidSide ? tick > best : tick < best)) {
+            best = tick;
+        }
+    }
+
+    // Unlinks a node; the caller is expected to release it back to the pool
+    public void remove(int node, long tick) {
+        int level = (int) (tick - baseTick);
+        int prevNode = pool.prev[node];
+        int nextNode = pool.next[node];
+        if (prevNode >= 0) {
+            pool.next[prevNode] = nextNode;
+        } else {
+            head[level] = nextNode;
+        }
+        if (nextNode >= 0) {
+            pool.prev[nextNode] = prevNode;
+        } else {
+            tail[level] = prevNode;
+        }
+        levelQuantity[level] -= pool.quantity[node];
+        orderCount--;
+        if (head[level] < 0 && tick == best) {
+            advanceBest();
+        }
+    }
+
+    public void reduce(long tick, int quantity) {
+        levelQuantity[(int) (tick - baseTick)] -= quantity;
+    }
+
+    public int head(long tick) {
+        return head[(int) (tick - baseTick)];
+    }
+
+    public long quantityAt(long tick) {
+        if (tick < baseTick || tick >= baseTick + head.length) {
+            return 0;
+        }
+        return levelQuantity[(int) (tick - baseTick)];
+    }
+
+    public long best() { return best; }
+    public int orderCount() { return orderCount; }
+    public boolean isEmpty() { return orderCount == 0; }
+
+    private void advanceBest() {
+        if (orderCount == 0) {
+            best = NONE;
+            return;
+        }
+        int level = (int) (best - baseTick);
+        int step = bidSide ? -1 : 1;
+        while (level >= 0 && level < head.length && head[level] < 0) {
+            level += step;
+        }
+        best = (level >= 0 && level < head.length) ? baseTick + level : NONE;
+    }
+
+    private int ensureLevel(long tick) {
+        if (baseTick < 0) {
+            baseTick = Math.max(0, tick - INITIAL_LEVELS / 2);
+            resize(baseTick, INITIAL_LEVELS);
+        } else if (tick < baseTick || tick >= baseTick + head.length) {
+            long low = Math.min(baseTick, tick);
+            long high = Math.max(baseTick + head.length, tick + 1);
+            long span = Math.max(head.length * 2L, (high - low) * 2);
+            long newBase = Math.max(0, low - (span - (high - low)) / 2);
+            resize(newBase, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(span, high - newBase)));
+        }
+        return (int) (tick - baseTick);
+    }
+
+    private void resize(long newBase, int levels) {
+        int[] newHead = new int[levels];
+        int[] newTail = new int[levels];
+        long[] newQuantity = new long[levels];
+        Arrays.fill(newHead, -1);
+        Arrays.fill(newTail, -1);
+        int offset = (int) (baseTick - newBase);
+        for (int i = 0; i < head.length; i++) {
+            newHead[i + offset] = head[i];
+            newTail[i + offset] = tail[i];
+            newQuantity[i + offset] = levelQuantity[i];
+        }
+        head = newHead;
+        tail = newTail;
+        levelQuantity = newQuantity;
+        baseTick = newBase;
+    }
+}
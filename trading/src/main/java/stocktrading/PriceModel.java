@@ -0,0 +1,15 @@
+package stocktrading;
+
+import java.util.SplittableRandom;
+
+// A stochastic price process. Models read the simulator's per-symbol drift and
+// volatility arrays and produce log-returns for a contiguous range of symbols, so
+// one call covers a whole fork/join leaf.
+interface PriceModel {
+    // Called once per run, before the symbols are advanced in parallel
+    default void prepare(int steps, SplittableRandom random) {
+    }
+
+    // Writes the log-returns of symbols [from, to) for one step into returns[0, to - from)
+    void logReturns(MarketSimulator market, int from, int to, int step, double[] returns, SplittableRandom random);
+}
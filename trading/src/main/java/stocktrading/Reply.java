@@ -0,0 +1,62 @@
+package stocktrading;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Reusable completion slot; a client thread owns one and waits on it after publishing,
+// or a subclass reacts in onComplete without waiting
+class Reply {
+    static final int OK = 0;
+    static final int UNKNOWN_ACCOUNT = 1;
+    static final int UNKNOWN_STOCK = 2;
+    static final int INSUFFICIENT_FUNDS = 3;
+    static final int INSUFFICIENT_SHARES = 4;
+    static final int NOT_ENOUGH_AVAILABLE = 5;
+    static final int UNKNOWN_ORDER = 6;
+    static final int DUPLICATE_USER = 7;
+    static final int INVALID = 8;
+    static final int RISK_LIMIT = 9;
+    static final int WRONG_PARTITION = 10; // the symbol's book lives on another cluster node
+    static final int FAILED = 11;          // the exchange halted on an internal error; nothing was applied
+    static final int STATUS_COUNT = 12;
+
+    private volatile boolean done;
+    int status;
+    long orderId;
+    int filledQuantity;
+    long filledValue;
+    int cancelledQuantity;
+
+    void reset() {
+        done = false;
+        status = OK;
+        orderId = 0;
+        filledQuantity = 0;
+        filledValue = 0;
+        cancelledQuantity = 0;
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    void complete(int status) {
+        this.status = status;
+        this.done = true;
+        onComplete();
+    }
+
+    // Runs on the business-logic thread once the result fields are final
+    void onComplete() {
+    }
+
+    void await() {
+        int spins = 0;
+        while (!done) {
+            if (spins++ < 1000) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+    }
+}
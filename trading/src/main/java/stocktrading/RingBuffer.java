@@ -0,0 +1,121 @@
+package stocktrading;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Pre-allocated ring of mutable entries in the style of the LMAX Disruptor.
+// Producers claim a slot with next(), fill the entry in place and publish() it;
+// consumers follow through a SequenceBarrier. Nothing is allocated after construction.
+class RingBuffer<E> {
+    private static final VarHandle AVAILABLE = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Object[] entries;
+    private final int mask;
+    private final int indexShift;
+    private final boolean multiProducer;
+    private final Sequence cursor = new Sequence(-1);
+    private final Sequence gatingCache = new Sequence(-1);
+    private final int[] available;
+    private volatile Sequence[] gatingSequences = new Sequence[0];
+    private long nextValue = -1; // single producer only
+
+    public RingBuffer(int bufferSize, boolean multiProducer, Supplier<E> factory) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("Buffer size must be a power of 2");
+        }
+        this.entries = new Object[bufferSize];
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.multiProducer = multiProducer;
+        this.available = new int[multiProducer ? bufferSize : 0];
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = factory.get();
+            if (multiProducer) {
+                available[i] = -1;
+            }
+        }
+    }
+
+    // Consumers at the end of the pipeline; producers never lap the slowest of them
+    public void setGatingSequences(Sequence... sequences) {
+        this.gatingSequences = sequences;
+    }
+
+    public long next() {
+        if (!multiProducer) {
+            long next = ++nextValue;
+            long wrapPoint = next - entries.length;
+            if (wrapPoint > gatingCache.get()) {
+                long minimum;
+                while (wrapPoint > (minimum = Sequence.minimum(gatingSequences, next - 1))) {
+                    LockSupport.parkNanos(1);
+                }
+                gatingCache.set(minimum);
+            }
+            return next;
+        }
+
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            long wrapPoint = next - entries.length;
+            long cachedGating = gatingCache.get();
+            if (wrapPoint > cachedGating) {
+                long minimum = Sequence.minimum(gatingSequences, current);
+                if (wrapPoint > minimum) {
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                gatingCache.set(minimum);
+            } else if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    public void publish(long sequence) {
+        if (multiProducer) {
+            AVAILABLE.setRelease(available, (int) sequence & mask, (int) (sequence >>> indexShift));
+        } else {
+            cursor.set(sequence);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    public int getBufferSize() {
+        return entries.length;
+    }
+
+    public SequenceBarrier newBarrier(Sequence... dependents) {
+        return new SequenceBarrier(this, dependents);
+    }
+
+    boolean isAvailable(long sequence) {
+        if (!multiProducer) {
+            return sequence <= cursor.get();
+        }
+        return (int) AVAILABLE.getAcquire(available, (int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    long highestPublished(long lowerBound, long availableSequence) {
+        if (!multiProducer) {
+            return availableSequence;
+        }
+        for (long sequence = lowerBound; sequence <= availableSequence; sequence++) {
+            if (!isAvailable(sequence)) {
+                return sequence - 1;
+            }
+        }
+        return availableSequence;
+    }
+}
@@ -0,0 +1,242 @@
+package stocktrading;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+// Exchange-wide risk kept current as fills and prices arrive, so dashboards read stored
+// numbers instead of walking every account:
+//  - net shares and exposure per symbol, and in total, as running sums;
+//  - a net worth leaderboard and a value-at-risk leaderboard;
+//  - one-day historical VaR per account, at the current marks, over the returns of the last
+//    window market closes.
+// A fill marks its accounts for a VaR recompute at the end of the command batch. A market
+// close adds a return per symbol and recomputes every account in parallel. Used from the
+// business-logic thread.
+class RiskAnalytics {
+    static final double CONFIDENCE = 0.99;
+
+    // Precomputed view for readers on other threads, filled in by report()
+    static final class Report {
+        final int[] topNetWorth;
+        final long[] topNetWorthValue;
+        final long[] topNetWorthRisk;
+        final long[] topNetWorthBalance; // cash part of the net worth, the rest is the portfolio
+        final int[] topRisk;
+        final long[] topRiskValue;
+        int topNetWorthCount;
+        int topRiskCount;
+        int accountCount;
+        long[] netShares = new long[0];
+        long[] exposure = new long[0];
+        long netExposure;
+        long exchangeValueAtRisk;
+        int scenarios;
+
+        Report(int entries) {
+            topNetWorth = new int[entries];
+            topNetWorthValue = new long[entries];
+            topNetWorthRisk = new long[entries];
+            topNetWorthBalance = new long[entries];
+            topRisk = new int[entries];
+            topRiskValue = new long[entries];
+        }
+    }
+
+    private final IntFunction<User> accounts;
+    private final int window;
+    private final Leaderboard netWorth;
+    private final Leaderboard risk;
+    private final ThreadLocal<double[]> scratch;
+
+    // Per symbol
+    private long[] netShares = new long[16];
+    private long[] marks = new long[16];       // micros
+    private long[] closeMarks = new long[16];  // mark at the previous close
+    private double[][] returns = new double[16][]; // ring of close-to-close returns, slot = close % window
+    private int symbolCount = 0;
+    private long netExposure = 0;
+    private int closes = 0;
+
+    // Per account
+    private long[] valueAtRisk = new long[16]; // micros, as a positive loss
+    private boolean[] dirty = new boolean[16];
+    private int[] dirtyAccounts = new int[16];
+    private int dirtyCount = 0;
+    private int accountCount = 0;
+
+    public RiskAnalytics(IntFunction<User> accounts, int leaderboardSize, int window) {
+        this.accounts = accounts;
+        this.window = window;
+        this.netWorth = new Leaderboard(leaderboardSize, id -> {
+            User user = accounts.apply(id);
+            return user.getBalance() + user.getPortfolioValue();
+        });
+        this.risk = new Leaderboard(leaderboardSize, id -> valueAtRisk[id]);
+        this.scratch = ThreadLocal.withInitial(() -> new double[window]);
+    }
+
+    public void addSymbol(int symbolId, long price) {
+        if (symbolId >= marks.length) {
+            int capacity = Math.max(marks.length * 2, symbolId + 1);
+            netShares = Arrays.copyOf(netShares, capacity);
+            marks = Arrays.copyOf(marks, capacity);
+            closeMarks = Arrays.copyOf(closeMarks, capacity);
+            returns = Arrays.copyOf(returns, capacity);
+        }
+        marks[symbolId] = price;
+        closeMarks[symbolId] = price;
+        returns[symbolId] = new double[window];
+        symbolCount = Math.max(symbolCount, symbolId + 1);
+    }
+
+    public void addAccount(int accountId) {
+        if (accountId >= valueAtRisk.length) {
+            int capacity = Math.max(valueAtRisk.length * 2, accountId + 1);
+            valueAtRisk = Arrays.copyOf(valueAtRisk, capacity);
+            dirty = Arrays.copyOf(dirty, capacity);
+        }
+        accountCount = Math.max(accountCount, accountId + 1);
+        onNetWorthChange(accountId);
+    }
+
+    // Balance or market value moved
+    public void onNetWorthChange(int accountId) {
+        netWorth.update(accountId);
+    }
+
+    // Call after the account's position in symbolId has changed by quantityDelta
+    public void onPositionChange(int accountId, int symbolId, int quantityDelta) {
+        netShares[symbolId] += quantityDelta;
+        netExposure += quantityDelta * marks[symbolId];
+        if (!dirty[accountId]) {
+            dirty[accountId] = true;
+            if (dirtyCount == dirtyAccounts.length) {
+                dirtyAccounts = Arrays.copyOf(dirtyAccounts, dirtyCount * 2);
+            }
+            dirtyAccounts[dirtyCount++] = accountId;
+        }
+    }
+
+    public void onPriceChange(int symbolId, long price) {
+        netExposure += netShares[symbolId] * (price - marks[symbolId]);
+        marks[symbolId] = price;
+    }
+
+    // End of a trading period: every symbol's close-to-close return joins the scenarios,
+    // and every account's VaR is recomputed against the new set
+    public void closeMarket() {
+        int slot = closes % window;
+        for (int s = 0; s < symbolCount; s++) {
+            returns[s][slot] = closeMarks[s] > 0 ? (double) marks[s] / closeMarks[s] - 1 : 0;
+            closeMarks[s] = marks[s];
+        }
+        closes++;
+        IntStream.range(0, accountCount).parallel().forEach(id -> valueAtRisk[id] = computeValueAtRisk(id));
+        for (int i = 0; i < dirtyCount; i++) {
+            dirty[dirtyAccounts[i]] = false;
+        }
+        dirtyCount = 0;
+        risk.rebuild(accountCount);
+    }
+
+    // Brings the VaR of accounts that traded since the last call up to date
+    public void refresh() {
+        for (int i = 0; i < dirtyCount; i++) {
+            int accountId = dirtyAccounts[i];
+            dirty[accountId] = false;
+            valueAtRisk[accountId] = computeValueAtRisk(accountId);
+            risk.update(accountId);
+        }
+        dirtyCount = 0;
+    }
+
+    // Recomputes everything derived from account state, e.g. after a restore
+    public void rebuild() {
+        Arrays.fill(netShares, 0);
+        netExposure = 0;
+        for (int id = 0; id < accountCount; id++) {
+            PositionTable positions = accounts.apply(id).getPositions();
+            for (int i = 0; i < positions.size(); i++) {
+                netShares[positions.symbolAt(i)] += positions.quantityAt(i);
+            }
+        }
+        for (int s = 0; s < symbolCount; s++) {
+            netExposure += netShares[s] * marks[s];
+        }
+        IntStream.range(0, accountCount).parallel().forEach(id -> valueAtRisk[id] = computeValueAtRisk(id));
+        netWorth.rebuild(accountCount);
+        risk.rebuild(accountCount);
+    }
+
+    public long valueAtRisk(int accountId) { return valueAtRisk[accountId]; }
+    public long netExposure() { return netExposure; }
+
+    public void report(Report report) {
+        refresh();
+        if (netWorth.isStale()) {
+            netWorth.rebuild(accountCount);
+        }
+        if (risk.isStale()) {
+            risk.rebuild(accountCount);
+        }
+        report.topNetWorthCount = netWorth.copyTop(report.topNetWorth, report.topNetWorthValue);
+        for (int i = 0; i < report.topNetWorthCount; i++) {
+            report.topNetWorthRisk[i] = valueAtRisk[report.topNetWorth[i]];
+            report.topNetWorthBalance[i] = accounts.apply(report.topNetWorth[i]).getBalance();
+        }
+        report.topRiskCount = risk.copyTop(report.topRisk, report.topRiskValue);
+        report.accountCount = accountCount;
+        report.netShares = Arrays.copyOf(netShares, symbolCount);
+        report.exposure = new long[symbolCount];
+        for (int s = 0; s < symbolCount; s++) {
+            report.exposure[s] = netShares[s] * marks[s];
+        }
+        report.netExposure = netExposure;
+        report.scenarios = Math.min(closes, window);
+        report.exchangeValueAtRisk = valueAtRisk(netShares, symbolCount, scratch.get());
+    }
+
+    private long computeValueAtRisk(int accountId) {
+        PositionTable positions = accounts.apply(accountId).getPositions();
+        double[] pnl = scratch.get();
+        int scenarios = Math.min(closes, window);
+        Arrays.fill(pnl, 0, scenarios, 0);
+        for (int i = 0; i < positions.size(); i++) {
+            int quantity = positions.quantityAt(i);
+            if (quantity != 0) {
+                addScenarios(pnl, scenarios, positions.symbolAt(i), quantity);
+            }
+        }
+        return lossAtConfidence(pnl, scenarios);
+    }
+
+    private long valueAtRisk(long[] shares, int symbols, double[] pnl) {
+        int scenarios = Math.min(closes, window);
+        Arrays.fill(pnl, 0, scenarios, 0);
+        for (int s = 0; s < symbols; s++) {
+            if (shares[s] != 0) {
+                addScenarios(pnl, scenarios, s, shares[s]);
+            }
+        }
+        return lossAtConfidence(pnl, scenarios);
+    }
+
+    // Scenario k replays the k-th stored close-to-close return on today's position value
+    private void addScenarios(double[] pnl, int scenarios, int symbolId, long quantity) {
+        double value = (double) quantity * marks[symbolId];
+        double[] symbolReturns = returns[symbolId];
+        for (int k = 0; k < scenarios; k++) {
+            pnl[k] += value * symbolReturns[k];
+        }
+    }
+
+    private static long lossAtConfidence(double[] pnl, int scenarios) {
+        if (scenarios == 0) {
+            return 0;
+        }
+        Arrays.sort(pnl, 0, scenarios);
+        double loss = -pnl[(int) Math.floor((1 - CONFIDENCE) * scenarios)];
+        return Math.max(0, Math.round(loss));
+    }
+}
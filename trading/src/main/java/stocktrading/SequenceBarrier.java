@@ -0,0 +1,48 @@
+package stocktrading;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Tells a consumer how far it may read: up to what producers have published
+// and what the consumers it depends on have already processed.
+class SequenceBarrier {
+    private final RingBuffer<?> ringBuffer;
+    private final Sequence[] dependents;
+    private volatile boolean alerted = false;
+
+    SequenceBarrier(RingBuffer<?> ringBuffer, Sequence[] dependents) {
+        this.ringBuffer = ringBuffer;
+        this.dependents = dependents;
+    }
+
+    // Returns the highest sequence that is safe to read, or -1 once the barrier is alerted
+    public long waitFor(long sequence) {
+        int spins = 0;
+        while (true) {
+            if (alerted) {
+                return -1;
+            }
+            long available = ringBuffer.getCursor();
+            if (dependents.length > 0) {
+                available = Sequence.minimum(dependents, available);
+            }
+            if (available >= sequence) {
+                long highest = ringBuffer.highestPublished(sequence, available);
+                if (highest >= sequence) {
+                    return highest;
+                }
+            }
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else if (spins < 200) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(50_000);
+            }
+            spins++;
+        }
+    }
+
+    public void alert() {
+        alerted = true;
+    }
+}
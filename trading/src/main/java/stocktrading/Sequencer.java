@@ -0,0 +1,203 @@
+package stocktrading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Input stage -> single business-logic thread -> parallel output stages.
+// Any number of client threads publish Commands into a multi-producer ring; one
+// thread applies them in sequence order, and its executions go to an output ring
+// that journaling and fan-out handlers consume independently.
+//
+// A command that throws may have been half applied, so the first failure halts the
+// business logic for good: that command and every later one complete with Reply.FAILED
+// and nothing more is applied, while everything already published still reaches the
+// output stages. An output handler that throws only loses its event.
+class Sequencer {
+    private final RingBuffer<Command> commands;
+    private final RingBuffer<TradeEvent> trades;
+    private final BatchEventProcessor<Command> businessLogic;
+    private final List<BatchEventProcessor<TradeEvent>> outputs = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile Throwable failure; // first business logic failure, after which nothing is applied
+    private volatile Consumer<Throwable> failureListener = cause -> { };
+
+    @SafeVarargs
+    public Sequencer(int bufferSize, EventHandler<Command> businessHandler, EventHandler<TradeEvent>... outputHandlers) {
+        commands = new RingBuffer<>(bufferSize, true, Command::new);
+        trades = new RingBuffer<>(bufferSize, false, TradeEvent::new);
+
+        businessLogic = new BatchEventProcessor<>(commands, commands.newBarrier(),
+                                                  (command, sequence, endOfBatch) -> {
+                                                      if (failure != null) {
+                                                          reject(command);
+                                                      } else {
+                                                          businessHandler.onEvent(command, sequence, endOfBatch);
+                                                      }
+                                                  },
+                                                  this::businessFailed);
+        commands.setGatingSequences(businessLogic.getSequence());
+
+        Sequence[] outputSequences = new Sequence[outputHandlers.length];
+        for (int i = 0; i < outputHandlers.length; i++) {
+            BatchEventProcessor<TradeEvent> processor =
+                new BatchEventProcessor<>(trades, trades.newBarrier(), outputHandlers[i], Sequencer::outputFailed);
+            outputs.add(processor);
+            outputSequences[i] = processor.getSequence();
+        }
+        trades.setGatingSequences(outputSequences);
+    }
+
+    public void start() {
+        threads.add(startThread(businessLogic, "business-logic"));
+        for (int i = 0; i < outputs.size(); i++) {
+            threads.add(startThread(outputs.get(i), "output-" + i));
+        }
+    }
+
+    // Waits for everything already published to reach every stage, then stops the threads
+    public void stop() {
+        long lastCommand = commands.getCursor();
+        while (businessLogic.getSequence().get() < lastCommand) {
+            Thread.yield();
+        }
+        long lastTrade = trades.getCursor();
+        for (BatchEventProcessor<TradeEvent> output : outputs) {
+            while (output.getSequence().get() < lastTrade) {
+                Thread.yield();
+            }
+        }
+        businessLogic.halt();
+        for (BatchEventProcessor<TradeEvent> output : outputs) {
+            output.halt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Runs once, on the business-logic thread, when it halts
+    public void onFailure(Consumer<Throwable> listener) {
+        failureListener = listener;
+    }
+
+    public Throwable failure() {
+        return failure;
+    }
+
+    private void businessFailed(Throwable cause, long sequence, Command command) {
+        if (failure == null) {
+            failure = cause;
+            String name = command.type > 0 && command.type < Command.NAMES.length ? Command.NAMES[command.type] : "unknown";
+            System.err.println("FATAL: business logic failed applying command " + sequence + " (" + name
+                               + "); the exchange has halted and applies nothing more");
+            cause.printStackTrace();
+            failureListener.accept(cause);
+        }
+        reject(command);
+    }
+
+    private static void reject(Command command) {
+        Reply reply = command.reply;
+        command.payload = null;
+        command.reply = null;
+        if (reply != null && !reply.isDone()) {
+            reply.complete(Reply.FAILED);
+        }
+    }
+
+    private static void outputFailed(Throwable cause, long sequence, TradeEvent event) {
+        System.err.println("Trade event " + sequence + " failed in an output stage:");
+        cause.printStackTrace();
+    }
+
+    // Business-logic thread only
+    public void publishBatch(TradeBatch batch) {
+        long sequence = trades.next();
+        trades.get(sequence).setBatch(batch);
+        trades.publish(sequence);
+    }
+
+    // Commands published but not yet applied, and trade events not yet through every output stage
+    public long commandBacklog() {
+        return commands.getCursor() - businessLogic.getSequence().get();
+    }
+
+    public long tradeBacklog() {
+        long slowest = Long.MAX_VALUE;
+        for (BatchEventProcessor<TradeEvent> output : outputs) {
+            slowest = Math.min(slowest, output.getSequence().get());
+        }
+        return outputs.isEmpty() ? 0 : trades.getCursor() - slowest;
+    }
+
+    // Callable from any thread; the reply, if any, completes once the command is applied
+    public void publish(byte type, int accountId, int bookId, byte side, long price, int quantity,
+                        long orderId, Object payload, Reply reply) {
+        long sequence = commands.next();
+        commands.get(sequence).set(type, accountId, bookId, side, price, quantity, orderId, payload, reply);
+        commands.publish(sequence);
+    }
+
+    // Business-logic thread only
+    public void publishTrade(int bookId, long buyOrderId, int buyer, long sellOrderId, int seller,
+                             long priceTicks, int quantity) {
+        long sequence = trades.next();
+        trades.get(sequence).set(bookId, buyOrderId, buyer, sellOrderId, seller, priceTicks, quantity);
+        trades.publish(sequence);
+    }
+
+    // Business-logic thread only
+    public void publishAccountEvent(byte type, User user, long amount) {
+        long sequence = trades.next();
+        trades.get(sequence).setAccountEvent(type, user, amount);
+        trades.publish(sequence);
+    }
+
+    // Business-logic thread only
+    public void publishOrderEvent(byte type, User user, int bookId, byte side, long orderId, long limitPrice,
+                                  int quantity) {
+        long sequence = trades.next();
+        trades.get(sequence).setOrderEvent(type, user, bookId, side, orderId, limitPrice, quantity);
+        trades.publish(sequence);
+    }
+
+    // Business-logic thread only
+    public void publishPriceEvent(int bookId, long price, long previousPrice) {
+        long sequence = trades.next();
+        trades.get(sequence).setPriceEvent(bookId, price, previousPrice);
+        trades.publish(sequence);
+    }
+
+    // Business-logic thread only
+    public void publishListingEvent(int bookId, long price, int shares) {
+        long sequence = trades.next();
+        trades.get(sequence).setListingEvent(bookId, price, shares);
+        trades.publish(sequence);
+    }
+
+    public void publishTransferEvent(byte step, User user, int node, byte commit, long amount, long transferId) {
+        long sequence = trades.next();
+        trades.get(sequence).setTransferEvent(step, user, node, commit, amount, transferId);
+        trades.publish(sequence);
+    }
+
+    public void publishConditionalEvent(byte type, User user, int bookId, byte side, long orderId, byte kind,
+                                        long trigger, long limitPrice, long linkedOrderId, int quantity) {
+        long sequence = trades.next();
+        trades.get(sequence).setConditionalEvent(type, user, bookId, side, orderId, kind, trigger, limitPrice,
+                                                 linkedOrderId, quantity);
+        trades.publish(sequence);
+    }
+
+    private static Thread startThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
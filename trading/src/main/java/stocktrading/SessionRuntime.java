@@ -0,0 +1,91 @@
+package stocktrading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs any number of concurrent user sessions on a few worker threads. A session never
+// blocks a thread while its request is in the sequencer: its completion, on the
+// business-logic thread, puts it back on its worker's ready queue, and the worker then
+// runs its next step. All account and stock state stays behind the sequencer, whose
+// single business thread is the one mailbox every session's requests go through, so no
+// locks are needed around User or Stock.
+class SessionRuntime {
+    private final Sequencer sequencer;
+    private final List<ConcurrentLinkedQueue<TradingSession>> ready; // per worker
+    private final long[][] outcomes; // per worker, completed requests by Reply status
+    private final AtomicInteger live = new AtomicInteger();
+
+    SessionRuntime(Sequencer sequencer, int workers) {
+        this.sequencer = sequencer;
+        this.ready = new ArrayList<>(workers);
+        this.outcomes = new long[workers][Reply.STATUS_COUNT];
+        for (int i = 0; i < workers; i++) {
+            ready.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    public int workers() { return ready.size(); }
+
+    // Runs every session to the end of its script and returns once all are done
+    public void run(TradingSession[] sessions) {
+        live.set(sessions.length);
+        for (TradingSession session : sessions) {
+            ready.get(session.worker()).add(session);
+        }
+        Thread[] threads = new Thread[ready.size()];
+        for (int i = 0; i < threads.length; i++) {
+            int worker = i;
+            threads[i] = new Thread(() -> work(worker), "session-worker-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void work(int worker) {
+        ConcurrentLinkedQueue<TradingSession> queue = ready.get(worker);
+        int idle = 0;
+        while (live.get() > 0) {
+            TradingSession session = queue.poll();
+            if (session == null) {
+                if (idle++ < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(20_000);
+                }
+                continue;
+            }
+            idle = 0;
+            if (!session.step(sequencer)) {
+                live.decrementAndGet();
+            }
+        }
+    }
+
+    // Business-logic thread: a session's request completed
+    void ready(TradingSession session) {
+        ready.get(session.worker()).add(session);
+    }
+
+    // Worker thread of the session
+    void completed(TradingSession session, int status) {
+        outcomes[session.worker()][status]++;
+    }
+
+    public long completed(int status) {
+        long total = 0;
+        for (long[] counts : outcomes) {
+            total += counts[status];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,75 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Background thread that keeps its own replica of the exchange a journal tail behind the
+// business thread and writes it out every interval, and once more when finished. The
+// replica is built from the journal alone, so taking a snapshot never pauses trading.
+class SnapshotWriter extends Thread {
+    interface Source {
+        ExchangeReplica load() throws IOException;
+    }
+
+    private final TransactionJournal journal;
+    private final Path file;
+    private final long intervalMillis;
+    private final Source source;
+    private final LatencyHistogram writeLatency;
+    private volatile boolean stopping = false;
+    private long written = -1; // journal position of the last snapshot written
+
+    SnapshotWriter(TransactionJournal journal, Path file, long intervalMillis, Source source,
+                   LatencyHistogram writeLatency) {
+        super("snapshot-writer");
+        setDaemon(true);
+        this.journal = journal;
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+        this.source = source;
+        this.writeLatency = writeLatency;
+    }
+
+    @Override
+    public void run() {
+        try {
+            ExchangeReplica replica = source.load();
+            replica.indexJournal(journal);
+            while (true) {
+                boolean done = stopping;
+                long start = System.nanoTime();
+                replica.apply(journal, journal.size());
+                if (replica.journalPosition() != written) {
+                    replica.write(file);
+                    written = replica.journalPosition();
+                    writeLatency.recordSince(start);
+                }
+                if (done) {
+                    return;
+                }
+                synchronized (this) {
+                    if (!stopping) {
+                        wait(intervalMillis);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write exchange snapshot: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writes a last snapshot of everything journaled so far; call once the journal is idle
+    void finish() {
+        synchronized (this) {
+            stopping = true;
+            notifyAll();
+        }
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package stocktrading;
+
+class Stock {
+    private String symbol;
+    private String companyName;
+    private long currentPrice; // micros
+    private long previousPrice;
+    private int availableShares;
+    
+    public Stock(String symbol, String companyName, long initialPrice, int shares) {
+        this.symbol = symbol;
+        this.companyName = companyName;
+        this.currentPrice = initialPrice;
+        this.previousPrice = initialPrice;
+        this.availableShares = shares;
+    }
+    
+    public void updatePrice(long newPrice) {
+        this.previousPrice = this.currentPrice;
+        this.currentPrice = newPrice;
+    }
+    
+    // Last-trade price comes from executions in the order book
+    public void recordExecution(long price) {
+        this.previousPrice = this.currentPrice;
+        this.currentPrice = price;
+    }
+    
+    public void updateShares(int change) {
+        this.availableShares += change;
+    }
+    
+    public long getPriceChange() {
+        return currentPrice - previousPrice;
+    }
+    
+    // Getters
+    public String getSymbol() { return symbol; }
+    public String getCompanyName() { return companyName; }
+    public long getCurrentPrice() { return currentPrice; }
+    public long getPreviousPrice() { return previousPrice; }
+    public int getAvailableShares() { return availableShares; }
+}
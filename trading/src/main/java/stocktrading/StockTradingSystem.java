@@ -0,0 +1,2430 @@
+package stocktrading;
+
+import java.util.*;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+public class StockTradingSystem {
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private static final int BAR_VIEW_LIMIT = 30;
+    private static final int LEADERBOARD_VIEW_LIMIT = 20;
+    private static final long DAY_MILLIS = 24 * 3_600_000L;
+    private static final double TRADING_DAY = 1.0 / 252; // one simulated move, in years
+    private static final double DEFAULT_DRIFT = 0.05;
+    private static final double DEFAULT_VOLATILITY = 0.45; // roughly the old +/-5% daily range
+    private static final int BACKTEST_SHARES = 100;
+    
+    // Accounts by account id, stocks by symbol id; both grow without a cap
+    private static PagedStore<User> users = new PagedStore<>();
+    private static PagedStore<Stock> stocks = new PagedStore<>();
+    private static TransactionJournal journal;
+    private static BarHistory bars;
+    private static Path snapshotFile;
+    private static SnapshotWriter snapshots;
+    private static AccountArena arena; // with -Dtrading.accounts.arena, accounts live off-heap in that file
+    private static PartitionMap partitions; // with -Dtrading.cluster, this is one node of a partitioned exchange
+    private static int nodeId = 0;
+    private static JournalReplicator replicator;
+    
+    private static Scanner scanner = new Scanner(System.in);
+    private static DecimalFormat df = new DecimalFormat("#.##");
+    private static SymbolTable symbols = new SymbolTable();
+    private static OpenAddressingIndex usernameIndex = new OpenAddressingIndex(1024);
+    private static MatchingEngine engine = new MatchingEngine(StockTradingSystem::settleExecution);
+    private static ConditionalOrders conditionals = new ConditionalOrders();
+    private static BitSet movedPrices = new BitSet(); // symbols ticked since the batch's price records
+    private static CashTransfers transfers = new CashTransfers();
+    private static RiskAnalytics analytics = new RiskAnalytics(users::get,
+                                                               Integer.getInteger("trading.analytics.top", 100),
+                                                               Integer.getInteger("trading.var.window", 250));
+    private static PortfolioValuation valuation = new PortfolioValuation(analytics::onNetWorthChange);
+    private static PreTradeRisk risk = new PreTradeRisk(
+            Money.parse(System.getProperty("trading.risk.maxOrderNotional", "10000000")),
+            Integer.getInteger("trading.risk.maxOpenOrders", 1000),
+            Integer.getInteger("trading.risk.maxOrderQuantity", 1000000),
+            Integer.getInteger("trading.risk.maxPosition", 10000000),
+            Integer.getInteger("trading.risk.priceBand", 50));
+    private static MarketSimulator simulator = new MarketSimulator(createPriceModel(), TRADING_DAY,
+                                                                   Long.getLong("trading.sim.seed", System.nanoTime()));
+    private static MarketDataPublisher marketData = new MarketDataPublisher(
+            Integer.getInteger("trading.marketdata.capacity", 1 << 16));
+    
+    // Per-operation latency, recorded by whichever single thread performs the operation
+    private static Metrics metrics = new Metrics();
+    private static LatencyHistogram queueWait = metrics.histogram("command_queue_wait",
+            "Time a command waits in the ring before the business thread applies it");
+    private static LatencyHistogram[] commandLatency = commandHistograms();
+    private static LatencyHistogram journalLatency = metrics.histogram("journal_append",
+            "Journal write of one trade, order or account event");
+    private static LatencyHistogram marketMoveLatency = metrics.histogram("market_move",
+            "One simulated market movement across every stock, from the console");
+    private static LatencyHistogram snapshotLatency = metrics.histogram("snapshot_write",
+            "Bringing the snapshot replica forward and writing it out");
+    private static Metrics.Counter executions = metrics.counter("executions", "Executions settled");
+    private static Metrics.Counter sharesTraded = metrics.counter("shares_traded", "Shares changing hands");
+    private static Metrics.Counter conditionalsFired = metrics.counter("conditional_fired",
+            "Conditional orders triggered and submitted");
+    private static Metrics.Counter conditionalsRejected = metrics.counter("conditional_rejected",
+            "Triggered conditional orders the exchange turned down");
+    private static MetricsEndpoint metricsEndpoint;
+    private static long lastStatsView = System.nanoTime();
+    private static Map<String, Long> lastStatsCounts = new HashMap<>();
+    
+    // All state changes go through the sequencer and are applied by its business-logic thread
+    private static FanOutHandler fanOut = new FanOutHandler();
+    private static Sequencer sequencer = new Sequencer(1024, StockTradingSystem::applyCommand,
+                                                       StockTradingSystem::journalEvent, fanOut);
+    private static ThreadLocal<Reply> replies = ThreadLocal.withInitial(Reply::new);
+    private static TradeBatch batch; // business thread only: set while a basket runs
+    private static Reply basketReply = new Reply();
+    private static long replayMillis = 0; // business thread only: historical time of the tick being applied
+    
+    public static void main(String[] args) {
+        System.out.println("=== STOCK TRADING SIMULATION SYSTEM ===");
+        System.out.println("Welcome to the Stock Trading Simulator!");
+        
+        // Offline modes work on tick files alone and never open the exchange
+        if (args.length > 2 && args[0].equals("--import-ticks")) {
+            runImportTicks(Paths.get(args[1]), Paths.get(args[2]));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--backtest")) {
+            runBacktest(Paths.get(args[1]),
+                        parseWindows(args.length > 2 ? args[2] : "5,10,20,50"),
+                        parseWindows(args.length > 3 ? args[3] : "50,100,200,400"));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--accounts")) {
+            runAccountReport(Paths.get(args[1]), args.length > 2 ? Long.parseLong(args[2]) : 0);
+            return;
+        }
+        
+        // One node of a partitioned cluster: the list of every node's gateway, and which one this is
+        if (System.getProperty("trading.cluster") != null) {
+            partitions = PartitionMap.parse(System.getProperty("trading.cluster"));
+            nodeId = Integer.getInteger("trading.cluster.node", 0);
+            if (nodeId < 0 || nodeId >= partitions.nodeCount()) {
+                System.out.println("Cluster node " + nodeId + " is not in " + System.getProperty("trading.cluster"));
+                return;
+            }
+            // Nodes move cash for each other, so they only take those requests from a node that knows the secret
+            if (System.getProperty("trading.cluster.secret", "").isEmpty()) {
+                System.out.println("A cluster node needs -Dtrading.cluster.secret, the same on every node");
+                return;
+            }
+        }
+        
+        Path journalDirectory = Paths.get(System.getProperty("trading.journal.dir", "journal"));
+        snapshotFile = Paths.get(System.getProperty("trading.snapshot.file",
+                                                    journalDirectory.resolve("exchange.snapshot").toString()));
+        try {
+            bars = BarHistory.open(Paths.get(System.getProperty("trading.bars.dir", "bars")));
+        } catch (IOException e) {
+            System.out.println("Could not open price history: " + e.getMessage());
+            return;
+        }
+        // The arena is rebuilt from the snapshot and journal on every start, like the heap accounts
+        if (System.getProperty("trading.accounts.arena") != null) {
+            int capacity = Integer.getInteger("trading.accounts.capacity", 1 << 20);
+            try {
+                arena = AccountArena.create(Paths.get(System.getProperty("trading.accounts.arena")), capacity,
+                                            Integer.getInteger("trading.accounts.positionBlocks", capacity),
+                                            Integer.getInteger("trading.accounts.nameBytes", capacity * 64));
+            } catch (IOException e) {
+                System.out.println("Could not create account arena: " + e.getMessage());
+                return;
+            }
+        }
+        
+        // Start from the latest snapshot, or the sample data, and replay the journal tail after it
+        long restoreStart = System.nanoTime();
+        ExchangeReplica exchange;
+        try {
+            exchange = loadExchange();
+        } catch (IOException e) {
+            System.out.println("Could not load exchange snapshot: " + e.getMessage());
+            return;
+        }
+        // The snapshot's journal index spares the journal from indexing what came before it
+        try {
+            journal = TransactionJournal.open(journalDirectory, TransactionJournal.DEFAULT_RECORDS_PER_SEGMENT,
+                                              exchange.journalIndex());
+        } catch (IOException e) {
+            System.out.println("Could not open transaction journal: " + e.getMessage());
+            return;
+        }
+        // A standby applies a leader's journal as it arrives and takes over once the leader is gone
+        if (args.length > 1 && args[0].equals("--standby")) {
+            if (System.getProperty("trading.replication.secret", "").isEmpty()) {
+                System.out.println("A standby needs -Dtrading.replication.secret, as set on its leader");
+                return;
+            }
+            exchange.apply(journal, journal.size());
+            try {
+                new JournalFollower(PartitionMap.parseAddress(args[1]), journal, exchange,
+                                    Integer.getInteger("trading.standby.timeout", 2000),
+                                    System.getProperty("trading.replication.secret")).follow();
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.out.println("Taking over from " + args[1] + " at journal record " + journal.size());
+            args = args.length > 2 ? new String[] {"--server", args[2]} : new String[] {"--server"};
+            restoreStart = System.nanoTime();
+        }
+        long tailStart = exchange.journalPosition();
+        exchange.apply(journal, journal.size());
+        install(exchange);
+        System.out.printf("Restored %d accounts, %d stocks and %d resting orders in %.1f ms (%d journal records replayed)%n",
+                          users.size(), stocks.size(), exchange.orders().size(),
+                          (System.nanoTime() - restoreStart) / 1e6, exchange.journalPosition() - tailStart);
+        snapshots = new SnapshotWriter(journal, snapshotFile,
+                                       Long.getLong("trading.snapshot.interval", 60) * 1000,
+                                       StockTradingSystem::loadExchange, snapshotLatency);
+        snapshots.start();
+        // Replication listens on the loopback address unless told otherwise, and needs a secret
+        int replicationPort = Integer.getInteger("trading.replication.port", -1);
+        if (replicationPort >= 0 && System.getProperty("trading.replication.secret", "").isEmpty()) {
+            System.out.println("Journal replication needs -Dtrading.replication.secret, shared with the standbys");
+        } else if (replicationPort >= 0) {
+            try {
+                String host = System.getProperty("trading.replication.address");
+                InetAddress address = host != null ? InetAddress.getByName(host) : InetAddress.getLoopbackAddress();
+                replicator = new JournalReplicator(journal, new InetSocketAddress(address, replicationPort),
+                                                   System.getProperty("trading.replication.secret"));
+                replicator.start();
+                System.out.println("Replicating the journal to standbys on port " + replicator.getPort());
+            } catch (IOException e) {
+                System.out.println("Could not start journal replication: " + e.getMessage());
+            }
+        }
+        sequencer.start();
+        startMetrics();
+        
+        if (args.length > 0 && args[0].equals("--load-test")) {
+            runLoadTest(args.length > 1 ? Integer.parseInt(args[1]) : 10000,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 1000,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 0);
+            shutdown();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--stress")) {
+            runStress(args.length > 1 ? Integer.parseInt(args[1]) : 10000,
+                      args.length > 2 ? Integer.parseInt(args[2]) : 100,
+                      args.length > 3 ? Integer.parseInt(args[3])
+                                      : Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            shutdown();
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--replay")) {
+            runReplay(Paths.get(args[1]), args.length > 2 ? Double.parseDouble(args[2]) : 0);
+            shutdown();
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--basket")) {
+            runBasket(Paths.get(args[1]));
+            shutdown();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args.length > 1 ? Integer.parseInt(args[1]) : 9090);
+            return;
+        }
+        
+        boolean running = true;
+        while (running) {
+            displayMainMenu();
+            int choice = getValidChoice(1, 11);
+            
+            switch (choice) {
+                case 1:
+                    userLogin();
+                    break;
+                case 2:
+                    registerUser();
+                    break;
+                case 3:
+                    viewMarketData();
+                    break;
+                case 4:
+                    viewAllStocks();
+                    break;
+                case 5:
+                    viewAllUsers();
+                    break;
+                case 6:
+                    viewTransactionHistory();
+                    break;
+                case 7:
+                    simulateMarketMovement();
+                    break;
+                case 8:
+                    viewPriceHistory();
+                    break;
+                case 9:
+                    viewSystemStats();
+                    break;
+                case 10:
+                    viewRiskAnalytics();
+                    break;
+                case 11:
+                    running = false;
+                    System.out.println("Thank you for using Stock Trading Simulator!");
+                    break;
+            }
+        }
+        shutdown();
+        scanner.close();
+    }
+    
+    // Drains the sequencer, then leaves a snapshot of everything it journaled for the next start
+    private static void shutdown() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        sequencer.stop();
+        snapshots.finish();
+        bars.close();
+        journal.force();
+        if (replicator != null) {
+            replicator.close();
+        }
+    }
+    
+    private static LatencyHistogram[] commandHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[Command.NAMES.length];
+        for (int type = 0; type < histograms.length; type++) {
+            histograms[type] = metrics.histogram(Command.NAMES[type], "Business thread time applying one command");
+        }
+        return histograms;
+    }
+    
+    // JMX always; the scrape endpoint only with -Dtrading.metrics.port (0 picks a free port)
+    private static void startMetrics() {
+        metrics.gauge("command_backlog", "Commands published but not yet applied", sequencer::commandBacklog);
+        metrics.gauge("trade_backlog", "Trade events not yet through every output stage", sequencer::tradeBacklog);
+        metrics.gauge("business_halted", "1 once the business logic has failed and stopped applying commands",
+                      () -> sequencer.failure() != null ? 1 : 0);
+        metrics.gauge("journal_records", "Journal record slots written", journal::size);
+        metrics.gauge("accounts", "Registered accounts", users::size);
+        metrics.gauge("net_exposure_micros", "Market value of every account position", analytics::netExposure);
+        if (replicator != null) {
+            metrics.gauge("replicated_records", "Journal records sent to the furthest standby", replicator::shipped);
+        }
+        metrics.watchGarbageCollection();
+        metrics.register();
+        
+        int port = Integer.getInteger("trading.metrics.port", -1);
+        if (port >= 0) {
+            try {
+                metricsEndpoint = new MetricsEndpoint(metrics, port);
+                metricsEndpoint.start();
+                System.out.println("Metrics at http://localhost:" + metricsEndpoint.getPort() + "/metrics");
+            } catch (IOException e) {
+                System.out.println("Could not start metrics endpoint: " + e.getMessage());
+            }
+        }
+    }
+    
+    private static ExchangeReplica loadExchange() throws IOException {
+        return Files.exists(snapshotFile) ? ExchangeReplica.load(snapshotFile) : sampleExchange();
+    }
+    
+    // The state every journal starts from: its records are applied on top of the sample data
+    private static ExchangeReplica sampleExchange() {
+        ExchangeReplica exchange = new ExchangeReplica();
+        
+        // Initialize sample stocks
+        exchange.listStock(new Stock("AAPL", "Apple Inc.", Money.of(150.00), 1000000));
+        exchange.listStock(new Stock("GOOGL", "Alphabet Inc.", Money.of(2800.00), 500000));
+        exchange.listStock(new Stock("MSFT", "Microsoft Corporation", Money.of(300.00), 800000));
+        exchange.listStock(new Stock("AMZN", "Amazon.com Inc.", Money.of(3200.00), 600000));
+        exchange.listStock(new Stock("TSLA", "Tesla Inc.", Money.of(800.00), 400000));
+        exchange.listStock(new Stock("FB", "Meta Platforms Inc.", Money.of(350.00), 700000));
+        exchange.listStock(new Stock("NVDA", "NVIDIA Corporation", Money.of(600.00), 300000));
+        exchange.listStock(new Stock("NFLX", "Netflix Inc.", Money.of(500.00), 200000));
+        
+        // Initialize sample users
+        User admin = addSampleUser(exchange, "admin", "admin123", "Admin User", Money.of(100000.00));
+        User john = addSampleUser(exchange, "john", "pass123", "John Doe", Money.of(50000.00));
+        User jane = addSampleUser(exchange, "jane", "pass456", "Jane Smith", Money.of(75000.00));
+        
+        // Add some initial holdings (symbol ids follow the listing order above)
+        addSampleHolding(exchange, john, 0, 10, Money.of(150.00));
+        addSampleHolding(exchange, john, 1, 5, Money.of(2800.00));
+        addSampleHolding(exchange, jane, 2, 15, Money.of(300.00));
+        addSampleHolding(exchange, jane, 4, 8, Money.of(800.00));
+        return exchange;
+    }
+    
+    // Every cluster node starts from the same sample, keeping only the cash of the accounts it
+    // is home to and the holdings in the symbols it owns; those holdings were paid for up front
+    private static User addSampleUser(ExchangeReplica exchange, String username, String password, String name,
+                                      long balance) {
+        return exchange.addUser(username, Credentials.hash(password), name, isLocal(username) ? balance : 0);
+    }
+    
+    private static void addSampleHolding(ExchangeReplica exchange, User user, int symbolId, int shares, long price) {
+        if (partitions == null) {
+            user.buyStock(symbolId, shares, price);
+        } else if (isLocal(exchange.stocks().get(symbolId).getSymbol())) {
+            user.getPositions().restore(symbolId, shares, shares * price, 0);
+        }
+    }
+    
+    // Whether this node owns a symbol or is an account's home; always outside a cluster
+    private static boolean isLocal(String key) {
+        return partitions == null || partitions.ownerOf(key) == nodeId;
+    }
+    
+    // Adopts a replica's stocks and accounts and rests its orders back under their old ids,
+    // with the reservations they held; runs before the sequencer starts
+    private static void install(ExchangeReplica exchange) {
+        for (Stock stock : exchange.stocks()) {
+            listStock(stock);
+        }
+        for (User restored : exchange.users()) {
+            User user = arena != null ? ArenaUser.copyOf(arena, restored) : restored;
+            users.add(user);
+            usernameIndex.put(user.getUsername(), user.getAccountId());
+            analytics.addAccount(user.getAccountId());
+            PositionTable positions = user.getPositions();
+            for (int i = 0; i < positions.size(); i++) {
+                if (positions.quantityAt(i) != 0) {
+                    valuation.onPositionChange(user, positions.symbolAt(i), positions.quantityAt(i));
+                }
+            }
+        }
+        for (ExchangeReplica.RestingOrder order : exchange.orders()) {
+            User user = users.get(order.accountId);
+            long reservePrice = PreTradeRisk.reservePrice(order.limitPrice, stocks.get(order.bookId).getCurrentPrice());
+            engine.restore(order.orderId, order.bookId, order.accountId, order.side, order.limitPrice, order.quantity);
+            risk.restore(user, order.bookId, order.side, reservePrice, order.quantity);
+        }
+        engine.finishRestore();
+        // Trailing stops trail from the current price again: the extremes they saw are not journaled
+        for (ExchangeReplica.ConditionalOrder order : exchange.conditionals()) {
+            conditionals.restore(order.orderId, order.bookId, order.accountId, order.side, order.kind,
+                                 MatchingEngine.toTicks(order.trigger), order.limitPrice, order.linkedOrderId,
+                                 order.quantity, MatchingEngine.toTicks(stocks.get(order.bookId).getCurrentPrice()));
+        }
+        conditionals.finishRestore();
+        // Cash held for other nodes stays reserved until their coordinators finish the transfers
+        CashTransfers restored = exchange.transfers();
+        transfers.restoreLastTransferId(restored.lastTransferId());
+        for (CashTransfers.Transfer transfer : restored.transfers()) {
+            transfers.begin(transfer.transferId, transfer.accountId, transfer.source, transfer.amount);
+            if (transfer.credited) {
+                transfers.credit(transfer.transferId, transfer.amount);
+            }
+        }
+        for (CashTransfers.Hold hold : restored.holds()) {
+            transfers.hold(hold.transferId, hold.accountId, hold.amount);
+            users.get(hold.accountId).reserveCash(hold.amount);
+        }
+        analytics.rebuild();
+        // Subscribers start from the restored books rather than an empty quote
+        int stockCount = stocks.size();
+        for (int i = 0; i < stockCount; i++) {
+            publishQuote(i);
+        }
+    }
+    
+    // The interned symbol id is also the stock's slot and its order book id
+    static int listStock(Stock stock) {
+        if (symbols.idOf(stock.getSymbol()) >= 0) {
+            return symbols.idOf(stock.getSymbol());
+        }
+        int symbolId = symbols.intern(stock.getSymbol());
+        stocks.add(stock);
+        engine.addBook();
+        conditionals.addSymbol(symbolId);
+        valuation.addSymbol(symbolId, stock.getCurrentPrice());
+        analytics.addSymbol(symbolId, stock.getCurrentPrice());
+        risk.addSymbol(symbolId);
+        simulator.addSymbol(symbolId, Money.toDouble(stock.getCurrentPrice()), DEFAULT_DRIFT, DEFAULT_VOLATILITY);
+        marketData.addSymbol(symbolId);
+        publishQuote(symbolId);
+        return symbolId;
+    }
+    
+    // Position and price changes go through these two so account valuations stay in step
+    // Bars follow a replayed tick's own time, so a replay builds the same bars however fast it runs
+    private static long barTime() {
+        return replayMillis != 0 ? replayMillis : System.currentTimeMillis();
+    }
+    
+    private static void applyFill(User user, int symbolId, byte side, int shares, long price) {
+        if (side == OrderBook.BUY) {
+            user.buyStock(symbolId, shares, price);
+            valuation.onPositionChange(user, symbolId, shares);
+            analytics.onPositionChange(user.getAccountId(), symbolId, shares);
+        } else {
+            user.sellStock(symbolId, shares, price);
+            valuation.onPositionChange(user, symbolId, -shares);
+            analytics.onPositionChange(user.getAccountId(), symbolId, -shares);
+        }
+    }
+    
+    private static void markPrice(int symbolId, long price, boolean execution) {
+        Stock stock = stocks.get(symbolId);
+        if (execution) {
+            stock.recordExecution(price);
+        } else {
+            stock.updatePrice(price);
+        }
+        valuation.onPriceChange(symbolId, price);
+        analytics.onPriceChange(symbolId, price);
+        conditionals.onPrice(symbolId, MatchingEngine.toTicks(price));
+    }
+    
+    private static User addUser(String username, String passwordHash, String name, long initialBalance) {
+        User user = arena != null ? new ArenaUser(arena, arena.addAccount(username, name, initialBalance), passwordHash)
+                                  : new HeapUser(users.size(), username, passwordHash, name, initialBalance);
+        users.add(user);
+        usernameIndex.put(username, user.getAccountId());
+        analytics.addAccount(user.getAccountId());
+        return user;
+    }
+    
+    private static void displayMainMenu() {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("MAIN MENU");
+        System.out.println("=".repeat(60));
+        System.out.println("1. User Login");
+        System.out.println("2. Register New User");
+        System.out.println("3. View Market Data");
+        System.out.println("4. View All Stocks");
+        System.out.println("5. View All Users");
+        System.out.println("6. View Transaction History");
+        System.out.println("7. Simulate Market Movement");
+        System.out.println("8. View Price History");
+        System.out.println("9. View System Stats");
+        System.out.println("10. View Risk Analytics");
+        System.out.println("11. Exit");
+        System.out.println("=".repeat(60));
+        System.out.print("Enter your choice (1-11): ");
+    }
+    
+    private static int getValidChoice(int min, int max) {
+        while (true) {
+            try {
+                int choice = Integer.parseInt(scanner.nextLine().trim());
+                if (choice >= min && choice <= max) {
+                    return choice;
+                } else {
+                    System.out.println("Please enter a number between " + min + " and " + max + ".");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid number.");
+            }
+        }
+    }
+    
+    private static void userLogin() {
+        System.out.println("\n--- USER LOGIN ---");
+        System.out.print("Enter username: ");
+        String username = scanner.nextLine().trim();
+        System.out.print("Enter password: ");
+        String password = scanner.nextLine().trim();
+        
+        User user = findUserByCredentials(username, password);
+        if (user != null) {
+            System.out.println("Login successful! Welcome, " + user.getName() + "!");
+            userDashboard(user);
+        } else {
+            System.out.println("Invalid username or password!");
+        }
+    }
+    
+    private static void registerUser() {
+        System.out.println("\n--- REGISTER NEW USER ---");
+        System.out.print("Enter username: ");
+        String username = scanner.nextLine().trim();
+        
+        if (findUserByUsername(username) != null) {
+            System.out.println("Username already exists!");
+            return;
+        }
+        
+        System.out.print("Enter password: ");
+        String password = scanner.nextLine().trim();
+        System.out.print("Enter full name: ");
+        String fullName = scanner.nextLine().trim();
+        System.out.print("Enter initial balance: $");
+        long initialBalance = getValidAmount();
+        
+        Reply reply = submit(Command.REGISTER_USER, -1, -1, (byte) 0, initialBalance, 0, 0,
+                             new String[] {username, Credentials.hash(password), fullName});
+        if (reply.status == Reply.DUPLICATE_USER) {
+            System.out.println("Username already exists!");
+        } else {
+            System.out.println("User registered successfully!");
+        }
+    }
+    
+    private static void userDashboard(User user) {
+        boolean loggedIn = true;
+        while (loggedIn) {
+            displayUserMenu(user);
+            int choice = getValidChoice(1, 10);
+            
+            switch (choice) {
+                case 1:
+                    viewPortfolio(user);
+                    break;
+                case 2:
+                    buyStock(user);
+                    break;
+                case 3:
+                    sellStock(user);
+                    break;
+                case 4:
+                    viewMarketData();
+                    break;
+                case 5:
+                    viewTransactionHistory(user);
+                    break;
+                case 6:
+                    depositFunds(user);
+                    break;
+                case 7:
+                    withdrawFunds(user);
+                    break;
+                case 8:
+                    manageOpenOrders(user);
+                    break;
+                case 9:
+                    placeConditionalOrder(user);
+                    break;
+                case 10:
+                    loggedIn = false;
+                    System.out.println("Logged out successfully!");
+                    break;
+            }
+        }
+    }
+    
+    private static void displayUserMenu(User user) {
+        System.out.println("\n" + "=".repeat(60));
+        ConsoleView view = view(user);
+        System.out.println("USER DASHBOARD - " + user.getName().toUpperCase());
+        System.out.println("=".repeat(60));
+        System.out.println("Balance: $" + Money.format(view.balance));
+        System.out.println("Portfolio Value: $" + Money.format(view.portfolioValue));
+        System.out.println("Total Net Worth: $" + Money.format(view.balance + view.portfolioValue));
+        System.out.println("=".repeat(60));
+        System.out.println("1. View Portfolio");
+        System.out.println("2. Buy Stock");
+        System.out.println("3. Sell Stock");
+        System.out.println("4. View Market Data");
+        System.out.println("5. View Transaction History");
+        System.out.println("6. Deposit Funds");
+        System.out.println("7. Withdraw Funds");
+        System.out.println("8. View/Cancel Open Orders");
+        System.out.println("9. Place Stop / Take-Profit / Trailing Order");
+        System.out.println("10. Logout");
+        System.out.println("=".repeat(60));
+        System.out.print("Enter your choice (1-10): ");
+    }
+    
+    private static void viewPortfolio(User user) {
+        ConsoleView view = view(user);
+        System.out.println("\n--- PORTFOLIO ---");
+        System.out.println("User: " + user.getName());
+        System.out.println("Cash Balance: $" + Money.format(view.balance));
+        System.out.println();
+        
+        if (view.positionCount == 0) {
+            System.out.println("No stocks in portfolio.");
+            return;
+        }
+        
+        System.out.printf("%-10s %-20s %-12s %-12s %-12s %-12s%n", 
+                         "Symbol", "Company", "Shares", "Avg Price", "Current Price", "Total Value");
+        System.out.println("-".repeat(80));
+        
+        long totalValue = 0;
+        for (int i = 0; i < view.positionCount; i++) {
+            int shares = view.positionShares[i];
+            Stock stock = stocks.get(view.positionSymbol[i]);
+            long avgPrice = view.positionCost[i] / shares;
+            long currentPrice = view.price[view.positionSymbol[i]];
+            long totalStockValue = shares * currentPrice;
+            totalValue += totalStockValue;
+            
+            System.out.printf("%-10s %-20s %-12d %-12s %-12s %-12s%n",
+                             stock.getSymbol(), stock.getCompanyName(), shares,
+                             "$" + Money.format(avgPrice), "$" + Money.format(currentPrice),
+                             "$" + Money.format(totalStockValue));
+        }
+        
+        System.out.println("-".repeat(80));
+        System.out.printf("%-42s %-12s %-12s%n", "TOTAL PORTFOLIO VALUE:", "", "$" + Money.format(totalValue));
+        System.out.println("Total Net Worth: $" + Money.format(view.balance + totalValue));
+        System.out.println("Unrealized P&L: $" + Money.format(view.unrealizedPnl()));
+        System.out.println("Realized P&L: $" + Money.format(view.realizedPnl));
+    }
+    
+    private static void buyStock(User user) {
+        System.out.println("\n--- BUY STOCK ---");
+        System.out.print("Enter stock symbol: ");
+        String symbol = scanner.nextLine().trim().toUpperCase();
+        
+        int symbolId = symbols.idOf(symbol);
+        if (symbolId < 0) {
+            System.out.println("Stock not found!");
+            return;
+        }
+        Stock stock = stocks.get(symbolId);
+        ConsoleView view = view(user);
+        
+        System.out.println("Stock: " + stock.getCompanyName() + " (" + symbol + ")");
+        System.out.println("Current Price: $" + Money.format(view.price[symbolId]));
+        System.out.println("Available Shares: " + view.availableShares[symbolId]);
+        System.out.println("Your Balance: $" + Money.format(view.balance));
+        if (view.reservedCash > 0) {
+            System.out.println("Available Cash: $" + Money.format(view.availableCash()) + " (rest reserved by open orders)");
+        }
+        
+        System.out.print("Enter number of shares to buy: ");
+        int shares = getValidShares();
+        
+        if (shares <= 0) {
+            System.out.println("Invalid number of shares!");
+            return;
+        }
+        
+        System.out.print("Enter limit price (blank for market order): $");
+        long limitPrice = getOptionalPrice();
+        
+        Reply reply = submit(Command.PLACE_ORDER, user.getAccountId(), symbolId, OrderBook.BUY, limitPrice, shares, 0, null);
+        if (reply.status == Reply.NOT_ENOUGH_AVAILABLE) {
+            System.out.println("Not enough shares available!");
+        } else if (reply.status == Reply.INSUFFICIENT_FUNDS) {
+            long totalCost = shares * PreTradeRisk.reservePrice(limitPrice, view.price[symbolId]);
+            System.out.println("Insufficient funds! Need: $" + Money.format(totalCost));
+        } else if (reply.status == Reply.RISK_LIMIT) {
+            System.out.println("Order rejected by risk limits!");
+        } else {
+            reportOrder(reply, "Bought", symbol);
+        }
+    }
+    
+    private static void sellStock(User user) {
+        System.out.println("\n--- SELL STOCK ---");
+        System.out.print("Enter stock symbol: ");
+        String symbol = scanner.nextLine().trim().toUpperCase();
+        
+        int symbolId = symbols.idOf(symbol);
+        ConsoleView view = view(user);
+        if (symbolId < 0 || view.shares(symbolId) == 0) {
+            System.out.println("You don't own any shares of " + symbol + "!");
+            return;
+        }
+        Stock stock = stocks.get(symbolId);
+        
+        int ownedShares = view.availableToSell(symbolId);
+        System.out.println("Stock: " + stock.getCompanyName() + " (" + symbol + ")");
+        System.out.println("Current Price: $" + Money.format(view.price[symbolId]));
+        System.out.println("Shares Owned: " + view.shares(symbolId)
+                         + (ownedShares < view.shares(symbolId) ? " (" + ownedShares + " not on open orders)" : ""));
+        
+        System.out.print("Enter number of shares to sell: ");
+        int shares = getValidShares();
+        
+        if (shares <= 0 || shares > ownedShares) {
+            System.out.println("Invalid number of shares!");
+            return;
+        }
+        
+        System.out.print("Enter limit price (blank for market order): $");
+        long limitPrice = getOptionalPrice();
+        
+        Reply reply = submit(Command.PLACE_ORDER, user.getAccountId(), symbolId, OrderBook.SELL, limitPrice, shares, 0, null);
+        if (reply.status == Reply.INSUFFICIENT_SHARES) {
+            System.out.println("Invalid number of shares!");
+        } else if (reply.status == Reply.RISK_LIMIT) {
+            System.out.println("Order rejected by risk limits!");
+        } else {
+            reportOrder(reply, "Sold", symbol);
+        }
+    }
+    
+    private static void reportOrder(Reply reply, String verb, String symbol) {
+        if (reply.filledQuantity > 0) {
+            System.out.println("Order executed! " + verb + " " + reply.filledQuantity + " shares of " + symbol
+                             + " for $" + Money.format(reply.filledValue));
+        }
+        if (reply.orderId != 0) {
+            System.out.println("Order #" + reply.orderId + " is resting in the " + symbol + " order book.");
+        } else if (reply.filledQuantity == 0) {
+            System.out.println("Order could not be filled at this time.");
+        }
+    }
+    
+    private static void manageOpenOrders(User user) {
+        System.out.println("\n--- OPEN ORDERS ---");
+        List<Long> orderIds = new ArrayList<>();
+        List<String> rows = new ArrayList<>();
+        OpenOrderVisitor visitor = new OpenOrderVisitor() {
+            @Override
+            public void visit(long orderId, int bookId, byte side, long priceTicks, int quantity) {
+                orderIds.add(orderId);
+                rows.add(String.format("%-4d %-10s %-6s %-10d %-12s%n", orderIds.size(), stocks.get(bookId).getSymbol(),
+                                 side == OrderBook.BUY ? "BUY" : "SELL", quantity,
+                                 "$" + Money.format(MatchingEngine.toPrice(priceTicks))));
+            }
+            
+            @Override
+            public void visitConditional(long orderId, int bookId, byte side, byte kind, long triggerTicks,
+                                         long limitPrice, int quantity, long linkedOrderId) {
+                orderIds.add(orderId);
+                String trigger = (kind == ConditionalOrders.TRAILING_STOP ? "trail $" : "at $")
+                               + Money.format(MatchingEngine.toPrice(triggerTicks));
+                rows.add(String.format("%-4d %-10s %-6s %-10d %-12s %s %s%s%n", orderIds.size(),
+                                 stocks.get(bookId).getSymbol(), side == OrderBook.BUY ? "BUY" : "SELL", quantity,
+                                 limitPrice > 0 ? "$" + Money.format(limitPrice) : "MARKET",
+                                 ConditionalOrders.KIND_NAMES[kind], trigger,
+                                 linkedOrderId != 0 ? " (one-cancels-other)" : ""));
+            }
+        };
+        submit(Command.LIST_ORDERS, user.getAccountId(), -1, (byte) 0, 0, 0, 0, visitor);
+        rows.forEach(System.out::print);
+        
+        if (orderIds.isEmpty()) {
+            System.out.println("No open orders.");
+            return;
+        }
+        
+        System.out.print("Enter order number to cancel (0 to go back): ");
+        int choice = getValidChoice(0, orderIds.size());
+        if (choice == 0) {
+            return;
+        }
+        
+        Reply reply = submit(Command.CANCEL_ORDER, user.getAccountId(), -1, (byte) 0, 0, 0, orderIds.get(choice - 1), null);
+        if (reply.status == Reply.OK && ConditionalOrders.isConditional(orderIds.get(choice - 1))) {
+            System.out.println("Conditional order cancelled.");
+        } else if (reply.status == Reply.OK) {
+            System.out.println("Order cancelled. " + reply.cancelledQuantity + " shares released.");
+        } else {
+            System.out.println("Order is no longer open!");
+        }
+    }
+    
+    // Dormant until the price reaches the trigger, then submitted as a market or limit order
+    private static void placeConditionalOrder(User user) {
+        System.out.println("\n--- CONDITIONAL ORDERS ---");
+        System.out.println("1. Stop / stop-limit (buy on a rise, sell on a fall to the trigger)");
+        System.out.println("2. Take-profit (buy on a fall, sell on a rise to the trigger)");
+        System.out.println("3. Trailing stop (sell a set distance below the high, buy above the low)");
+        System.out.println("4. Bracket: take-profit and stop, one cancels the other");
+        System.out.println("5. Back");
+        System.out.print("Enter your choice (1-5): ");
+        int choice = getValidChoice(1, 5);
+        if (choice == 5) {
+            return;
+        }
+        
+        System.out.print("Enter stock symbol: ");
+        String symbol = scanner.nextLine().trim().toUpperCase();
+        int symbolId = symbols.idOf(symbol);
+        if (symbolId < 0) {
+            System.out.println("Stock not found!");
+            return;
+        }
+        System.out.println("Current Price: $" + Money.format(view(null).price[symbolId]));
+        System.out.print("Buy or sell (B/S): ");
+        String answer = scanner.nextLine().trim().toUpperCase();
+        if (!answer.equals("B") && !answer.equals("S")) {
+            System.out.println("Please enter B or S.");
+            return;
+        }
+        byte side = answer.equals("B") ? OrderBook.BUY : OrderBook.SELL;
+        System.out.print("Enter number of shares: ");
+        int shares = getValidShares();
+        
+        Reply reply;
+        if (choice == 3) {
+            System.out.print("Enter trail distance: $");
+            long trail = getValidAmount();
+            reply = submit(Command.PLACE_TRAILING_STOP, user.getAccountId(), symbolId, side, trail, shares, 0, null);
+        } else if (choice == 4) {
+            System.out.print("Enter take-profit trigger price: $");
+            long takeProfit = getValidAmount();
+            System.out.print("Enter stop trigger price: $");
+            long stop = getValidAmount();
+            reply = submit(Command.PLACE_OCO, user.getAccountId(), symbolId, side, takeProfit, shares, stop, null);
+        } else {
+            System.out.print("Enter trigger price: $");
+            long trigger = getValidAmount();
+            System.out.print("Enter limit price once triggered (blank for market order): $");
+            long limitPrice = getOptionalPrice();
+            reply = submit(choice == 1 ? Command.PLACE_STOP : Command.PLACE_TAKE_PROFIT, user.getAccountId(),
+                           symbolId, side, trigger, shares, limitPrice, null);
+        }
+        
+        if (reply.status == Reply.INVALID) {
+            System.out.println("The trigger must be on the far side of the current price, in the direction it fires.");
+        } else if (reply.status == Reply.INSUFFICIENT_SHARES) {
+            System.out.println("You don't hold enough shares of " + symbol + " to sell!");
+        } else if (reply.status != Reply.OK) {
+            System.out.println("Order rejected: " + rejectionReason(reply.status));
+        } else {
+            System.out.println("Conditional order #" + reply.orderId + " placed. It is listed under open orders"
+                             + " until it fires or is cancelled.");
+        }
+    }
+    
+    private static void viewMarketData() {
+        System.out.println("\n--- MARKET DATA ---");
+        System.out.printf("%-10s %-20s %-15s %-15s %-15s %-16s %-16s %-15s%n",
+                         "Symbol", "Company", "Current Price", "24h Change", "24h Change %", "Bid", "Ask", "Volume");
+        System.out.println("-".repeat(124));
+        
+        // Best resting bid and ask come from the conflated market data snapshots
+        String[] top = new String[2];
+        MarketDataListener snapshot = new MarketDataListener() {
+            @Override
+            public void onSnapshot(long sequence, int symbolId, long lastPrice, long volume, long referencePrice,
+                                   long bidPrice, int bidQuantity, long askPrice, int askQuantity) {
+                top[0] = bidQuantity > 0 ? bidQuantity + " @ $" + Money.format(bidPrice) : "-";
+                top[1] = askQuantity > 0 ? askQuantity + " @ $" + Money.format(askPrice) : "-";
+            }
+        };
+        MarketDataSubscriber feed = marketData.subscribe();
+        
+        ConsoleView view = view(null);
+        for (int i = 0; i < view.stockCount; i++) {
+            Stock stock = stocks.get(i);
+            long price = view.price[i];
+            top[0] = "-";
+            top[1] = "-";
+            feed.snapshot(i, snapshot);
+            // Without any bars yet (nothing has ticked since startup) fall back to the last move
+            long dayOpen = dayOpen(i);
+            long change = price - (dayOpen > 0 ? dayOpen : view.previousPrice[i]);
+            double changePercent = ((double) change / (price - change)) * 100;
+            
+            String changeStr = change >= 0 ? "+" + Money.format(change) : Money.format(change);
+            String changePercentStr = change >= 0 ? "+" + df.format(changePercent) + "%" : df.format(changePercent) + "%";
+            
+            System.out.printf("%-10s %-20s %-15s %-15s %-15s %-16s %-16s %-15s%n",
+                             stock.getSymbol(), stock.getCompanyName(),
+                             "$" + Money.format(price), changeStr,
+                             changePercentStr, top[0], top[1], view.availableShares[i]);
+        }
+    }
+    
+    // Open of the oldest hourly bar in the last 24 hours, 0 if there is none
+    private static long dayOpen(int symbolId) {
+        long[] open = {0};
+        BarVisitor first = (start, barOpen, high, low, close, volume) -> {
+            if (open[0] == 0) {
+                open[0] = barOpen;
+            }
+        };
+        submit(Command.BAR_HISTORY, -1, symbolId, (byte) BarHistory.HOUR, Long.MAX_VALUE, 0,
+               System.currentTimeMillis() - DAY_MILLIS, first);
+        return open[0];
+    }
+    
+    // Latency percentiles since startup; rates cover the time since the previous stats view
+    private static void viewSystemStats() {
+        System.out.println("\n--- SYSTEM STATS ---");
+        long now = System.nanoTime();
+        double seconds = (now - lastStatsView) / 1e9;
+        lastStatsView = now;
+        
+        System.out.printf("%-20s %10s %10s %10s %10s %10s %10s %10s%n",
+                         "Operation", "Count", "Rate/s", "Mean us", "p50 us", "p99 us", "p99.9 us", "Max us");
+        System.out.println("-".repeat(97));
+        for (Map.Entry<String, LatencyHistogram> entry : metrics.histograms().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.count();
+            Long previous = lastStatsCounts.put(entry.getKey(), count);
+            if (count == 0) {
+                continue;
+            }
+            System.out.printf("%-20s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                             entry.getKey(), count, (count - (previous == null ? 0 : previous)) / seconds,
+                             histogram.mean() / 1e3, histogram.valueAtPercentile(50) / 1e3,
+                             histogram.valueAtPercentile(99) / 1e3, histogram.valueAtPercentile(99.9) / 1e3,
+                             histogram.max() / 1e3);
+        }
+        
+        System.out.println();
+        for (Map.Entry<String, Metrics.Counter> entry : metrics.counters().entrySet()) {
+            System.out.printf("%-20s %,d%n", entry.getKey(), entry.getValue().get());
+        }
+        metrics.gauges().forEach((name, value) -> System.out.printf("%-20s %,d%n", name, value.getAsLong()));
+    }
+    
+    private static void viewPriceHistory() {
+        System.out.println("\n--- PRICE HISTORY ---");
+        System.out.print("Enter stock symbol: ");
+        String symbol = scanner.nextLine().trim().toUpperCase();
+        int symbolId = symbols.idOf(symbol);
+        if (symbolId < 0) {
+            System.out.println("Stock not found!");
+            return;
+        }
+        System.out.print("Bar size (1s, 1m, 1h): ");
+        int resolution = Arrays.asList(BarHistory.RESOLUTION_NAMES).indexOf(scanner.nextLine().trim().toLowerCase());
+        if (resolution < 0) {
+            System.out.println("Invalid bar size!");
+            return;
+        }
+        
+        long from = System.currentTimeMillis() - BAR_VIEW_LIMIT * BarHistory.RESOLUTION_MILLIS[resolution];
+        DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        List<String> rows = new ArrayList<>();
+        BarVisitor collect = (start, open, high, low, close, volume) ->
+                rows.add(String.format("%-20s %-12s %-12s %-12s %-12s %-10d",
+                                       LocalDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneId.systemDefault())
+                                                    .format(timeFormat),
+                                       "$" + Money.format(open), "$" + Money.format(high),
+                                       "$" + Money.format(low), "$" + Money.format(close), volume));
+        submit(Command.BAR_HISTORY, -1, symbolId, (byte) resolution, Long.MAX_VALUE, 0, from, collect);
+        
+        if (rows.isEmpty()) {
+            System.out.println("No price history for " + symbol + " in the last " + BAR_VIEW_LIMIT + " bars.");
+            return;
+        }
+        System.out.printf("%-20s %-12s %-12s %-12s %-12s %-10s%n", "Time", "Open", "High", "Low", "Close", "Volume");
+        System.out.println("-".repeat(82));
+        for (String row : rows) {
+            System.out.println(row);
+        }
+    }
+    
+    private static void viewAllStocks() {
+        System.out.println("\n--- ALL STOCKS ---");
+        System.out.printf("%-10s %-20s %-15s %-15s %-15s%n",
+                         "Symbol", "Company", "Current Price", "Available Shares", "Market Cap");
+        System.out.println("-".repeat(75));
+        
+        ConsoleView view = view(null);
+        for (int i = 0; i < view.stockCount; i++) {
+            Stock stock = stocks.get(i);
+            long marketCap = view.price[i] * view.availableShares[i];
+            System.out.printf("%-10s %-20s %-15s %-15d %-15s%n",
+                             stock.getSymbol(), stock.getCompanyName(),
+                             "$" + Money.format(view.price[i]), view.availableShares[i],
+                             "$" + Money.format(marketCap / 1000000) + "M");
+        }
+    }
+    
+    // The net worth leaderboard, as the risk analytics keep it, rather than a pass over every account
+    private static void viewAllUsers() {
+        RiskAnalytics.Report report = new RiskAnalytics.Report(LEADERBOARD_VIEW_LIMIT);
+        submit(Command.RISK_REPORT, -1, -1, (byte) 0, 0, 0, 0, report);
+        
+        System.out.println("\n--- ALL USERS (top " + report.topNetWorthCount + " of " + report.accountCount + " by net worth) ---");
+        System.out.printf("%-15s %-20s %-15s %-15s %-15s %-15s%n",
+                         "Username", "Name", "Balance", "Portfolio Value", "Net Worth", "1-day VaR");
+        System.out.println("-".repeat(96));
+        
+        for (int i = 0; i < report.topNetWorthCount; i++) {
+            User user = users.get(report.topNetWorth[i]);
+            long netWorth = report.topNetWorthValue[i];
+            
+            System.out.printf("%-15s %-20s %-15s %-15s %-15s %-15s%n",
+                             user.getUsername(), user.getName(),
+                             "$" + Money.format(report.topNetWorthBalance[i]),
+                             "$" + Money.format(netWorth - report.topNetWorthBalance[i]),
+                             "$" + Money.format(netWorth),
+                             "$" + Money.format(report.topNetWorthRisk[i]));
+        }
+    }
+    
+    private static void viewRiskAnalytics() {
+        RiskAnalytics.Report report = new RiskAnalytics.Report(LEADERBOARD_VIEW_LIMIT);
+        submit(Command.RISK_REPORT, -1, -1, (byte) 0, 0, 0, 0, report);
+        
+        System.out.println("\n--- RISK ANALYTICS ---");
+        System.out.printf("%-10s %15s %18s %10s%n", "Symbol", "Net Shares", "Exposure", "Share");
+        System.out.println("-".repeat(56));
+        for (int s = 0; s < report.exposure.length; s++) {
+            if (report.netShares[s] != 0) {
+                System.out.printf("%-10s %,15d %18s %9.1f%%%n", symbols.symbolOf(s), report.netShares[s],
+                                  "$" + Money.format(report.exposure[s]),
+                                  report.netExposure == 0 ? 0 : report.exposure[s] * 100.0 / report.netExposure);
+            }
+        }
+        System.out.println("Net exposure of all accounts: $" + Money.format(report.netExposure));
+        if (report.scenarios == 0) {
+            System.out.println("No market closes yet: VaR needs at least one day of returns (simulate a market movement).");
+            return;
+        }
+        System.out.printf("1-day %.0f%% VaR of all accounts together: $%s (historical, %d scenarios)%n",
+                          RiskAnalytics.CONFIDENCE * 100, Money.format(report.exchangeValueAtRisk), report.scenarios);
+        
+        System.out.println("\nHighest VaR accounts:");
+        System.out.printf("%-15s %-20s %15s%n", "Username", "Name", "1-day VaR");
+        for (int i = 0; i < report.topRiskCount && report.topRiskValue[i] > 0; i++) {
+            User user = users.get(report.topRisk[i]);
+            System.out.printf("%-15s %-20s %15s%n", user.getUsername(), user.getName(),
+                              "$" + Money.format(report.topRiskValue[i]));
+        }
+    }
+    
+    private static void viewTransactionHistory() {
+        System.out.println("\n--- TRANSACTION HISTORY ---");
+        TransactionQuery query = new TransactionQuery(journal);
+        if (readHistoryFilters(query)) {
+            printHistory(query, true);
+        }
+    }
+    
+    private static void viewTransactionHistory(User user) {
+        System.out.println("\n--- YOUR TRANSACTION HISTORY ---");
+        TransactionQuery query = new TransactionQuery(journal).account(user.getAccountId());
+        if (readHistoryFilters(query)) {
+            printHistory(query, false);
+        }
+    }
+    
+    // Optional symbol and time window; false if the input was invalid
+    private static boolean readHistoryFilters(TransactionQuery query) {
+        System.out.print("Filter by symbol (blank for all): ");
+        String symbol = scanner.nextLine().trim().toUpperCase();
+        if (!symbol.isEmpty()) {
+            int symbolId = symbols.idOf(symbol);
+            if (symbolId < 0) {
+                System.out.println("Stock not found!");
+                return false;
+            }
+            query.symbol(symbolId);
+        }
+        
+        System.out.print("Only the last N hours (blank for all): ");
+        String hours = scanner.nextLine().trim();
+        if (!hours.isEmpty()) {
+            try {
+                long window = (long) (Double.parseDouble(hours) * 3_600_000_000_000L);
+                query.between(EpochClock.nanos() - window, Long.MAX_VALUE);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number of hours!");
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Newest first, one page at a time
+    private static void printHistory(TransactionQuery query, boolean showUser) {
+        if (showUser) {
+            System.out.printf("%-20s %-15s %-10s %-10s %-12s %-10s%n",
+                             "Timestamp", "User", "Symbol", "Shares", "Price", "Type");
+            System.out.println("-".repeat(80));
+        } else {
+            System.out.printf("%-20s %-10s %-10s %-12s %-10s%n",
+                             "Timestamp", "Symbol", "Shares", "Price", "Type");
+            System.out.println("-".repeat(70));
+        }
+        
+        int[] shown = {0};
+        Transaction transaction = new Transaction();
+        TransactionVisitor print = index -> {
+            transaction.wrap(journal, index);
+            String symbol = stocks.get(transaction.getSymbolId()).getSymbol();
+            if (showUser) {
+                System.out.printf("%-20s %-15s %-10s %-10d %-12s %-10s%n",
+                                 transaction.getTimestamp(), users.get(transaction.getAccountId()).getUsername(),
+                                 symbol, transaction.getShares(),
+                                 "$" + Money.format(transaction.getPrice()), transaction.getType());
+            } else {
+                System.out.printf("%-20s %-10s %-10d %-12s %-10s%n",
+                                 transaction.getTimestamp(), symbol,
+                                 transaction.getShares(), "$" + Money.format(transaction.getPrice()),
+                                 transaction.getType());
+            }
+            shown[0]++;
+        };
+        
+        long cursor = query.page(TransactionQuery.FIRST_PAGE, HISTORY_PAGE_SIZE, print);
+        while (cursor != TransactionQuery.END) {
+            System.out.print("Press Enter for older transactions, or q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                return;
+            }
+            cursor = query.page(cursor, HISTORY_PAGE_SIZE, print);
+        }
+        if (shown[0] == 0) {
+            System.out.println("No transactions found.");
+        }
+    }
+    
+    private static void depositFunds(User user) {
+        System.out.println("\n--- DEPOSIT FUNDS ---");
+        System.out.println("Current Balance: $" + Money.format(view(user).balance));
+        System.out.print("Enter amount to deposit: $");
+        long amount = getValidAmount();
+        
+        if (amount <= 0) {
+            System.out.println("Invalid amount!");
+            return;
+        }
+        
+        submit(Command.DEPOSIT, user.getAccountId(), -1, (byte) 0, amount, 0, 0, null);
+        System.out.println("Deposit successful! New balance: $" + Money.format(view(user).balance));
+    }
+    
+    private static void withdrawFunds(User user) {
+        ConsoleView view = view(user);
+        System.out.println("\n--- WITHDRAW FUNDS ---");
+        System.out.println("Current Balance: $" + Money.format(view.balance));
+        System.out.print("Enter amount to withdraw: $");
+        long amount = getValidAmount();
+        
+        if (amount <= 0) {
+            System.out.println("Invalid amount!");
+            return;
+        }
+        
+        if (amount > view.availableCash()) {
+            System.out.println("Insufficient funds!");
+            return;
+        }
+        
+        Reply reply = submit(Command.WITHDRAW, user.getAccountId(), -1, (byte) 0, amount, 0, 0, null);
+        if (reply.status != Reply.OK) {
+            System.out.println("Insufficient funds!");
+            return;
+        }
+        System.out.println("Withdrawal successful! New balance: $" + Money.format(view(user).balance));
+    }
+    
+    private static void simulateMarketMovement() {
+        System.out.println("\n--- SIMULATING MARKET MOVEMENT ---");
+        long start = System.nanoTime();
+        
+        ConsoleView view = view(null);
+        int stockCount = view.stockCount;
+        long[] newPrices = new long[simulator.size()];
+        for (int i = 0; i < stockCount; i++) {
+            simulator.setPrice(i, Money.toDouble(view.price[i]));
+        }
+        simulator.run(1, (symbolId, price) -> newPrices[symbolId] = price);
+        
+        Reply reply = replies.get();
+        reply.reset();
+        for (int i = 0; i < stockCount; i++) {
+            Stock stock = stocks.get(i);
+            long oldPrice = view.price[i];
+            long newPrice = newPrices[i];
+            double changePercent = (double) (newPrice - oldPrice) / oldPrice;
+            
+            sequencer.publish(Command.UPDATE_PRICE, -1, i, (byte) 0, newPrice, 0, 0, null, null);
+            
+            System.out.printf("%s: $%.2f -> $%.2f (%+.2f%%)\n",
+                             stock.getSymbol(), Money.toDouble(oldPrice), Money.toDouble(newPrice), changePercent * 100);
+        }
+        // Each move is a trading day; its close adds a day of returns to the risk scenarios
+        sequencer.publish(Command.MARKET_CLOSE, -1, -1, (byte) 0, 0, 0, 0, null, reply);
+        reply.await();
+        marketMoveLatency.recordSince(start);
+        
+        System.out.println("Market simulation completed!");
+    }
+    
+    // -Dtrading.sim.model=gbm (default), jump or correlated
+    private static PriceModel createPriceModel() {
+        switch (System.getProperty("trading.sim.model", "gbm")) {
+            case "jump":
+                return new JumpDiffusionModel(10, -0.02, 0.05);
+            case "correlated":
+                return new CorrelatedModel(0.4);
+            default:
+                return new GeometricBrownianMotion();
+        }
+    }
+    
+    // Headless run: lists synthetic symbols up to symbolCount, then measures raw tick
+    // generation and ticks pushed through the sequencer into the stock price path
+    private static void runLoadTest(int symbolCount, int steps, int subscriberCount) {
+        for (int i = stocks.size(); i < symbolCount; i++) {
+            submit(Command.LIST_STOCK, -1, -1, (byte) 0, 0, 0, 0,
+                   new Stock(String.format("SIM%05d", i), "Simulated " + i, Money.of(100.00), 1000000));
+        }
+        long ticks = (long) simulator.size() * steps;
+        System.out.println("Load test: " + simulator.size() + " symbols x " + steps + " steps");
+        
+        long start = System.nanoTime();
+        simulator.run(steps, (symbolId, price) -> { });
+        reportRate("Generated", ticks, System.nanoTime() - start);
+        
+        // Market data subscribers follow the tape from reader threads while the ticks are applied
+        int threads = Math.min(subscriberCount, Math.max(1, Runtime.getRuntime().availableProcessors() - 2));
+        MarketDataReader[] readers = new MarketDataReader[threads];
+        for (int i = 0; i < threads; i++) {
+            readers[i] = new MarketDataReader(marketData, subscriberCount / threads + (i < subscriberCount % threads ? 1 : 0), i);
+            readers[i].start();
+        }
+        long firstUpdate = marketData.publishedSequence();
+        
+        start = System.nanoTime();
+        simulator.run(steps, (symbolId, price) ->
+                sequencer.publish(Command.UPDATE_PRICE, -1, symbolId, (byte) 0, price, 0, 0, null, null));
+        submit(Command.UPDATE_PRICE, -1, -1, (byte) 0, 0, 0, 0, null); // no-op barrier: waits for the queue to drain
+        reportRate("Applied", ticks, System.nanoTime() - start);
+        
+        if (threads > 0) {
+            long updates = 0, snapshots = 0, gaps = 0;
+            for (MarketDataReader reader : readers) {
+                reader.finish();
+                updates += reader.updates();
+                snapshots += reader.snapshots();
+                gaps += reader.gaps();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("Market data: %d updates published, %d subscribers on %d threads%n",
+                              marketData.publishedSequence() - firstUpdate, subscriberCount, threads);
+            System.out.printf("Delivered %d updates and %d snapshots in %.1f ms (%.1f million/s), %d gaps%n",
+                              updates, snapshots, elapsed / 1e6, (updates + snapshots) * 1e3 / elapsed, gaps);
+        }
+    }
+    
+    // Headless mode: clients trade over the binary gateway protocol until the process is stopped
+    // A cluster node listens on its own entry of the node list, whatever port was asked for
+    private static void runServer(int port) {
+        if (partitions != null) {
+            port = partitions.address(nodeId).getPort();
+        }
+        OrderGateway gateway = new OrderGateway(new InetSocketAddress(port), sequencer, symbols,
+                                                StockTradingSystem::findUserByCredentials);
+        if (partitions != null) {
+            gateway.joinCluster(partitions, nodeId, System.getProperty("trading.cluster.secret"),
+                                Money.parse(System.getProperty("trading.cluster.transferChunk", "10000")),
+                                StockTradingSystem::accountIdOf, new ArrayList<>(transfers.transfers()));
+        }
+        try {
+            gateway.start();
+        } catch (IOException e) {
+            System.out.println("Could not start order gateway: " + e.getMessage());
+            shutdown();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            gateway.stop();
+            shutdown();
+        }));
+        // A halted node only rejects, so it goes down and lets clients or a standby move on.
+        // The exit runs the shutdown hook, which waits on the business thread, so not from it.
+        sequencer.onFailure(cause -> new Thread(() -> System.exit(1), "halt").start());
+        if (partitions != null) {
+            int owned = 0;
+            for (int i = 0; i < symbols.size(); i++) {
+                owned += isLocal(symbols.symbolOf(i)) ? 1 : 0;
+            }
+            System.out.printf("Cluster node %d of %d, owning %d of %d symbols%n",
+                              nodeId, partitions.nodeCount(), owned, symbols.size());
+        }
+        System.out.println("Order gateway listening on port " + gateway.getPort() + " (Ctrl+C to stop)");
+    }
+    
+    // Headless run: registers an account per session, runs every session concurrently, then
+    // checks that no share was created or lost, that nothing is left reserved, and that the
+    // accounts and floats match what the journal alone rebuilds
+    private static void runStress(int sessionCount, int operations, int workers) {
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        int firstAccount = users.size();
+        String passwordHash = Credentials.hash("stress"); // sessions never log in, so one hash does for all
+        for (int i = 0; i < sessionCount; i++) {
+            String[] details = {"stress-" + runId + "-" + i, passwordHash, "Stress Session " + i};
+            if (submit(Command.REGISTER_USER, -1, -1, (byte) 0, Money.of(100000.00), 0, 0, details).status != Reply.OK) {
+                System.out.println("Could not register stress accounts");
+                return;
+            }
+        }
+        int stockCount = stocks.size();
+        int[] symbolIds = new int[stockCount];
+        long[] prices = new long[stockCount];
+        for (int i = 0; i < stockCount; i++) {
+            symbolIds[i] = i;
+            prices[i] = stocks.get(i).getCurrentPrice();
+        }
+        long[] sharesBefore = sharesOutstanding();
+        
+        SessionRuntime runtime = new SessionRuntime(sequencer, workers);
+        TradingSession[] sessions = new TradingSession[sessionCount];
+        for (int i = 0; i < sessionCount; i++) {
+            sessions[i] = new TradingSession(runtime, firstAccount + i, i % workers, symbolIds, prices, operations, i);
+        }
+        System.out.println("Stress test: " + sessionCount + " sessions x " + operations + " operations on "
+                           + workers + " worker threads");
+        long start = System.nanoTime();
+        runtime.run(sessions);
+        long elapsed = System.nanoTime() - start;
+        
+        long requests = 0;
+        for (int status = 0; status < Reply.STATUS_COUNT; status++) {
+            requests += runtime.completed(status);
+        }
+        System.out.printf("%d requests in %.1f ms (%.0f requests/s), %d accepted%n",
+                          requests, elapsed / 1e6, requests * 1e9 / elapsed, runtime.completed(Reply.OK));
+        
+        // Every session is done; wait for the business thread and then the journal to catch up
+        submit(Command.UPDATE_PRICE, -1, -1, (byte) 0, 0, 0, 0, null);
+        while (sequencer.tradeBacklog() > 0) {
+            Thread.yield();
+        }
+        List<String> problems = checkConsistency(sharesBefore, firstAccount);
+        if (problems.isEmpty()) {
+            System.out.println("Consistency check passed: shares conserved, no reservations left, analytics and journal rebuild match");
+        } else {
+            System.out.println("Consistency check FAILED (" + problems.size() + " problems)");
+            problems.stream().limit(20).forEach(problem -> System.out.println("  " + problem));
+        }
+    }
+    
+    // Float plus every account's holdings, per symbol; only trades between accounts and the house move it
+    private static long[] sharesOutstanding() {
+        long[] shares = new long[stocks.size()];
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = stocks.get(i).getAvailableShares();
+        }
+        users.forEach(user -> {
+            PositionTable positions = user.getPositions();
+            for (int entry = 0; entry < positions.size(); entry++) {
+                shares[positions.symbolAt(entry)] += positions.quantityAt(entry);
+            }
+        });
+        return shares;
+    }
+    
+    // Only called while the sequencer is idle
+    private static List<String> checkConsistency(long[] sharesBefore, int firstAccount) {
+        List<String> problems = new ArrayList<>();
+        long[] sharesAfter = sharesOutstanding();
+        for (int i = 0; i < sharesBefore.length; i++) {
+            if (sharesAfter[i] != sharesBefore[i]) {
+                problems.add(stocks.get(i).getSymbol() + ": " + sharesBefore[i] + " shares outstanding before, "
+                             + sharesAfter[i] + " after");
+            }
+        }
+        for (int id = firstAccount; id < users.size(); id++) {
+            User user = users.get(id);
+            PositionTable positions = user.getPositions();
+            if (user.getBalance() < 0 || user.getReservedCash() != 0 || user.getOpenOrders() != 0) {
+                problems.add(user.getUsername() + ": balance " + user.getBalance() + ", reserved "
+                             + user.getReservedCash() + ", open orders " + user.getOpenOrders());
+            }
+            for (int entry = 0; entry < positions.size(); entry++) {
+                int symbolId = positions.symbolAt(entry);
+                if (positions.quantityAt(entry) < 0 || positions.pendingBuys(symbolId) != 0
+                        || positions.availableToSell(symbolId) != positions.quantityAt(entry)) {
+                    problems.add(user.getUsername() + ": " + stocks.get(symbolId).getSymbol() + " position "
+                                 + positions.quantityAt(entry) + " with shares still reserved");
+                }
+            }
+        }
+        
+        // The analytics' running sums and leaderboard against a full scan
+        RiskAnalytics.Report report = new RiskAnalytics.Report(LEADERBOARD_VIEW_LIMIT);
+        submit(Command.RISK_REPORT, -1, -1, (byte) 0, 0, 0, 0, report);
+        long exposure = 0;
+        for (int i = 0; i < stocks.size(); i++) {
+            long held = sharesAfter[i] - stocks.get(i).getAvailableShares();
+            exposure += held * stocks.get(i).getCurrentPrice();
+            if (report.netShares[i] != held) {
+                problems.add(stocks.get(i).getSymbol() + ": analytics count " + report.netShares[i]
+                             + " shares held, accounts hold " + held);
+            }
+        }
+        if (report.netExposure != exposure) {
+            problems.add("Net exposure " + report.netExposure + " in analytics, " + exposure + " from positions");
+        }
+        long[] netWorths = new long[users.size()];
+        for (int id = 0; id < netWorths.length; id++) {
+            netWorths[id] = users.get(id).getBalance() + users.get(id).getPortfolioValue();
+        }
+        Arrays.sort(netWorths);
+        for (int i = 0; i < report.topNetWorthCount; i++) {
+            if (report.topNetWorthValue[i] != netWorths[netWorths.length - 1 - i]) {
+                problems.add("Leaderboard entry " + (i + 1) + " is " + report.topNetWorthValue[i]
+                             + ", a full scan ranks " + netWorths[netWorths.length - 1 - i] + " there");
+                break;
+            }
+        }
+        
+        ExchangeReplica rebuilt;
+        try {
+            rebuilt = loadExchange();
+        } catch (IOException e) {
+            problems.add("Could not load snapshot to rebuild from: " + e.getMessage());
+            return problems;
+        }
+        rebuilt.apply(journal, journal.size());
+        for (int i = 0; i < stocks.size(); i++) {
+            if (rebuilt.stocks().get(i).getAvailableShares() != stocks.get(i).getAvailableShares()) {
+                problems.add(stocks.get(i).getSymbol() + ": float " + stocks.get(i).getAvailableShares()
+                             + ", rebuilt from journal " + rebuilt.stocks().get(i).getAvailableShares());
+            }
+            if (rebuilt.stocks().get(i).getCurrentPrice() != stocks.get(i).getCurrentPrice()) {
+                problems.add(stocks.get(i).getSymbol() + ": price " + Money.format(stocks.get(i).getCurrentPrice())
+                             + ", rebuilt from journal " + Money.format(rebuilt.stocks().get(i).getCurrentPrice()));
+            }
+        }
+        for (int id = 0; id < users.size(); id++) {
+            User live = users.get(id);
+            User replayed = rebuilt.users().get(id);
+            boolean same = live.getBalance() == replayed.getBalance();
+            PositionTable positions = live.getPositions();
+            for (int entry = 0; entry < positions.size() && same; entry++) {
+                int symbolId = positions.symbolAt(entry);
+                same = positions.quantityAt(entry) == replayed.getShares(symbolId)
+                        && positions.costBasisAt(entry) == replayed.getPositions().costBasis(symbolId);
+            }
+            if (!same) {
+                problems.add(live.getUsername() + ": account differs from the journal rebuild");
+            }
+        }
+        return problems;
+    }
+    
+    // Headless run: submits a CSV basket, waits for it to settle and reports per-line failures
+    private static void runBasket(Path file) {
+        long start = System.nanoTime();
+        Basket basket;
+        try {
+            basket = Basket.readCsv(file, StockTradingSystem::accountIdOf, symbols::idOf);
+        } catch (IOException e) {
+            System.out.println("Could not read basket: " + e.getMessage());
+            return;
+        }
+        basket.executionOrder();
+        long parsed = System.nanoTime();
+        submit(Command.SUBMIT_BASKET, -1, -1, (byte) 0, 0, 0, 0, basket);
+        long settled = System.nanoTime();
+        
+        int accepted = 0, resting = 0, filledShares = 0;
+        long filledValue = 0;
+        int[] rejected = new int[Reply.STATUS_COUNT];
+        for (int i = 0; i < basket.size(); i++) {
+            if (basket.status[i] != Reply.OK) {
+                rejected[basket.status[i]]++;
+                continue;
+            }
+            accepted++;
+            resting += basket.orderId[i] != 0 ? 1 : 0;
+            filledShares += basket.filledQuantity[i];
+            filledValue += basket.filledValue[i];
+        }
+        System.out.printf("Basket of %d orders: read and checked in %.1f ms, settled in %.1f ms (%.0f orders/s)%n",
+                          basket.size(), (parsed - start) / 1e6, (settled - parsed) / 1e6,
+                          basket.size() * 1e9 / Math.max(1, settled - parsed));
+        System.out.printf("Accepted %d, %d resting; filled %d shares for $%s%n",
+                          accepted, resting, filledShares, Money.format(filledValue));
+        for (int status = 1; status < rejected.length; status++) {
+            if (rejected[status] > 0) {
+                System.out.println("Rejected " + rejected[status] + ": " + rejectionReason(status));
+            }
+        }
+        int shown = 0;
+        for (int i = 0; i < basket.size() && shown < 10; i++) {
+            if (basket.status[i] != Reply.OK) {
+                System.out.println("  line " + basket.lineNumber[i] + ": " + rejectionReason(basket.status[i]));
+                shown++;
+            }
+        }
+    }
+    
+    // Reads the account arena of a running exchange, from another process, without touching
+    // the exchange itself; with an interval it reopens and prints again until interrupted
+    private static void runAccountReport(Path file, long intervalSeconds) {
+        while (true) {
+            AccountArena accounts;
+            try {
+                accounts = AccountArena.open(file);
+            } catch (IOException e) {
+                System.out.println("Could not open account arena: " + e.getMessage());
+                return;
+            }
+            long start = System.nanoTime();
+            int count = accounts.accountCount();
+            long cash = 0;
+            long reserved = 0;
+            long marketValue = 0;
+            int[] top = new int[Math.min(LEADERBOARD_VIEW_LIMIT, count)];
+            long[] topWorth = new long[top.length];
+            int shown = 0;
+            for (int account = 0; account < count; account++) {
+                long balance = accounts.balance(account);
+                long value = accounts.marketValue(account);
+                cash += balance;
+                reserved += accounts.reservedCash(account);
+                marketValue += value;
+                // Insertion into the short top list, highest net worth first
+                long worth = balance + value;
+                if (shown < top.length || worth > topWorth[shown - 1]) {
+                    int at = shown < top.length ? shown++ : shown - 1;
+                    while (at > 0 && topWorth[at - 1] < worth) {
+                        top[at] = top[at - 1];
+                        topWorth[at] = topWorth[at - 1];
+                        at--;
+                    }
+                    top[at] = account;
+                    topWorth[at] = worth;
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            
+            System.out.printf("%n%s: %d of %d accounts, %d of %d position blocks, read in %.1f ms%n", file, count,
+                              accounts.accountCapacity(), accounts.blockCount(), accounts.blockCapacity(), nanos / 1e6);
+            System.out.println("Cash: $" + Money.format(cash) + "  Reserved: $" + Money.format(reserved)
+                             + "  Market Value: $" + Money.format(marketValue));
+            System.out.printf("%-8s %-20s %-15s %-15s %-15s %-10s%n",
+                              "Account", "Username", "Cash", "Reserved", "Market Value", "Positions");
+            System.out.println("-".repeat(88));
+            for (int i = 0; i < shown; i++) {
+                int account = top[i];
+                System.out.printf("%-8d %-20s %-15s %-15s %-15s %-10d%n", account, accounts.username(account),
+                                  "$" + Money.format(accounts.balance(account)),
+                                  "$" + Money.format(accounts.reservedCash(account)),
+                                  "$" + Money.format(accounts.marketValue(account)), accounts.openPositions(account));
+            }
+            if (intervalSeconds <= 0) {
+                return;
+            }
+            try {
+                Thread.sleep(intervalSeconds * 1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+    
+    private static void runImportTicks(Path csv, Path file) {
+        long start = System.nanoTime();
+        try {
+            int count = TickFile.importCsv(csv, file);
+            System.out.printf("Imported %d ticks into %s in %.1f ms%n", count, file, (System.nanoTime() - start) / 1e6);
+        } catch (IOException e) {
+            System.out.println("Could not import ticks: " + e.getMessage());
+        }
+    }
+    
+    // Headless run: streams a tick file in time order through the sequencer into the price and
+    // trade path, as fast as it goes or on a clock scaled by speed (1 is real time). Symbols
+    // the exchange does not list yet are listed at their first price.
+    private static void runReplay(Path file, double speed) {
+        TickFile ticks;
+        try {
+            ticks = TickFile.open(file);
+        } catch (IOException e) {
+            System.out.println("Could not open tick file: " + e.getMessage());
+            return;
+        }
+        int[] symbolIds = new int[ticks.symbolCount()];
+        int listed = 0;
+        for (int s = 0; s < symbolIds.length; s++) {
+            String symbol = ticks.symbol(s);
+            if (symbols.idOf(symbol) < 0 && ticks.rowCount(s) > 0) {
+                submit(Command.LIST_STOCK, -1, -1, (byte) 0, 0, 0, 0,
+                       new Stock(symbol, symbol, ticks.price(ticks.row(s, 0)), 1000000));
+                listed++;
+            }
+            symbolIds[s] = symbols.idOf(symbol);
+        }
+        System.out.println("Replay: " + ticks.size() + " ticks of " + ticks.symbolCount() + " symbols ("
+                           + listed + " newly listed)" + (speed > 0 ? " at " + speed + "x" : ""));
+        if (ticks.size() == 0) {
+            return;
+        }
+        
+        long firstMillis = ticks.time(0);
+        long day = Math.floorDiv(firstMillis, DAY_MILLIS);
+        long start = System.nanoTime();
+        for (int row = 0; row < ticks.size(); row++) {
+            long tickMillis = ticks.time(row);
+            if (Math.floorDiv(tickMillis, DAY_MILLIS) != day) {
+                day = Math.floorDiv(tickMillis, DAY_MILLIS);
+                sequencer.publish(Command.MARKET_CLOSE, -1, -1, (byte) 0, 0, 0, 0, null, null);
+            }
+            if (speed > 0) {
+                long due = start + (long) ((tickMillis - firstMillis) * 1e6 / speed);
+                for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            sequencer.publish(Command.UPDATE_PRICE, -1, symbolIds[ticks.symbolIndex(row)], (byte) 0,
+                              ticks.price(row), 0, tickMillis, null, null);
+        }
+        submit(Command.UPDATE_PRICE, -1, -1, (byte) 0, 0, 0, 0, null);
+        reportRate("Replayed", ticks.size(), System.nanoTime() - start);
+        System.out.println("Covered " + Instant.ofEpochMilli(firstMillis) + " to "
+                           + Instant.ofEpochMilli(ticks.time(ticks.size() - 1)));
+    }
+    
+    // Offline: a moving average crossover for every fast/slow window pair, against every
+    // symbol of the tick file, in parallel on the common fork/join pool
+    private static void runBacktest(Path file, int[] fastWindows, int[] slowWindows) {
+        TickFile ticks;
+        try {
+            ticks = TickFile.open(file);
+        } catch (IOException e) {
+            System.out.println("Could not open tick file: " + e.getMessage());
+            return;
+        }
+        List<Supplier<Strategy>> strategies = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int fast : fastWindows) {
+            for (int slow : slowWindows) {
+                if (fast > 0 && fast < slow) {
+                    strategies.add(() -> new MovingAverageCrossover(fast, slow, BACKTEST_SHARES));
+                    names.add("ma(" + fast + "," + slow + ")");
+                }
+            }
+        }
+        if (strategies.isEmpty()) {
+            System.out.println("No window pair with 0 < fast < slow");
+            return;
+        }
+        Backtest backtest = new Backtest(ticks, strategies);
+        System.out.printf("Backtest: %d strategies x %d symbols = %d runs over %d ticks%n",
+                          strategies.size(), ticks.symbolCount(), backtest.runCount(), ticks.size());
+        
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        long start = System.nanoTime();
+        backtest.run(pool);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Completed in %.1f ms on %d threads: %.0f backtests/hour, %.1f million ticks/s%n",
+                          elapsed / 1e6, pool.getParallelism(), backtest.runCount() * 3.6e12 / elapsed,
+                          (double) ticks.size() * strategies.size() * 1e3 / elapsed);
+        System.out.printf("Result digest %016x%n", backtest.digest());
+        
+        long[] totals = new long[strategies.size()];
+        for (int run = 0; run < backtest.runCount(); run++) {
+            totals[backtest.strategyOf(run)] += backtest.pnl[run];
+        }
+        int best = 0;
+        for (int s = 1; s < totals.length; s++) {
+            best = totals[s] > totals[best] ? s : best;
+        }
+        System.out.println("Best strategy over all symbols: " + names.get(best) + ", P&L $" + Money.format(totals[best]));
+        System.out.println("\nTop runs by P&L:");
+        System.out.printf("%-14s %-10s %14s %14s %8s%n", "Strategy", "Symbol", "P&L", "Max Drawdown", "Trades");
+        Integer[] runs = new Integer[backtest.runCount()];
+        Arrays.setAll(runs, run -> run);
+        Arrays.sort(runs, (a, b) -> Long.compare(backtest.pnl[b], backtest.pnl[a]));
+        for (int i = 0; i < Math.min(10, runs.length); i++) {
+            int run = runs[i];
+            System.out.printf("%-14s %-10s %14s %14s %8d%n", names.get(backtest.strategyOf(run)),
+                              ticks.symbol(backtest.symbolOf(run)), "$" + Money.format(backtest.pnl[run]),
+                              "$" + Money.format(backtest.maxDrawdown[run]), backtest.trades[run]);
+        }
+    }
+    
+    private static int[] parseWindows(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(window -> Integer.parseInt(window.trim())).toArray();
+    }
+    
+    private static String rejectionReason(int status) {
+        switch (status) {
+            case Reply.UNKNOWN_ACCOUNT: return "unknown account";
+            case Reply.UNKNOWN_STOCK: return "unknown symbol";
+            case Reply.INSUFFICIENT_FUNDS: return "insufficient funds";
+            case Reply.INSUFFICIENT_SHARES: return "insufficient shares";
+            case Reply.NOT_ENOUGH_AVAILABLE: return "not enough shares available";
+            case Reply.RISK_LIMIT: return "risk limit";
+            case Reply.FAILED: return "exchange halted";
+            default: return "invalid order";
+        }
+    }
+    
+    private static void reportRate(String label, long ticks, long nanos) {
+        System.out.printf("%s %d ticks in %.1f ms (%.1f million ticks/s)%n",
+                          label, ticks, nanos / 1e6, ticks * 1e3 / nanos);
+    }
+    
+    static Reply submit(byte type, int accountId, int bookId, byte side, long price, int quantity,
+                        long orderId, Object payload) {
+        Reply reply = replies.get();
+        reply.reset();
+        sequencer.publish(type, accountId, bookId, side, price, quantity, orderId, payload, reply);
+        reply.await();
+        if (reply.status == Reply.FAILED) {
+            System.out.println("The exchange has halted after an internal error and is not applying requests.");
+        }
+        return reply;
+    }
+    
+    // The account and prices as the business thread has them, for the console to print
+    private static ConsoleView view(User user) {
+        ConsoleView view = new ConsoleView();
+        submit(Command.CONSOLE_VIEW, user != null ? user.getAccountId() : -1, -1, (byte) 0, 0, 0, 0, view);
+        return view;
+    }
+    
+    // Business-logic thread: the only place User, Stock and the order books are mutated
+    private static void applyCommand(Command command, long sequence, boolean endOfBatch) {
+        long start = System.nanoTime();
+        queueWait.record(start - command.publishedAt);
+        Reply reply = command.reply;
+        int status = Reply.OK;
+        User user = users.contains(command.accountId) ? users.get(command.accountId) : null;
+        
+        switch (command.type) {
+            case Command.PLACE_ORDER:
+                status = executeOrder(user, command.bookId, command.side, command.price, command.quantity, reply);
+                break;
+            case Command.CANCEL_ORDER:
+                status = ConditionalOrders.isConditional(command.orderId)
+                        ? cancelConditional(user, command.orderId, reply)
+                        : cancelOrder(user, command.orderId, reply);
+                break;
+            case Command.PLACE_STOP:
+            case Command.PLACE_TAKE_PROFIT:
+                status = placeConditional(user, command.bookId, command.side,
+                                          command.type == Command.PLACE_STOP ? ConditionalOrders.STOP
+                                                                             : ConditionalOrders.TAKE_PROFIT,
+                                          command.price, command.orderId, command.quantity, reply);
+                break;
+            case Command.PLACE_TRAILING_STOP:
+                status = placeConditional(user, command.bookId, command.side, ConditionalOrders.TRAILING_STOP,
+                                          command.price, 0, command.quantity, reply);
+                break;
+            case Command.PLACE_OCO:
+                status = placeBracket(user, command.bookId, command.side, command.price, command.orderId,
+                                      command.quantity, reply);
+                break;
+            case Command.DEPOSIT:
+                if (user == null) {
+                    status = Reply.UNKNOWN_ACCOUNT;
+                } else {
+                    user.deposit(command.price);
+                    analytics.onNetWorthChange(user.getAccountId());
+                    sequencer.publishAccountEvent(TradeEvent.DEPOSIT, user, command.price);
+                }
+                break;
+            case Command.WITHDRAW:
+                if (user == null) {
+                    status = Reply.UNKNOWN_ACCOUNT;
+                } else if (command.price > user.getAvailableCash()) {
+                    status = Reply.INSUFFICIENT_FUNDS;
+                } else {
+                    user.withdraw(command.price);
+                    analytics.onNetWorthChange(user.getAccountId());
+                    sequencer.publishAccountEvent(TradeEvent.WITHDRAW, user, command.price);
+                }
+                break;
+            case Command.UPDATE_PRICE:
+                if (!stocks.contains(command.bookId)) {
+                    status = Reply.UNKNOWN_STOCK;
+                } else {
+                    Stock stock = stocks.get(command.bookId);
+                    replayMillis = command.orderId; // a replayed tick carries its historical time, a live price 0
+                    markPrice(command.bookId, command.price, false);
+                    movedPrices.set(command.bookId);
+                    bars.onTick(command.bookId, command.price, 0, barTime());
+                    engine.quote(command.bookId, command.price, stock.getAvailableShares());
+                    publishQuote(command.bookId);
+                    replayMillis = 0;
+                }
+                break;
+            case Command.REGISTER_USER:
+                String[] details = (String[]) command.payload;
+                if (findUserByUsername(details[0]) != null) {
+                    status = Reply.DUPLICATE_USER;
+                } else if (arena != null && !arena.hasRoom(details[0], details[2])) {
+                    status = Reply.INVALID;
+                } else {
+                    User registered = addUser(details[0], details[1], details[2], command.price);
+                    sequencer.publishAccountEvent(TradeEvent.REGISTER, registered, command.price);
+                }
+                break;
+            case Command.LIST_ORDERS:
+                if (user != null) {
+                    engine.forEachOpenOrder(user.getAccountId(), (OpenOrderVisitor) command.payload);
+                    conditionals.forEachOpenOrder(user.getAccountId(), (OpenOrderVisitor) command.payload);
+                }
+                break;
+            case Command.SUBMIT_BASKET:
+                executeBasket((Basket) command.payload);
+                break;
+            case Command.MARKET_CLOSE:
+                analytics.closeMarket();
+                break;
+            case Command.RISK_REPORT:
+                analytics.report((RiskAnalytics.Report) command.payload);
+                break;
+            case Command.BAR_HISTORY:
+                if (!stocks.contains(command.bookId)) {
+                    status = Reply.UNKNOWN_STOCK;
+                } else {
+                    bars.query(command.bookId, command.side, command.orderId, command.price, (BarVisitor) command.payload);
+                }
+                break;
+            case Command.BEGIN_TRANSFER:
+                status = beginTransfer(user, command.bookId, command.price, reply);
+                break;
+            case Command.HOLD_TRANSFER:
+                status = holdTransfer(user, command.orderId, command.price, reply);
+                break;
+            case Command.CREDIT_TRANSFER:
+                status = creditTransfer(command.orderId, command.price);
+                break;
+            case Command.RELEASE_TRANSFER:
+                status = releaseTransfer(command.orderId, command.side == 1);
+                break;
+            case Command.END_TRANSFER:
+                status = endTransfer(command.orderId);
+                break;
+            case Command.LIST_STOCK:
+                Stock listing = (Stock) command.payload;
+                if (symbols.idOf(listing.getSymbol()) < 0) {
+                    listStock(listing);
+                    sequencer.publishListingEvent(symbols.idOf(listing.getSymbol()), listing.getCurrentPrice(),
+                                                  listing.getAvailableShares());
+                }
+                reply.orderId = symbols.idOf(listing.getSymbol());
+                break;
+            case Command.CONSOLE_VIEW:
+                ((ConsoleView) command.payload).fill(user, stocks);
+                break;
+            default:
+                status = Reply.INVALID;
+        }
+        fireConditionalOrders();
+        if (endOfBatch) {
+            publishPriceMoves();
+        }
+        
+        command.payload = null;
+        command.reply = null;
+        commandLatency[command.type > 0 && command.type < commandLatency.length ? command.type : 0].recordSince(start);
+        if (reply != null) {
+            reply.complete(status);
+        }
+        // Accounts that traded during the batch get their VaR once, after it
+        if (endOfBatch) {
+            analytics.refresh();
+        }
+    }
+    
+    // Ticks are conflated to one journal record per symbol and batch, carrying the price as it
+    // stands after the batch's trades too, so a replica ends the batch at the live price
+    private static void publishPriceMoves() {
+        for (int symbolId = movedPrices.nextSetBit(0); symbolId >= 0; symbolId = movedPrices.nextSetBit(symbolId + 1)) {
+            Stock stock = stocks.get(symbolId);
+            sequencer.publishPriceEvent(symbolId, stock.getCurrentPrice(), stock.getPreviousPrice());
+        }
+        movedPrices.clear();
+    }
+    
+    // Runs a basket's valid lines a symbol at a time. Its executions and order records are
+    // collected rather than published one by one, and each book's quote goes out once.
+    private static void executeBasket(Basket basket) {
+        batch = new TradeBatch();
+        int[] order = basket.executionOrder();
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            Reply reply = basketReply;
+            reply.reset();
+            basket.status[i] = executeOrder(users.get(basket.accountId[i]), basket.symbolId[i], basket.side[i],
+                                            basket.limitPrice[i], basket.quantity[i], reply);
+            basket.orderId[i] = reply.orderId;
+            basket.filledQuantity[i] = reply.filledQuantity;
+            basket.filledValue[i] = reply.filledValue;
+            if (k == order.length - 1 || basket.symbolId[order[k + 1]] != basket.symbolId[i]) {
+                publishQuote(basket.symbolId[i]);
+            }
+        }
+        sequencer.publishBatch(batch);
+        batch = null;
+    }
+    
+    private static int executeOrder(User user, int symbolId, byte side, long limitPrice, int shares, Reply reply) {
+        if (user == null) {
+            return Reply.UNKNOWN_ACCOUNT;
+        }
+        if (!stocks.contains(symbolId)) {
+            return Reply.UNKNOWN_STOCK;
+        }
+        if (shares <= 0) {
+            return Reply.INVALID;
+        }
+        
+        Stock stock = stocks.get(symbolId);
+        if (side == OrderBook.BUY && limitPrice <= 0 && shares > stock.getAvailableShares()) {
+            return Reply.NOT_ENOUGH_AVAILABLE;
+        }
+        long reservePrice = PreTradeRisk.reservePrice(limitPrice, stock.getCurrentPrice());
+        int status = risk.accept(user, symbolId, side, reservePrice, stock.getCurrentPrice(), shares);
+        if (status != Reply.OK) {
+            // A cluster node draws the shortfall from the account's home node and tries again
+            if (status == Reply.INSUFFICIENT_FUNDS && reply != null) {
+                reply.filledValue = shares * reservePrice - user.getAvailableCash();
+            }
+            return status;
+        }
+        
+        long orderId = placeOrder(user, symbolId, side, limitPrice, shares);
+        if (batch == null) {
+            publishQuote(symbolId);
+        }
+        // The aggressive fills have settled; only a resting remainder keeps its reservation
+        risk.release(user, symbolId, side, reservePrice, orderId == 0 ? shares : engine.getLastFilledQuantity());
+        if (orderId == 0) {
+            risk.orderClosed(user);
+        } else if (batch != null) {
+            batch.record(TransactionJournal.ORDER, user.getAccountId(), symbolId, side, engine.openQuantityOf(orderId),
+                         MatchingEngine.toPrice(engine.limitTicksOf(orderId)), orderId, EpochClock.nanos());
+        } else {
+            sequencer.publishOrderEvent(TradeEvent.ORDER_RESTED, user, symbolId, side, orderId,
+                                        MatchingEngine.toPrice(engine.limitTicksOf(orderId)),
+                                        engine.openQuantityOf(orderId));
+        }
+        if (reply != null) {
+            reply.orderId = orderId;
+            reply.filledQuantity = engine.getLastFilledQuantity();
+            reply.filledValue = engine.getLastFilledValue();
+        }
+        return Reply.OK;
+    }
+    
+    private static int cancelOrder(User user, long orderId, Reply reply) {
+        if (user == null || !engine.isLive(orderId)) {
+            return Reply.UNKNOWN_ORDER;
+        }
+        int bookId = engine.bookOf(orderId);
+        byte side = engine.sideOf(orderId);
+        long reservePrice = MatchingEngine.toPrice(engine.limitTicksOf(orderId));
+        int cancelled = engine.cancel(orderId, user.getAccountId());
+        if (cancelled == 0) {
+            return Reply.UNKNOWN_ORDER;
+        }
+        risk.release(user, bookId, side, reservePrice, cancelled);
+        risk.orderClosed(user);
+        publishQuote(bookId);
+        sequencer.publishOrderEvent(TradeEvent.ORDER_CANCELLED, user, bookId, side, orderId, reservePrice, cancelled);
+        if (reply != null) {
+            reply.cancelledQuantity = cancelled;
+        }
+        return Reply.OK;
+    }
+    
+    // Validated against the current price: a trigger the price has already reached is rejected
+    // rather than fired on the spot. Sells must be covered by shares held now and again when
+    // they fire; nothing is reserved in between.
+    private static int placeConditional(User user, int symbolId, byte side, byte kind, long trigger, long limitPrice,
+                                        int shares, Reply reply) {
+        int status = checkConditional(user, symbolId, side, kind, trigger, limitPrice, shares);
+        if (status != Reply.OK) {
+            return status;
+        }
+        long orderId = armConditional(user, symbolId, side, kind, trigger, limitPrice, shares, 0);
+        if (reply != null) {
+            reply.orderId = orderId;
+        }
+        return Reply.OK;
+    }
+    
+    // A take-profit and a stop market order for the same shares; whichever fires cancels the other
+    private static int placeBracket(User user, int symbolId, byte side, long takeProfit, long stop, int shares,
+                                    Reply reply) {
+        int status = checkConditional(user, symbolId, side, ConditionalOrders.TAKE_PROFIT, takeProfit, 0, shares);
+        if (status == Reply.OK) {
+            status = checkConditional(user, symbolId, side, ConditionalOrders.STOP, stop, 0, shares);
+        }
+        if (status != Reply.OK) {
+            return status;
+        }
+        long stopId = conditionals.place(symbolId, user.getAccountId(), side, ConditionalOrders.STOP,
+                                         MatchingEngine.toTicks(stop), 0, shares,
+                                         MatchingEngine.toTicks(stocks.get(symbolId).getCurrentPrice()));
+        long takeProfitId = armConditional(user, symbolId, side, ConditionalOrders.TAKE_PROFIT, takeProfit, 0, shares,
+                                           stopId);
+        conditionals.link(stopId, takeProfitId);
+        sequencer.publishConditionalEvent(TradeEvent.CONDITIONAL_PLACED, user, symbolId, side, stopId,
+                                          ConditionalOrders.STOP, stop, 0, takeProfitId, shares);
+        if (reply != null) {
+            reply.orderId = takeProfitId;
+        }
+        return Reply.OK;
+    }
+    
+    private static int checkConditional(User user, int symbolId, byte side, byte kind, long trigger, long limitPrice,
+                                        int shares) {
+        if (user == null) {
+            return Reply.UNKNOWN_ACCOUNT;
+        }
+        if (!stocks.contains(symbolId)) {
+            return Reply.UNKNOWN_STOCK;
+        }
+        long price = stocks.get(symbolId).getCurrentPrice();
+        if (shares <= 0 || limitPrice < 0
+                || !ConditionalOrders.isValidTrigger(kind, side, MatchingEngine.toTicks(trigger),
+                                                     MatchingEngine.toTicks(price))) {
+            return Reply.INVALID;
+        }
+        // A limit price goes through the band in executeOrder, against the price when the order fires
+        if (!risk.triggerWithinBand(kind, trigger, price)) {
+            return Reply.RISK_LIMIT;
+        }
+        if (side == OrderBook.SELL && shares > user.getPositions().availableToSell(symbolId)) {
+            return Reply.INSUFFICIENT_SHARES;
+        }
+        return Reply.OK;
+    }
+    
+    private static long armConditional(User user, int symbolId, byte side, byte kind, long trigger, long limitPrice,
+                                       int shares, long linkedOrderId) {
+        long orderId = conditionals.place(symbolId, user.getAccountId(), side, kind, MatchingEngine.toTicks(trigger),
+                                          limitPrice, shares,
+                                          MatchingEngine.toTicks(stocks.get(symbolId).getCurrentPrice()));
+        sequencer.publishConditionalEvent(TradeEvent.CONDITIONAL_PLACED, user, symbolId, side, orderId, kind,
+                                          trigger, limitPrice, linkedOrderId, shares);
+        return orderId;
+    }
+    
+    private static int cancelConditional(User user, long orderId, Reply reply) {
+        if (user == null || !conditionals.isLive(orderId)) {
+            return Reply.UNKNOWN_ORDER;
+        }
+        long linkedOrderId = conditionals.linkedOf(orderId);
+        int cancelled = retireConditional(user, orderId);
+        if (cancelled == 0) {
+            return Reply.UNKNOWN_ORDER;
+        }
+        // Cancelling either half of a bracket cancels the whole bracket
+        if (linkedOrderId != 0) {
+            retireConditional(user, linkedOrderId);
+        }
+        if (reply != null) {
+            reply.cancelledQuantity = cancelled;
+        }
+        return Reply.OK;
+    }
+    
+    // Takes a conditional order out of the triggers and journals it as done
+    private static int retireConditional(User user, long orderId) {
+        int bookId = conditionals.bookOf(orderId);
+        byte side = conditionals.sideOf(orderId);
+        byte kind = conditionals.kindOf(orderId);
+        int quantity = conditionals.cancel(orderId, user.getAccountId());
+        if (quantity > 0) {
+            sequencer.publishConditionalEvent(TradeEvent.CONDITIONAL_DONE, user, bookId, side, orderId, kind,
+                                              ConditionalOrders.CANCELLED, 0, 0, quantity);
+        }
+        return quantity;
+    }
+    
+    // Submits the conditional orders whose triggers were reached while applying a command. Their
+    // own executions move prices too, so this runs until no trigger is left to fire. Each is
+    // journaled as done with the status its order got, so a rejected fire is not lost.
+    private static void fireConditionalOrders() {
+        for (long orderId = conditionals.nextFired(); orderId != 0; orderId = conditionals.nextFired()) {
+            User user = users.get(conditionals.ownerOf(orderId));
+            int bookId = conditionals.bookOf(orderId);
+            byte side = conditionals.sideOf(orderId);
+            long limitPrice = conditionals.limitPriceOf(orderId);
+            int shares = conditionals.quantityOf(orderId);
+            long linkedOrderId = conditionals.linkedOf(orderId);
+            byte kind = conditionals.kindOf(orderId);
+            conditionals.complete(orderId);
+            if (linkedOrderId != 0) {
+                retireConditional(user, linkedOrderId);
+            }
+            int status = executeOrder(user, bookId, side, limitPrice, shares, null);
+            sequencer.publishConditionalEvent(TradeEvent.CONDITIONAL_DONE, user, bookId, side, orderId, kind,
+                                              status, 0, 0, shares);
+            conditionalsFired.increment(1);
+            if (status != Reply.OK) {
+                conditionalsRejected.increment(1);
+            }
+        }
+    }
+    
+    // Coordinator side of a cash transfer: records it before the home node is asked for anything
+    private static int beginTransfer(User user, int source, long amount, Reply reply) {
+        if (user == null) {
+            return Reply.UNKNOWN_ACCOUNT;
+        }
+        if (amount <= 0 || source == nodeId) {
+            return Reply.INVALID;
+        }
+        long transferId = transfers.nextId(nodeId);
+        transfers.begin(transferId, user.getAccountId(), source, amount);
+        sequencer.publishTransferEvent(TransactionJournal.TRANSFER_BEGIN, user, source, (byte) 0, amount, transferId);
+        reply.orderId = transferId;
+        return Reply.OK;
+    }
+    
+    // Home side: holds as much of the amount as is available, like a buy order's reservation
+    private static int holdTransfer(User user, long transferId, long amount, Reply reply) {
+        if (user == null) {
+            return Reply.UNKNOWN_ACCOUNT;
+        }
+        if (transfers.isHeld(transferId) || transfers.isAbandoned(transferId)) {
+            return Reply.INVALID; // a coordinator asks for each hold once, and never after aborting it
+        }
+        long held = Math.min(amount, user.getAvailableCash());
+        if (held <= 0) {
+            return Reply.INSUFFICIENT_FUNDS;
+        }
+        user.reserveCash(held);
+        transfers.hold(transferId, user.getAccountId(), held);
+        sequencer.publishTransferEvent(TransactionJournal.TRANSFER_HOLD, user,
+                                       CashTransfers.coordinatorOf(transferId), (byte) 0, held, transferId);
+        reply.filledValue = held;
+        return Reply.OK;
+    }
+    
+    private static int creditTransfer(long transferId, long amount) {
+        CashTransfers.Transfer transfer = transfers.transfer(transferId);
+        if (transfer == null || transfer.credited || amount <= 0 || amount > transfer.amount) {
+            return Reply.INVALID;
+        }
+        User user = users.get(transfer.accountId);
+        user.deposit(amount);
+        transfers.credit(transferId, amount);
+        analytics.onNetWorthChange(user.getAccountId());
+        sequencer.publishTransferEvent(TransactionJournal.TRANSFER_CREDIT, user, transfer.source, (byte) 1,
+                                       amount, transferId);
+        return Reply.OK;
+    }
+    
+    // Releasing a hold that is already gone succeeds, so a coordinator can always repeat itself
+    private static int releaseTransfer(long transferId, boolean commit) {
+        CashTransfers.Hold hold = transfers.release(transferId);
+        if (hold == null) {
+            if (!commit) {
+                transfers.abandon(transferId);
+            }
+            return Reply.OK;
+        }
+        User user = users.get(hold.accountId);
+        user.releaseCash(hold.amount);
+        if (commit) {
+            user.withdraw(hold.amount);
+            analytics.onNetWorthChange(user.getAccountId());
+        }
+        sequencer.publishTransferEvent(TransactionJournal.TRANSFER_RELEASE, user,
+                                       CashTransfers.coordinatorOf(transferId), (byte) (commit ? 1 : 0),
+                                       hold.amount, transferId);
+        return Reply.OK;
+    }
+    
+    private static int endTransfer(long transferId) {
+        CashTransfers.Transfer transfer = transfers.end(transferId);
+        if (transfer == null) {
+            return Reply.UNKNOWN_ORDER;
+        }
+        sequencer.publishTransferEvent(TransactionJournal.TRANSFER_END, users.get(transfer.accountId),
+                                       transfer.source, (byte) (transfer.credited ? 1 : 0), transfer.amount,
+                                       transferId);
+        return Reply.OK;
+    }
+    
+    static long placeOrder(User user, int symbolId, byte side, long limitPrice, int shares) {
+        Stock stock = stocks.get(symbolId);
+        engine.quote(symbolId, stock.getCurrentPrice(), stock.getAvailableShares());
+        return engine.submit(symbolId, user.getAccountId(), side, limitPrice, shares);
+    }
+    
+    // Top of the resting book plus the house quote; the publisher drops it if nothing moved
+    private static void publishQuote(int bookId) {
+        Stock stock = stocks.get(bookId);
+        OrderBook book = engine.getBook(bookId);
+        long bid = book.bestBid();
+        long ask = book.bestAsk();
+        marketData.quote(bookId, stock.getCurrentPrice(), stock.getAvailableShares(),
+                         bid == PriceLadder.NONE ? 0 : MatchingEngine.toPrice(bid),
+                         bid == PriceLadder.NONE ? 0 : (int) book.bidQuantityAt(bid),
+                         ask == PriceLadder.NONE ? 0 : MatchingEngine.toPrice(ask),
+                         ask == PriceLadder.NONE ? 0 : (int) book.askQuantityAt(ask));
+    }
+    
+    // Applies a fill to both counterparties; the house side moves the stock's float instead
+    private static void settleExecution(int bookId, long buyOrderId, int buyer, long sellOrderId, int seller,
+                                        long priceTicks, int quantity) {
+        Stock stock = stocks.get(bookId);
+        long price = MatchingEngine.toPrice(priceTicks);
+        
+        if (buyer == MatchingEngine.HOUSE) {
+            stock.updateShares(quantity);
+        } else {
+            applyFill(users.get(buyer), bookId, OrderBook.BUY, quantity, price);
+            releaseResting(users.get(buyer), buyOrderId, quantity);
+        }
+        
+        if (seller == MatchingEngine.HOUSE) {
+            stock.updateShares(-quantity);
+        } else {
+            applyFill(users.get(seller), bookId, OrderBook.SELL, quantity, price);
+            releaseResting(users.get(seller), sellOrderId, quantity);
+        }
+        
+        markPrice(bookId, price, true);
+        executions.increment(1);
+        sharesTraded.increment(quantity);
+        bars.onTick(bookId, price, quantity, barTime());
+        marketData.trade(bookId, price, quantity);
+        if (batch != null) {
+            batch.execution(bookId, buyOrderId, buyer, sellOrderId, seller, priceTicks, quantity);
+        } else {
+            sequencer.publishTrade(bookId, buyOrderId, buyer, sellOrderId, seller, priceTicks, quantity);
+        }
+    }
+    
+    // A resting order's reservation shrinks with each fill; the aggressor's is settled in executeOrder
+    private static void releaseResting(User user, long orderId, int quantity) {
+        if (orderId == 0) {
+            return;
+        }
+        risk.release(user, engine.bookOf(orderId), engine.sideOf(orderId),
+                     MatchingEngine.toPrice(engine.limitTicksOf(orderId)), quantity);
+        if (engine.openQuantityOf(orderId) == 0) {
+            risk.orderClosed(user);
+        }
+    }
+    
+    // Journaling output stage
+    private static void journalEvent(TradeEvent event, long sequence, boolean endOfBatch) {
+        long start = System.nanoTime();
+        switch (event.type) {
+            case TradeEvent.EXECUTION:
+                long price = MatchingEngine.toPrice(event.priceTicks);
+                if (event.buyer != MatchingEngine.HOUSE) {
+                    journal.append(TransactionJournal.BUY, event.buyer, event.bookId, event.seller,
+                                   event.quantity, price, event.buyOrderId, event.timestamp);
+                }
+                if (event.seller != MatchingEngine.HOUSE) {
+                    journal.append(TransactionJournal.SELL, event.seller, event.bookId, event.buyer,
+                                   event.quantity, price, event.sellOrderId, event.timestamp);
+                }
+                break;
+            case TradeEvent.DEPOSIT:
+                journal.append(TransactionJournal.DEPOSIT, event.user.getAccountId(), -1, -1, 0,
+                               event.amount, event.timestamp);
+                break;
+            case TradeEvent.WITHDRAW:
+                journal.append(TransactionJournal.WITHDRAW, event.user.getAccountId(), -1, -1, 0,
+                               event.amount, event.timestamp);
+                break;
+            case TradeEvent.REGISTER:
+                User user = event.user;
+                journal.appendRegistration(user.getAccountId(), user.getUsername(), user.getPasswordHash(),
+                                           user.getName(), event.amount, event.timestamp);
+                break;
+            case TradeEvent.ORDER_RESTED:
+            case TradeEvent.ORDER_CANCELLED:
+                journal.append(event.type == TradeEvent.ORDER_RESTED ? TransactionJournal.ORDER : TransactionJournal.CANCEL,
+                               event.user.getAccountId(), event.bookId, event.side, event.quantity, event.amount,
+                               event.orderId, event.timestamp);
+                break;
+            case TradeEvent.BATCH:
+                journal.appendBatch(event.batch);
+                break;
+            case TradeEvent.CONDITIONAL_PLACED:
+                journal.appendConditional(event.user.getAccountId(), event.bookId, event.side, event.kind,
+                                          event.quantity, event.amount, event.limitPrice, event.orderId,
+                                          event.linkedOrderId, event.timestamp);
+                break;
+            case TradeEvent.CONDITIONAL_DONE:
+                journal.append(TransactionJournal.CONDITIONAL_DONE, event.user.getAccountId(), event.bookId,
+                               event.side, event.quantity, event.amount, event.orderId, event.timestamp);
+                break;
+            case TradeEvent.LISTING:
+                Stock stock = stocks.get(event.bookId);
+                journal.appendListing(event.bookId, stock.getSymbol(), stock.getCompanyName(), event.amount,
+                                      event.quantity, event.timestamp);
+                break;
+            case TradeEvent.PRICE_MOVE:
+                journal.appendPrice(event.bookId, event.amount, event.limitPrice, event.timestamp);
+                break;
+            case TradeEvent.TRANSFER:
+                journal.append(event.kind, event.user.getAccountId(), event.bookId, event.side, 0, event.amount,
+                               event.orderId, event.timestamp);
+                break;
+        }
+        journalLatency.recordSince(start);
+    }
+    
+    private static User findUserByCredentials(String username, String password) {
+        User user = findUserByUsername(username);
+        if (user != null && Credentials.matches(password, user.getPasswordHash())) {
+            return user;
+        }
+        return null;
+    }
+    
+    private static int accountIdOf(String username) {
+        return usernameIndex.get(username);
+    }
+    
+    private static User findUserByUsername(String username) {
+        int accountId = usernameIndex.get(username);
+        return accountId == OpenAddressingIndex.MISSING ? null : users.get(accountId);
+    }
+    
+    static Stock findStockBySymbol(String symbol) {
+        int symbolId = symbols.idOf(symbol);
+        return symbolId >= 0 ? stocks.get(symbolId) : null;
+    }
+    
+    private static int getValidShares() {
+        while (true) {
+            try {
+                int shares = Integer.parseInt(scanner.nextLine().trim());
+                if (shares > 0) {
+                    return shares;
+                } else {
+                    System.out.println("Please enter a positive number.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid number.");
+            }
+        }
+    }
+    
+    // Returns 0 for a blank entry, which means a market order
+    private static long getOptionalPrice() {
+        while (true) {
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return 0;
+            }
+            try {
+                long price = Money.parse(input);
+                if (price > 0) {
+                    return price;
+                } else {
+                    System.out.println("Please enter a positive price.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid price.");
+            }
+        }
+    }
+    
+    private static long getValidAmount() {
+        while (true) {
+            try {
+                long amount = Money.parse(scanner.nextLine().trim());
+                if (amount > 0) {
+                    return amount;
+                } else {
+                    System.out.println("Please enter a positive amount.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid amount.");
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package stocktrading;
+
+// A trading rule under test. One instance follows one symbol's ticks in time order and
+// answers each with the position, in shares, it wants to hold; the backtest trades the
+// difference at that tick's price.
+interface Strategy {
+    int onTick(long timeMillis, long price);
+}
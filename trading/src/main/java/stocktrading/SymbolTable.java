@@ -0,0 +1,37 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// Interns stock symbols to dense int ids. The id doubles as the index into the
+// stock table and the order book id, so hot paths never carry the String around.
+class SymbolTable {
+    private final OpenAddressingIndex index = new OpenAddressingIndex(64);
+    private volatile String[] symbols = new String[64];
+    private int count = 0;
+
+    // Single writer only
+    public int intern(String symbol) {
+        int id = index.get(symbol);
+        if (id != OpenAddressingIndex.MISSING) {
+            return id;
+        }
+        if (count == symbols.length) {
+            symbols = Arrays.copyOf(symbols, count * 2);
+        }
+        id = count++;
+        symbols[id] = symbol;
+        index.put(symbol, id);
+        return id;
+    }
+
+    // Returns the id of a known symbol, or -1
+    public int idOf(String symbol) {
+        return index.get(symbol);
+    }
+
+    public String symbolOf(int id) {
+        return symbols[id];
+    }
+
+    public int size() { return count; }
+}
@@ -0,0 +1,235 @@
+package stocktrading;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Historical ticks in one memory-mapped file, a column per field, read in place: nothing
+// is parsed or copied when a file is opened, and any number of threads can read it at
+// once. Rows are in time order (ties keep their input order) for replaying the whole
+// market, and a per-symbol row index lets a backtest walk one symbol's ticks without
+// scanning the others.
+//
+// File, little-endian: header, symbol names, then the time (epoch millis), price (micros)
+// and volume columns as longs, the symbol column as ints, each symbol's first position in
+// the index, and the index itself (row numbers grouped by symbol, in time order).
+class TickFile {
+    private static final int MAGIC = 0x4B434954; // "TICK"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final String[] symbols;
+    private final LongBuffer time;
+    private final LongBuffer price;
+    private final LongBuffer volume;
+    private final IntBuffer symbol;
+    private final IntBuffer symbolStart;
+    private final IntBuffer symbolRows;
+    private final int size;
+
+    private TickFile(ByteBuffer in) throws IOException {
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("Not a tick file");
+        }
+        size = in.getInt();
+        symbols = new String[in.getInt()];
+        for (int s = 0; s < symbols.length; s++) {
+            byte[] bytes = new byte[in.getShort() & 0xFFFF];
+            in.get(bytes);
+            symbols[s] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        int offset = align(in.position());
+        time = longColumn(in, offset, size);
+        price = longColumn(in, offset += size * 8, size);
+        volume = longColumn(in, offset += size * 8, size);
+        symbol = intColumn(in, offset += size * 8, size);
+        symbolStart = intColumn(in, offset += size * 4, symbols.length + 1);
+        symbolRows = intColumn(in, offset + (symbols.length + 1) * 4, size);
+    }
+
+    public static TickFile open(Path file) throws IOException {
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return new TickFile(in);
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Not a tick file: " + file, e);
+        }
+    }
+
+    // Converts CSV ticks, one per line: timestamp,symbol,price[,volume]. The timestamp is
+    // epoch millis or an ISO-8601 instant; blank lines, # comments and a header line
+    // starting with "timestamp" are skipped. Returns the number of ticks written.
+    public static int importCsv(Path csv, Path file) throws IOException {
+        List<String> names = new ArrayList<>();
+        OpenAddressingIndex index = new OpenAddressingIndex(64);
+        long[] times = new long[1024];
+        long[] prices = new long[1024];
+        long[] volumes = new long[1024];
+        int[] symbolIds = new int[1024];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            int number = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || (number == 1 && line.regionMatches(true, 0, "timestamp", 0, 9))) {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                if (fields.length < 3 || fields.length > 4) {
+                    throw new IOException(csv + " line " + number + ": expected timestamp,symbol,price[,volume]");
+                }
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    prices = Arrays.copyOf(prices, count * 2);
+                    volumes = Arrays.copyOf(volumes, count * 2);
+                    symbolIds = Arrays.copyOf(symbolIds, count * 2);
+                }
+                String name = fields[1].trim().toUpperCase();
+                int id = index.get(name);
+                if (id == OpenAddressingIndex.MISSING) {
+                    id = names.size();
+                    names.add(name);
+                    index.put(name, id);
+                }
+                try {
+                    times[count] = parseTime(fields[0].trim());
+                    prices[count] = Money.parse(fields[2].trim());
+                    volumes[count] = fields.length == 4 && !fields[3].isBlank() ? Long.parseLong(fields[3].trim()) : 0;
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    throw new IOException(csv + " line " + number + ": " + e.getMessage());
+                }
+                if (prices[count] <= 0 || volumes[count] < 0) {
+                    throw new IOException(csv + " line " + number + ": price must be positive and volume not negative");
+                }
+                symbolIds[count] = id;
+                count++;
+            }
+        }
+        write(file, names, times, prices, volumes, symbolIds, count);
+        return count;
+    }
+
+    private static long parseTime(String text) {
+        if (!text.isEmpty() && Character.isDigit(text.charAt(0)) && text.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(text);
+        }
+        return Instant.parse(text).toEpochMilli();
+    }
+
+    private static void write(Path file, List<String> names, long[] times, long[] prices, long[] volumes,
+                              int[] symbolIds, int count) throws IOException {
+        // Most feeds are already in time order; only an out-of-order one pays for the sort
+        int[] order = IntStream.range(0, count).toArray();
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = times[i - 1] <= times[i];
+        }
+        if (!sorted) {
+            long[] keys = times;
+            order = IntStream.range(0, count).boxed()
+                    .sorted((a, b) -> Long.compare(keys[a], keys[b]))
+                    .mapToInt(Integer::intValue).toArray();
+        }
+
+        byte[][] encoded = new byte[names.size()][];
+        int namesSize = 0;
+        for (int s = 0; s < encoded.length; s++) {
+            encoded[s] = names.get(s).getBytes(StandardCharsets.UTF_8);
+            namesSize += 2 + encoded[s].length;
+        }
+        long length = align(HEADER_SIZE + namesSize) + (long) count * (3 * 8 + 2 * 4) + (names.size() + 1) * 4L;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Too many ticks for one file (" + count + "); split the input");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(names.size());
+            for (byte[] name : encoded) {
+                out.putShort((short) name.length).put(name);
+            }
+            int offset = align(out.position());
+            LongBuffer timeOut = longColumn(out, offset, count);
+            LongBuffer priceOut = longColumn(out, offset += count * 8, count);
+            LongBuffer volumeOut = longColumn(out, offset += count * 8, count);
+            IntBuffer symbolOut = intColumn(out, offset += count * 8, count);
+            IntBuffer startOut = intColumn(out, offset += count * 4, names.size() + 1);
+            IntBuffer rowsOut = intColumn(out, offset + (names.size() + 1) * 4, count);
+
+            int[] start = new int[names.size() + 1];
+            for (int row = 0; row < count; row++) {
+                int i = order[row];
+                timeOut.put(row, times[i]);
+                priceOut.put(row, prices[i]);
+                volumeOut.put(row, volumes[i]);
+                symbolOut.put(row, symbolIds[i]);
+                start[symbolIds[i] + 1]++;
+            }
+            for (int s = 0; s < names.size(); s++) {
+                start[s + 1] += start[s];
+            }
+            startOut.put(0, start, 0, start.length);
+            for (int row = 0; row < count; row++) {
+                rowsOut.put(start[symbolIds[order[row]]]++, row);
+            }
+            out.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() { return size; }
+    public int symbolCount() { return symbols.length; }
+    public String symbol(int symbolIndex) { return symbols[symbolIndex]; }
+
+    // Row accessors, in time order
+    public long time(int row) { return time.get(row); }
+    public long price(int row) { return price.get(row); }
+    public long volume(int row) { return volume.get(row); }
+    public int symbolIndex(int row) { return symbol.get(row); }
+
+    // One symbol's ticks: its k-th row in time order, for k below rowCount(symbolIndex)
+    public int rowCount(int symbolIndex) {
+        return symbolStart.get(symbolIndex + 1) - symbolStart.get(symbolIndex);
+    }
+
+    public int row(int symbolIndex, int k) {
+        return symbolRows.get(symbolStart.get(symbolIndex) + k);
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    private static LongBuffer longColumn(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, length * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+
+    private static IntBuffer intColumn(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, length * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+}
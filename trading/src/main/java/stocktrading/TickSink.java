@@ -0,0 +1,7 @@
+package stocktrading;
+
+// Receives simulated prices; called concurrently from fork/join workers, but each
+// symbol is only ever advanced by one worker so its ticks arrive in order.
+interface TickSink {
+    void onTick(int symbolId, long price);
+}
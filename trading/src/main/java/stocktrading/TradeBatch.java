@@ -0,0 +1,99 @@
+package stocktrading;
+
+import java.util.Arrays;
+
+// Everything one basket produced on the business-logic thread, in the order it happened:
+// journal records in the journal's own column layout, plus the executions for fan-out.
+// It crosses to the output stages as a single TradeEvent, and the journal writes it as
+// one block with one size update.
+class TradeBatch {
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Journal records
+    byte[] type = new byte[INITIAL_CAPACITY];
+    int[] account = new int[INITIAL_CAPACITY];
+    int[] book = new int[INITIAL_CAPACITY];
+    int[] counterparty = new int[INITIAL_CAPACITY]; // the side, for order records
+    int[] shares = new int[INITIAL_CAPACITY];
+    long[] price = new long[INITIAL_CAPACITY];      // micros
+    long[] orderId = new long[INITIAL_CAPACITY];
+    long[] timestamp = new long[INITIAL_CAPACITY];  // epoch nanos
+    private int records = 0;
+
+    // Executions, as ExecutionListener sees them
+    int[] executionBook = new int[INITIAL_CAPACITY];
+    long[] buyOrderId = new long[INITIAL_CAPACITY];
+    int[] buyer = new int[INITIAL_CAPACITY];
+    long[] sellOrderId = new long[INITIAL_CAPACITY];
+    int[] seller = new int[INITIAL_CAPACITY];
+    long[] priceTicks = new long[INITIAL_CAPACITY];
+    int[] quantity = new int[INITIAL_CAPACITY];
+    private int executions = 0;
+
+    // One record per account side, as journalEvent writes a single execution
+    public void execution(int bookId, long buyOrder, int buyAccount, long sellOrder, int sellAccount,
+                          long ticks, int fill) {
+        if (executions == executionBook.length) {
+            growExecutions();
+        }
+        executionBook[executions] = bookId;
+        buyOrderId[executions] = buyOrder;
+        buyer[executions] = buyAccount;
+        sellOrderId[executions] = sellOrder;
+        seller[executions] = sellAccount;
+        priceTicks[executions] = ticks;
+        quantity[executions] = fill;
+        executions++;
+
+        long now = EpochClock.nanos();
+        long fillPrice = MatchingEngine.toPrice(ticks);
+        if (buyAccount != MatchingEngine.HOUSE) {
+            record(TransactionJournal.BUY, buyAccount, bookId, sellAccount, fill, fillPrice, buyOrder, now);
+        }
+        if (sellAccount != MatchingEngine.HOUSE) {
+            record(TransactionJournal.SELL, sellAccount, bookId, buyAccount, fill, fillPrice, sellOrder, now);
+        }
+    }
+
+    public void record(byte recordType, int accountId, int bookId, int other, int recordShares,
+                       long recordPrice, long recordOrderId, long recordTimestamp) {
+        if (records == type.length) {
+            growRecords();
+        }
+        type[records] = recordType;
+        account[records] = accountId;
+        book[records] = bookId;
+        counterparty[records] = other;
+        shares[records] = recordShares;
+        price[records] = recordPrice;
+        orderId[records] = recordOrderId;
+        timestamp[records] = recordTimestamp;
+        records++;
+    }
+
+    public int recordCount() { return records; }
+    public int executionCount() { return executions; }
+
+    private void growRecords() {
+        int capacity = type.length * 2;
+        type = Arrays.copyOf(type, capacity);
+        account = Arrays.copyOf(account, capacity);
+        book = Arrays.copyOf(book, capacity);
+        counterparty = Arrays.copyOf(counterparty, capacity);
+        shares = Arrays.copyOf(shares, capacity);
+        price = Arrays.copyOf(price, capacity);
+        orderId = Arrays.copyOf(orderId, capacity);
+        timestamp = Arrays.copyOf(timestamp, capacity);
+    }
+
+    private void growExecutions() {
+        int capacity = executionBook.length * 2;
+        executionBook = Arrays.copyOf(executionBook, capacity);
+        buyOrderId = Arrays.copyOf(buyOrderId, capacity);
+        buyer = Arrays.copyOf(buyer, capacity);
+        sellOrderId = Arrays.copyOf(sellOrderId, capacity);
+        seller = Arrays.copyOf(seller, capacity);
+        priceTicks = Arrays.copyOf(priceTicks, capacity);
+        quantity = Arrays.copyOf(quantity, capacity);
+    }
+}
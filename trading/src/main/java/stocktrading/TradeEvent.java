@@ -0,0 +1,113 @@
+package stocktrading;
+
+// Output ring entry: an execution, resting order change or cash/account change as applied
+// by the business-logic thread
+class TradeEvent {
+    static final byte EXECUTION = 1;
+    static final byte DEPOSIT = 2;
+    static final byte WITHDRAW = 3;
+    static final byte REGISTER = 4;
+    static final byte ORDER_RESTED = 5;
+    static final byte ORDER_CANCELLED = 6;
+    static final byte BATCH = 7; // everything a basket produced, in one event
+    static final byte CONDITIONAL_PLACED = 8;
+    static final byte CONDITIONAL_DONE = 9; // fired or cancelled
+    static final byte TRANSFER = 10; // a step of a cluster cash transfer, journaled as kind
+    static final byte PRICE_MOVE = 11; // amount = price, limitPrice = the price before it
+    static final byte LISTING = 12; // a stock was listed: amount = price, quantity = shares available
+
+    byte type;
+    int bookId;
+    long buyOrderId;
+    int buyer;
+    long sellOrderId;
+    int seller;
+    long priceTicks;
+    int quantity;
+    long amount;
+    User user;
+    long orderId;
+    byte side;
+    byte kind;
+    long limitPrice;
+    long linkedOrderId;
+    TradeBatch batch;
+    long timestamp; // epoch nanos
+
+    void set(int bookId, long buyOrderId, int buyer, long sellOrderId, int seller, long priceTicks, int quantity) {
+        this.type = EXECUTION;
+        this.bookId = bookId;
+        this.buyOrderId = buyOrderId;
+        this.buyer = buyer;
+        this.sellOrderId = sellOrderId;
+        this.seller = seller;
+        this.priceTicks = priceTicks;
+        this.quantity = quantity;
+        this.user = null;
+        this.batch = null;
+        this.timestamp = EpochClock.nanos();
+    }
+
+    void setAccountEvent(byte type, User user, long amount) {
+        this.type = type;
+        this.user = user;
+        this.amount = amount;
+        this.batch = null;
+        this.timestamp = EpochClock.nanos();
+    }
+
+    // A limit order coming to rest (with its open quantity) or being cancelled
+    void setOrderEvent(byte type, User user, int bookId, byte side, long orderId, long limitPrice, int quantity) {
+        this.type = type;
+        this.user = user;
+        this.bookId = bookId;
+        this.side = side;
+        this.orderId = orderId;
+        this.amount = limitPrice;
+        this.quantity = quantity;
+        this.batch = null;
+        this.timestamp = EpochClock.nanos();
+    }
+
+    // A conditional order armed (amount = trigger or trail) or leaving the book of triggers
+    void setConditionalEvent(byte type, User user, int bookId, byte side, long orderId, byte kind, long trigger,
+                             long limitPrice, long linkedOrderId, int quantity) {
+        setOrderEvent(type, user, bookId, side, orderId, trigger, quantity);
+        this.kind = kind;
+        this.limitPrice = limitPrice;
+        this.linkedOrderId = linkedOrderId;
+    }
+
+    // One step of a cash transfer between nodes; bookId is the other node, side the commit flag
+    void setTransferEvent(byte step, User user, int node, byte commit, long amount, long transferId) {
+        setOrderEvent(TRANSFER, user, node, commit, transferId, amount, 0);
+        this.kind = step;
+    }
+
+    void setPriceEvent(int bookId, long price, long previousPrice) {
+        this.type = PRICE_MOVE;
+        this.bookId = bookId;
+        this.amount = price;
+        this.limitPrice = previousPrice;
+        this.user = null;
+        this.batch = null;
+        this.timestamp = EpochClock.nanos();
+    }
+
+    void setListingEvent(int bookId, long price, int shares) {
+        this.type = LISTING;
+        this.bookId = bookId;
+        this.amount = price;
+        this.quantity = shares;
+        this.user = null;
+        this.batch = null;
+        this.timestamp = EpochClock.nanos();
+    }
+
+    void setBatch(TradeBatch batch) {
+        this.type = BATCH;
+        this.user = null;
+        this.batch = batch;
+        this.timestamp = EpochClock.nanos();
+    }
+}
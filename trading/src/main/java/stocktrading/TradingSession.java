@@ -0,0 +1,90 @@
+package stocktrading;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// One simulated user session: a scripted mix of buys, sells, cancels, deposits and
+// withdrawals against its own account, with exactly one request in flight. The session is
+// its own Reply, so completing a request costs no allocation; completion hands it back to
+// its runtime worker instead of waking a blocked thread.
+class TradingSession extends Reply {
+    private final SessionRuntime runtime;
+    private final int accountId;
+    private final int worker;
+    private final int[] symbolIds;
+    private final long[] prices; // reference price per symbol for limits, micros
+    private final SplittableRandom random;
+    private long[] openOrders = new long[8]; // resting orders it placed, some since filled
+    private int openOrderCount = 0;
+    private int remaining;
+    private boolean sent = false;
+    private boolean closing = false;
+
+    TradingSession(SessionRuntime runtime, int accountId, int worker, int[] symbolIds, long[] prices,
+                   int operations, long seed) {
+        this.runtime = runtime;
+        this.accountId = accountId;
+        this.worker = worker;
+        this.symbolIds = symbolIds;
+        this.prices = prices;
+        this.remaining = operations;
+        this.random = new SplittableRandom(seed);
+    }
+
+    int worker() { return worker; }
+
+    // Worker thread: looks at the last result, then sends the next request. Returns false
+    // once the script is done and every order it left resting has been cancelled.
+    boolean step(Sequencer sequencer) {
+        if (sent) {
+            if (orderId != 0) {
+                if (openOrderCount == openOrders.length) {
+                    openOrders = Arrays.copyOf(openOrders, openOrderCount * 2);
+                }
+                openOrders[openOrderCount++] = orderId;
+            }
+            runtime.completed(this, status);
+        }
+        reset();
+        sent = true;
+
+        if (remaining == 0) {
+            closing = true;
+        }
+        if (closing) {
+            if (openOrderCount == 0) {
+                return false;
+            }
+            sequencer.publish(Command.CANCEL_ORDER, accountId, -1, (byte) 0, 0, 0, openOrders[--openOrderCount], null, this);
+            return true;
+        }
+        remaining--;
+
+        int action = random.nextInt(100);
+        if (action < 70) {
+            int pick = random.nextInt(symbolIds.length);
+            byte side = random.nextBoolean() ? OrderBook.BUY : OrderBook.SELL;
+            // Limits straddle the reference price so orders both rest and cross; a fifth are market orders
+            long limit = action < 14 ? 0 : prices[pick] * (97 + random.nextInt(7)) / 100;
+            sequencer.publish(Command.PLACE_ORDER, accountId, symbolIds[pick], side, limit,
+                              1 + random.nextInt(10), 0, null, this);
+        } else if (action < 85 && openOrderCount > 0) {
+            int pick = random.nextInt(openOrderCount);
+            long cancel = openOrders[pick];
+            openOrders[pick] = openOrders[--openOrderCount];
+            sequencer.publish(Command.CANCEL_ORDER, accountId, -1, (byte) 0, 0, 0, cancel, null, this);
+        } else if (action < 93) {
+            sequencer.publish(Command.DEPOSIT, accountId, -1, (byte) 0, Money.of(100 + random.nextInt(900)),
+                              0, 0, null, this);
+        } else {
+            sequencer.publish(Command.WITHDRAW, accountId, -1, (byte) 0, Money.of(100 + random.nextInt(900)),
+                              0, 0, null, this);
+        }
+        return true;
+    }
+
+    @Override
+    void onComplete() {
+        runtime.ready(this);
+    }
+}
@@ -0,0 +1,37 @@
+package stocktrading;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Read-only view of one journaled trade. The record itself is 64 bytes of primitives in
+// the journal; a view is repositioned rather than allocated per trade, and the side and
+// timestamp only become strings when they are displayed.
+class Transaction {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    
+    private TransactionJournal journal;
+    private long index;
+    
+    public Transaction wrap(TransactionJournal journal, long index) {
+        this.journal = journal;
+        this.index = index;
+        return this;
+    }
+    
+    // Getters
+    public int getAccountId() { return journal.accountId(index); }
+    public int getSymbolId() { return journal.bookId(index); }
+    public byte getSide() { return journal.type(index) == TransactionJournal.BUY ? OrderBook.BUY : OrderBook.SELL; }
+    public int getShares() { return journal.shares(index); }
+    public long getPrice() { return journal.price(index); } // micros
+    public long getEpochNanos() { return journal.timestamp(index); }
+    public String getType() { return getSide() == OrderBook.BUY ? "BUY" : "SELL"; }
+    
+    public String getTimestamp() {
+        long nanos = getEpochNanos();
+        return TIMESTAMP_FORMAT.format(Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                                                             Math.floorMod(nanos, 1_000_000_000L)));
+    }
+}
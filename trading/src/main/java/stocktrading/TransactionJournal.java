@@ -0,0 +1,432 @@
+package stocktrading;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Append-only journal of fixed-width 64 byte records in memory-mapped segment files.
+// Appends are plain stores into the current mapping and the kernel writes the pages
+// back, so history is bounded by disk rather than heap. A registration carries its
+// strings in continuation records that follow it.
+//
+// A record's type byte is its commit marker and is stored after everything else in it. A
+// block of records (a registration, a basket, a follower's copy) stores its first type
+// last, so after a crash the journal holds all of a block or none of it.
+//
+// Trade records are also linked newest to oldest per account and per symbol, through
+// back-pointers stored in the record before its commit marker, with only each chain's head
+// held in memory; a sparse index of timestamps per block of records locates time ranges.
+// Those in-memory indexes come back from a snapshot's JournalIndex on open.
+//
+// Resting orders are journaled as they rest and are cancelled, and every fill names the
+// resting order it came from, so the order books can be rebuilt as well as the accounts.
+class TransactionJournal {
+    static final int RECORD_SIZE = 64;
+    static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 20; // 64 MB segments
+
+    static final byte BUY = 1;
+    static final byte SELL = 2;
+    static final byte DEPOSIT = 3;
+    static final byte WITHDRAW = 4;
+    static final byte REGISTER = 5;
+    static final byte CONTINUATION = 6;
+    static final byte ORDER = 7;  // a limit order came to rest with its open quantity
+    static final byte CANCEL = 8; // a resting order was cancelled
+    static final byte CONDITIONAL = 9;       // a conditional order was armed
+    static final byte CONDITIONAL_DONE = 10; // fired or cancelled; the price is the fired order's status, or -1
+    // Cluster cash transfers: the order id is the transfer id and the price the amount
+    static final byte TRANSFER_BEGIN = 11;   // coordinator: the book is the node holding the cash
+    static final byte TRANSFER_HOLD = 12;    // home node: cash held for another node
+    static final byte TRANSFER_CREDIT = 13;  // coordinator: the amount granted was credited
+    static final byte TRANSFER_RELEASE = 14; // home node: counterparty 1 if the hold was taken, 0 if returned
+    static final byte TRANSFER_END = 15;     // coordinator: counterparty 1 if it committed
+    static final byte PRICE_MOVE = 16; // a symbol's price after ticks moved it, at most one per command batch
+    static final byte LISTING = 17;    // a stock listed after startup; the order id slot holds its shares
+
+    // Record layout
+    private static final int TYPE = 0;
+    private static final int SPAN = 1;
+    private static final int ACCOUNT = 4;
+    private static final int TIMESTAMP = 8; // epoch nanos
+    private static final int BOOK = 16;
+    private static final int COUNTERPARTY = 20;
+    private static final int SHARES = 24;
+    private static final int PRICE = 32;
+    private static final int PREVIOUS_BY_ACCOUNT = 40; // index + 1 of the account's previous trade, 0 if none
+    private static final int PREVIOUS_BY_BOOK = 48;
+    private static final int LIMIT_PRICE = 40;     // conditional records only: they are never chained
+    private static final int LINKED_ORDER_ID = 48;
+    private static final int ORDER_ID = 56; // resting order filled, rested or cancelled; 0 for an aggressor
+    private static final int PAYLOAD = 1; // continuation records carry bytes after the type
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0]; // replaced, never mutated
+    private volatile long size = 0;
+
+    static final long NONE = -1;
+    static final int TIME_BLOCK_BITS = 12;
+    private static final VarHandle HEADS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Written by the appending thread; readers see them through size and the release stores
+    private volatile long[] accountHead = new long[0];  // latest trade index + 1 per account
+    private volatile long[] bookHead = new long[0];     // latest trade index + 1 per symbol
+    private volatile long[] blockLatest = new long[16]; // running maximum timestamp up to each block
+
+    private TransactionJournal(Path directory, int recordsPerSegment) {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+    }
+
+    public static TransactionJournal open(Path directory, int recordsPerSegment) throws IOException {
+        return open(directory, recordsPerSegment, null);
+    }
+
+    // Maps every existing segment and positions the writer after the last committed record.
+    // The rest of a block whose commit marker never landed is cleared, which may reach into
+    // a segment it was spilling over into. Given the index a snapshot was taken with, only
+    // the records after it are scanned and indexed; without one, or with one this journal
+    // does not reach, everything is.
+    public static TransactionJournal open(Path directory, int recordsPerSegment, JournalIndex from)
+            throws IOException {
+        Files.createDirectories(directory);
+        TransactionJournal journal = new TransactionJournal(directory, recordsPerSegment);
+        while (Files.exists(journal.segmentPath(journal.segments.length))) {
+            journal.mapSegment(journal.segments.length);
+        }
+        long capacity = (long) journal.segments.length * recordsPerSegment;
+        long end = 0;
+        if (from != null && from.position > 0 && from.position <= capacity && journal.type(from.position - 1) != 0) {
+            journal.accountHead = from.accountHead.clone();
+            journal.bookHead = from.bookHead.clone();
+            journal.blockLatest = Arrays.copyOf(from.blockLatest, Math.max(16, from.blockLatest.length));
+            end = from.position;
+        }
+        long indexed = end;
+        while (end < capacity && journal.type(end) != 0) {
+            end++;
+        }
+        for (long index = end + 1; index < capacity && journal.type(index) != 0; index++) {
+            journal.segment(index).put(journal.offsetOf(index) + TYPE, (byte) 0);
+        }
+        journal.size = end;
+        journal.rebuildIndexes(indexed);
+        return journal;
+    }
+
+    public long append(byte type, int accountId, int bookId, int counterparty, int shares,
+                       long price, long timestamp) {
+        return append(type, accountId, bookId, counterparty, shares, price, 0, timestamp);
+    }
+
+    // Order records carry the side in place of the counterparty and the limit as the price
+    public long append(byte type, int accountId, int bookId, int counterparty, int shares,
+                       long price, long orderId, long timestamp) {
+        long index = size;
+        MappedByteBuffer segment = segmentFor(index);
+        int offset = offsetOf(index);
+        segment.putInt(offset + ACCOUNT, accountId);
+        segment.putLong(offset + TIMESTAMP, timestamp);
+        segment.putInt(offset + BOOK, bookId);
+        segment.putInt(offset + COUNTERPARTY, counterparty);
+        segment.putInt(offset + SHARES, shares);
+        segment.putLong(offset + PRICE, price);
+        segment.putLong(offset + ORDER_ID, orderId);
+        segment.put(offset + SPAN, (byte) 1);
+        indexRecord(index, type, accountId, bookId, timestamp);
+        commit(segment, offset, type);
+        size = index + 1;
+        return index;
+    }
+
+    // Conditional records carry side | kind << 8 in place of the counterparty, the trigger (or
+    // trail) as the price, and the limit price and one-cancels-other partner in the chain slots
+    public long appendConditional(int accountId, int bookId, byte side, byte kind, int shares, long trigger,
+                                  long limitPrice, long orderId, long linkedOrderId, long timestamp) {
+        MappedByteBuffer segment = segmentFor(size);
+        segment.putLong(offsetOf(size) + LIMIT_PRICE, limitPrice);
+        segment.putLong(offsetOf(size) + LINKED_ORDER_ID, linkedOrderId);
+        return append(CONDITIONAL, accountId, bookId, side | kind << 8, shares, trigger, orderId, timestamp);
+    }
+
+    // Price records carry the price before it in the order id slot
+    public long appendPrice(int bookId, long price, long previousPrice, long timestamp) {
+        return append(PRICE_MOVE, -1, bookId, -1, 0, price, previousPrice, timestamp);
+    }
+
+    // Writes a basket's records as one contiguous block; readers see all of them at once
+    public long appendBatch(TradeBatch batch) {
+        long first = size;
+        int count = batch.recordCount();
+        if (count == 0) {
+            return first;
+        }
+        for (int i = 0; i < count; i++) {
+            long index = first + i;
+            MappedByteBuffer segment = segmentFor(index);
+            int offset = offsetOf(index);
+            segment.putInt(offset + ACCOUNT, batch.account[i]);
+            segment.putLong(offset + TIMESTAMP, batch.timestamp[i]);
+            segment.putInt(offset + BOOK, batch.book[i]);
+            segment.putInt(offset + COUNTERPARTY, batch.counterparty[i]);
+            segment.putInt(offset + SHARES, batch.shares[i]);
+            segment.putLong(offset + PRICE, batch.price[i]);
+            segment.putLong(offset + ORDER_ID, batch.orderId[i]);
+            segment.put(offset + SPAN, (byte) 1);
+            if (i > 0) {
+                segment.put(offset + TYPE, batch.type[i]);
+            }
+            indexRecord(index, batch.type[i], batch.account[i], batch.book[i], batch.timestamp[i]);
+        }
+        commit(segmentFor(first), offsetOf(first), batch.type[0]);
+        size = first + count;
+        return first;
+    }
+
+    public long appendRegistration(int accountId, String username, String passwordHash, String name,
+                                   long initialBalance, long timestamp) {
+        return appendDetails(REGISTER, accountId, -1, initialBalance, 0, timestamp, username, passwordHash, name);
+    }
+
+    public long appendListing(int bookId, String symbol, String companyName, long price, int shares,
+                              long timestamp) {
+        return appendDetails(LISTING, -1, bookId, price, shares, timestamp, symbol, companyName);
+    }
+
+    // A record whose strings follow it in continuation records
+    private long appendDetails(byte type, int accountId, int bookId, long price, long orderId, long timestamp,
+                               String... details) {
+        byte[] payload = String.join("\n", details).getBytes(StandardCharsets.UTF_8);
+        int perRecord = RECORD_SIZE - PAYLOAD;
+        int continuations = (payload.length + perRecord - 1) / perRecord;
+        if (continuations > 127) {
+            throw new IllegalArgumentException("Record details too long");
+        }
+
+        long index = size;
+        for (int i = 0; i < continuations; i++) {
+            MappedByteBuffer segment = segmentFor(index + 1 + i);
+            int offset = offsetOf(index + 1 + i);
+            int length = Math.min(perRecord, payload.length - i * perRecord);
+            for (int b = 0; b < length; b++) {
+                segment.put(offset + PAYLOAD + b, payload[i * perRecord + b]);
+            }
+            segment.put(offset + TYPE, CONTINUATION);
+        }
+
+        MappedByteBuffer segment = segmentFor(index);
+        int offset = offsetOf(index);
+        segment.putInt(offset + ACCOUNT, accountId);
+        segment.putLong(offset + TIMESTAMP, timestamp);
+        segment.putInt(offset + BOOK, bookId);
+        segment.putInt(offset + SHARES, payload.length);
+        segment.putLong(offset + PRICE, price);
+        segment.putLong(offset + ORDER_ID, orderId);
+        segment.put(offset + SPAN, (byte) (continuations + 1));
+        indexRecord(index, type, accountId, bookId, timestamp);
+        commit(segment, offset, type);
+        size = index + 1 + continuations;
+        return index;
+    }
+
+    // Copies count record slots from first into out as they are stored, for a follower's appendRecords
+    public void copyRecords(long first, int count, ByteBuffer out) {
+        for (long index = first; index < first + count; index++) {
+            MappedByteBuffer segment = segment(index);
+            int offset = offsetOf(index);
+            for (int b = 0; b < RECORD_SIZE; b += 8) {
+                out.putLong(segment.getLong(offset + b));
+            }
+        }
+    }
+
+    // Appends whole records copied from another journal; readers see all of them at once.
+    // The trade links are rewritten from this journal's own heads, which match the source's.
+    public void appendRecords(ByteBuffer in, int count) {
+        long first = size;
+        if (count == 0) {
+            return;
+        }
+        byte firstType = 0;
+        for (long index = first; index < first + count; index++) {
+            MappedByteBuffer segment = segmentFor(index);
+            int offset = offsetOf(index);
+            for (int b = 0; b < RECORD_SIZE; b += 8) {
+                segment.putLong(offset + b, in.getLong());
+            }
+            if (index == first) {
+                firstType = segment.get(offset + TYPE);
+                segment.put(offset + TYPE, (byte) 0);
+            }
+        }
+        for (long index = first; index < first + count; index += Math.max(1, span(index))) {
+            indexRecord(index, index == first ? firstType : type(index), accountId(index), bookId(index),
+                        timestamp(index));
+        }
+        commit(segment(first), offsetOf(first), firstType);
+        size = first + count;
+    }
+
+    // Number of record slots written, including continuation records
+    public long size() { return size; }
+
+    public byte type(long index) { return segment(index).get(offsetOf(index) + TYPE); }
+    public int span(long index) { return segment(index).get(offsetOf(index) + SPAN); }
+    public int accountId(long index) { return segment(index).getInt(offsetOf(index) + ACCOUNT); }
+    public long timestamp(long index) { return segment(index).getLong(offsetOf(index) + TIMESTAMP); }
+    public int bookId(long index) { return segment(index).getInt(offsetOf(index) + BOOK); }
+    public int counterparty(long index) { return segment(index).getInt(offsetOf(index) + COUNTERPARTY); }
+    public int shares(long index) { return segment(index).getInt(offsetOf(index) + SHARES); }
+    public long price(long index) { return segment(index).getLong(offsetOf(index) + PRICE); } // micros
+    public long orderId(long index) { return segment(index).getLong(offsetOf(index) + ORDER_ID); }
+    public long limitPrice(long index) { return segment(index).getLong(offsetOf(index) + LIMIT_PRICE); }
+    public long linkedOrderId(long index) { return segment(index).getLong(offsetOf(index) + LINKED_ORDER_ID); }
+
+    // Most recent trade of an account or symbol and the one before a given trade, NONE at the end
+    public long latestTradeOfAccount(int accountId) { return head(accountHead, accountId); }
+    public long latestTradeOfBook(int bookId) { return head(bookHead, bookId); }
+    public long previousTradeOfAccount(long index) { return segment(index).getLong(offsetOf(index) + PREVIOUS_BY_ACCOUNT) - 1; }
+    public long previousTradeOfBook(long index) { return segment(index).getLong(offsetOf(index) + PREVIOUS_BY_BOOK) - 1; }
+
+    // Index to start a newest-first walk of records stamped before timestamp: no record at or
+    // after it lies past the block the running maximum first reaches it in
+    public long lastIndexBefore(long timestamp) {
+        long end = size;
+        long[] latest = blockLatest;
+        int blocks = (int) Math.min(latest.length, (end + (1 << TIME_BLOCK_BITS) - 1) >>> TIME_BLOCK_BITS);
+        int low = 0;
+        int high = blocks;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (latest[mid] >= timestamp) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return Math.min(end, (long) (low + 1) << TIME_BLOCK_BITS) - 1;
+    }
+
+    // Username, password hash and name of a REGISTER record
+    public String[] registrationDetails(long index) {
+        return details(index).split("\n", 3);
+    }
+
+    // Symbol and company name of a LISTING record
+    public String[] listingDetails(long index) {
+        return details(index).split("\n", 2);
+    }
+
+    private String details(long index) {
+        int length = shares(index);
+        byte[] payload = new byte[length];
+        int perRecord = RECORD_SIZE - PAYLOAD;
+        for (int i = 0; i < length; i++) {
+            long record = index + 1 + i / perRecord;
+            payload[i] = segment(record).get(offsetOf(record) + PAYLOAD + i % perRecord);
+        }
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    private void indexRecord(long index, byte type, int accountId, int bookId, long timestamp) {
+        int block = (int) (index >>> TIME_BLOCK_BITS);
+        long[] latest = blockLatest;
+        if (block >= latest.length) {
+            latest = blockLatest = Arrays.copyOf(latest, Math.max(block + 1, latest.length * 2));
+        }
+        long previousMax = block > 0 ? latest[block - 1] : 0;
+        latest[block] = Math.max(Math.max(latest[block], previousMax), timestamp);
+
+        if (type != BUY && type != SELL) {
+            return;
+        }
+        MappedByteBuffer segment = segment(index);
+        int offset = offsetOf(index);
+        long[] accounts = accountHead;
+        if (accountId >= accounts.length) {
+            accounts = accountHead = Arrays.copyOf(accounts, Math.max(accountId + 1, accounts.length * 2));
+        }
+        long[] books = bookHead;
+        if (bookId >= books.length) {
+            books = bookHead = Arrays.copyOf(books, Math.max(bookId + 1, books.length * 2));
+        }
+        segment.putLong(offset + PREVIOUS_BY_ACCOUNT, accounts[accountId]);
+        segment.putLong(offset + PREVIOUS_BY_BOOK, books[bookId]);
+        HEADS.setRelease(accounts, accountId, index + 1);
+        HEADS.setRelease(books, bookId, index + 1);
+    }
+
+    // Stores a record's or block's type once everything it commits has been stored
+    private static void commit(MappedByteBuffer segment, int offset, byte type) {
+        VarHandle.storeStoreFence();
+        segment.put(offset + TYPE, type);
+    }
+
+    // Recomputes the links and heads from a record on; from the start, this also upgrades
+    // journals written before the links existed, or before they were written ahead of the commit
+    private void rebuildIndexes(long from) {
+        long index = from;
+        while (index < size) {
+            indexRecord(index, type(index), accountId(index), bookId(index), timestamp(index));
+            index += Math.max(1, span(index));
+        }
+    }
+
+    private static long head(long[] heads, int id) {
+        return id >= 0 && id < heads.length ? (long) HEADS.getAcquire(heads, id) - 1 : NONE;
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments[(int) (index / recordsPerSegment)];
+    }
+
+    private MappedByteBuffer segmentFor(long index) {
+        int segment = (int) (index / recordsPerSegment);
+        while (segment >= segments.length) {
+            try {
+                mapSegment(segments.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return segments[segment];
+    }
+
+    private int offsetOf(long index) {
+        return (int) (index % recordsPerSegment) * RECORD_SIZE;
+    }
+
+    private void mapSegment(int number) throws IOException {
+        long length = (long) recordsPerSegment * RECORD_SIZE;
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath(number).toFile(), "rw")) {
+            if (file.length() < length) {
+                file.setLength(length);
+            }
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            MappedByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[segments.length] = buffer;
+            segments = grown;
+        }
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("transactions-%05d.journal", number));
+    }
+}
@@ -0,0 +1,86 @@
+package stocktrading;
+
+// Newest-first pages of journaled trades, filtered by account, symbol and time range.
+// With an account or symbol filter the walk follows that key's chain of back-links, so
+// a page costs the trades of that key it passes over, never a scan of everyone else's;
+// without one it starts from the time index. The returned cursor is the journal index to
+// resume from, so paging needs no state between calls and stays valid while the journal
+// grows. Timestamps are assumed to rise with journal order, as the sequencer stamps them.
+class TransactionQuery {
+    static final int ANY = -1;
+    static final long FIRST_PAGE = Long.MAX_VALUE;
+    static final long END = TransactionJournal.NONE;
+
+    private final TransactionJournal journal;
+    private int accountId = ANY;
+    private int bookId = ANY;
+    private long fromNanos = Long.MIN_VALUE;
+    private long toNanos = Long.MAX_VALUE;
+
+    public TransactionQuery(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    public TransactionQuery account(int accountId) {
+        this.accountId = accountId;
+        return this;
+    }
+
+    public TransactionQuery symbol(int bookId) {
+        this.bookId = bookId;
+        return this;
+    }
+
+    // Trades stamped in [fromNanos, toNanos), epoch nanoseconds
+    public TransactionQuery between(long fromNanos, long toNanos) {
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+        return this;
+    }
+
+    // Streams up to limit matching trades to the visitor and returns the next page's cursor
+    public long page(long cursor, int limit, TransactionVisitor visitor) {
+        long index = cursor == FIRST_PAGE ? start() : cursor;
+        int found = 0;
+        while (index != END && found < limit) {
+            if (isTrade(index)) {
+                long timestamp = journal.timestamp(index);
+                if (timestamp < fromNanos) {
+                    return END;
+                }
+                if (timestamp < toNanos && (accountId == ANY || journal.accountId(index) == accountId)
+                        && (bookId == ANY || journal.bookId(index) == bookId)) {
+                    visitor.visit(index);
+                    found++;
+                }
+            }
+            index = next(index);
+        }
+        return index;
+    }
+
+    private long start() {
+        if (accountId != ANY) {
+            return journal.latestTradeOfAccount(accountId);
+        }
+        if (bookId != ANY) {
+            return journal.latestTradeOfBook(bookId);
+        }
+        return journal.lastIndexBefore(toNanos);
+    }
+
+    private long next(long index) {
+        if (accountId != ANY) {
+            return journal.previousTradeOfAccount(index);
+        }
+        if (bookId != ANY) {
+            return journal.previousTradeOfBook(index);
+        }
+        return index > 0 ? index - 1 : END;
+    }
+
+    private boolean isTrade(long index) {
+        byte type = journal.type(index);
+        return type == TransactionJournal.BUY || type == TransactionJournal.SELL;
+    }
+}
@@ -0,0 +1,5 @@
+package stocktrading;
+
+interface TransactionVisitor {
+    void visit(long journalIndex);
+}
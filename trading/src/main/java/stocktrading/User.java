@@ -0,0 +1,79 @@
+package stocktrading;
+
+// An account and its positions. The bookkeeping lives here; subclasses decide where the
+// state is kept, in heap fields (HeapUser) or in a shared account arena (ArenaUser).
+abstract class User {
+    
+    public void buyStock(int symbol, int shares, long price) {
+        getPositions().buy(symbol, shares, price);
+        setBalance(getBalance() - shares * price);
+    }
+    
+    public void sellStock(int symbol, int shares, long price) {
+        if (getPositions().sell(symbol, shares, price)) { // Fails only without proper validation
+            setBalance(getBalance() + shares * price);
+        }
+    }
+    
+    public void deposit(long amount) {
+        setBalance(getBalance() + amount);
+    }
+    
+    public void withdraw(long amount) {
+        if (getBalance() >= amount) {
+            setBalance(getBalance() - amount);
+        }
+    }
+    
+    void revalue(long delta) {
+        setPortfolioValue(getPortfolioValue() + delta);
+    }
+    
+    void reserveCash(long amount) {
+        setReservedCash(getReservedCash() + amount);
+    }
+    
+    void releaseCash(long amount) {
+        setReservedCash(getReservedCash() - amount);
+    }
+    
+    void orderOpened() {
+        setOpenOrders(getOpenOrders() + 1);
+    }
+    
+    void orderClosed() {
+        setOpenOrders(getOpenOrders() - 1);
+    }
+    
+    public long getAvailableCash() {
+        return getBalance() - getReservedCash();
+    }
+    
+    public long getUnrealizedPnl() {
+        return getPortfolioValue() - getPositions().totalCostBasis();
+    }
+    
+    public int getShares(int symbol) {
+        return getPositions().quantity(symbol);
+    }
+    
+    public long getAveragePrice(int symbol) {
+        return getPositions().averagePrice(symbol);
+    }
+    
+    // Getters
+    public abstract int getAccountId();
+    public abstract String getUsername();
+    public abstract String getPasswordHash(); // see Credentials
+    public abstract String getName();
+    public abstract long getBalance(); // micros
+    public abstract long getPortfolioValue(); // positions at the last traded or quoted price, kept by PortfolioValuation
+    public abstract long getReservedCash(); // held back for open buy orders, kept by PreTradeRisk
+    public abstract int getOpenOrders();
+    public abstract PositionTable getPositions();
+    
+    abstract void setBalance(long balance);
+    abstract void setPortfolioValue(long marketValue);
+    abstract void setReservedCash(long reservedCash);
+    abstract void setOpenOrders(int openOrders);
+}
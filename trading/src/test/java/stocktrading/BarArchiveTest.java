@@ -0,0 +1,90 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BarArchiveTest {
+    private static final long MINUTE = 60_000;
+    private static final long T0 = 1_700_000_040_000L; // on a minute
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void segmentReadsBackTheBarsItWasWrittenFrom() throws IOException {
+        BarArchive archive = BarArchive.open(directory, "1m", MINUTE);
+        List<String> added = new ArrayList<>();
+        // Two symbols interleaved, prices rising and falling, a bar with no volume
+        long[][] bars = {
+            {3, 0, Money.parse("150"), Money.parse("151.25"), Money.parse("149.50"), Money.parse("150.75"), 1200},
+            {1, 0, Money.parse("2800"), Money.parse("2800"), Money.parse("2790"), Money.parse("2795"), 0},
+            {3, 1, Money.parse("150.75"), Money.parse("150.80"), Money.parse("120.01"), Money.parse("121"), 7},
+            {1, 2, Money.parse("2795"), Money.parse("2950.5"), Money.parse("2795"), Money.parse("2950"), 42},
+            {3, 5, Money.parse("121"), Money.parse("121"), Money.parse("121"), Money.parse("121"), 1},
+        };
+        for (long[] bar : bars) {
+            archive.add((int) bar[0], T0 + bar[1] * MINUTE, bar[2], bar[3], bar[4], bar[5], bar[6]);
+            if (bar[0] == 3) {
+                added.add(row(T0 + bar[1] * MINUTE, bar[2], bar[3], bar[4], bar[5], bar[6]));
+            }
+        }
+        archive.flush();
+
+        BarArchive reopened = BarArchive.open(directory, "1m", MINUTE);
+
+        assertEquals(1, reopened.segmentCount());
+        assertEquals(added, query(reopened, 3, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(2, query(reopened, 1, Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(List.of(), query(reopened, 2, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(added.subList(1, 2), query(reopened, 3, T0 + MINUTE, T0 + 5 * MINUTE));
+    }
+
+    @Test
+    void fullBlocksBecomeSegmentsAndQueriesSpanThemAndThePendingBars() throws IOException {
+        BarArchive archive = BarArchive.open(directory, "1m", MINUTE);
+        int bars = 2 * BarArchive.BLOCK_BARS + 10;
+        for (int i = 0; i < bars; i++) {
+            long price = Money.parse("100") + i % 7 * Money.parse("0.01");
+            archive.add(i % 2, T0 + i / 2 * MINUTE, price, price + 5, price - 5, price, i);
+        }
+
+        assertEquals(2, archive.segmentCount());
+        List<String> all = query(archive, 1, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(bars / 2, all.size());
+        long last = bars - 1;
+        long price = Money.parse("100") + last % 7 * Money.parse("0.01");
+        assertEquals(row(T0 + last / 2 * MINUTE, price, price + 5, price - 5, price, last), all.get(all.size() - 1));
+
+        // A range inside the second segment only
+        long from = T0 + (BarArchive.BLOCK_BARS / 2 + 100) * MINUTE;
+        assertEquals(all.subList(BarArchive.BLOCK_BARS / 2 + 100, BarArchive.BLOCK_BARS / 2 + 110),
+                     query(archive, 1, from, from + 10 * MINUTE));
+    }
+
+    @Test
+    void fileThatIsNotASegmentIsRefused() throws IOException {
+        Files.write(directory.resolve("bars-1m-00000.segment"), new byte[] {1, 2, 3});
+
+        assertThrows(IOException.class, () -> BarArchive.open(directory, "1m", MINUTE));
+    }
+
+    static List<String> query(BarArchive archive, int symbolId, long fromMillis, long toMillis) {
+        List<String> rows = new ArrayList<>();
+        archive.query(symbolId, fromMillis, toMillis,
+                      (start, open, high, low, close, volume) -> rows.add(row(start, open, high, low, close, volume)));
+        return rows;
+    }
+
+    static String row(long start, long open, long high, long low, long close, long volume) {
+        return start + " " + open + " " + high + " " + low + " " + close + " " + volume;
+    }
+}
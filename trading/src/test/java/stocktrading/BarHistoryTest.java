@@ -0,0 +1,83 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BarHistoryTest {
+    private static final long HOUR = 3_600_000;
+    private static final long T0 = 1_700_000_000_000L - 1_700_000_000_000L % HOUR;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ticksAggregateIntoEveryResolution() throws IOException {
+        BarHistory bars = BarHistory.open(directory);
+        bars.onTick(0, Money.parse("100"), 0, T0);
+        bars.onTick(0, Money.parse("103"), 10, T0 + 400);
+        bars.onTick(0, Money.parse("98"), 5, T0 + 1_500);
+        bars.onTick(0, Money.parse("101"), 0, T0 + 61_000);
+        bars.onTick(1, Money.parse("50"), 1, T0 + 100);
+
+        assertEquals(List.of(row(T0, "100", "103", "100", "103", 10), row(T0 + 1_000, "98", "98", "98", "98", 5),
+                             row(T0 + 61_000, "101", "101", "101", "101", 0)),
+                     query(bars, 0, BarHistory.SECOND));
+        assertEquals(List.of(row(T0, "100", "103", "98", "98", 15), row(T0 + 60_000, "101", "101", "101", "101", 0)),
+                     query(bars, 0, BarHistory.MINUTE));
+        assertEquals(List.of(row(T0, "100", "103", "98", "101", 15)), query(bars, 0, BarHistory.HOUR));
+        assertEquals(List.of(row(T0, "50", "50", "50", "50", 1)), query(bars, 1, BarHistory.HOUR));
+    }
+
+    @Test
+    void barsSurviveARestartAndASplitBucketComesBackMerged() throws IOException {
+        BarHistory bars = BarHistory.open(directory);
+        bars.onTick(0, Money.parse("100"), 4, T0);
+        bars.onTick(0, Money.parse("110"), 1, T0 + 2 * HOUR);
+        bars.close();
+
+        BarHistory reopened = BarHistory.open(directory);
+        reopened.onTick(0, Money.parse("90"), 2, T0 + 2 * HOUR + 5_000);
+
+        assertEquals(List.of(row(T0, "100", "100", "100", "100", 4), row(T0 + 2 * HOUR, "110", "110", "90", "90", 3)),
+                     query(reopened, 0, BarHistory.HOUR));
+        assertEquals(1, reopened.segmentCount(BarHistory.HOUR));
+    }
+
+    @Test
+    void barsPushedOutOfTheRingAreStillAnswered() throws IOException {
+        BarHistory bars = BarHistory.open(directory);
+        int seconds = 5_000; // more than a symbol's ring of one second bars holds
+        for (int i = 0; i < seconds; i++) {
+            bars.onTick(0, Money.parse("100") + i, 1, T0 + i * 1_000L);
+        }
+
+        List<String> all = query(bars, 0, BarHistory.SECOND);
+        assertEquals(seconds, all.size());
+        assertEquals(row(T0, Money.parse("100"), 1), all.get(0));
+        assertEquals(row(T0 + (seconds - 1) * 1_000L, Money.parse("100") + seconds - 1, 1), all.get(seconds - 1));
+    }
+
+    private static List<String> query(BarHistory bars, int symbolId, int resolution) {
+        List<String> rows = new ArrayList<>();
+        bars.query(symbolId, resolution, Long.MIN_VALUE, Long.MAX_VALUE,
+                   (start, open, high, low, close, volume) -> rows.add(
+                           BarArchiveTest.row(start, open, high, low, close, volume)));
+        return rows;
+    }
+
+    private static String row(long start, String open, String high, String low, String close, long volume) {
+        return BarArchiveTest.row(start, Money.parse(open), Money.parse(high), Money.parse(low), Money.parse(close),
+                                  volume);
+    }
+
+    private static String row(long start, long price, long volume) {
+        return BarArchiveTest.row(start, price, price, price, price, volume);
+    }
+}
@@ -0,0 +1,78 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CashTransfersTest {
+    private final CashTransfers transfers = new CashTransfers();
+
+    @Test
+    void idsNameTheirCoordinator() {
+        long id = transfers.nextId(3);
+
+        assertEquals(CashTransfers.firstId(3), id);
+        assertEquals(3, CashTransfers.coordinatorOf(id));
+        assertEquals(0, CashTransfers.coordinatorOf(transfers.nextId(0)));
+
+        transfers.begin(id, 7, 0, Money.parse("100"));
+        assertEquals(id + 1, transfers.nextId(3));
+        assertEquals(3, CashTransfers.coordinatorOf(transfers.nextId(3)));
+    }
+
+    @Test
+    void restoredCoordinatorNeverReusesAnId() {
+        long ended = CashTransfers.firstId(1) + 41;
+        transfers.restoreLastTransferId(ended);
+        transfers.restoreLastTransferId(CashTransfers.firstId(1)); // an older snapshot's value
+
+        assertEquals(ended + 1, transfers.nextId(1));
+    }
+
+    @Test
+    void creditReplacesTheRequestWithTheGrant() {
+        long id = transfers.nextId(1);
+        transfers.begin(id, 7, 0, Money.parse("100"));
+        assertFalse(transfers.transfer(id).credited);
+
+        transfers.credit(id, Money.parse("60"));
+
+        CashTransfers.Transfer transfer = transfers.transfer(id);
+        assertTrue(transfer.credited);
+        assertEquals(Money.parse("60"), transfer.amount);
+        assertEquals(0, transfer.source);
+        assertEquals(1, transfers.transfers().size());
+
+        assertEquals(transfer, transfers.end(id));
+        assertNull(transfers.transfer(id));
+        assertTrue(transfers.transfers().isEmpty());
+    }
+
+    @Test
+    void holdIsReleasedOnce() {
+        long id = CashTransfers.firstId(1);
+        transfers.hold(id, 7, Money.parse("60"));
+        assertTrue(transfers.isHeld(id));
+
+        CashTransfers.Hold hold = transfers.release(id);
+
+        assertEquals(7, hold.accountId);
+        assertEquals(Money.parse("60"), hold.amount);
+        assertFalse(transfers.isHeld(id));
+        assertNull(transfers.release(id));
+        assertTrue(transfers.holds().isEmpty());
+    }
+
+    @Test
+    void abandonedTransferIsRemembered() {
+        long id = CashTransfers.firstId(2);
+        transfers.abandon(id);
+
+        assertTrue(transfers.isAbandoned(id));
+        assertFalse(transfers.isAbandoned(id + 1));
+        assertFalse(transfers.isHeld(id));
+    }
+}
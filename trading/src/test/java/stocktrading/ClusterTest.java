@@ -0,0 +1,426 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+// Cluster nodes as separate server processes on localhost, driven over the gateway protocol.
+// Where a test needs a home node that misbehaves, a FakeNode takes its port and answers by hand.
+@Timeout(60) // a node that never answers fails the test instead of hanging the build
+class ClusterTest {
+    private static final String SECRET = "cluster-test-secret";
+    private static final String[] SYMBOLS = {"AAPL", "GOOGL", "MSFT", "AMZN", "TSLA", "FB", "NVDA", "NFLX"};
+    private static final String EXACT_TRANSFERS = "-Dtrading.cluster.transferChunk=0";
+
+    @TempDir
+    Path directory;
+
+    private final List<Process> processes = new ArrayList<>();
+    private String nodeList;
+
+    @AfterEach
+    void stopNodes() throws InterruptedException {
+        for (Process process : processes) {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    @Test
+    void clientCannotHoldOrReleaseAnotherAccountsCash() throws Exception {
+        nodeList = "localhost:" + freePort() + ",localhost:" + freePort();
+        int port = startNode(0, "n0");
+        String victim = homedOn(0, "victim");
+        long balance = Money.of(5000.00);
+
+        try (Client attacker = new Client(port); Client owner = new Client(port)) {
+            assertEquals(Reply.OK, owner.register(victim, "secret", balance));
+
+            // Straight in, then claiming to be node 1 with the wrong secret
+            assertEquals(Reply.INVALID, attacker.hold(77, victim, balance));
+            assertEquals(Reply.INVALID, attacker.release(77, true));
+            assertEquals(Reply.INVALID, attacker.peer(1, "guess"));
+            assertEquals(Reply.INVALID, attacker.hold(78, victim, balance));
+            assertEquals(Reply.INVALID, attacker.release(78, true));
+            // A node cannot be itself, even with the secret
+            assertEquals(Reply.INVALID, attacker.peer(0, SECRET));
+            assertEquals(Reply.INVALID, attacker.hold(79, victim, balance));
+
+            // Nothing was held or taken: the whole balance is still there to withdraw
+            assertEquals(Reply.OK, owner.login(victim, "secret"));
+            assertEquals(Reply.INSUFFICIENT_FUNDS, owner.cash(GatewayProtocol.WITHDRAW, balance + 1));
+            assertEquals(Reply.OK, owner.cash(GatewayProtocol.WITHDRAW, balance));
+        }
+    }
+
+    @Test
+    void buyDrawsItsCashFromTheHomeNode() throws Exception {
+        nodeList = "localhost:" + freePort() + ",localhost:" + freePort();
+        int homePort = startNode(0, "n0", "-Dtrading.cluster.transferChunk=1000000");
+        int port = startNode(1, "n1", "-Dtrading.cluster.transferChunk=1000000");
+        String buyer = homedOn(0, "buyer");
+        long balance = Money.of(50000.00);
+
+        try (Client home = new Client(homePort); Client remote = new Client(port)) {
+            assertEquals(Reply.OK, home.register(buyer, "secret", balance));
+            assertEquals(Reply.OK, remote.register(buyer, "secret", balance)); // opens with no cash here
+            assertEquals(Reply.OK, remote.login(buyer, "secret"));
+
+            assertEquals(Reply.OK, remote.buy(symbolOn(1, remote), 2));
+            assertEquals(2, remote.filledQuantity);
+            long cost = remote.filledValue;
+
+            // The chunk asked for more than the balance, so the home node granted all of it and kept none
+            assertEquals(Reply.OK, home.login(buyer, "secret"));
+            assertEquals(Reply.INSUFFICIENT_FUNDS, home.cash(GatewayProtocol.WITHDRAW, Money.of(0.01)));
+            assertEquals(Reply.OK, remote.cash(GatewayProtocol.WITHDRAW, balance - cost));
+            assertEquals(Reply.INSUFFICIENT_FUNDS, remote.cash(GatewayProtocol.WITHDRAW, Money.of(0.01)));
+        }
+    }
+
+    @Test
+    void refusedHoldFailsTheBuyAndNeedsNoRelease() throws Exception {
+        nodeList = "localhost:" + freePort() + ",localhost:" + freePort();
+        String buyer = homedOn(0, "buyer");
+        try (FakeNode home = new FakeNode(0)) {
+            int port = startNode(1, "n1", EXACT_TRANSFERS);
+            try (Client remote = new Client(port)) {
+                assertEquals(Reply.OK, remote.register(buyer, "secret", 0));
+                assertEquals(Reply.OK, remote.login(buyer, "secret"));
+                int symbolId = symbolOn(1, remote);
+                home.link(1);
+
+                remote.sendBuy(symbolId, 1);
+                ByteBuffer hold = home.expect(GatewayProtocol.HOLD);
+                hold.getLong();
+                assertEquals(buyer, GatewayProtocol.getString(hold));
+                home.answer(Reply.INSUFFICIENT_FUNDS, 0);
+
+                assertEquals(Reply.INSUFFICIENT_FUNDS, remote.response());
+                assertTrue(home.idleFor(500));
+            }
+        }
+    }
+
+    @Test
+    void unansweredHoldTimesOutAndIsAborted() throws Exception {
+        nodeList = "localhost:" + freePort() + ",localhost:" + freePort();
+        String buyer = homedOn(0, "buyer");
+        try (FakeNode home = new FakeNode(0)) {
+            int port = startNode(1, "n1", EXACT_TRANSFERS);
+            try (Client remote = new Client(port)) {
+                assertEquals(Reply.OK, remote.register(buyer, "secret", 0));
+                assertEquals(Reply.OK, remote.login(buyer, "secret"));
+                int symbolId = symbolOn(1, remote);
+                home.link(1);
+
+                remote.sendBuy(symbolId, 1);
+                long transferId = home.expect(GatewayProtocol.HOLD).getLong();
+                assertEquals(1, CashTransfers.coordinatorOf(transferId));
+
+                // The home node keeps the link open and says nothing
+                assertEquals(Reply.INSUFFICIENT_FUNDS, remote.response());
+                ByteBuffer release = home.expect(GatewayProtocol.RELEASE);
+                assertEquals(transferId, release.getLong());
+                assertEquals(0, release.get());
+                home.answer(Reply.OK, 0);
+            }
+        }
+    }
+
+    @Test
+    void restartedCoordinatorSettlesItsOpenTransfersFromItsJournal() throws Exception {
+        nodeList = "localhost:" + freePort() + ",localhost:" + freePort();
+        String buyer = homedOn(0, "buyer");
+        try (FakeNode home = new FakeNode(0)) {
+            int port = startNode(1, "n1", EXACT_TRANSFERS);
+            long credited;
+            long unanswered;
+            try (Client remote = new Client(port); Client second = new Client(port)) {
+                assertEquals(Reply.OK, remote.register(buyer, "secret", 0));
+                assertEquals(Reply.OK, remote.login(buyer, "secret"));
+                assertEquals(Reply.OK, second.login(buyer, "secret"));
+                int symbolId = symbolOn(1, remote);
+                home.link(1);
+
+                // Granted and credited: the buy fills and the commit goes out, but is never acknowledged
+                remote.sendBuy(symbolId, 1);
+                ByteBuffer hold = home.expect(GatewayProtocol.HOLD);
+                credited = hold.getLong();
+                GatewayProtocol.getString(hold);
+                home.answer(Reply.OK, hold.getLong());
+                assertEquals(Reply.OK, remote.response());
+                ByteBuffer release = home.expect(GatewayProtocol.RELEASE);
+                assertEquals(credited, release.getLong());
+                assertEquals(1, release.get());
+
+                // Asked for and never answered before the node dies
+                second.sendBuy(symbolId, 1);
+                unanswered = home.expect(GatewayProtocol.HOLD).getLong();
+                Thread.sleep(200); // for the journal writer to catch up with the business thread
+            }
+            Process coordinator = processes.remove(processes.size() - 1);
+            coordinator.destroyForcibly().waitFor();
+
+            startNode(1, "n1", EXACT_TRANSFERS);
+            home.link(1);
+            Map<Long, Byte> settled = new HashMap<>();
+            for (int i = 0; i < 2; i++) {
+                ByteBuffer release = home.expect(GatewayProtocol.RELEASE);
+                settled.put(release.getLong(), release.get());
+                home.answer(Reply.OK, 0);
+            }
+            assertEquals(Map.of(credited, (byte) 1, unanswered, (byte) 0), settled);
+        }
+    }
+
+    // Starts a cluster node on its own scratch journal and waits until its gateway listens
+    private int startNode(int node, String name, String... properties) throws IOException, InterruptedException {
+        Path home = Files.createDirectories(directory.resolve(name));
+        Path log = home.resolve("out.log");
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Dtrading.cluster=" + nodeList,
+                "-Dtrading.cluster.node=" + node,
+                "-Dtrading.cluster.secret=" + SECRET,
+                "-Dtrading.journal.dir=" + home.resolve("journal"),
+                "-Dtrading.bars.dir=" + home.resolve("bars")));
+        command.addAll(Arrays.asList(properties));
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                               "stocktrading.StockTradingSystem", "--server"));
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        processes.add(process);
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            String output = Files.readString(log);
+            if (output.contains("Order gateway listening")) {
+                return PartitionMap.parse(nodeList).address(node).getPort();
+            }
+            if (!process.isAlive()) {
+                fail("Node " + node + " exited:\n" + output);
+            }
+            Thread.sleep(50);
+        }
+        fail("Node " + node + " did not start:\n" + Files.readString(log));
+        return -1;
+    }
+
+    // A username whose home is the given node
+    private String homedOn(int node, String prefix) {
+        PartitionMap partitions = PartitionMap.parse(nodeList);
+        for (int i = 0; ; i++) {
+            if (partitions.ownerOf(prefix + i) == node) {
+                return prefix + i;
+            }
+        }
+    }
+
+    // The id of a listed symbol whose order book the node holds
+    private int symbolOn(int node, Client client) throws IOException {
+        PartitionMap partitions = PartitionMap.parse(nodeList);
+        for (String symbol : SYMBOLS) {
+            if (partitions.ownerOf(symbol) == node) {
+                assertEquals(Reply.OK, client.lookup(symbol));
+                return (int) client.orderId;
+            }
+        }
+        throw new IllegalStateException("Node " + node + " owns none of the listed symbols");
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Blocking gateway client with one request in flight
+    static final class Client implements AutoCloseable {
+        private final SocketChannel channel;
+        private final ByteBuffer out = ByteBuffer.allocate(GatewayProtocol.MAX_FRAME).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer in = ByteBuffer.allocate(GatewayProtocol.RESPONSE_FRAME).order(ByteOrder.LITTLE_ENDIAN);
+        private int correlationId = 0;
+        long orderId;
+        int filledQuantity;
+        long filledValue;
+
+        Client(int port) throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+        }
+
+        int register(String username, String password, long balance) throws IOException {
+            GatewayProtocol.register(out, correlationId, username, password, username, balance);
+            return send();
+        }
+
+        int login(String username, String password) throws IOException {
+            GatewayProtocol.login(out, correlationId, username, password);
+            return send();
+        }
+
+        int cash(byte type, long amount) throws IOException {
+            GatewayProtocol.cash(out, correlationId, type, amount);
+            return send();
+        }
+
+        int peer(int node, String secret) throws IOException {
+            GatewayProtocol.peer(out, correlationId, node, secret);
+            return send();
+        }
+
+        int hold(long transferId, String username, long amount) throws IOException {
+            GatewayProtocol.hold(out, correlationId, transferId, username, amount);
+            return send();
+        }
+
+        int release(long transferId, boolean commit) throws IOException {
+            GatewayProtocol.release(out, correlationId, transferId, commit);
+            return send();
+        }
+
+        int lookup(String symbol) throws IOException {
+            GatewayProtocol.lookup(out, correlationId, symbol);
+            return send();
+        }
+
+        // A market buy
+        int buy(int symbolId, int quantity) throws IOException {
+            sendBuy(symbolId, quantity);
+            return response();
+        }
+
+        // Leaves the buy's response unread, for the test to act while it is in flight
+        void sendBuy(int symbolId, int quantity) throws IOException {
+            GatewayProtocol.order(out, correlationId, OrderBook.BUY, symbolId, quantity, 0);
+            write();
+        }
+
+        private int send() throws IOException {
+            write();
+            return response();
+        }
+
+        private void write() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+
+        int response() throws IOException {
+            in.clear();
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    throw new IOException("Gateway closed the connection");
+                }
+            }
+            in.flip();
+            in.position(GatewayProtocol.LENGTH_FIELD + 1);
+            assertEquals(correlationId++, in.getInt());
+            int status = in.get();
+            orderId = in.getLong();
+            filledQuantity = in.getInt();
+            filledValue = in.getLong();
+            return status;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Listens on a node's port and takes the links other nodes open to it, one at a time
+    final class FakeNode implements AutoCloseable {
+        private final ServerSocket server;
+        private Socket link;
+        private DataInputStream in;
+        private byte type;
+        private int correlationId;
+
+        FakeNode(int node) throws IOException {
+            server = new ServerSocket(PartitionMap.parse(nodeList).address(node).getPort());
+            server.setSoTimeout(30_000);
+        }
+
+        // Accepts the next link and checks that it opens with the node's id and the cluster secret
+        void link(int from) throws IOException {
+            if (link != null) {
+                link.close();
+            }
+            link = server.accept();
+            link.setSoTimeout(5_000);
+            in = new DataInputStream(link.getInputStream());
+            ByteBuffer peer = expect(GatewayProtocol.PEER);
+            assertEquals(from, peer.getInt());
+            assertEquals(SECRET, GatewayProtocol.getString(peer));
+            answer(Reply.OK, 0);
+        }
+
+        // The next frame's fields after its correlation id
+        ByteBuffer expect(byte expected) throws IOException {
+            int length = in.readUnsignedByte() | in.readUnsignedByte() << 8;
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+            ByteBuffer body = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+            type = body.get();
+            correlationId = body.getInt();
+            assertEquals(expected, type);
+            return body;
+        }
+
+        // True if the link stays silent for the given time
+        boolean idleFor(int millis) throws IOException {
+            link.setSoTimeout(millis);
+            try {
+                in.read();
+                return false;
+            } catch (SocketTimeoutException e) {
+                return true;
+            } finally {
+                link.setSoTimeout(5_000);
+            }
+        }
+
+        // Responds to the last frame read
+        void answer(int status, long filledValue) throws IOException {
+            ByteBuffer response = ByteBuffer.allocate(GatewayProtocol.RESPONSE_FRAME).order(ByteOrder.LITTLE_ENDIAN);
+            GatewayProtocol.response(response, type, correlationId, status, 0, 0, filledValue, 0);
+            link.getOutputStream().write(response.array());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (link != null) {
+                link.close();
+            }
+            server.close();
+        }
+    }
+}
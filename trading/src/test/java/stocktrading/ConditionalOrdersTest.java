@@ -0,0 +1,134 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConditionalOrdersTest {
+    private final ConditionalOrders conditionals = new ConditionalOrders();
+
+    @BeforeEach
+    void addSymbol() {
+        conditionals.addSymbol(0);
+    }
+
+    @Test
+    void stopsAndTakeProfitsFireOnlyOnceTheirTriggerIsReached() {
+        long stopSell = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.STOP, 95, 0, 10, 100);
+        long stopBuy = conditionals.place(0, 7, OrderBook.BUY, ConditionalOrders.STOP, 105, 0, 10, 100);
+        long takeProfitBuy = conditionals.place(0, 7, OrderBook.BUY, ConditionalOrders.TAKE_PROFIT, 90, 0, 10, 100);
+
+        conditionals.onPrice(0, 96);
+        assertEquals(0, conditionals.nextFired());
+
+        conditionals.onPrice(0, 95);
+        assertEquals(stopSell, conditionals.nextFired());
+        assertEquals(0, conditionals.nextFired());
+        conditionals.complete(stopSell);
+
+        conditionals.onPrice(0, 106);
+        assertEquals(stopBuy, conditionals.nextFired());
+        conditionals.complete(stopBuy);
+
+        conditionals.onPrice(0, 89);
+        assertEquals(takeProfitBuy, conditionals.nextFired());
+        conditionals.complete(takeProfitBuy);
+        assertEquals(0, conditionals.liveCount());
+    }
+
+    @Test
+    void firedOrderStaysReadableUntilCompleted() {
+        long orderId = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.STOP, 95, 94_000_000, 10, 100);
+
+        conditionals.onPrice(0, 90);
+
+        assertEquals(orderId, conditionals.nextFired());
+        assertEquals(7, conditionals.ownerOf(orderId));
+        assertEquals(94_000_000, conditionals.limitPriceOf(orderId));
+        assertEquals(10, conditionals.quantityOf(orderId));
+        assertTrue(conditionals.isLive(orderId));
+        conditionals.complete(orderId);
+        assertFalse(conditionals.isLive(orderId));
+    }
+
+    @Test
+    void trailingSellFollowsTheHighAndFiresATrailBelowIt() {
+        long orderId = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.TRAILING_STOP, 5, 0, 10, 100);
+
+        conditionals.onPrice(0, 110);
+        conditionals.onPrice(0, 106);
+        assertEquals(0, conditionals.nextFired());
+
+        conditionals.onPrice(0, 105);
+        assertEquals(orderId, conditionals.nextFired());
+    }
+
+    @Test
+    void trailingStopsOvertakenByANewHighFireTogether() {
+        long first = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.TRAILING_STOP, 5, 0, 10, 100);
+        conditionals.onPrice(0, 103);
+        long second = conditionals.place(0, 8, OrderBook.SELL, ConditionalOrders.TRAILING_STOP, 5, 0, 20, 103);
+        conditionals.onPrice(0, 104);
+
+        conditionals.onPrice(0, 99);
+
+        assertEquals(first, conditionals.nextFired());
+        assertEquals(second, conditionals.nextFired());
+        assertEquals(0, conditionals.nextFired());
+    }
+
+    @Test
+    void trailingBuyFollowsTheLowAndFiresATrailAboveIt() {
+        long orderId = conditionals.place(0, 7, OrderBook.BUY, ConditionalOrders.TRAILING_STOP, 5, 0, 10, 100);
+
+        conditionals.onPrice(0, 90);
+        conditionals.onPrice(0, 94);
+        assertEquals(0, conditionals.nextFired());
+
+        conditionals.onPrice(0, 95);
+        assertEquals(orderId, conditionals.nextFired());
+    }
+
+    @Test
+    void bracketHalvesNameEachOtherAndTheOtherHalfIsCancelled() {
+        long stop = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.STOP, 95, 0, 10, 100);
+        long takeProfit = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.TAKE_PROFIT, 110, 0, 10, 100);
+        conditionals.link(stop, takeProfit);
+
+        conditionals.onPrice(0, 95);
+        assertEquals(stop, conditionals.nextFired());
+        assertEquals(takeProfit, conditionals.linkedOf(stop));
+        assertEquals(stop, conditionals.linkedOf(takeProfit));
+        conditionals.complete(stop);
+        assertEquals(10, conditionals.cancel(takeProfit, 7));
+
+        conditionals.onPrice(0, 120);
+        assertEquals(0, conditionals.nextFired());
+        assertEquals(0, conditionals.liveCount());
+    }
+
+    @Test
+    void ordersCancelledAfterFiringAreSkipped() {
+        long first = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.STOP, 95, 0, 10, 100);
+        long second = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.STOP, 95, 0, 10, 100);
+
+        conditionals.onPrice(0, 95);
+        assertEquals(first, conditionals.nextFired());
+        conditionals.complete(first);
+        assertEquals(10, conditionals.cancel(second, 7));
+
+        assertEquals(0, conditionals.nextFired());
+    }
+
+    @Test
+    void onlyTheOwnerCanCancel() {
+        long orderId = conditionals.place(0, 7, OrderBook.SELL, ConditionalOrders.STOP, 95, 0, 10, 100);
+
+        assertEquals(0, conditionals.cancel(orderId, 8));
+        assertEquals(10, conditionals.cancel(orderId, 7));
+        assertEquals(0, conditionals.cancel(orderId, 7));
+    }
+}
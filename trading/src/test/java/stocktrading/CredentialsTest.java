@@ -0,0 +1,74 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CredentialsTest {
+    private static final long T0 = 1_700_000_000_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void hashMatchesOnlyItsPassword() {
+        String hash = Credentials.hash("pass123");
+
+        assertTrue(Credentials.isHash(hash));
+        assertFalse(hash.contains("pass123"));
+        assertTrue(Credentials.matches("pass123", hash));
+        assertFalse(Credentials.matches("pass124", hash));
+        assertFalse(Credentials.matches("pass123", "pass123"));
+        assertFalse(Credentials.matches("pass123", "pbkdf2$broken"));
+    }
+
+    @Test
+    void samePasswordIsSaltedDifferently() {
+        assertNotEquals(Credentials.hash("pass123"), Credentials.hash("pass123"));
+    }
+
+    @Test
+    void journalAndSnapshotHoldNoPasswordInTheClear() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory.resolve("journal"), 64);
+        // A registration journaled before passwords were hashed
+        journal.appendRegistration(0, "alice", "hunter22", "Alice", Money.parse("100"), T0);
+        journal.appendRegistration(1, "bob", Credentials.hash("correct-horse"), "Bob", Money.parse("100"), T0);
+
+        ExchangeReplica replica = new ExchangeReplica();
+        replica.apply(journal, journal.size());
+        Path snapshot = directory.resolve("exchange.snapshot");
+        replica.write(snapshot);
+
+        String written = new String(Files.readAllBytes(snapshot), StandardCharsets.ISO_8859_1);
+        assertFalse(written.contains("hunter22"));
+        ExchangeReplica loaded = ExchangeReplica.load(snapshot);
+        assertTrue(Credentials.matches("hunter22", loaded.users().get(0).getPasswordHash()));
+        assertTrue(Credentials.matches("correct-horse", loaded.users().get(1).getPasswordHash()));
+    }
+
+    @Test
+    void arenaKeepsCredentialsOutAndOnlyItsOwnerCanReadIt() throws IOException {
+        Path file = directory.resolve("accounts.arena");
+        AccountArena arena = AccountArena.create(file, 4, 4, 256);
+        String hash = Credentials.hash("hunter22");
+        User user = new ArenaUser(arena, arena.addAccount("alice", "Alice", Money.parse("100")), hash);
+
+        assertEquals(hash, user.getPasswordHash());
+        assertEquals("Alice", AccountArena.open(file).name(0));
+        String contents = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        assertFalse(contents.contains(hash));
+        if (Files.getFileStore(file).supportsFileAttributeView("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+        }
+    }
+}
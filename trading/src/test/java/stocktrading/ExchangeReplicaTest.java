@@ -0,0 +1,217 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExchangeReplicaTest {
+    private static final long T0 = 1_700_000_000_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotLoadsTheStateItWasWrittenFrom() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory.resolve("journal"), 64);
+        journal.appendRegistration(0, "alice", "pw", "Alice", Money.parse("10000"), T0);
+        journal.appendRegistration(1, "bob", "pw", "Bob", Money.parse("2000"), T0);
+        journal.append(TransactionJournal.BUY, 0, 0, MatchingEngine.HOUSE, 20, Money.parse("150"), T0 + 1);
+        journal.append(TransactionJournal.ORDER, 1, 1, OrderBook.BUY, 5, Money.parse("99"), 42, T0 + 2);
+        journal.append(TransactionJournal.ORDER, 0, 0, OrderBook.SELL, 8, Money.parse("160"), 43, T0 + 3);
+        journal.append(TransactionJournal.SELL, 0, 0, 1, 3, Money.parse("160"), 43, T0 + 4);
+        journal.append(TransactionJournal.BUY, 1, 0, 0, 3, Money.parse("160"), T0 + 4);
+        journal.append(TransactionJournal.DEPOSIT, 1, 0, 0, 0, Money.parse("25"), T0 + 5);
+        journal.appendConditional(0, 1, OrderBook.SELL, ConditionalOrders.STOP, 4, Money.parse("90"), 0, 44, 0, T0 + 6);
+
+        ExchangeReplica replica = listedReplica();
+        replica.apply(journal, journal.size());
+        Path snapshot = directory.resolve("exchange.snapshot");
+        replica.write(snapshot);
+
+        ExchangeReplica loaded = ExchangeReplica.load(snapshot);
+
+        assertEquals(journal.size(), loaded.journalPosition());
+        assertEquals(journal.size(), loaded.journalIndex().position);
+        assertArrayEquals(replica.journalIndex().accountHead, loaded.journalIndex().accountHead);
+        assertArrayEquals(replica.journalIndex().bookHead, loaded.journalIndex().bookHead);
+        assertArrayEquals(replica.journalIndex().blockLatest, loaded.journalIndex().blockLatest);
+        assertEquals(journal.latestTradeOfAccount(1), loaded.journalIndex().accountHead[1] - 1);
+        assertEquals(2, loaded.users().size());
+        User alice = loaded.users().get(0);
+        User bob = loaded.users().get(1);
+        assertEquals(Money.parse("7480"), alice.getBalance());
+        assertEquals(17, alice.getShares(0));
+        assertEquals(Money.parse("2550"), alice.getPositions().costBasis(0));
+        assertEquals(Money.parse("30"), alice.getPositions().realizedPnl(0));
+        assertEquals(Money.parse("1545"), bob.getBalance());
+        assertEquals(3, bob.getShares(0));
+        assertEquals("bob", bob.getUsername());
+
+        List<ExchangeReplica.RestingOrder> orders = new ArrayList<>(loaded.orders());
+        assertEquals(2, orders.size());
+        assertEquals(42, orders.get(0).orderId);
+        assertEquals(43, orders.get(1).orderId);
+        assertEquals(5, orders.get(1).quantity);
+        assertEquals(1, loaded.conditionals().size());
+        assertEquals(Money.parse("90"), loaded.conditionals().iterator().next().trigger);
+
+        assertEquals(Money.parse("160"), loaded.stocks().get(0).getCurrentPrice());
+        assertEquals(980, loaded.stocks().get(0).getAvailableShares());
+    }
+
+    @Test
+    void loadedSnapshotReplaysTheJournalTail() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory.resolve("journal"), 64);
+        journal.appendRegistration(0, "alice", "pw", "Alice", Money.parse("1000"), T0);
+        ExchangeReplica replica = listedReplica();
+        replica.apply(journal, journal.size());
+        Path snapshot = directory.resolve("exchange.snapshot");
+        replica.write(snapshot);
+
+        journal.append(TransactionJournal.BUY, 0, 1, MatchingEngine.HOUSE, 2, Money.parse("50"), T0 + 1);
+        journal.append(TransactionJournal.WITHDRAW, 0, 0, 0, 0, Money.parse("100"), T0 + 2);
+        ExchangeReplica loaded = ExchangeReplica.load(snapshot);
+        loaded.apply(journal, journal.size());
+
+        User alice = loaded.users().get(0);
+        assertEquals(Money.parse("800"), alice.getBalance());
+        assertEquals(2, alice.getShares(1));
+        assertEquals(498, loaded.stocks().get(1).getAvailableShares());
+        assertEquals(journal.size(), loaded.journalPosition());
+    }
+
+    @Test
+    void priceMovesSurviveTheSnapshotAndTheTail() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory.resolve("journal"), 64);
+        journal.appendPrice(0, Money.parse("152"), Money.parse("150"), T0);
+        ExchangeReplica replica = listedReplica();
+        replica.apply(journal, journal.size());
+        Path snapshot = directory.resolve("exchange.snapshot");
+        replica.write(snapshot);
+
+        journal.appendPrice(1, Money.parse("97.50"), Money.parse("99"), T0 + 1);
+        ExchangeReplica loaded = ExchangeReplica.load(snapshot);
+        loaded.apply(journal, journal.size());
+
+        assertEquals(Money.parse("152"), loaded.stocks().get(0).getCurrentPrice());
+        assertEquals(Money.parse("2"), loaded.stocks().get(0).getPriceChange());
+        assertEquals(Money.parse("97.50"), loaded.stocks().get(1).getCurrentPrice());
+        assertEquals(Money.parse("99"), loaded.stocks().get(1).getPreviousPrice());
+    }
+
+    @Test
+    void listingsAfterStartupAreRebuiltFromTheJournal() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory.resolve("journal"), 64);
+        journal.appendListing(2, "SIM00002", "Simulated company with a name longer than one record", Money.parse("42"),
+                              250_000, T0);
+        journal.appendPrice(2, Money.parse("43"), Money.parse("42"), T0 + 1);
+        ExchangeReplica replica = listedReplica();
+        replica.apply(journal, journal.size());
+
+        Stock listed = replica.stocks().get(2);
+        assertEquals(3, replica.stocks().size());
+        assertEquals("SIM00002", listed.getSymbol());
+        assertEquals("Simulated company with a name longer than one record", listed.getCompanyName());
+        assertEquals(250_000, listed.getAvailableShares());
+        assertEquals(Money.parse("43"), listed.getCurrentPrice());
+    }
+
+    @Test
+    void filledAndCancelledOrdersLeaveTheSnapshot() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory.resolve("journal"), 64);
+        journal.appendRegistration(0, "alice", "pw", "Alice", Money.parse("10000"), T0);
+        journal.appendRegistration(1, "bob", "pw", "Bob", Money.parse("2000"), T0);
+        journal.append(TransactionJournal.BUY, 0, 0, MatchingEngine.HOUSE, 20, Money.parse("150"), T0 + 1);
+        journal.append(TransactionJournal.ORDER, 0, 0, OrderBook.SELL, 8, Money.parse("160"), 43, T0 + 2);
+        journal.append(TransactionJournal.ORDER, 1, 1, OrderBook.BUY, 5, Money.parse("99"), 42, T0 + 2);
+        journal.append(TransactionJournal.ORDER, 0, 0, OrderBook.SELL, 6, Money.parse("170"), 44, T0 + 3);
+        journal.append(TransactionJournal.CANCEL, 1, 1, OrderBook.BUY, 5, Money.parse("99"), 42, T0 + 4);
+        // Order 43 fills in two executions, order 44 in part
+        journal.append(TransactionJournal.SELL, 0, 0, 1, 3, Money.parse("160"), 43, T0 + 5);
+        journal.append(TransactionJournal.BUY, 1, 0, 0, 3, Money.parse("160"), T0 + 5);
+        journal.append(TransactionJournal.SELL, 0, 0, 1, 5, Money.parse("160"), 43, T0 + 6);
+        journal.append(TransactionJournal.BUY, 1, 0, 0, 5, Money.parse("160"), T0 + 6);
+        journal.append(TransactionJournal.SELL, 0, 0, 1, 2, Money.parse("170"), 44, T0 + 7);
+        journal.append(TransactionJournal.BUY, 1, 0, 0, 2, Money.parse("170"), T0 + 7);
+        ExchangeReplica replica = listedReplica();
+        replica.apply(journal, journal.size());
+        Path snapshot = directory.resolve("exchange.snapshot");
+        replica.write(snapshot);
+
+        ExchangeReplica loaded = ExchangeReplica.load(snapshot);
+
+        List<ExchangeReplica.RestingOrder> orders = new ArrayList<>(loaded.orders());
+        assertEquals(1, orders.size());
+        ExchangeReplica.RestingOrder rest = orders.get(0);
+        assertEquals(44, rest.orderId);
+        assertEquals(0, rest.accountId);
+        assertEquals(OrderBook.SELL, rest.side);
+        assertEquals(Money.parse("170"), rest.limitPrice);
+        assertEquals(4, rest.quantity);
+        assertEquals(10, loaded.users().get(1).getShares(0));
+        assertEquals(Money.parse("380"), loaded.users().get(1).getBalance());
+        assertEquals(10, loaded.users().get(0).getShares(0));
+        assertEquals(Money.parse("8620"), loaded.users().get(0).getBalance());
+        assertEquals(Money.parse("170"), loaded.stocks().get(0).getCurrentPrice());
+    }
+
+    @Test
+    @Timeout(30)
+    void writerKeepsTheSnapshotUpWithTheJournalAndWritesALastOneOnFinish() throws Exception {
+        TransactionJournal journal = TransactionJournal.open(directory.resolve("journal"), 64);
+        journal.appendRegistration(0, "alice", "pw", "Alice", Money.parse("1000"), T0);
+        Path snapshot = directory.resolve("exchange.snapshot");
+        LatencyHistogram writes = new LatencyHistogram();
+        SnapshotWriter writer = new SnapshotWriter(journal, snapshot, 10, ExchangeReplicaTest::listedReplica, writes);
+        writer.start();
+
+        journal.append(TransactionJournal.BUY, 0, 1, MatchingEngine.HOUSE, 2, Money.parse("100"), T0 + 1);
+        long caughtUp = journal.size();
+        while (!Files.exists(snapshot) || ExchangeReplica.load(snapshot).journalPosition() < caughtUp) {
+            Thread.sleep(5);
+        }
+        for (int i = 0; i < 50; i++) {
+            journal.append(TransactionJournal.DEPOSIT, 0, -1, -1, 0, Money.parse("1"), T0 + 2 + i);
+        }
+        writer.finish();
+
+        ExchangeReplica loaded = ExchangeReplica.load(snapshot);
+        assertFalse(writer.isAlive());
+        assertEquals(journal.size(), loaded.journalPosition());
+        assertEquals(Money.parse("850"), loaded.users().get(0).getBalance());
+        assertEquals(2, loaded.users().get(0).getShares(1));
+        assertEquals(498, loaded.stocks().get(1).getAvailableShares());
+        assertTrue(writes.count() >= 2);
+        assertFalse(Files.exists(directory.resolve("exchange.snapshot.tmp")));
+    }
+
+    @Test
+    void fileThatIsNotASnapshotIsRefused() throws IOException {
+        Path garbage = Files.write(directory.resolve("garbage.snapshot"), new byte[64]);
+        Path future = Files.write(directory.resolve("future.snapshot"),
+                                  ByteBuffer.allocate(64).putInt(0x45584348).putInt(99).array());
+
+        assertThrows(IOException.class, () -> ExchangeReplica.load(garbage));
+        assertThrows(IOException.class, () -> ExchangeReplica.load(future));
+    }
+
+    private static ExchangeReplica listedReplica() {
+        ExchangeReplica replica = new ExchangeReplica();
+        replica.listStock(new Stock("AAPL", "Apple Inc.", Money.parse("150"), 1000));
+        replica.listStock(new Stock("MSFT", "Microsoft Corp.", Money.parse("100"), 500));
+        return replica;
+    }
+}
@@ -0,0 +1,171 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalReplicationTest {
+    private static final long T0 = 1_700_000_000_000_000_000L;
+    private static final String SECRET = "replication-test-secret";
+
+    @TempDir
+    Path directory;
+
+    private TransactionJournal leader;
+    private JournalReplicator replicator;
+
+    @BeforeEach
+    void startLeader() throws IOException {
+        leader = TransactionJournal.open(directory.resolve("leader"), 64);
+        leader.appendRegistration(0, "alice", "pw", "Alice", Money.parse("10000"), T0);
+        leader.append(TransactionJournal.DEPOSIT, 0, 0, 0, 0, Money.parse("25"), T0 + 1);
+        replicator = new JournalReplicator(leader, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), SECRET);
+        replicator.start();
+    }
+
+    @AfterEach
+    void stopLeader() {
+        replicator.close();
+    }
+
+    @Test
+    void followerWithTheSecretIsSentTheJournal() throws IOException {
+        try (Socket socket = connect(SECRET, 0)) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            assertEquals(0, in.readLong());
+            assertEquals(leader.size(), in.readInt());
+        }
+    }
+
+    @Test
+    void followerWithoutTheSecretIsSentNothing() throws IOException {
+        try (Socket socket = connect("guess", 0)) {
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void followerAheadOfTheLeaderIsSentNothing() throws IOException {
+        try (Socket socket = connect(SECRET, leader.size() + 1)) {
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void followerCatchesUpAndResumesFromItsOwnJournal() throws Exception {
+        TransactionJournal copy = TransactionJournal.open(directory.resolve("follower"), 64);
+        ExchangeReplica replica = new ExchangeReplica();
+        ExecutorService standby = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> following = standby.submit(follower(replicator, copy, replica));
+            leader.append(TransactionJournal.DEPOSIT, 0, 0, 0, 0, Money.parse("75"), T0 + 2);
+            awaitSize(copy, leader.size());
+            replicator.close(); // the follower gives up on the leader after its timeout
+            following.get(10, TimeUnit.SECONDS);
+            assertEquals(Money.parse("10100"), replica.users().get(0).getBalance());
+
+            // Written while no follower was connected, then shipped from where the follower left off
+            long resumedAt = copy.size();
+            leader.append(TransactionJournal.WITHDRAW, 0, 0, 0, 0, Money.parse("40"), T0 + 3);
+            replicator = new JournalReplicator(leader, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                                               SECRET);
+            replicator.start();
+            following = standby.submit(follower(replicator, copy, replica));
+            awaitSize(copy, leader.size());
+            replicator.close();
+            following.get(10, TimeUnit.SECONDS);
+
+            assertEquals(leader.size(), replica.journalPosition());
+            assertEquals(resumedAt + 1, copy.size());
+            assertEquals(TransactionJournal.WITHDRAW, copy.type(resumedAt));
+            assertEquals(Money.parse("10060"), replica.users().get(0).getBalance());
+        } finally {
+            standby.shutdownNow();
+        }
+    }
+
+    @Test
+    void followerStopsAtABatchThatDoesNotContinueItsJournal() throws Exception {
+        TransactionJournal copy = TransactionJournal.open(directory.resolve("follower"), 64);
+        ExecutorService standby = Executors.newSingleThreadExecutor();
+        try (ServerSocket diverged = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            JournalFollower follower = new JournalFollower(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), diverged.getLocalPort()), copy,
+                    new ExchangeReplica(), 5000, SECRET);
+            Future<?> following = standby.submit(() -> {
+                follower.follow();
+                return null;
+            });
+            try (Socket socket = diverged.accept()) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                assertEquals(SECRET, in.readUTF());
+                assertEquals(0, in.readLong());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeLong(1); // the follower has no record 0 to continue from
+                out.writeInt(0);
+                out.flush();
+
+                ExecutionException failure = assertThrows(ExecutionException.class,
+                                                          () -> following.get(10, TimeUnit.SECONDS));
+                assertEquals(IllegalStateException.class, failure.getCause().getClass());
+                assertEquals(0, copy.size());
+            }
+        } finally {
+            standby.shutdownNow();
+        }
+    }
+
+    @Test
+    void listensOnlyWhereItWasBound() {
+        assertEquals(InetAddress.getLoopbackAddress(), replicator.getAddress());
+    }
+
+    private static Runnable follower(JournalReplicator from, TransactionJournal copy, ExchangeReplica replica) {
+        JournalFollower follower = new JournalFollower(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), from.getPort()), copy, replica, 300, SECRET);
+        return () -> {
+            try {
+                follower.follow();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private static void awaitSize(TransactionJournal journal, long size) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (journal.size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, journal.size());
+    }
+
+    private Socket connect(String secret, long position) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), replicator.getPort());
+        socket.setSoTimeout(10_000);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeUTF(secret);
+        out.writeLong(position);
+        out.flush();
+        return socket;
+    }
+}
@@ -0,0 +1,106 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class MarketDataPublisherTest {
+
+    @Test
+    void deliversUpdatesInSequenceOrder() {
+        MarketDataPublisher publisher = new MarketDataPublisher(16);
+        publisher.addSymbol(0);
+        publisher.addSymbol(1);
+        MarketDataSubscriber subscriber = publisher.subscribe();
+        List<Long> trades = new ArrayList<>();
+
+        publisher.trade(0, 100, 5);
+        publisher.quote(1, 200, 1000, 199, 3, 201, 4);
+        publisher.quote(1, 200, 1000, 199, 3, 201, 4); // unchanged, so conflated away
+        publisher.trade(1, 201, 7);
+
+        int delivered = subscriber.poll(new MarketDataListener() {
+            @Override
+            public void onTrade(long sequence, int symbolId, long price, long quantity, long timestamp) {
+                trades.add(sequence * 1000 + price);
+            }
+        }, 10);
+
+        assertEquals(3, delivered);
+        assertEquals(List.of(1100L, 3201L), trades);
+        assertEquals(4, subscriber.nextSequence());
+    }
+
+    @Test
+    void lappedSubscriberResynchronizesFromSnapshots() {
+        MarketDataPublisher publisher = new MarketDataPublisher(8);
+        publisher.addSymbol(0);
+        MarketDataSubscriber subscriber = publisher.subscribe();
+        for (int i = 1; i <= 20; i++) {
+            publisher.trade(0, i, 1);
+        }
+        long[] snapshot = new long[3];
+
+        subscriber.poll(new MarketDataListener() {
+            @Override
+            public void onSnapshot(long sequence, int symbolId, long lastPrice, long volume, long referencePrice,
+                                   long bidPrice, int bidQuantity, long askPrice, int askQuantity) {
+                snapshot[0] = sequence;
+                snapshot[1] = lastPrice;
+                snapshot[2] = volume;
+            }
+        }, 100);
+
+        assertEquals(1, subscriber.gaps());
+        assertEquals(20, snapshot[0]);
+        assertEquals(20, snapshot[1]);
+        assertEquals(20, snapshot[2]);
+        assertEquals(21, subscriber.nextSequence());
+    }
+
+    // Every trade is written with price == quantity, so a copy mixing two records shows up
+    @Test
+    void readersNeverSeeATornRecordWhileBeingLapped() throws InterruptedException {
+        MarketDataPublisher publisher = new MarketDataPublisher(64);
+        publisher.addSymbol(0);
+        AtomicLong torn = new AtomicLong();
+        AtomicLong delivered = new AtomicLong();
+        Thread[] readers = new Thread[2];
+        long deadline = System.nanoTime() + 300_000_000L;
+        for (int r = 0; r < readers.length; r++) {
+            MarketDataSubscriber subscriber = publisher.subscribe();
+            readers[r] = new Thread(() -> {
+                MarketDataListener check = new MarketDataListener() {
+                    @Override
+                    public void onTrade(long sequence, int symbolId, long price, long quantity, long timestamp) {
+                        delivered.incrementAndGet();
+                        if (price != quantity) {
+                            torn.incrementAndGet();
+                        }
+                    }
+                };
+                while (System.nanoTime() < deadline) {
+                    subscriber.poll(check, 16);
+                }
+            });
+            readers[r].start();
+        }
+        for (long i = 1; System.nanoTime() < deadline; i++) {
+            publisher.trade(0, i, i);
+            if ((i & 31) == 0) {
+                Thread.yield(); // lets the readers in on a single core
+            }
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals(0, torn.get());
+        assertTrue(delivered.get() > 0);
+    }
+}
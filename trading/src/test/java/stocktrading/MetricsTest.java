@@ -0,0 +1,35 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.management.ReflectionException;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+    private final Metrics metrics = new Metrics();
+
+    @Test
+    void invokingAnOperationReportsThatThereIsNone() {
+        ReflectionException failure = assertThrows(ReflectionException.class,
+                                                   () -> metrics.invoke("reset", new Object[0], new String[0]));
+
+        assertInstanceOf(NoSuchMethodException.class, failure.getCause());
+        assertEquals("reset", failure.getCause().getMessage());
+    }
+
+    @Test
+    void exposesCountersAndGaugesAsAttributes() throws Exception {
+        metrics.counter("executions", "Executions settled").increment(3);
+        metrics.gauge("accounts", "Registered accounts", () -> 7);
+
+        assertEquals(3L, metrics.getAttribute("executions"));
+        assertEquals(7L, metrics.getAttribute("accounts"));
+        StringBuilder scrape = new StringBuilder();
+        metrics.writePrometheus(scrape);
+        assertTrue(scrape.toString().contains("stocktrading_accounts 7"), scrape.toString());
+    }
+}
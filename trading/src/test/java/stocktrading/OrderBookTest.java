@@ -0,0 +1,111 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OrderBookTest {
+    private final List<long[]> fills = new ArrayList<>(); // buyer, seller, tick, quantity
+    private MatchingEngine engine;
+    private int book;
+
+    @BeforeEach
+    void setUp() {
+        engine = new MatchingEngine((bookId, buyOrderId, buyer, sellOrderId, seller, priceTicks, quantity) ->
+                fills.add(new long[] {buyer, seller, priceTicks, quantity}));
+        book = engine.addBook();
+    }
+
+    @Test
+    void matchesBestPriceFirstThenArrivalOrder() {
+        engine.submit(book, 1, OrderBook.SELL, Money.parse("101"), 10);
+        engine.submit(book, 2, OrderBook.SELL, Money.parse("101"), 10);
+        engine.submit(book, 3, OrderBook.SELL, Money.parse("100.50"), 10);
+
+        long orderId = engine.submit(book, 9, OrderBook.BUY, Money.parse("101"), 25);
+
+        assertEquals(0, orderId);
+        assertEquals(3, fills.size());
+        assertFill(fills.get(0), 9, 3, 10050, 10);
+        assertFill(fills.get(1), 9, 1, 10100, 10);
+        assertFill(fills.get(2), 9, 2, 10100, 5);
+        assertEquals(25, engine.getLastFilledQuantity());
+        assertEquals(Money.parse("2520"), engine.getLastFilledValue());
+        assertEquals(10100, engine.getBook(book).bestAsk());
+        assertEquals(5, engine.getBook(book).askQuantityAt(10100));
+    }
+
+    @Test
+    void restsTheUnfilledRemainderOfALimitOrder() {
+        engine.submit(book, 1, OrderBook.SELL, Money.parse("100"), 4);
+
+        long orderId = engine.submit(book, 2, OrderBook.BUY, Money.parse("100"), 10);
+
+        assertNotEquals(0, orderId);
+        assertEquals(6, engine.openQuantityOf(orderId));
+        assertEquals(10000, engine.getBook(book).bestBid());
+        assertEquals(PriceLadder.NONE, engine.getBook(book).bestAsk());
+    }
+
+    @Test
+    void leavesOrdersThatDoNotCrossResting() {
+        engine.submit(book, 1, OrderBook.SELL, Money.parse("101"), 10);
+        engine.submit(book, 2, OrderBook.BUY, Money.parse("100"), 10);
+
+        assertEquals(0, fills.size());
+        assertEquals(10000, engine.getBook(book).bestBid());
+        assertEquals(10100, engine.getBook(book).bestAsk());
+    }
+
+    @Test
+    void cancelRemovesOnlyTheOwnersOrder() {
+        long first = engine.submit(book, 1, OrderBook.BUY, Money.parse("99"), 10);
+        long second = engine.submit(book, 2, OrderBook.BUY, Money.parse("99"), 10);
+
+        assertEquals(0, engine.cancel(first, 2));
+        assertEquals(10, engine.cancel(first, 1));
+        assertEquals(0, engine.cancel(first, 1));
+
+        engine.submit(book, 3, OrderBook.SELL, Money.parse("99"), 10);
+        assertEquals(1, fills.size());
+        assertFill(fills.get(0), 2, 3, 9900, 10);
+        assertFalse(engine.isLive(second));
+        assertEquals(PriceLadder.NONE, engine.getBook(book).bestBid());
+    }
+
+    @Test
+    void houseSellsItsFloatBeforeWorsePricedOrders() {
+        engine.submit(book, 1, OrderBook.SELL, Money.parse("101"), 10);
+        engine.quote(book, Money.parse("100.50"), 10);
+
+        engine.submit(book, 2, OrderBook.BUY, 0, 15);
+
+        assertEquals(2, fills.size());
+        assertFill(fills.get(0), 2, MatchingEngine.HOUSE, 10050, 10);
+        assertFill(fills.get(1), 2, 1, 10100, 5);
+    }
+
+    @Test
+    void houseQuoteTakesRestingOrdersItCrosses() {
+        engine.submit(book, 1, OrderBook.SELL, Money.parse("100"), 10);
+
+        engine.quote(book, Money.parse("100.50"), 0);
+
+        assertEquals(1, fills.size());
+        assertFill(fills.get(0), MatchingEngine.HOUSE, 1, 10000, 10);
+        assertEquals(PriceLadder.NONE, engine.getBook(book).bestAsk());
+    }
+
+    private static void assertFill(long[] fill, int buyer, int seller, long tick, int quantity) {
+        assertEquals(buyer, fill[0], "buyer");
+        assertEquals(seller, fill[1], "seller");
+        assertEquals(tick, fill[2], "tick");
+        assertEquals(quantity, fill[3], "quantity");
+    }
+}
@@ -0,0 +1,194 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+// The gateway in front of a stub business thread: deposits are answered at once, or held
+// back until a MARKET_CLOSE lets them go, to fill a connection's window
+@Timeout(30)
+class OrderGatewayTest {
+    private static final int WINDOW = 128; // OrderGateway.CONNECTION_IN_FLIGHT
+
+    private final List<Reply> held = new ArrayList<>();
+    private final AtomicInteger heldCount = new AtomicInteger();
+    private volatile boolean holding = false;
+    private Sequencer sequencer;
+    private OrderGateway gateway;
+
+    @BeforeEach
+    void start() throws IOException {
+        sequencer = new Sequencer(1024, (command, sequence, endOfBatch) -> {
+            if (command.type == Command.MARKET_CLOSE) {
+                holding = false;
+                held.forEach(reply -> reply.complete(Reply.OK));
+                held.clear();
+            } else if (holding) {
+                held.add(command.reply);
+                heldCount.incrementAndGet();
+            } else {
+                command.reply.complete(command.type == Command.DEPOSIT ? Reply.OK : Reply.INVALID);
+            }
+        });
+        sequencer.start();
+        User alice = new HeapUser(7, "alice", Credentials.hash("pw"), "Alice", 0);
+        gateway = new OrderGateway(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), sequencer,
+                                   new SymbolTable(), (username, password) -> username.equals("alice") ? alice : null);
+        gateway.start();
+    }
+
+    @AfterEach
+    void stop() {
+        gateway.stop();
+        sequencer.stop();
+    }
+
+    @Test
+    void requestsNeedALogin() throws IOException {
+        try (Client client = new Client()) {
+            GatewayProtocol.cash(client.out, 0, GatewayProtocol.DEPOSIT, Money.of(10.00));
+            GatewayProtocol.login(client.out, 1, "mallory", "pw");
+            GatewayProtocol.login(client.out, 2, "alice", "pw");
+            GatewayProtocol.cash(client.out, 3, GatewayProtocol.DEPOSIT, Money.of(10.00));
+            client.send();
+
+            assertEquals(Reply.UNKNOWN_ACCOUNT, client.response(0));
+            assertEquals(Reply.UNKNOWN_ACCOUNT, client.response(1));
+            assertEquals(Reply.OK, client.response(2));
+            assertEquals(7, client.orderId);
+            assertEquals(Reply.OK, client.response(3));
+        }
+    }
+
+    @Test
+    void framesSplitAcrossWritesOrPackedIntoOneAreDecoded() throws IOException {
+        try (Client client = new Client()) {
+            GatewayProtocol.login(client.out, 0, "alice", "pw");
+            for (int i = 1; i <= 20; i++) {
+                GatewayProtocol.cash(client.out, i, GatewayProtocol.DEPOSIT, Money.of(i));
+            }
+            client.sendByteByByte(40);
+            client.send();
+
+            for (int i = 0; i <= 20; i++) {
+                assertEquals(Reply.OK, client.response(i));
+            }
+        }
+    }
+
+    @Test
+    void frameWithAnImpossibleLengthClosesTheConnection() throws IOException {
+        try (Client client = new Client()) {
+            client.out.putShort((short) (GatewayProtocol.MAX_FRAME + 1));
+            client.send();
+            assertEquals(-1, client.read());
+        }
+        try (Client client = new Client()) {
+            client.out.putShort((short) (GatewayProtocol.MIN_FRAME - 1));
+            client.send();
+            assertEquals(-1, client.read());
+        }
+    }
+
+    @Test
+    void connectionStopsBeingReadOnceItsWindowIsFull() throws Exception {
+        int requests = 3 * WINDOW;
+        try (Client client = new Client()) {
+            GatewayProtocol.login(client.out, 0, "alice", "pw");
+            client.send();
+            assertEquals(Reply.OK, client.response(0));
+
+            holding = true;
+            for (int i = 1; i <= requests; i++) {
+                GatewayProtocol.cash(client.out, i, GatewayProtocol.DEPOSIT, Money.of(1.00));
+            }
+            client.send();
+            awaitHeld(WINDOW);
+            Thread.sleep(200);
+            assertEquals(WINDOW, heldCount.get()); // the rest wait unread in the socket
+
+            sequencer.publish(Command.MARKET_CLOSE, -1, -1, (byte) 0, 0, 0, 0, null, null);
+            for (int i = 1; i <= requests; i++) {
+                assertEquals(Reply.OK, client.response(i));
+            }
+        }
+    }
+
+    private void awaitHeld(int count) throws InterruptedException {
+        while (heldCount.get() < count) {
+            Thread.sleep(10);
+        }
+    }
+
+    // Blocking client that writes frames as built and reads responses in order
+    private final class Client implements AutoCloseable {
+        private final SocketChannel channel;
+        final ByteBuffer out = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer in = ByteBuffer.allocate(GatewayProtocol.RESPONSE_FRAME).order(ByteOrder.LITTLE_ENDIAN);
+        long orderId;
+
+        Client() throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), gateway.getPort()));
+        }
+
+        void send() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+
+        // Writes the first bytes one at a time with a pause between, leaving the rest buffered
+        void sendByteByByte(int count) throws IOException {
+            out.flip();
+            for (int i = 0; i < count; i++) {
+                channel.write(ByteBuffer.wrap(new byte[] {out.get()}));
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            out.compact();
+        }
+
+        int read() throws IOException {
+            in.clear();
+            return channel.read(in);
+        }
+
+        int response(int correlationId) throws IOException {
+            in.clear();
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    throw new IOException("Gateway closed the connection");
+                }
+            }
+            in.flip();
+            in.position(GatewayProtocol.LENGTH_FIELD + 1);
+            assertEquals(correlationId, in.getInt());
+            int status = in.get();
+            orderId = in.getLong();
+            return status;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+
+import org.junit.jupiter.api.Test;
+
+class PartitionMapTest {
+    private static final int KEYS = 20_000;
+
+    @Test
+    void parsesNodesInIdOrder() {
+        PartitionMap partitions = PartitionMap.parse("alpha:7001, beta:7002,7003");
+
+        assertEquals(3, partitions.nodeCount());
+        assertEquals(new InetSocketAddress("alpha", 7001), partitions.address(0));
+        assertEquals(new InetSocketAddress("beta", 7002), partitions.address(1));
+        assertEquals(new InetSocketAddress("localhost", 7003), partitions.address(2));
+    }
+
+    @Test
+    void ownersDependOnlyOnTheNodeCount() {
+        PartitionMap one = PartitionMap.parse("localhost:7001,localhost:7002,localhost:7003");
+        PartitionMap other = PartitionMap.parse("host-a:9001,host-b:9002,host-c:9003");
+
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(one.ownerOf("SYM" + i), other.ownerOf("SYM" + i));
+        }
+    }
+
+    @Test
+    void keysSpreadOverEveryNode() {
+        PartitionMap partitions = PartitionMap.parse("7001,7002,7003,7004");
+        int[] owned = new int[partitions.nodeCount()];
+        for (int i = 0; i < KEYS; i++) {
+            owned[partitions.ownerOf("user" + i)]++;
+        }
+
+        for (int count : owned) {
+            assertTrue(count > KEYS / 4 / 2 && count < KEYS / 4 * 2, "node owns " + count + " of " + KEYS);
+        }
+    }
+
+    @Test
+    void addingANodeOnlyMovesKeysOntoIt() {
+        PartitionMap three = PartitionMap.parse("7001,7002,7003");
+        PartitionMap four = PartitionMap.parse("7001,7002,7003,7004");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user" + i;
+            if (three.ownerOf(key) != four.ownerOf(key)) {
+                assertEquals(3, four.ownerOf(key), key);
+                moved++;
+            }
+        }
+
+        assertTrue(moved > KEYS / 4 / 2 && moved < KEYS / 4 * 2, moved + " of " + KEYS + " keys moved");
+    }
+}
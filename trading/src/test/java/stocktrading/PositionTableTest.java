@@ -0,0 +1,164 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+class PositionTableTest {
+    private final PositionTable positions = new HeapPositionTable();
+
+    @Test
+    void buysAccumulateCostBasis() {
+        positions.buy(3, 10, Money.parse("100"));
+        positions.buy(3, 30, Money.parse("120"));
+
+        assertEquals(40, positions.quantity(3));
+        assertEquals(Money.parse("4600"), positions.costBasis(3));
+        assertEquals(Money.parse("115"), positions.averagePrice(3));
+        assertEquals(1, positions.openPositions());
+        assertEquals(Money.parse("4600"), positions.totalCostBasis());
+    }
+
+    @Test
+    void sellReleasesProportionalBasisAndRealizesPnl() {
+        positions.buy(3, 40, Money.parse("115"));
+
+        assertTrue(positions.sell(3, 10, Money.parse("130")));
+
+        assertEquals(30, positions.quantity(3));
+        assertEquals(Money.parse("3450"), positions.costBasis(3));
+        assertEquals(Money.parse("150"), positions.realizedPnl(3));
+        assertEquals(Money.parse("150"), positions.totalRealizedPnl());
+        assertEquals(Money.parse("3450"), positions.totalCostBasis());
+    }
+
+    @Test
+    void partialSaleOfALargePositionDoesNotOverflow() {
+        positions.buy(3, 1_000_000, Money.parse("150"));
+
+        assertTrue(positions.sell(3, 100_000, Money.parse("151")));
+
+        assertEquals(Money.parse("135000000"), positions.costBasis(3));
+        assertEquals(Money.parse("100000"), positions.realizedPnl(3));
+    }
+
+    @Test
+    void releasedBasisTruncatesLikeAnExactDivision() {
+        positions.buy(3, 3, Money.parse("0.000001"));
+        positions.buy(3, 4, Money.parse("0.000002"));
+
+        assertTrue(positions.sell(3, 5, 0));
+
+        assertEquals(11 - 11 * 5 / 7, positions.costBasis(3));
+    }
+
+    @Test
+    void flatPositionKeepsItsEntryAndPnl() {
+        positions.buy(1, 5, Money.parse("10"));
+        positions.buy(2, 5, Money.parse("20"));
+
+        assertTrue(positions.sell(1, 5, Money.parse("8")));
+
+        assertEquals(2, positions.size());
+        assertEquals(1, positions.openPositions());
+        assertEquals(0, positions.costBasis(1));
+        assertEquals(Money.parse("-10"), positions.realizedPnl(1));
+        assertEquals(Money.parse("100"), positions.totalCostBasis());
+    }
+
+    @Test
+    void refusesToSellMoreThanHeld() {
+        positions.buy(1, 5, Money.parse("10"));
+
+        assertFalse(positions.sell(1, 6, Money.parse("10")));
+        assertFalse(positions.sell(2, 1, Money.parse("10")));
+        assertEquals(5, positions.quantity(1));
+    }
+
+    @Test
+    void reservationsLimitWhatCanBeSold() {
+        positions.buy(1, 10, Money.parse("10"));
+        positions.reserveSell(1, 4);
+        positions.reserveBuy(1, 7);
+
+        assertEquals(6, positions.availableToSell(1));
+        assertEquals(7, positions.pendingBuys(1));
+
+        positions.releaseSell(1, 4);
+        positions.releaseBuy(1, 7);
+        assertEquals(10, positions.availableToSell(1));
+        assertEquals(0, positions.pendingBuys(1));
+    }
+
+    @Test
+    void entriesKeepTheOrderTheyWereOpenedInAsTheTableGrows() {
+        int symbols = 100;
+        for (int i = 0; i < symbols; i++) {
+            positions.buy(i * 7919, i + 1, Money.parse("1"));
+        }
+        positions.reserveBuy(1_000_000, 5); // a reservation opens an entry too, with no shares
+
+        assertEquals(symbols + 1, positions.size());
+        assertEquals(symbols, positions.openPositions());
+        for (int i = 0; i < symbols; i++) {
+            assertEquals(i * 7919, positions.symbolAt(i));
+            assertEquals(i + 1, positions.quantity(i * 7919));
+            assertEquals(-1, positions.holderSlot(i * 7919));
+        }
+        assertEquals(1_000_000, positions.symbolAt(symbols));
+        assertEquals(0, positions.quantity(1_000_000));
+        assertEquals(0, positions.quantity(1));
+    }
+
+    @Test
+    void restoredPositionsAreOpenOnlyIfSharesAreHeld() {
+        positions.restore(4, 0, 0, Money.parse("25"));
+        positions.restore(5, 10, Money.parse("1000"), Money.parse("-5"));
+
+        assertEquals(2, positions.size());
+        assertEquals(1, positions.openPositions());
+        assertEquals(Money.parse("100"), positions.averagePrice(5));
+        assertEquals(Money.parse("20"), positions.totalRealizedPnl());
+        assertEquals(Money.parse("1000"), positions.totalCostBasis());
+
+        assertTrue(positions.sell(5, 10, Money.parse("110")));
+        assertEquals(0, positions.openPositions());
+        assertEquals(Money.parse("95"), positions.realizedPnl(5));
+    }
+
+    @Test
+    void tradingAHeldPositionDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 8; i++) {
+            positions.buy(i, 100, Money.parse("10"));
+        }
+        trade(10_000); // warm up
+
+        int rounds = 100_000;
+        long before = threads.getCurrentThreadAllocatedBytes();
+        trade(rounds);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // The probe itself may cost a fixed few hundred bytes; a trade costing any would show here
+        assertTrue(allocated < rounds, allocated + " bytes allocated over " + rounds + " rounds");
+        assertEquals(8, positions.openPositions());
+    }
+
+    private void trade(int rounds) {
+        long buyPrice = Money.parse("10");
+        long sellPrice = Money.parse("11");
+        for (int i = 0; i < rounds; i++) {
+            int symbolId = i % 8;
+            positions.reserveBuy(symbolId, 3);
+            positions.releaseBuy(symbolId, 3);
+            positions.buy(symbolId, 3, buyPrice);
+            positions.reserveSell(symbolId, 3);
+            positions.releaseSell(symbolId, 3);
+            assertTrue(positions.sell(symbolId, 3, sellPrice));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PreTradeRiskTest {
+    private static final long REFERENCE = Money.parse("151");
+
+    @TempDir
+    Path directory;
+
+    private PreTradeRisk risk;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        risk = new PreTradeRisk(Money.parse("10000000"), 100, 1000000, 10000000, 50);
+        risk.addSymbol(0);
+        user = new HeapUser(0, "alice", "pw", "Alice", Money.parse("100000"));
+        user.getPositions().buy(0, 1000, REFERENCE);
+    }
+
+    @Test
+    void rejectsLimitsOutsideThePriceBand() {
+        assertEquals(Reply.RISK_LIMIT, accept(OrderBook.SELL, Money.parse("9999999"), 1));
+        assertEquals(Reply.RISK_LIMIT, accept(OrderBook.BUY, Money.parse("0.01"), 1));
+        assertEquals(Reply.RISK_LIMIT, accept(OrderBook.SELL, Money.parse("226.51"), 1));
+        assertEquals(0, user.getReservedCash());
+        assertEquals(1000, user.getPositions().availableToSell(0));
+        assertEquals(0, user.getOpenOrders());
+    }
+
+    @Test
+    void triggersGetTheSameBand() {
+        assertTrue(risk.triggerWithinBand(ConditionalOrders.STOP, Money.parse("75.50"), REFERENCE));
+        assertFalse(risk.triggerWithinBand(ConditionalOrders.STOP, Money.parse("0.01"), REFERENCE));
+        assertFalse(risk.triggerWithinBand(ConditionalOrders.TAKE_PROFIT, Money.parse("9999999"), REFERENCE));
+        assertTrue(risk.triggerWithinBand(ConditionalOrders.TRAILING_STOP, Money.parse("75.50"), REFERENCE));
+        assertFalse(risk.triggerWithinBand(ConditionalOrders.TRAILING_STOP, Money.parse("75.51"), REFERENCE));
+    }
+
+    @Test
+    void acceptsLimitsInsideThePriceBand() {
+        assertEquals(Reply.OK, accept(OrderBook.SELL, Money.parse("226.50"), 10));
+        assertEquals(Reply.OK, accept(OrderBook.BUY, Money.parse("75.50"), 10));
+        assertEquals(Money.parse("755"), user.getReservedCash());
+        assertEquals(990, user.getPositions().availableToSell(0));
+        assertEquals(2, user.getOpenOrders());
+    }
+
+    @Test
+    void marketBuyReservesAtTheHouseQuoteTick() {
+        long reference = Money.parse("150.005");
+        User buyer = new HeapUser(1, "bob", "pw", "Bob", Money.parse("300.01"));
+
+        assertEquals(Money.parse("150.01"), PreTradeRisk.reservePrice(0, reference));
+        assertEquals(Reply.INSUFFICIENT_FUNDS,
+                     risk.accept(buyer, 0, OrderBook.BUY, PreTradeRisk.reservePrice(0, reference), reference, 2));
+
+        buyer.deposit(Money.parse("0.01"));
+        assertEquals(Reply.OK,
+                     risk.accept(buyer, 0, OrderBook.BUY, PreTradeRisk.reservePrice(0, reference), reference, 2));
+
+        MatchingEngine engine = new MatchingEngine((bookId, buyOrderId, buyerId, sellOrderId, seller, tick, quantity) ->
+                buyer.buyStock(bookId, quantity, MatchingEngine.toPrice(tick)));
+        int book = engine.addBook();
+        engine.quote(book, reference, 1000);
+        engine.submit(book, buyer.getAccountId(), OrderBook.BUY, 0, 2);
+        assertEquals(0, buyer.getBalance());
+    }
+
+    @Test
+    void buyIntoAFullAccountArenaIsRefusedBeforeReservingAnything() throws IOException {
+        AccountArena arena = AccountArena.create(directory.resolve("accounts.arena"), 4, 1, 256);
+        User holder = new ArenaUser(arena, arena.addAccount("carol", "Carol", Money.parse("100000")), "");
+        for (int symbolId = 0; symbolId <= AccountArena.BLOCK_ENTRIES; symbolId++) {
+            risk.addSymbol(symbolId);
+        }
+        for (int symbolId = 0; symbolId < AccountArena.BLOCK_ENTRIES; symbolId++) {
+            holder.getPositions().buy(symbolId, 1, REFERENCE);
+        }
+
+        assertEquals(Reply.RISK_LIMIT,
+                     risk.accept(holder, AccountArena.BLOCK_ENTRIES, OrderBook.BUY, REFERENCE, REFERENCE, 1));
+        assertEquals(0, holder.getReservedCash());
+        assertEquals(0, holder.getOpenOrders());
+        assertEquals(Reply.OK, risk.accept(holder, 3, OrderBook.BUY, REFERENCE, REFERENCE, 1));
+    }
+
+    private int accept(byte side, long limitPrice, int quantity) {
+        return risk.accept(user, 0, side, PreTradeRisk.reservePrice(limitPrice, REFERENCE), REFERENCE, quantity);
+    }
+}
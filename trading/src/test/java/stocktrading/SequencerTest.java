@@ -0,0 +1,67 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SequencerTest {
+
+    @Test
+    void appliesCommandsInOrderAndCompletesTheirReplies() {
+        AtomicInteger applied = new AtomicInteger();
+        Sequencer sequencer = new Sequencer(8, (command, sequence, endOfBatch) -> {
+            applied.incrementAndGet();
+            command.reply.complete(Reply.OK);
+        });
+        sequencer.start();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Reply.OK, submit(sequencer, Command.DEPOSIT).status);
+            }
+            sequencer.stop();
+        });
+        assertEquals(100, applied.get());
+    }
+
+    @Test
+    void errorInBusinessLogicHaltsWithoutHangingCallers() {
+        AtomicInteger applied = new AtomicInteger();
+        Throwable[] reported = new Throwable[1];
+        Sequencer sequencer = new Sequencer(8, (command, sequence, endOfBatch) -> {
+            if (command.type == Command.WITHDRAW) {
+                throw new OutOfMemoryError("simulated");
+            }
+            applied.incrementAndGet();
+            command.reply.complete(Reply.OK);
+        });
+        sequencer.onFailure(cause -> reported[0] = cause);
+        sequencer.start();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertEquals(Reply.OK, submit(sequencer, Command.DEPOSIT).status);
+            assertEquals(Reply.FAILED, submit(sequencer, Command.WITHDRAW).status);
+            // More commands than the ring holds: none may block or be applied
+            for (int i = 0; i < 20; i++) {
+                assertEquals(Reply.FAILED, submit(sequencer, Command.DEPOSIT).status);
+            }
+            sequencer.stop();
+        });
+        assertEquals(1, applied.get());
+        assertInstanceOf(OutOfMemoryError.class, sequencer.failure());
+        assertInstanceOf(OutOfMemoryError.class, reported[0]);
+    }
+
+    private static Reply submit(Sequencer sequencer, byte type) {
+        Reply reply = new Reply();
+        reply.reset();
+        sequencer.publish(type, 0, 0, (byte) 0, 0, 0, 0, null, reply);
+        reply.await();
+        return reply;
+    }
+}
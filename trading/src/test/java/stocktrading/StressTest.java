@@ -0,0 +1,38 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// The --stress mode end to end on a scratch journal: concurrent sessions through the
+// sequencer, then the consistency check against the journal rebuild
+class StressTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentSessionsLeaveTheExchangeConsistent() {
+        System.setProperty("trading.journal.dir", directory.resolve("journal").toString());
+        System.setProperty("trading.bars.dir", directory.resolve("bars").toString());
+        PrintStream console = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        try {
+            StockTradingSystem.main(new String[] {"--stress", "200", "25", "4"});
+        } finally {
+            System.setOut(console);
+            System.clearProperty("trading.journal.dir");
+            System.clearProperty("trading.bars.dir");
+        }
+
+        String report = output.toString();
+        console.print(report);
+        assertTrue(report.contains("Stress test: 200 sessions x 25 operations on 4 worker threads"), report);
+        assertTrue(report.contains("Consistency check passed"), report);
+    }
+}
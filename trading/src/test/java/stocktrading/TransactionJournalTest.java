@@ -0,0 +1,262 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionJournalTest {
+    private static final long T0 = 1_700_000_000_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsSurviveReopeningAcrossSegments() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 8);
+        journal.appendRegistration(0, "alice", "secret", "Alice Example", Money.parse("5000"), T0);
+        for (int i = 0; i < 20; i++) {
+            journal.append(TransactionJournal.BUY, 0, i % 2, MatchingEngine.HOUSE, i + 1, Money.parse("100"), T0 + i);
+        }
+        long size = journal.size();
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 8);
+
+        assertEquals(size, reopened.size());
+        assertEquals(TransactionJournal.REGISTER, reopened.type(0));
+        assertArrayEquals(new String[] {"alice", "secret", "Alice Example"}, reopened.registrationDetails(0));
+        assertEquals(Money.parse("5000"), reopened.price(0));
+        long last = size - 1;
+        assertEquals(TransactionJournal.BUY, reopened.type(last));
+        assertEquals(20, reopened.shares(last));
+        assertEquals(1, reopened.bookId(last));
+        assertEquals(T0 + 19, reopened.timestamp(last));
+    }
+
+    @Test
+    void tradeChainsLinkNewestToOldest() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 64);
+        long a = journal.append(TransactionJournal.BUY, 1, 0, 2, 10, Money.parse("10"), T0);
+        long b = journal.append(TransactionJournal.SELL, 2, 0, 1, 10, Money.parse("10"), T0);
+        journal.append(TransactionJournal.DEPOSIT, 1, 0, 0, 0, Money.parse("50"), T0 + 1);
+        long c = journal.append(TransactionJournal.BUY, 1, 3, MatchingEngine.HOUSE, 5, Money.parse("20"), T0 + 2);
+
+        for (TransactionJournal view : new TransactionJournal[] {journal, TransactionJournal.open(directory, 64)}) {
+            assertEquals(c, view.latestTradeOfAccount(1));
+            assertEquals(a, view.previousTradeOfAccount(c));
+            assertEquals(TransactionJournal.NONE, view.previousTradeOfAccount(a));
+            assertEquals(b, view.latestTradeOfBook(0));
+            assertEquals(a, view.previousTradeOfBook(b));
+            assertEquals(c, view.latestTradeOfBook(3));
+            assertEquals(TransactionJournal.NONE, view.latestTradeOfAccount(7));
+        }
+    }
+
+    @Test
+    void batchIsAppendedAsOneBlock() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 4);
+        TradeBatch batch = new TradeBatch();
+        for (int i = 0; i < 6; i++) {
+            batch.record(TransactionJournal.BUY, i, 0, MatchingEngine.HOUSE, 1, Money.parse("10"), 0, T0 + i);
+        }
+
+        long first = journal.appendBatch(batch);
+
+        assertEquals(0, first);
+        assertEquals(6, journal.size());
+        TransactionJournal reopened = TransactionJournal.open(directory, 4);
+        assertEquals(6, reopened.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, reopened.accountId(i));
+            assertEquals(T0 + i, reopened.timestamp(i));
+        }
+    }
+
+    @Test
+    void batchWithoutItsCommitMarkerIsDiscarded() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 4);
+        for (int i = 0; i < 3; i++) {
+            journal.append(TransactionJournal.DEPOSIT, i, -1, -1, 0, Money.parse("10"), T0 + i);
+        }
+        // A crash partway through a batch at slots 3 to 6 leaves every type but the first,
+        // the last three in a segment the batch had spilled into
+        journal.append(TransactionJournal.BUY, 9, 0, MatchingEngine.HOUSE, 1, Money.parse("10"), T0 + 3);
+        journal.append(TransactionJournal.BUY, 9, 0, MatchingEngine.HOUSE, 1, Money.parse("10"), T0 + 3);
+        journal.append(TransactionJournal.BUY, 9, 0, MatchingEngine.HOUSE, 1, Money.parse("10"), T0 + 3);
+        journal.append(TransactionJournal.BUY, 9, 0, MatchingEngine.HOUSE, 1, Money.parse("10"), T0 + 3);
+        clearType(0, 3);
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 4);
+
+        assertEquals(3, reopened.size());
+        assertEquals(TransactionJournal.NONE, reopened.latestTradeOfAccount(9));
+        reopened.append(TransactionJournal.WITHDRAW, 0, -1, -1, 0, Money.parse("5"), T0 + 4);
+        assertEquals(4, TransactionJournal.open(directory, 4).size());
+    }
+
+    @Test
+    void copiedRecordsReplayIdentically() throws IOException {
+        TransactionJournal source = TransactionJournal.open(directory.resolve("leader"), 64);
+        source.appendRegistration(0, "bob", "pw", "Bob", Money.parse("100"), T0);
+        source.append(TransactionJournal.BUY, 0, 0, MatchingEngine.HOUSE, 3, Money.parse("10"), T0 + 1);
+        ByteBuffer records = ByteBuffer.allocate((int) source.size() * TransactionJournal.RECORD_SIZE);
+        source.copyRecords(0, (int) source.size(), records);
+        records.flip();
+
+        TransactionJournal follower = TransactionJournal.open(directory.resolve("follower"), 64);
+        follower.appendRecords(records, (int) source.size());
+
+        assertEquals(source.size(), follower.size());
+        assertArrayEquals(source.registrationDetails(0), follower.registrationDetails(0));
+        assertEquals(source.latestTradeOfAccount(0), follower.latestTradeOfAccount(0));
+        assertEquals(3, follower.shares(follower.latestTradeOfAccount(0)));
+    }
+
+    @Test
+    void openingFromASnapshotIndexOnlyIndexesTheTail() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 64);
+        long a = journal.append(TransactionJournal.BUY, 1, 0, MatchingEngine.HOUSE, 10, Money.parse("10"), T0);
+        long b = journal.append(TransactionJournal.BUY, 1, 0, MatchingEngine.HOUSE, 10, Money.parse("10"), T0 + 1);
+        ExchangeReplica replica = new ExchangeReplica();
+        replica.listStock(new Stock("AAPL", "Apple Inc.", Money.parse("10"), 1000));
+        replica.addUser("alice", "pw", "Alice", Money.parse("1000"));
+        replica.addUser("bob", "pw", "Bob", Money.parse("1000"));
+        replica.apply(journal, journal.size());
+        JournalIndex snapshotIndex = replica.journalIndex();
+        long c = journal.append(TransactionJournal.BUY, 1, 0, MatchingEngine.HOUSE, 10, Money.parse("10"), T0 + 2);
+        // Records before the snapshot are left as they are: a link damaged there is not rewritten
+        writeLong(0, (int) b, 40, 0);
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 64, snapshotIndex);
+
+        assertEquals(3, reopened.size());
+        assertEquals(c, reopened.latestTradeOfAccount(1));
+        assertEquals(b, reopened.previousTradeOfAccount(c));
+        assertEquals(c, reopened.latestTradeOfBook(0));
+        assertEquals(TransactionJournal.NONE, reopened.previousTradeOfAccount(b));
+        assertEquals(c, reopened.lastIndexBefore(T0 + 3));
+
+        // Without one, everything is relinked
+        TransactionJournal rebuilt = TransactionJournal.open(directory, 64);
+        assertEquals(a, rebuilt.previousTradeOfAccount(b));
+    }
+
+    @Test
+    void snapshotIndexTheJournalDoesNotReachIsIgnored() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 64);
+        long a = journal.append(TransactionJournal.BUY, 1, 0, MatchingEngine.HOUSE, 10, Money.parse("10"), T0);
+        JournalIndex ahead = new JournalIndex();
+        ahead.add(5, TransactionJournal.BUY, 1, 0, T0);
+        ahead.position = 6;
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 64, ahead);
+
+        assertEquals(1, reopened.size());
+        assertEquals(a, reopened.latestTradeOfAccount(1));
+    }
+
+    @Test
+    void registrationDetailsSpillAcrossASegmentBoundary() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 4);
+        journal.append(TransactionJournal.DEPOSIT, 0, -1, -1, 0, Money.parse("1"), T0);
+        journal.append(TransactionJournal.DEPOSIT, 0, -1, -1, 0, Money.parse("1"), T0);
+        String name = "Zoë Ångström-Nakamura 中村 ".repeat(6);
+        String hash = Credentials.hash("correct horse");
+
+        long index = journal.appendRegistration(1, "zoe", hash, name, Money.parse("250"), T0 + 1);
+        long after = journal.append(TransactionJournal.DEPOSIT, 1, -1, -1, 0, Money.parse("5"), T0 + 2);
+
+        int length = ("zoe\n" + hash + "\n" + name).getBytes(StandardCharsets.UTF_8).length;
+        int continuations = (length + TransactionJournal.RECORD_SIZE - 2) / (TransactionJournal.RECORD_SIZE - 1);
+        assertTrue(index + continuations >= 4, "the registration should spill into the next segment");
+        assertEquals(index + 1 + continuations, after);
+        TransactionJournal reopened = TransactionJournal.open(directory, 4);
+        assertEquals(after + 1, reopened.size());
+        assertEquals(TransactionJournal.REGISTER, reopened.type(index));
+        assertEquals(1 + continuations, reopened.span(index));
+        assertEquals(TransactionJournal.CONTINUATION, reopened.type(index + continuations));
+        assertArrayEquals(new String[] {"zoe", hash, name}, reopened.registrationDetails(index));
+        assertEquals(Money.parse("250"), reopened.price(index));
+        assertEquals(Money.parse("5"), reopened.price(after));
+        // Segments are fixed-size files, however much of them is used
+        for (int segment = 0; segment <= after / 4; segment++) {
+            assertEquals(4L * TransactionJournal.RECORD_SIZE, Files.size(segmentPath(segment)));
+        }
+    }
+
+    @Test
+    void registrationWithoutItsCommitMarkerIsDiscardedWhole() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 64);
+        journal.appendRegistration(0, "alice", "pw", "Alice", Money.parse("100"), T0);
+        long torn = journal.appendRegistration(1, "bob", "pw", "Bob ".repeat(40), Money.parse("100"), T0 + 1);
+        clearType(0, (int) torn); // the continuations landed, the registration itself did not
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 64);
+
+        assertEquals(torn, reopened.size());
+        long next = reopened.appendRegistration(1, "carol", "pw", "Carol", Money.parse("100"), T0 + 2);
+        assertEquals(torn, next);
+        assertArrayEquals(new String[] {"carol", "pw", "Carol"},
+                          TransactionJournal.open(directory, 64).registrationDetails(next));
+    }
+
+    @Test
+    void detailsTooLongForOneBlockAreRefused() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 64);
+
+        assertThrows(IllegalArgumentException.class, () -> journal.appendRegistration(
+                0, "alice", "pw", "A".repeat(128 * TransactionJournal.RECORD_SIZE), 0, T0));
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    void walkFromLastIndexBeforeSkipsOnlyLaterRecords() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 1 << 12);
+        int records = 3 * (1 << TransactionJournal.TIME_BLOCK_BITS) + 100;
+        for (int i = 0; i < records; i++) {
+            // Mostly rising, with an occasional late record stamped a little in the past
+            long timestamp = T0 + i * 10 - (i % 97 == 0 ? 500 : 0);
+            journal.append(TransactionJournal.BUY, i % 5, i % 3, MatchingEngine.HOUSE, 1, Money.parse("1"), timestamp);
+        }
+
+        for (long cutoff : new long[] {T0, T0 + 5_000, T0 + 40_960, T0 + 41_000, T0 + 10L * records}) {
+            long start = journal.lastIndexBefore(cutoff);
+            for (long index = start + 1; index < records; index++) {
+                assertTrue(journal.timestamp(index) >= cutoff, "record " + index + " before " + cutoff + " skipped");
+            }
+        }
+        assertTrue(journal.lastIndexBefore(T0 + 5_000) < 2 * (1 << TransactionJournal.TIME_BLOCK_BITS));
+        assertEquals(records - 1, journal.lastIndexBefore(Long.MAX_VALUE));
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("transactions-%05d.journal", segment));
+    }
+
+    private void writeLong(int segment, int slot, int offset, long value) throws IOException {
+        Path file = segmentPath(segment);
+        try (RandomAccessFile journal = new RandomAccessFile(file.toFile(), "rw")) {
+            journal.seek((long) slot * TransactionJournal.RECORD_SIZE + offset);
+            journal.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array());
+        }
+    }
+
+    private void clearType(int segment, int slot) throws IOException {
+        Path file = segmentPath(segment);
+        try (RandomAccessFile journal = new RandomAccessFile(file.toFile(), "rw")) {
+            journal.seek((long) slot * TransactionJournal.RECORD_SIZE);
+            journal.write(0);
+        }
+    }
+}
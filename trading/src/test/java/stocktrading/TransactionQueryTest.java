@@ -0,0 +1,122 @@
+package stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionQueryTest {
+    private static final long T0 = 1_700_000_000_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private TransactionJournal journal;
+    private final List<Long> trades = new ArrayList<>(); // journal index of each trade, oldest first
+
+    // Accounts 0..2 trade symbols 0..1 in turn, one trade per nanosecond, with other records between
+    @BeforeEach
+    void fillJournal() throws IOException {
+        journal = TransactionJournal.open(directory.resolve("journal"), 64);
+        journal.appendRegistration(0, "alice", "pw", "Alice", Money.parse("1000"), T0);
+        for (int i = 0; i < 30; i++) {
+            trades.add(journal.append(i % 2 == 0 ? TransactionJournal.BUY : TransactionJournal.SELL, i % 3, i % 2,
+                                      MatchingEngine.HOUSE, 1, Money.parse("100"), T0 + i));
+            if (i % 5 == 0) {
+                journal.append(TransactionJournal.DEPOSIT, i % 3, -1, -1, 0, Money.parse("1"), T0 + i);
+            }
+        }
+    }
+
+    @Test
+    void accountPagesRunNewestFirstAndResumeFromTheirCursor() {
+        TransactionQuery query = new TransactionQuery(journal).account(1);
+        List<Long> seen = new ArrayList<>();
+        long cursor = TransactionQuery.FIRST_PAGE;
+        int pages = 0;
+        while (cursor != TransactionQuery.END) {
+            List<Long> page = new ArrayList<>();
+            cursor = query.page(cursor, 4, page::add);
+            assertTrue(page.size() <= 4);
+            seen.addAll(page);
+            pages++;
+        }
+
+        assertEquals(expected(i -> i % 3 == 1), seen);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    void accountAndSymbolFiltersCombine() {
+        List<Long> seen = new ArrayList<>();
+        new TransactionQuery(journal).account(2).symbol(1).page(TransactionQuery.FIRST_PAGE, 100, seen::add);
+
+        assertEquals(expected(i -> i % 3 == 2 && i % 2 == 1), seen);
+    }
+
+    @Test
+    void symbolWalkSeesOnlyThatSymbol() {
+        List<Long> seen = new ArrayList<>();
+        long cursor = new TransactionQuery(journal).symbol(0).page(TransactionQuery.FIRST_PAGE, 100, seen::add);
+
+        assertEquals(expected(i -> i % 2 == 0), seen);
+        assertEquals(TransactionQuery.END, cursor);
+    }
+
+    @Test
+    void timeRangeIncludesItsStartAndExcludesItsEnd() {
+        List<Long> seen = new ArrayList<>();
+        long cursor = new TransactionQuery(journal).between(T0 + 10, T0 + 20)
+                .page(TransactionQuery.FIRST_PAGE, 100, seen::add);
+
+        assertEquals(expected(i -> i >= 10 && i < 20), seen);
+        assertEquals(TransactionQuery.END, cursor); // stopped at the start of the range, not the journal
+    }
+
+    @Test
+    void unfilteredPagesSkipEverythingButTrades() {
+        List<Long> seen = new ArrayList<>();
+        long cursor = TransactionQuery.FIRST_PAGE;
+        while (cursor != TransactionQuery.END) {
+            cursor = new TransactionQuery(journal).page(cursor, 7, seen::add);
+        }
+
+        assertEquals(expected(i -> true), seen);
+    }
+
+    @Test
+    void cursorStaysValidWhileTheJournalGrows() {
+        TransactionQuery query = new TransactionQuery(journal).account(0);
+        List<Long> first = new ArrayList<>();
+        long cursor = query.page(TransactionQuery.FIRST_PAGE, 5, first::add);
+
+        long newer = journal.append(TransactionJournal.BUY, 0, 0, MatchingEngine.HOUSE, 1, Money.parse("100"), T0 + 30);
+        List<Long> rest = new ArrayList<>();
+        query.page(cursor, 100, rest::add);
+        List<Long> fresh = new ArrayList<>();
+        query.page(TransactionQuery.FIRST_PAGE, 1, fresh::add);
+
+        first.addAll(rest);
+        assertEquals(expected(i -> i % 3 == 0), first);
+        assertEquals(List.of(newer), fresh);
+    }
+
+    // Journal indexes of the trades whose number matches, newest first
+    private List<Long> expected(IntPredicate matches) {
+        List<Long> expected = new ArrayList<>();
+        for (int i = trades.size() - 1; i >= 0; i--) {
+            if (matches.test(i)) {
+                expected.add(trades.get(i));
+            }
+        }
+        return expected;
+    }
+}